@@ -0,0 +1,78 @@
+package macky.scripting.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares a JMH csv result file against the checked-in baseline and fails if a benchmark got slower, or allocates
+ * more per operation, by more than the given tolerance, or if a benchmark has no baseline row to compare against.
+ * Usage: {@code BaselineCheck <baseline.csv> <results.csv> [tolerance]}.
+ */
+public final class BaselineCheck {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    private BaselineCheck() {
+
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BaselineCheck <baseline.csv> <results.csv> [tolerance]");
+            System.exit(2);
+        }
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.25;
+        Map<String, Double> baseline = read(Paths.get(args[0]));
+        Map<String, Double> results = read(Paths.get(args[1]));
+        List<String> regressions = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : results.entrySet()) {
+            String name = entry.getKey();
+            if (!(name.endsWith(ALLOCATION) || !name.contains(":"))) continue;
+            Double before = baseline.get(name);
+            double after = entry.getValue();
+            if (before == null) {
+                System.out.printf("%-70s %14s %14.3f  NO BASELINE%n", name, "-", after);
+                missing.add(name);
+                continue;
+            }
+            // allocation of a few bytes per op is noise from the harness itself
+            double slack = name.endsWith(ALLOCATION) ? 16 : 0;
+            boolean regressed = after > before * (1 + tolerance) + slack;
+            System.out.printf("%-70s %14.3f %14.3f%s%n", name, before, after, regressed ? "  REGRESSION" : "");
+            if (regressed) regressions.add(name);
+        }
+        if (!missing.isEmpty()) {
+            System.err.println(missing.size() + " benchmark(s) have no row in " + args[0] + ", record them there: " + missing);
+        }
+        if (!regressions.isEmpty()) {
+            System.err.println(regressions.size() + " benchmark(s) regressed by more than " + Math.round(tolerance * 100) + "%: " + regressions);
+        }
+        if (!missing.isEmpty() || !regressions.isEmpty()) System.exit(1);
+    }
+
+    /**
+     * Reads the benchmark name and score columns. Only average-time benchmarks are compared, where lower is better.
+     */
+    private static Map<String, Double> read(Path path) throws IOException {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        List<String> lines = Files.readAllLines(path);
+        for (String line : lines.subList(1, lines.size())) {
+            String[] columns = line.split(",");
+            if (columns.length < 5 || !unquote(columns[1]).equals("avgt")) continue;
+            scores.put(unquote(columns[0]), Double.parseDouble(unquote(columns[4])));
+        }
+        return scores;
+    }
+
+    private static String unquote(String column) {
+        return column.startsWith("\"") ? column.substring(1, column.length() - 1) : column;
+    }
+
+}
@@ -0,0 +1,88 @@
+package macky.scripting.bench;
+
+import macky.scripting.Batch;
+import macky.scripting.CompiledScript;
+import macky.scripting.ScriptObjects;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+
+    private static final int ROWS = 100_000;
+
+    private static final String SCORE = "{ let base = if level > 1 { 2 } else { 1 }; base * weight * amount + bonus }";
+
+    private macky.scripting.Scope scope;
+    private CompiledScript script;
+    private double[] amounts;
+    private long[] bonuses;
+    private long[] levels;
+    private Batch sequential;
+    private Batch parallel;
+
+    @Setup
+    public void setup() {
+        scope = new macky.scripting.Scope();
+        scope.let("weight", 3L);
+        script = CompiledScript.compile(SCORE);
+        amounts = new double[ROWS];
+        bonuses = new long[ROWS];
+        levels = new long[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            amounts[i] = i * 0.5;
+            bonuses[i] = i % 3;
+            levels[i] = i % 4;
+        }
+        sequential = new Batch.Builder()
+                .column("amount", amounts)
+                .column("bonus", bonuses)
+                .column("level", levels)
+                .splitThreshold(ROWS)
+                .build();
+        parallel = new Batch.Builder()
+                .column("amount", amounts)
+                .column("bonus", bonuses)
+                .column("level", levels)
+                .build();
+    }
+
+    @Benchmark
+    public double[] perRow() {
+        double[] scores = new double[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            macky.scripting.Scope row = scope.push();
+            row.let("amount", amounts[i]);
+            row.let("bonus", bonuses[i]);
+            row.let("level", levels[i]);
+            scores[i] = ScriptObjects.getDouble(script.evaluate(row));
+        }
+        return scores;
+    }
+
+    @Benchmark
+    public double[] batch() {
+        return script.evaluateDoubles(scope, sequential);
+    }
+
+    @Benchmark
+    public double[] batchParallel() {
+        return script.evaluateDoubles(scope, parallel);
+    }
+
+}
@@ -0,0 +1,71 @@
+package macky.scripting.bench;
+
+import macky.scripting.CompiledScript;
+import macky.scripting.ScriptObjects;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectionBenchmark {
+
+    private macky.scripting.Scope scope;
+    private CompiledScript collections;
+    private CompiledScript methods;
+    private Map<Object, Object> map;
+    private List<Object> list;
+
+    @Setup
+    public void setup() {
+        scope = new macky.scripting.Scope();
+        collections = CompiledScript.compile(Scripts.COLLECTIONS);
+        methods = CompiledScript.compile(Scripts.METHODS);
+        map = new HashMap<>();
+        list = new ArrayList<>();
+        for (long i = 0; i < 8; i++) {
+            list.add(i);
+        }
+        map.put("xs", list);
+    }
+
+    @Benchmark
+    public Object mapsAndLists() {
+        return collections.evaluate(scope);
+    }
+
+    @Benchmark
+    public Object methodCalls() {
+        return methods.evaluate(scope);
+    }
+
+    @Benchmark
+    public Object accessAndAssign() {
+        Object sum = 0L;
+        for (long i = 0; i < 1000; i++) {
+            Object xs = ScriptObjects.access(map, "xs", false);
+            Object value = ScriptObjects.access(xs, i % 8, false);
+            ScriptObjects.assign(xs, (i + 1) % 8, value);
+            sum = value;
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,100 @@
+package macky.scripting.bench;
+
+import macky.scripting.CompiledScript;
+import macky.scripting.Expression;
+import macky.scripting.Interpreter;
+import macky.scripting.compiler.CompiledExpression;
+import macky.scripting.compiler.ScriptCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluateBenchmark {
+
+    private macky.scripting.Scope scope;
+    private macky.scripting.Scope vmScope;
+    private Expression arithmeticExpression;
+    private CompiledScript arithmetic;
+    private CompiledExpression arithmeticBytecode;
+    private CompiledScript arithmeticVm;
+    private CompiledScript fib;
+    private CompiledExpression fibBytecode;
+    private CompiledScript fibVm;
+
+    @Setup
+    public void setup() {
+        scope = Scripts.scopeWithFib();
+        vmScope = Scripts.scopeWithFib(Interpreter.VM);
+        arithmeticExpression = CompiledScript.parse(Scripts.ARITHMETIC).get(0);
+        arithmetic = CompiledScript.compile(Scripts.ARITHMETIC);
+        arithmeticBytecode = ScriptCompiler.compile(arithmeticExpression);
+        arithmeticVm = CompiledScript.compile(Scripts.ARITHMETIC, Interpreter.VM);
+        fib = CompiledScript.compile("fib(15)");
+        fibBytecode = ScriptCompiler.compile(CompiledScript.parse("fib(15)").get(0));
+        fibVm = CompiledScript.compile("fib(15)", Interpreter.VM);
+    }
+
+    /**
+     * Scope.evaluate, as embedders that do not keep a CompiledScript use it; it reuses the tree it built on the first
+     * call.
+     */
+    @Benchmark
+    public Object arithmeticScopeEvaluate() {
+        return scope.evaluate(arithmeticExpression);
+    }
+
+    @Benchmark
+    public Object arithmeticCompiledScript() {
+        return arithmetic.evaluate(scope);
+    }
+
+    @Benchmark
+    public Object arithmeticBytecode() {
+        return arithmeticBytecode.evaluate(scope);
+    }
+
+    @Benchmark
+    public Object arithmeticVm() {
+        return arithmeticVm.evaluate(vmScope);
+    }
+
+    @Benchmark
+    public Object fibScript() {
+        return fib.evaluate(scope);
+    }
+
+    @Benchmark
+    public Object fibBytecode() {
+        return fibBytecode.evaluate(scope);
+    }
+
+    @Benchmark
+    public Object fibVm() {
+        return fibVm.evaluate(vmScope);
+    }
+
+    @Benchmark
+    public int fibJava() {
+        return fib(15);
+    }
+
+    private static int fib(int n) {
+        return n < 2 ? n : fib(n - 1) + fib(n - 2);
+    }
+
+}
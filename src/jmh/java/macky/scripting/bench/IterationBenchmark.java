@@ -0,0 +1,71 @@
+package macky.scripting.bench;
+
+import macky.scripting.CompiledScript;
+import macky.scripting.ScriptObjects;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IterationBenchmark {
+
+    private macky.scripting.Scope scope;
+    private CompiledScript countingFor;
+    private CompiledScript rangeFor;
+    private CompiledScript keysFor;
+    private CompiledScript mapFor;
+
+    @Setup
+    public void setup() {
+        scope = new macky.scripting.Scope();
+        scope.let("range", ScriptObjects.RANGE);
+        scope.let("keys", ScriptObjects.MAP_KEYS);
+        scope.let("len", ScriptObjects.LIST_LEN);
+        Map<Object, Object> map = new HashMap<>();
+        for (long i = 0; i < 10_000; i++) {
+            map.put("k" + i, i);
+        }
+        scope.let("m", map);
+        countingFor = CompiledScript.compile("{ let s = 0; for let i = 0; i < 10000; i += 1 { s += i }; s }");
+        rangeFor = CompiledScript.compile("{ let s = 0; for i in range(10000) { s += i }; s }");
+        keysFor = CompiledScript.compile("{ let s = 0; let ks = keys(m); for let i = 0; i < len(ks); i += 1 { s += m[ks[i]] }; s }");
+        mapFor = CompiledScript.compile("{ let s = 0; for k in m { s += m[k] }; s }");
+    }
+
+    @Benchmark
+    public Object counting() {
+        return countingFor.evaluate(scope);
+    }
+
+    @Benchmark
+    public Object range() {
+        return rangeFor.evaluate(scope);
+    }
+
+    @Benchmark
+    public Object mapKeysByIndex() {
+        return keysFor.evaluate(scope);
+    }
+
+    @Benchmark
+    public Object mapKeysForIn() {
+        return mapFor.evaluate(scope);
+    }
+
+}
@@ -0,0 +1,62 @@
+package macky.scripting.bench;
+
+import macky.scripting.CompiledScript;
+import macky.scripting.Range;
+import macky.scripting.ScriptObjects;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListFunctionsBenchmark {
+
+    private macky.scripting.Scope scope;
+    private CompiledScript loop;
+    private CompiledScript sequential;
+    private CompiledScript parallel;
+
+    @Setup
+    public void setup() {
+        scope = new macky.scripting.Scope();
+        scope.let("data", new Range(0, 100_000, 1));
+        scope.let("mapEach", ScriptObjects.LIST_MAP);
+        scope.let("reduce", ScriptObjects.LIST_REDUCE);
+        scope.let("parallelMapEach", ScriptObjects.PARALLEL_MAP);
+        scope.let("parallelReduce", ScriptObjects.PARALLEL_REDUCE);
+        loop = CompiledScript.compile("{ let s = 0; for x in data { s += (x * x) % 7 }; s }");
+        sequential = CompiledScript.compile(
+                "reduce(mapEach(data, function(x) { (x * x) % 7 }), function(a, b) { a + b })");
+        parallel = CompiledScript.compile(
+                "parallelReduce(parallelMapEach(data, function(x) { (x * x) % 7 }), function(a, b) { a + b })");
+    }
+
+    @Benchmark
+    public Object loop() {
+        return loop.evaluate(scope);
+    }
+
+    @Benchmark
+    public Object sequential() {
+        return sequential.evaluate(scope);
+    }
+
+    @Benchmark
+    public Object parallel() {
+        return parallel.evaluate(scope);
+    }
+
+}
@@ -0,0 +1,72 @@
+package macky.scripting.bench;
+
+import macky.scripting.AntlrVisitor;
+import macky.scripting.Expression;
+import macky.scripting.binary.ScriptBundle;
+import macky.scripting.gen.GrammarLexer;
+import macky.scripting.gen.GrammarParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    private List<GrammarParser.ExpressionContext> parsed;
+    private byte[] bundle;
+
+    @Setup
+    public void setup() {
+        parsed = parse().expression();
+        bundle = new ScriptBundle.Writer().addSource("script", Scripts.PROGRAM).toByteArray();
+    }
+
+    @Benchmark
+    public List<? extends Token> lex() {
+        return new GrammarLexer(CharStreams.fromString(Scripts.PROGRAM)).getAllTokens();
+    }
+
+    /**
+     * The parser's shared prediction cache takes ten or more seconds of parsing to fill, and runs differ by fork, so
+     * this needs a longer warmup and more forks than the rest to be worth comparing against the baseline.
+     */
+    @Benchmark
+    @Warmup(iterations = 20, time = 1)
+    @Fork(3)
+    public GrammarParser.Expression_listContext parse() {
+        GrammarLexer lexer = new GrammarLexer(CharStreams.fromString(Scripts.PROGRAM));
+        GrammarParser parser = new GrammarParser(new CommonTokenStream(lexer));
+        return parser.expression_list();
+    }
+
+    @Benchmark
+    public List<Expression> visit() {
+        return parsed.stream().map(AntlrVisitor.INSTANCE::visit).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Expression> decodeBundle() {
+        return ScriptBundle.read(ByteBuffer.wrap(bundle)).getExpressions("script");
+    }
+
+}
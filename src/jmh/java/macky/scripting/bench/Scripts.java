@@ -0,0 +1,39 @@
+package macky.scripting.bench;
+
+import macky.scripting.CompiledScript;
+import macky.scripting.Interpreter;
+import macky.scripting.Scope;
+
+final class Scripts {
+
+    static final String FIB = "let fib = function(n) { if n < 2 { n } else { fib(n - 1) + fib(n - 2) } }";
+
+    static final String ARITHMETIC = "{ let s = 0; for let i = 0; i < 1000; i += 1 { s += i * 2 - i % 7 }; s }";
+
+    static final String COLLECTIONS = String.join("\n",
+            "{ let m = map { \"xs\": list [0, 0, 0, 0, 0, 0, 0, 0], \"ys\": list [1, 2, 3, 4, 5, 6, 7, 8] };",
+            "for let i = 0; i < 1000; i += 1 { m.xs[i % 8] += m.ys[(i + 3) % 8]; m[\"last\"] = m.xs[i % 8] };",
+            "m.last }");
+
+    static final String METHODS = String.join("\n",
+            "{ let acc = map { \"total\": 0, \"add\": function(self, v) { self.total = self.total + v } };",
+            "for let i = 0; i < 1000; i += 1 { acc:add(i) };",
+            "acc.total }");
+
+    static final String PROGRAM = String.join(";\n", FIB, ARITHMETIC, COLLECTIONS, METHODS);
+
+    private Scripts() {
+
+    }
+
+    static Scope scopeWithFib() {
+        return scopeWithFib(Interpreter.TREE);
+    }
+
+    static Scope scopeWithFib(Interpreter interpreter) {
+        Scope scope = new Scope();
+        CompiledScript.compile(FIB, interpreter).evaluate(scope);
+        return scope;
+    }
+
+}
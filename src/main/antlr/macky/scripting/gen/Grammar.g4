@@ -36,6 +36,8 @@ expression:
     | 'function' '(' parametre_header ')' bracketed_expr # DeclFunc
     | 'if' expression bracketed_expr ('else' bracketed_expr)? # If
     | 'while' expression bracketed_expr # While
+    // 'in' is matched as an identifier so that it stays usable as a name everywhere else
+    | 'for' identifier identifier expression bracketed_expr # ForIn
     | 'for' expression ';' expression ';' expression bracketed_expr # For
     | 'return' expression? # Return
     | 'loop' bracketed_expr # Loop
@@ -2,19 +2,33 @@ package macky.scripting;
 
 import macky.scripting.gen.GrammarBaseVisitor;
 import macky.scripting.gen.GrammarParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
 
-import java.math.BigDecimal;
 import java.util.AbstractMap;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 public class AntlrVisitor extends GrammarBaseVisitor<Expression> {
 
-    private AntlrVisitor() {
+    private final LineTable lines;
 
+    /**
+     * A visitor that records the line each expression starts on in {@code lines}.
+     */
+    public AntlrVisitor(LineTable lines) {
+        this.lines = lines;
     }
 
-    public static final AntlrVisitor INSTANCE = new AntlrVisitor();
+    public static final AntlrVisitor INSTANCE = new AntlrVisitor(LineTable.NONE);
+
+    @Override
+    public Expression visit(ParseTree tree) {
+        Expression expression = super.visit(tree);
+        if (tree instanceof ParserRuleContext) lines.put(expression, ((ParserRuleContext) tree).getStart().getLine());
+        return expression;
+    }
 
     @Override
     public Expression visitParen(GrammarParser.ParenContext ctx) {
@@ -46,6 +60,15 @@ public class AntlrVisitor extends GrammarBaseVisitor<Expression> {
         return Expressions.whileExpr(visit(ctx.expression()), visit(ctx.bracketed_expr()));
     }
 
+    @Override
+    public Expression visitForIn(GrammarParser.ForInContext ctx) {
+        Token in = ctx.identifier(1).getStart();
+        if (!in.getText().equals("in")) {
+            throw new ScriptException("syntax error at " + in.getLine() + ":" + in.getCharPositionInLine() + ": expected 'in' but found '" + in.getText() + "'");
+        }
+        return Expressions.forIn(ctx.identifier(0).getText(), -1, visit(ctx.expression()), visit(ctx.bracketed_expr()));
+    }
+
     @Override
     public Expression visitFor(GrammarParser.ForContext ctx) {
         return Expressions.forExpr(visit(ctx.expression(0)), visit(ctx.expression(1)), visit(ctx.expression(2)), visit(ctx.bracketed_expr()));
@@ -88,7 +111,7 @@ public class AntlrVisitor extends GrammarBaseVisitor<Expression> {
 
     @Override
     public Expression visitNumberExpr(GrammarParser.NumberExprContext ctx) {
-        return Expressions.number(new BigDecimal(ctx.getText()));
+        return Expressions.number(Numbers.parse(ctx.getText()));
     }
 
     @Override
@@ -1,54 +1,36 @@
 package macky.scripting;
 
-import java.math.BigDecimal;
-
 public enum BasicOperator {
-    MUL("*", Op.from(ScriptFunction.Binary.from(BigDecimal::multiply))),
-    DIV("/", Op.from(ScriptFunction.Binary.from(BigDecimal::divide))),
-    MOD("%", Op.from(ScriptFunction.Binary.from(BigDecimal::remainder))),
-    ADD("+", Op.from(ScriptFunction.Binary.from(BigDecimal::add))),
-    SUB("-", Op.from(ScriptFunction.Binary.from(BigDecimal::subtract))),
-    LE("<=", null, Op.from(ScriptFunction.Binary.from((a, b) -> a.compareTo(b) <= 0))),
-    LT("<", null, Op.from(ScriptFunction.Binary.from((a, b) -> a.compareTo(b) < 0))),
-    GE(">=", null, Op.from(ScriptFunction.Binary.from((a, b) -> a.compareTo(b) >= 0))),
-    GT(">", null, Op.from(ScriptFunction.Binary.from((a, b) -> a.compareTo(b) > 0))),
-    EQUALS("==", null, Op.from(ScriptFunction.Binary.from(BigDecimal::equals))),
-    NOT_EQUALS("!=", null, Op.from(ScriptFunction.Binary.from((a, b) -> !a.equals(b)))),
-    AND("&&", "&=", (scope, a, b) -> {
-        if(ScriptObjects.asBoolean(a)) {
-            return scope.evaluate(b);
-        } else {
-            return a;
-        }
-    }),
-    OR("||", "|=", (scope, a, b) -> {
-        if(ScriptObjects.asBoolean(a)) {
-            return a;
-        } else {
-            return scope.evaluate(b);
-        }
-    });
-
-    public interface Op {
-        Object call(Scope scope, Object a, Expression b);
-
-        static Op from(ScriptFunction.Binary function) {
-            return (scope, a, b) -> function.call(a, scope.evaluate(b));
-        }
-    }
+    MUL("*", Numbers::multiply),
+    DIV("/", Numbers::divide),
+    MOD("%", Numbers::remainder),
+    ADD("+", ScriptObjects::add),
+    SUB("-", Numbers::subtract),
+    LE("<=", null, (a, b) -> Numbers.compare(a, b) <= 0),
+    LT("<", null, (a, b) -> Numbers.compare(a, b) < 0),
+    GE(">=", null, (a, b) -> Numbers.compare(a, b) >= 0),
+    GT(">", null, (a, b) -> Numbers.compare(a, b) > 0),
+    EQUALS("==", null, Numbers::equals),
+    NOT_EQUALS("!=", null, (a, b) -> !Numbers.equals(a, b)),
+    AND("&&", "&="),
+    OR("||", "|=");
 
     private final String name;
     private final String assignmentName;
-    private final Op op;
+    private final ScriptFunction.Binary binary;
 
-    BasicOperator(String name, Op op) {
-        this(name, null, op);
+    BasicOperator(String name, ScriptFunction.Binary binary) {
+        this(name, null, binary);
     }
 
-    BasicOperator(String name, String assignmentName, Op op) {
+    BasicOperator(String name, String assignmentName, ScriptFunction.Binary binary) {
         this.name = name;
         this.assignmentName = assignmentName;
-        this.op = op;
+        this.binary = binary;
+    }
+
+    BasicOperator(String name, String assignmentName) {
+        this(name, assignmentName, null);
     }
 
     public String getName() {
@@ -59,7 +41,11 @@ public enum BasicOperator {
         return assignmentName;
     }
 
-    public Op getOp() {
-        return op;
+    public boolean isShortCircuit() {
+        return binary == null;
+    }
+
+    public ScriptFunction.Binary getBinary() {
+        return binary;
     }
 }
@@ -0,0 +1,248 @@
+package macky.scripting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Input columns for evaluating one compiled script over many rows with {@link CompiledScript#evaluate(Scope, Batch)}.
+ * Each column binds a global of its name to the value of the current row.
+ * <p>
+ * Rows are evaluated in a scope pushed from the scope the batch is evaluated against, one per task rather than one per
+ * row. It reads the columns of the current row straight from their arrays instead of binding them in a map, boxing a
+ * value only when the script reads it, and drops globals that a row defines before the next row. The globals the script
+ * reads are resolved to columns once per task, and those that are not columns are looked up once per task rather than
+ * once per read. A batch larger than the {@link Builder#splitThreshold split threshold} is split across a
+ * {@link ForkJoinPool}, so rows may run concurrently: the script must not assign globals of that scope, only read them.
+ */
+public final class Batch {
+
+    private static final Object UNREAD = new Object();
+
+    private final String[] names;
+    private final Map<String, Integer> indices = new HashMap<>();
+    /** the array of each column: a double[], a long[] or an Object[] */
+    private final Object[] columns;
+    private final int size;
+    private final int splitThreshold;
+    private final ForkJoinPool pool;
+
+    private Batch(Builder builder) {
+        this.names = builder.names.toArray(new String[0]);
+        for (int i = 0; i < names.length; i++) {
+            indices.put(names[i], i);
+        }
+        this.columns = builder.columns.toArray();
+        this.size = builder.size;
+        this.splitThreshold = builder.splitThreshold;
+        this.pool = builder.pool != null ? builder.pool : ForkJoinPool.commonPool();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    Object[] evaluate(CompiledScript script, Scope scope) {
+        Object[] results = new Object[size];
+        Rows rows = new Rows(script, scope, results, 0, size);
+        if (size > splitThreshold && pool.getParallelism() > 1) pool.invoke(rows);
+        else rows.compute();
+        return results;
+    }
+
+    boolean hasColumn(String name) {
+        return indices.containsKey(name);
+    }
+
+    Row push(Scope scope, Globals globals) {
+        return new Row(scope, globals);
+    }
+
+    private int column(String name) {
+        Integer column = indices.get(name);
+        return column != null ? column : -1;
+    }
+
+    private Object value(int column, int row) {
+        Object values = columns[column];
+        if (values instanceof double[]) return ((double[]) values)[row];
+        if (values instanceof long[]) return ((long[]) values)[row];
+        return ((Object[]) values)[row];
+    }
+
+    /**
+     * The scope of one task, whose globals are the columns of the current row.
+     */
+    final class Row extends Scope {
+
+        /** the values of the current row that have been read or assigned, or {@link #UNREAD} */
+        private final Object[] values = new Object[names.length];
+        private int row;
+        private final Globals globals;
+        /** the column of each global of the script, or -1 */
+        private final int[] resolved;
+        /** the values of the other globals of the script, read from the parent scope while the row binds none itself */
+        private final Object[] invariants;
+
+        private Row(Scope parent, Globals globals) {
+            super(parent);
+            this.globals = globals;
+            this.resolved = new int[globals.size()];
+            for (int i = 0; i < resolved.length; i++) {
+                resolved[i] = column(globals.getName(i));
+            }
+            this.invariants = new Object[resolved.length];
+            Arrays.fill(invariants, UNREAD);
+        }
+
+        void bind(int row) {
+            if (size() != 0) clear();
+            this.row = row;
+            Arrays.fill(values, UNREAD);
+        }
+
+        private Object read(int column) {
+            Object value = values[column];
+            if (value == UNREAD) value = values[column] = value(column, row);
+            return value;
+        }
+
+        @Override
+        Object get(Globals globals, int index, String name) {
+            if (globals != this.globals) return get(name);
+            int column = resolved[index];
+            if (column >= 0) return read(column);
+            if (size() != 0) return super.get(name);
+            Object value = invariants[index];
+            if (value == UNREAD) value = invariants[index] = super.get(name);
+            return value;
+        }
+
+        @Override
+        public Object get(String name) {
+            int column = column(name);
+            return column >= 0 ? read(column) : super.get(name);
+        }
+
+        @Override
+        public boolean has(String name) {
+            return column(name) >= 0 || super.has(name);
+        }
+
+        @Override
+        public void set(String name, Object value) {
+            int column = column(name);
+            if (column >= 0) {
+                values[column] = value;
+            } else {
+                Arrays.fill(invariants, UNREAD);
+                super.set(name, value);
+            }
+        }
+
+        @Override
+        public void let(String name, Object value) {
+            int column = column(name);
+            if (column >= 0) values[column] = value;
+            else super.let(name, value);
+        }
+
+    }
+
+    @SuppressWarnings("serial")
+    private final class Rows extends RecursiveAction {
+
+        private final CompiledScript script;
+        private final Scope scope;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+
+        Rows(CompiledScript script, Scope scope, Object[] results, int from, int to) {
+            this.script = script;
+            this.scope = scope;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > splitThreshold && getPool() != null) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Rows(script, scope, results, from, middle), new Rows(script, scope, results, middle, to));
+            } else {
+                script.evaluate(scope, Batch.this, from, to, results);
+            }
+        }
+
+    }
+
+    public static final class Builder {
+
+        private final List<String> names = new ArrayList<>();
+        private final List<Object> columns = new ArrayList<>();
+        private int size = -1;
+        private int splitThreshold = 4096;
+        private ForkJoinPool pool;
+
+        public Builder column(String name, double[] values) {
+            return column(name, values.length, (Object) values);
+        }
+
+        public Builder column(String name, long[] values) {
+            return column(name, values.length, (Object) values);
+        }
+
+        public Builder column(String name, String[] values) {
+            return column(name, values.length, (Object) values);
+        }
+
+        /**
+         * A column of script values, e.g. maps or lists, or a mix of types.
+         */
+        public Builder column(String name, Object[] values) {
+            return column(name, values.length, (Object) values);
+        }
+
+        private Builder column(String name, int length, Object column) {
+            if (names.contains(name)) throw new IllegalArgumentException("duplicate column " + name);
+            if (size >= 0 && length != size) {
+                throw new IllegalArgumentException("column " + name + " has " + length + " rows, expected " + size);
+            }
+            size = length;
+            names.add(name);
+            columns.add(column);
+            return this;
+        }
+
+        /**
+         * The number of rows up to which one task evaluates a range of rows on its own instead of splitting it.
+         * Defaults to 4096.
+         */
+        public Builder splitThreshold(int splitThreshold) {
+            if (splitThreshold < 1) throw new IllegalArgumentException("splitThreshold must be positive");
+            this.splitThreshold = splitThreshold;
+            return this;
+        }
+
+        /**
+         * The pool large batches are split across. Defaults to the common pool.
+         */
+        public Builder pool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        public Batch build() {
+            if (size < 0) throw new IllegalArgumentException("a batch needs at least one column");
+            return new Batch(this);
+        }
+
+    }
+
+}
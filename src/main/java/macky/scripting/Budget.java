@@ -0,0 +1,203 @@
+package macky.scripting;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What is left of the {@link ExecutionLimits} of one evaluation. Loops poll it once per iteration and script functions
+ * once per call; a poll is a decrement and a compare, and only every {@link #CHECK_INTERVAL} polls does it count the
+ * steps taken and read the clock.
+ * <p>
+ * A budget belongs to one evaluation and is not thread-safe. While an evaluation runs, its budget is the
+ * {@link #current} one of its thread, and the functions it calls are charged to it, whichever evaluation created them.
+ * Tasks that call script functions on other threads during the evaluation each poll a {@link #fork} of it.
+ */
+public final class Budget {
+
+    static final int CHECK_INTERVAL = 256;
+
+    private static final ThreadLocal<Budget> CURRENT = new ThreadLocal<>();
+
+    private final ExecutionLimits limits;
+    private long deadline;
+    private final Budget parent;
+    private long steps;
+    private int interval;
+    private int countdown;
+    private long allocations;
+    /** whether this budget was made for a call the host made outside any evaluation */
+    private boolean call;
+    /** the thread this is the {@link #current} budget of, or null */
+    private Thread owner;
+
+    public Budget(ExecutionLimits limits) {
+        this.limits = limits;
+        long timeout = limits.getTimeoutNanos();
+        this.deadline = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeout;
+        this.parent = null;
+        this.interval = nextInterval();
+        this.countdown = interval;
+    }
+
+    /**
+     * Starts this budget over for another evaluation with the same limits, as if it had just been created. A batch
+     * restarts one budget per row instead of creating one. It must not have forks that are still polling.
+     */
+    void restart() {
+        long timeout = limits.getTimeoutNanos();
+        deadline = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeout;
+        steps = 0;
+        allocations = 0;
+        interval = nextInterval();
+        countdown = interval;
+    }
+
+    private Budget(Budget parent) {
+        this.limits = parent.limits;
+        this.deadline = parent.deadline;
+        this.parent = parent;
+        synchronized (parent) {
+            this.interval = parent.nextInterval();
+        }
+        this.countdown = interval;
+    }
+
+    /**
+     * The budget of the evaluation running on this thread, or null.
+     */
+    public static Budget current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes this the {@link #current} budget of this thread and returns the one it replaces, to be given back to
+     * {@link #exit} when the evaluation is done.
+     */
+    public Budget enter() {
+        Thread thread = Thread.currentThread();
+        Budget previous = CURRENT.get();
+        if (previous != null) previous.owner = null;
+        CURRENT.set(this);
+        owner = thread;
+        return previous;
+    }
+
+    public void exit(Budget previous) {
+        owner = null;
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+            previous.owner = Thread.currentThread();
+        }
+    }
+
+    /**
+     * The budget to charge a call of a function that was created under this one. A fork is charged for its own task.
+     * Otherwise the call is charged to the evaluation running on this thread, or, if the host calls the function
+     * outside any evaluation, to a new budget under {@code limits} that the calls it makes in turn share; see
+     * {@link #isCall}.
+     */
+    public Budget forCall(ExecutionLimits limits) {
+        if (parent != null || owner == Thread.currentThread()) return this;
+        Budget current = CURRENT.get();
+        if (current != null) return current;
+        Budget budget = new Budget(limits);
+        budget.call = true;
+        return budget;
+    }
+
+    /**
+     * Whether this budget was made by {@link #forCall} for a call outside any evaluation, so the function body has to
+     * {@link #enter} it for the calls it makes to share it.
+     */
+    public boolean isCall() {
+        return call;
+    }
+
+    /**
+     * A budget for a task of this evaluation running on another thread. It polls on its own and charges the steps and
+     * allocations it counts to this budget under its lock, a check interval at a time; {@link #join} charges the
+     * rest once the task is done. This budget must not be polled while its forks are.
+     */
+    public Budget fork() {
+        return new Budget(parent != null ? parent : this);
+    }
+
+    /**
+     * Charges the polls of a {@link #fork} since its last check to the budget it was forked from.
+     */
+    public void join() {
+        if (parent == null) return;
+        synchronized (parent) {
+            parent.charge(interval - countdown);
+            interval = parent.nextInterval();
+        }
+        countdown = interval;
+    }
+
+    private int nextInterval() {
+        return (int) Math.min(CHECK_INTERVAL, limits.getMaxSteps() - steps);
+    }
+
+    public void poll() {
+        if (--countdown < 0) checkpoint();
+    }
+
+    private void checkpoint() {
+        if (parent != null) {
+            synchronized (parent) {
+                parent.charge(interval + 1);
+                interval = parent.nextInterval();
+            }
+        } else {
+            charge(interval + 1);
+            interval = nextInterval();
+        }
+        countdown = interval;
+    }
+
+    private void charge(int polls) {
+        steps += polls;
+        if (steps > limits.getMaxSteps()) {
+            throw new ScriptLimitException(ScriptLimitException.Limit.STEPS, "step limit of " + limits.getMaxSteps() + " exceeded");
+        }
+        if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+            throw new ScriptLimitException(ScriptLimitException.Limit.TIME, "time limit of " + limits.getTimeoutNanos() / 1_000_000 + "ms exceeded");
+        }
+    }
+
+    /**
+     * Counts a list, map or function the script creates, with the given number of elements.
+     */
+    public void allocate(int size) {
+        if (parent != null) {
+            synchronized (parent) {
+                parent.allocate(size);
+            }
+            return;
+        }
+        if (++allocations > limits.getMaxAllocations()) {
+            throw new ScriptLimitException(ScriptLimitException.Limit.ALLOCATIONS, "allocation limit of " + limits.getMaxAllocations() + " exceeded");
+        }
+        checkSize(size);
+    }
+
+    /**
+     * Checks the size of a collection the script just grew.
+     */
+    public void checkSize(Object collection) {
+        if (limits.getMaxCollectionSize() == Integer.MAX_VALUE) return;
+        if (collection instanceof Map) checkSize(((Map<?, ?>) collection).size());
+        else if (collection instanceof List) checkSize(((List<?>) collection).size());
+        else if (collection instanceof ScriptingMap) checkSize(((ScriptingMap) collection).mapSize());
+        else if (collection instanceof ScriptingList) checkSize(((ScriptingList) collection).listSize());
+    }
+
+    private void checkSize(int size) {
+        if (size > limits.getMaxCollectionSize()) {
+            throw new ScriptLimitException(ScriptLimitException.Limit.COLLECTION_SIZE, "collection size limit of " + limits.getMaxCollectionSize() + " exceeded");
+        }
+    }
+
+}
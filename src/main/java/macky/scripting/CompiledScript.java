@@ -0,0 +1,299 @@
+package macky.scripting;
+
+import macky.scripting.compiler.CompiledExpression;
+import macky.scripting.compiler.ScriptCompiler;
+import macky.scripting.gen.GrammarLexer;
+import macky.scripting.gen.GrammarParser;
+import macky.scripting.jfr.CompileEvent;
+import macky.scripting.jfr.EvaluationEvent;
+import macky.scripting.jfr.ScriptEvents;
+import macky.scripting.node.NodeBuilder;
+import macky.scripting.node.RootNode;
+import macky.scripting.vm.Program;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A parsed and resolved script, ready to be evaluated any number of times against any scope. A compiled script is
+ * thread-safe: one instance may be evaluated by any number of threads at once, as long as each evaluation has its own
+ * {@link Scope}. Share host functions and configuration between those scopes through a {@link Prelude}.
+ */
+public final class CompiledScript {
+
+    private static final BaseErrorListener THROWING_LISTENER = new BaseErrorListener() {
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+            throw new ScriptException("syntax error at " + line + ":" + charPositionInLine + ": " + msg);
+        }
+    };
+
+    private final String source;
+    private final List<Expression> expressions;
+    private final Map<String, Object> frozen;
+    private final Interpreter interpreter;
+    private final RootNode[] roots;
+    private final Program[] programs;
+    private final CompiledExpression[] units;
+    private final Globals globals = new Globals();
+
+    private CompiledScript(String source, List<Expression> expressions, LineTable lines, Map<String, Object> frozen, Interpreter interpreter) {
+        Set<String> used = new HashSet<>();
+        this.source = source;
+        this.expressions = expressions;
+        this.interpreter = interpreter;
+        List<Expression> resolved = expressions.stream()
+                .map(expression -> Resolver.resolve(expression, lines))
+                .collect(Collectors.toList());
+        List<Expression> optimized = Optimizer.optimize(resolved, frozen, used, lines);
+        if (interpreter == Interpreter.VM) {
+            this.roots = null;
+            this.programs = optimized.stream().map(expression -> Program.compile(expression, lines, globals)).toArray(Program[]::new);
+            this.units = null;
+        } else if (interpreter == Interpreter.BYTECODE) {
+            this.roots = null;
+            this.programs = null;
+            this.units = optimized.stream().map(expression -> ScriptCompiler.compileResolved(expression, lines, globals)).toArray(CompiledExpression[]::new);
+        } else {
+            this.roots = optimized.stream().map(expression -> NodeBuilder.build(expression, lines, globals)).toArray(RootNode[]::new);
+            this.programs = null;
+            this.units = null;
+        }
+        Map<String, Object> specialized = new HashMap<>(frozen);
+        specialized.keySet().retainAll(used);
+        this.frozen = Collections.unmodifiableMap(specialized);
+    }
+
+    public static CompiledScript compile(String source) {
+        return compile(source, Collections.emptyMap(), Interpreter.TREE);
+    }
+
+    public static CompiledScript compile(String source, Interpreter interpreter) {
+        return compile(source, Collections.emptyMap(), interpreter);
+    }
+
+    /**
+     * Compiles a script specialized for the {@link Scope#freeze frozen} and {@link Prelude prelude} globals of a scope.
+     * The script may only be evaluated against scopes where the names it folded are still frozen to the same values.
+     */
+    public static CompiledScript compile(String source, Scope scope) {
+        return compile(source, scope.getFrozen(), Interpreter.TREE);
+    }
+
+    public static CompiledScript compile(String source, Scope scope, Interpreter interpreter) {
+        return compile(source, scope.getFrozen(), interpreter);
+    }
+
+    private static CompiledScript compile(String source, Map<String, Object> frozen, Interpreter interpreter) {
+        CompileEvent event = new CompileEvent();
+        event.begin();
+        LineTable lines = new LineTable();
+        CompiledScript script;
+        try {
+            script = new CompiledScript(source, parse(source, lines), lines, frozen, interpreter);
+        } catch (ScriptException e) {
+            ScriptEvents.error(e);
+            throw e;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = ScriptEvents.describe(source);
+            event.sourceLength = source.length();
+            event.commit();
+        }
+        return script;
+    }
+
+    /**
+     * Wraps expressions that were parsed elsewhere, e.g. loaded from a precompiled bundle. Such a script has no
+     * source.
+     */
+    public static CompiledScript of(List<Expression> expressions) {
+        return new CompiledScript(null, List.copyOf(expressions), LineTable.NONE, Collections.emptyMap(), Interpreter.TREE);
+    }
+
+    public static List<Expression> parse(String source) {
+        return parse(source, LineTable.NONE);
+    }
+
+    /**
+     * Parses a script, recording the line each expression starts on.
+     */
+    public static List<Expression> parse(String source, LineTable lines) {
+        GrammarLexer lexer = new GrammarLexer(CharStreams.fromString(source));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(THROWING_LISTENER);
+        GrammarParser parser = new GrammarParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.addErrorListener(THROWING_LISTENER);
+        return parser.expression_list().expression().stream().map(new AntlrVisitor(lines)::visit).collect(Collectors.toUnmodifiableList());
+    }
+
+    public Object evaluate(Scope scope) {
+        if (!frozen.isEmpty()) checkFrozen(scope);
+        Budget budget = new Budget(scope.getLimits());
+        Profiler profiler = scope.getProfiler();
+        Profiler.Stack profile = profiler == null ? null : profiler.begin();
+        EvaluationEvent event = new EvaluationEvent();
+        event.begin();
+        boolean failed = true;
+        try {
+            Object result = execute(scope, budget, profile);
+            failed = false;
+            return result;
+        } catch (ScriptException e) {
+            ScriptEvents.error(e);
+            throw e;
+        } finally {
+            if (profile != null) profiler.end(profile);
+            event.end();
+            if (event.shouldCommit()) {
+                event.source = ScriptEvents.describe(source);
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Evaluates the script once per row of a batch and returns the results in row order. Work that does not depend on
+     * the row, such as checking frozen globals, pushing a scope and recording events, is done once per batch or per
+     * task rather than per row; each row's {@link Budget} starts over, so limits still apply per row. If a row fails,
+     * its exception is thrown. A batch may not have a column for a global the script was specialized for.
+     */
+    public Object[] evaluate(Scope scope, Batch batch) {
+        if (!frozen.isEmpty()) {
+            checkFrozen(scope);
+            for (String name : frozen.keySet()) {
+                if (batch.hasColumn(name)) throw new ScriptException("script was specialized for a different value of " + name);
+            }
+        }
+        return batch.evaluate(this, scope);
+    }
+
+    /**
+     * Like {@link #evaluate(Scope, Batch)}, for scripts that return a number for every row.
+     */
+    public double[] evaluateDoubles(Scope scope, Batch batch) {
+        Object[] results = evaluate(scope, batch);
+        double[] doubles = new double[results.length];
+        for (int i = 0; i < results.length; i++) {
+            doubles[i] = ScriptObjects.getDouble(results[i]);
+        }
+        return doubles;
+    }
+
+    /**
+     * Evaluates rows {@code from} to {@code to} of a batch on the current thread.
+     */
+    void evaluate(Scope scope, Batch batch, int from, int to, Object[] results) {
+        Batch.Row row = batch.push(scope, globals);
+        Budget budget = new Budget(row.getLimits());
+        Profiler profiler = row.getProfiler();
+        Profiler.Stack profile = profiler == null ? null : profiler.begin();
+        EvaluationEvent event = new EvaluationEvent();
+        event.begin();
+        boolean failed = true;
+        try {
+            for (int i = from; i < to; i++) {
+                row.bind(i);
+                if (i > from) budget.restart();
+                results[i] = execute(row, budget, profile);
+            }
+            failed = false;
+        } catch (ScriptException e) {
+            ScriptEvents.error(e);
+            throw e;
+        } finally {
+            if (profile != null) profiler.end(profile);
+            event.end();
+            if (event.shouldCommit()) {
+                event.source = ScriptEvents.describe(source);
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Evaluates the script and keeps it up to date as the host changes globals with {@link Scope#update}, recomputing
+     * only the top-level expressions that depend on what changed.
+     */
+    public Reactive evaluateReactive(Scope scope) {
+        if (!frozen.isEmpty()) checkFrozen(scope);
+        return new Reactive(this, scope);
+    }
+
+    private Object execute(Scope scope, Budget budget, Profiler.Stack profile) {
+        Object result = null;
+        for (int i = 0; i < size(); i++) {
+            result = execute(i, scope, budget, profile);
+        }
+        return ScriptObjects.flatten(result);
+    }
+
+    /**
+     * The number of top-level expressions.
+     */
+    int size() {
+        if (programs != null) return programs.length;
+        return units != null ? units.length : roots.length;
+    }
+
+    Object execute(int index, Scope scope, Budget budget, Profiler.Stack profile) {
+        if (programs != null) return programs[index].execute(scope, budget, profile);
+        if (units != null) {
+            Budget previous = budget.enter();
+            try {
+                return units[index].execute(scope, budget, profile);
+            } finally {
+                budget.exit(previous);
+            }
+        }
+        return roots[index].execute(scope, budget, profile);
+    }
+
+    private void checkFrozen(Scope scope) {
+        for (Map.Entry<String, Object> entry : frozen.entrySet()) {
+            if (!scope.isFrozen(entry.getKey()) || !sameValue(entry.getValue(), scope.get(entry.getKey()))) {
+                throw new ScriptException("script was specialized for a different value of " + entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Whether a frozen value is the one the script was specialized for. Null, booleans, strings and numbers were
+     * folded into literals, so an equal value will do; maps, lists and functions are still read through, so they have
+     * to be the same instance.
+     */
+    private static boolean sameValue(Object specialized, Object value) {
+        if (specialized == null || specialized instanceof Boolean || specialized instanceof String || Numbers.isNumber(specialized)) {
+            return Objects.equals(specialized, value);
+        }
+        return specialized == value;
+    }
+
+    public Interpreter getInterpreter() {
+        return interpreter;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public List<Expression> getExpressions() {
+        return expressions;
+    }
+
+}
@@ -0,0 +1,19 @@
+package macky.scripting;
+
+/**
+ * Signals {@code break} and {@code return} to the enclosing loop or function. There is exactly one instance of each
+ * and neither records a stack trace, so unwinding costs no allocation. A returned value travels in the function's
+ * {@link Frame} rather than in the exception.
+ */
+public final class ControlFlowException extends ScriptException {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final ControlFlowException BREAK = new ControlFlowException("break");
+    public static final ControlFlowException RETURN = new ControlFlowException("return");
+
+    private ControlFlowException(String message) {
+        super(message, false);
+    }
+
+}
@@ -0,0 +1,85 @@
+package macky.scripting;
+
+import java.time.Duration;
+
+/**
+ * Bounds on a single evaluation. An evaluation that exceeds one is aborted with a {@link ScriptLimitException}. Set
+ * limits on the scope an evaluation runs in with {@link Scope#setLimits}.
+ */
+public final class ExecutionLimits {
+
+    public static final ExecutionLimits NONE = new Builder().build();
+
+    private final long maxSteps;
+    private final long timeoutNanos;
+    private final int maxCollectionSize;
+    private final long maxAllocations;
+
+    private ExecutionLimits(Builder builder) {
+        this.maxSteps = builder.maxSteps;
+        this.timeoutNanos = builder.timeoutNanos;
+        this.maxCollectionSize = builder.maxCollectionSize;
+        this.maxAllocations = builder.maxAllocations;
+    }
+
+    public long getMaxSteps() {
+        return maxSteps;
+    }
+
+    public long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    public int getMaxCollectionSize() {
+        return maxCollectionSize;
+    }
+
+    public long getMaxAllocations() {
+        return maxAllocations;
+    }
+
+    public static final class Builder {
+        private long maxSteps = Long.MAX_VALUE;
+        private long timeoutNanos = Long.MAX_VALUE;
+        private int maxCollectionSize = Integer.MAX_VALUE;
+        private long maxAllocations = Long.MAX_VALUE;
+
+        /**
+         * The most loop iterations and script function calls, counted together.
+         */
+        public Builder maxSteps(long maxSteps) {
+            this.maxSteps = maxSteps;
+            return this;
+        }
+
+        /**
+         * The longest an evaluation may run. The clock is read every few hundred steps, so a script may overrun the
+         * timeout by that much, or by however long a single host call takes.
+         */
+        public Builder timeout(Duration timeout) {
+            this.timeoutNanos = timeout.toNanos();
+            return this;
+        }
+
+        /**
+         * The most elements of a list or entries of a map that a script creates or grows by assignment.
+         */
+        public Builder maxCollectionSize(int maxCollectionSize) {
+            this.maxCollectionSize = maxCollectionSize;
+            return this;
+        }
+
+        /**
+         * The most lists, maps and functions a script creates.
+         */
+        public Builder maxAllocations(long maxAllocations) {
+            this.maxAllocations = maxAllocations;
+            return this;
+        }
+
+        public ExecutionLimits build() {
+            return new ExecutionLimits(this);
+        }
+    }
+
+}
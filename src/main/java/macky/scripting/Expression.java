@@ -2,7 +2,6 @@ package macky.scripting;
 
 import org.derive4j.Data;
 
-import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -38,7 +37,7 @@ public abstract class Expression {
 
         X string(String stringExpr);
 
-        X number(BigDecimal numberExpr);
+        X number(Number numberExpr);
 
         X bracketed(List<Expression> bracketedExpr);
 
@@ -51,6 +50,20 @@ public abstract class Expression {
         X unaryNegate(Expression expression);
 
         X operator(Expression left, Operator operator, Expression right);
+
+        X localVar(String localName, int localDepth, int localSlot);
+
+        X declLocal(String declLocalName, int declLocalSlot, Expression declLocalValue);
+
+        X block(List<String> blockNames, List<Expression> blockExprs);
+
+        X closure(List<String> closureNames, int closureParamCount, Expression closureBody);
+
+        /**
+         * {@code for name in iterable body}, binding the name in the scope that encloses the loop: a global if
+         * {@code forInSlot} is -1, as before resolution, and a local of the enclosing block otherwise.
+         */
+        X forIn(String forInName, int forInSlot, Expression forInIterable, Expression forInBody);
     }
 
     public String toCode() {
@@ -68,7 +81,7 @@ public abstract class Expression {
                 .listInit(exprs -> "list [" + exprs.stream().map(Expression::toCode).collect(Collectors.joining(", ")) + "]")
                 .nopExpr_(";")
                 .string(str -> "\"" + str + "\"")
-                .number(BigDecimal::toString)
+                .number(Numbers::toCode)
                 .bracketed(exprs -> "{" + exprs.stream().map(Expression::toCode).collect(Collectors.joining(" ")) + "}")
                 .accessVar(name -> name)
                 .callFunc((callFunc, params) -> callFunc.toCode() + "(" + params.stream().map(Expression::toCode).collect(Collectors.joining(", ")) + ")")
@@ -78,6 +91,11 @@ public abstract class Expression {
                         .basic(BasicOperator::getName)
                         .assignment(basicOperator -> basicOperator.map(BasicOperator::getAssignmentName).orElse("=")) + " " + right.toCode() + ")"
                 )
+                .localVar((localName, localDepth, localSlot) -> localName)
+                .declLocal((declLocalName, declLocalSlot, declLocalValue) -> "let " + declLocalName + " = " + declLocalValue.toCode())
+                .block((blockNames, blockExprs) -> "{" + blockExprs.stream().map(Expression::toCode).collect(Collectors.joining(" ")) + "}")
+                .closure((closureNames, closureParamCount, closureBody) -> "function(" + String.join(", ", closureNames.subList(0, closureParamCount)) + ") " + closureBody.toCode())
+                .forIn((forInName, forInSlot, forInIterable, forInBody) -> "for " + forInName + " in " + forInIterable.toCode() + " " + forInBody.toCode())
                 ;
     }
 
@@ -0,0 +1,174 @@
+package macky.scripting;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public final class Frame {
+
+    private static final Object UNSET = new Object();
+
+    private final Scope scope;
+    private final Frame parent;
+    private final List<String> names;
+    private final Object[] slots;
+    private final Frame function;
+    private final Budget budget;
+    private final Profiler.Stack profile;
+    private Object returnValue;
+    private ScriptFunction tailFunction;
+    private Object[] tailArguments;
+
+    public Frame(Scope scope) {
+        this(scope, new Budget(scope.getLimits()));
+    }
+
+    public Frame(Scope scope, Budget budget) {
+        this(scope, budget, null);
+    }
+
+    /**
+     * A frame whose evaluation is charged to {@code budget} and, unless {@code profile} is null, profiled into it.
+     */
+    public Frame(Scope scope, Budget budget, Profiler.Stack profile) {
+        this(scope, null, Collections.emptyList(), true, budget, profile);
+    }
+
+    private Frame(Scope scope, Frame parent, List<String> names, boolean function, Budget budget, Profiler.Stack profile) {
+        this.scope = scope;
+        this.parent = parent;
+        this.budget = budget;
+        this.profile = profile;
+        this.names = names;
+        this.slots = new Object[names.size()];
+        this.function = function ? this : parent.function;
+        Arrays.fill(slots, UNSET);
+    }
+
+    private Frame(Frame frame, Budget budget) {
+        this.scope = frame.scope;
+        this.parent = frame.parent;
+        this.budget = budget;
+        this.profile = null;
+        this.names = frame.names;
+        this.slots = frame.slots;
+        this.function = frame.function == frame ? this : frame.function;
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    public Frame push(List<String> names) {
+        return new Frame(scope, this, names, false, budget, profile);
+    }
+
+    /**
+     * The frame of a call of a function that closes over this frame, charged to the evaluation making the call rather
+     * than the one that created the function, see {@link Budget#forCall}.
+     */
+    public Frame pushFunction(List<String> names) {
+        return new Frame(scope, this, names, true, budget.forCall(scope.getLimits()), profile);
+    }
+
+    /**
+     * This frame for a task running on another thread: the same variables, charged to a {@link Budget#fork fork} of
+     * the budget of the evaluation forking it and not profiled.
+     */
+    public Frame fork() {
+        return new Frame(this, budget.forCall(scope.getLimits()).fork());
+    }
+
+    public Budget getBudget() {
+        return budget;
+    }
+
+    public Profiler.Stack getProfile() {
+        return profile;
+    }
+
+    public void setReturnValue(Object value) {
+        function.returnValue = value;
+    }
+
+    public Object getReturnValue() {
+        return function.returnValue;
+    }
+
+    /**
+     * Leaves a call for the function invocation to make once this frame's function has unwound.
+     */
+    public void setTailCall(ScriptFunction function, Object[] arguments) {
+        this.function.tailFunction = function;
+        this.function.tailArguments = arguments;
+    }
+
+    public ScriptFunction getTailFunction() {
+        return function.tailFunction;
+    }
+
+    public Object[] getTailArguments() {
+        return function.tailArguments;
+    }
+
+    private Frame up(int depth) {
+        Frame frame = this;
+        for (int i = 0; i < depth; i++) {
+            frame = frame.parent;
+        }
+        return frame;
+    }
+
+    private Frame find(String name) {
+        for (Frame frame = this; frame != null; frame = frame.parent) {
+            int slot = frame.names.lastIndexOf(name);
+            if (slot >= 0 && frame.slots[slot] != UNSET) return frame;
+        }
+        return null;
+    }
+
+    public void let(int slot, Object value) {
+        slots[slot] = value;
+    }
+
+    public Object get(int depth, int slot, String name) {
+        Frame frame = up(depth);
+        Object value = frame.slots[slot];
+        if (value != UNSET) return value;
+        Frame owner = frame.parent == null ? null : frame.parent.find(name);
+        if (owner != null) return owner.slots[owner.names.lastIndexOf(name)];
+        return scope.get(name);
+    }
+
+    public void set(int depth, int slot, String name, Object value) {
+        Frame frame = up(depth);
+        if (frame.slots[slot] != UNSET) {
+            frame.slots[slot] = value;
+            return;
+        }
+        Frame owner = frame.parent == null ? null : frame.parent.find(name);
+        if (owner != null) owner.slots[owner.names.lastIndexOf(name)] = value;
+        else if (scope.has(name)) scope.set(name, value);
+        else frame.slots[slot] = value;
+    }
+
+    public Object getGlobal(String name) {
+        return scope.get(name);
+    }
+
+    /**
+     * Reads a global that {@code globals} numbers {@code index}.
+     */
+    public Object getGlobal(Globals globals, int index, String name) {
+        return scope.get(globals, index, name);
+    }
+
+    public void setGlobal(String name, Object value) {
+        scope.set(name, value);
+    }
+
+    public void letGlobal(String name, Object value) {
+        scope.let(name, value);
+    }
+
+}
@@ -0,0 +1,39 @@
+package macky.scripting;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The globals a compiled script reads, numbered in the order they are first read. Each read site keeps the table and
+ * the number of its name, so a scope that resolves the table ahead of time, like a row of a {@link Batch}, finds a
+ * global without looking up its name. A table is filled while a script is built and only read afterwards.
+ */
+public final class Globals {
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    /**
+     * The number of a global, numbering it if it is new.
+     */
+    public int indexOf(String name) {
+        Integer index = indices.get(name);
+        if (index == null) {
+            index = names.size();
+            names.add(name);
+            indices.put(name, index);
+        }
+        return index;
+    }
+
+    public String getName(int index) {
+        return names.get(index);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+}
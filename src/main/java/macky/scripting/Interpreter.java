@@ -0,0 +1,22 @@
+package macky.scripting;
+
+/**
+ * The engine a {@link CompiledScript} runs on. All give the same results, errors and budget charges; they differ in
+ * speed and in what they report.
+ */
+public enum Interpreter {
+    /**
+     * A tree of nodes that specialize themselves as they run. Profiles it records include lines.
+     */
+    TREE,
+    /**
+     * Register-based bytecode with quickened instructions, see {@link macky.scripting.vm.Program}. Profiles it
+     * records only include functions, and it ignores {@link Scope#TRACE}.
+     */
+    VM,
+    /**
+     * JVM classes generated per expression, see {@link macky.scripting.compiler.ScriptCompiler}. Expressions it cannot
+     * compile run as a {@link #TREE}. Profiles it records only include functions, and it ignores {@link Scope#TRACE}.
+     */
+    BYTECODE
+}
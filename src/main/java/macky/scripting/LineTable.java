@@ -0,0 +1,49 @@
+package macky.scripting;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The source line of each expression parsed from a script. Expressions are compared by value and the {@link Resolver}
+ * and {@link Optimizer} rebuild them, so lines are kept by identity next to the tree instead of in it, and each pass
+ * hands the line of an expression on to the expression it turns it into.
+ */
+public final class LineTable {
+
+    /**
+     * A table that records nothing, for trees without source, e.g. ones loaded from a bundle.
+     */
+    public static final LineTable NONE = new LineTable(false);
+
+    private final Map<Expression, Integer> lines = new IdentityHashMap<>();
+    private final boolean enabled;
+
+    private LineTable(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public LineTable() {
+        this(true);
+    }
+
+    public void put(Expression expression, int line) {
+        if (enabled) lines.putIfAbsent(expression, line);
+    }
+
+    /**
+     * The line of an expression, or 0 if it is not known.
+     */
+    public int get(Expression expression) {
+        return enabled ? lines.getOrDefault(expression, 0) : 0;
+    }
+
+    /**
+     * Gives {@code to} the line of {@code from}, unless it already has one.
+     */
+    public void copy(Expression from, Expression to) {
+        if (!enabled || from == to) return;
+        Integer line = lines.get(from);
+        if (line != null) lines.putIfAbsent(to, line);
+    }
+
+}
@@ -0,0 +1,293 @@
+package macky.scripting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The higher-order list functions of {@link ScriptObjects}. They call their function argument with
+ * {@link ScriptFunction#call1} and {@link ScriptFunction#call2}, so a script function binds each element without a
+ * parameter list being built for it.
+ * <p>
+ * The parallel variants split a list longer than {@link #SPLIT_THRESHOLD} into tasks on the {@link ForkJoinPool} of
+ * the calling thread, or on the common pool, if the pool has more than one thread and the function can be
+ * {@link ScriptFunction#fork forked}; otherwise they run sequentially. The results are the same either way and in the
+ * same order, and if the function fails for several elements, the error reported is that of the first. A parallel
+ * reduce combines the results of its tasks with the function, so the function must be associative. Sorting and
+ * grouping only compute the keys in parallel.
+ */
+final class ListFunctions {
+
+    static final int SPLIT_THRESHOLD = 2048;
+
+    /**
+     * The initial value of a reduce that starts from the first element.
+     */
+    static final Object NONE = new Object();
+
+    private ListFunctions() {
+
+    }
+
+    static PackedList map(Object list, ScriptFunction function, boolean parallel) {
+        return PackedList.of(apply(ScriptObjects.getElements(list), function, parallel));
+    }
+
+    static PackedList filter(Object list, ScriptFunction predicate, boolean parallel) {
+        List<?> elements = ScriptObjects.getElements(list);
+        Object[] tests = apply(elements, predicate, parallel);
+        Object[] kept = new Object[tests.length];
+        int size = 0;
+        int i = 0;
+        for (Object element : elements) {
+            if (ScriptObjects.asBoolean(tests[i++])) kept[size++] = element;
+        }
+        return PackedList.of(Arrays.copyOf(kept, size));
+    }
+
+    /**
+     * Folds the elements from the left, starting from the first element if {@code initial} is {@link #NONE}.
+     */
+    static Object reduce(Object list, ScriptFunction function, Object initial, boolean parallel) {
+        List<?> elements = randomAccess(ScriptObjects.getElements(list));
+        if (elements.isEmpty()) {
+            if (initial == NONE) throw new ScriptException("cannot reduce an empty list");
+            return initial;
+        }
+        ScriptFunction forked = parallel ? fork(elements.size(), function) : null;
+        if (forked == null) {
+            Object result = initial == NONE ? elements.get(0) : function.call2(initial, elements.get(0));
+            for (int i = 1; i < elements.size(); i++) {
+                result = function.call2(result, elements.get(i));
+            }
+            return result;
+        }
+        Failure failure = new Failure();
+        Object result = pool().invoke(new Reduce(elements, forked, failure, 0, elements.size()));
+        failure.check();
+        return initial == NONE ? result : function.call2(initial, result);
+    }
+
+    /**
+     * The elements in the order of the keys the function gives them, numbers or strings. The sort is stable.
+     */
+    static PackedList sortBy(Object list, ScriptFunction key, boolean parallel) {
+        List<?> elements = randomAccess(ScriptObjects.getElements(list));
+        Object[] keys = apply(elements, key, parallel);
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compareKeys(keys[a], keys[b]));
+        Object[] sorted = new Object[order.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = elements.get(order[i]);
+        }
+        return PackedList.of(sorted);
+    }
+
+    /**
+     * A map from each key the function gives to the list of elements with that key, in the order the keys first
+     * appear.
+     */
+    static ShapedMap groupBy(Object list, ScriptFunction key, boolean parallel) {
+        List<?> elements = ScriptObjects.getElements(list);
+        Object[] keys = apply(elements, key, parallel);
+        Map<Object, List<Object>> groups = new LinkedHashMap<>();
+        int i = 0;
+        for (Object element : elements) {
+            groups.computeIfAbsent(ScriptObjects.flatten(keys[i++]), k -> new ArrayList<>()).add(element);
+        }
+        ShapedMap result = new ShapedMap();
+        groups.forEach((k, group) -> result.put(k, PackedList.of(group.toArray())));
+        return result;
+    }
+
+    private static int compareKeys(Object a, Object b) {
+        if (Numbers.isNumber(a) && Numbers.isNumber(b)) return Numbers.compare(a, b);
+        if (Rope.isString(a) && Rope.isString(b)) return a.toString().compareTo(b.toString());
+        throw new ScriptException("cannot compare " + a + " and " + b);
+    }
+
+    private static List<?> randomAccess(List<?> elements) {
+        return elements instanceof RandomAccess ? elements : new ArrayList<>(elements);
+    }
+
+    /**
+     * The results of calling the function with each element.
+     */
+    private static Object[] apply(List<?> elements, ScriptFunction function, boolean parallel) {
+        Object[] results = new Object[elements.size()];
+        ScriptFunction forked = parallel ? fork(results.length, function) : null;
+        if (forked == null) {
+            int i = 0;
+            for (Object element : elements) {
+                results[i++] = function.call1(element);
+            }
+        } else {
+            Failure failure = new Failure();
+            pool().invoke(new Apply(randomAccess(elements), forked, results, failure, 0, results.length));
+            failure.check();
+        }
+        return results;
+    }
+
+    /**
+     * A fork of the function for the tasks splitting a list of the given size across the {@link #pool} to fork in
+     * turn, or null to run sequentially. It is made on the calling thread, so the tasks are charged to the evaluation
+     * running there.
+     */
+    private static ScriptFunction fork(int size, ScriptFunction function) {
+        if (size <= SPLIT_THRESHOLD || pool().getParallelism() <= 1) return null;
+        ScriptFunction fork = function.fork();
+        if (fork != null) fork.join();
+        return fork;
+    }
+
+    private static ForkJoinPool pool() {
+        return ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * The error of the task that failed at the lowest index, so that the error does not depend on scheduling.
+     */
+    private static final class Failure {
+
+        private int index = Integer.MAX_VALUE;
+        private RuntimeException error;
+
+        synchronized void set(int index, RuntimeException error) {
+            if (index < this.index) {
+                this.index = index;
+                this.error = error;
+            }
+        }
+
+        /**
+         * Whether a task starting at {@code index} can skip its work because an earlier one failed.
+         */
+        synchronized boolean before(int index) {
+            return this.index < index;
+        }
+
+        synchronized void check() {
+            if (error != null) throw error;
+        }
+
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Apply extends RecursiveAction {
+
+        private final List<?> elements;
+        private final ScriptFunction function;
+        private final Object[] results;
+        private final Failure failure;
+        private final int from;
+        private final int to;
+
+        Apply(List<?> elements, ScriptFunction function, Object[] results, Failure failure, int from, int to) {
+            this.elements = elements;
+            this.function = function;
+            this.results = results;
+            this.failure = failure;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Apply(elements, function, results, failure, from, middle),
+                        new Apply(elements, function, results, failure, middle, to));
+                return;
+            }
+            if (failure.before(from)) return;
+            ScriptFunction task = function.fork();
+            int i = from;
+            try {
+                try {
+                    for (; i < to; i++) {
+                        results[i] = task.call1(elements.get(i));
+                    }
+                } finally {
+                    task.join();
+                }
+            } catch (RuntimeException e) {
+                failure.set(i, e);
+            }
+        }
+
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Reduce extends RecursiveTask<Object> {
+
+        private final List<?> elements;
+        private final ScriptFunction function;
+        private final Failure failure;
+        private final int from;
+        private final int to;
+
+        Reduce(List<?> elements, ScriptFunction function, Failure failure, int from, int to) {
+            this.elements = elements;
+            this.function = function;
+            this.failure = failure;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Object compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                Reduce left = new Reduce(elements, function, failure, from, middle);
+                left.fork();
+                Object right = new Reduce(elements, function, failure, middle, to).compute();
+                return combine(left.join(), right, middle);
+            }
+            if (failure.before(from)) return null;
+            ScriptFunction task = function.fork();
+            int i = from + 1;
+            try {
+                try {
+                    Object result = elements.get(from);
+                    for (; i < to; i++) {
+                        result = task.call2(result, elements.get(i));
+                    }
+                    return result;
+                } finally {
+                    task.join();
+                }
+            } catch (RuntimeException e) {
+                failure.set(i, e);
+                return null;
+            }
+        }
+
+        private Object combine(Object left, Object right, int middle) {
+            if (failure.before(to)) return null;
+            ScriptFunction task = function.fork();
+            try {
+                try {
+                    return task.call2(left, right);
+                } finally {
+                    task.join();
+                }
+            } catch (RuntimeException e) {
+                failure.set(middle, e);
+                return null;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,149 @@
+package macky.scripting;
+
+import java.math.BigDecimal;
+
+/**
+ * Arithmetic over the numbers scripts see: {@link Long} for integers, {@link Double} for {@code D} literals and
+ * {@link BigDecimal} for decimals and for integers that do not fit in a long. Long results that overflow are promoted
+ * to BigDecimal, and BigDecimal results with no fractional digits that fit in a long are demoted again, so a value
+ * has one representation no matter how it was computed.
+ */
+public final class Numbers {
+
+    private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    private Numbers() {
+
+    }
+
+    public static boolean isNumber(Object object) {
+        return object instanceof Long || object instanceof Double || object instanceof BigDecimal;
+    }
+
+    public static Number parse(String literal) {
+        if (literal.endsWith("L")) {
+            return valueOf(new BigDecimal(literal.substring(0, literal.length() - 1)));
+        } else if (literal.endsWith("D")) {
+            return Double.parseDouble(literal.substring(0, literal.length() - 1));
+        } else {
+            return valueOf(new BigDecimal(literal));
+        }
+    }
+
+    public static String toCode(Number number) {
+        if (number instanceof Double) return BigDecimal.valueOf((Double) number).toPlainString() + "D";
+        else return number.toString();
+    }
+
+    public static Number valueOf(BigDecimal value) {
+        if (value.scale() == 0 && value.compareTo(LONG_MIN) >= 0 && value.compareTo(LONG_MAX) <= 0) {
+            return value.longValue();
+        }
+        return value;
+    }
+
+    private static Object check(Object object) {
+        if (isNumber(object)) return object;
+        else throw new ScriptException("expected a number, got " + object);
+    }
+
+    public static BigDecimal toBigDecimal(Object object) {
+        if (object instanceof BigDecimal) return (BigDecimal) object;
+        else if (object instanceof Long) return BigDecimal.valueOf((Long) object);
+        else if (object instanceof Double) {
+            double value = (Double) object;
+            if (Double.isNaN(value) || Double.isInfinite(value)) throw new ScriptException("expected a finite number, got " + object);
+            return BigDecimal.valueOf(value);
+        }
+        else throw new ScriptException("expected a number, got " + object);
+    }
+
+    private static boolean isDouble(Object a, Object b) {
+        return check(a) instanceof Double | check(b) instanceof Double;
+    }
+
+    private static double toDouble(Object object) {
+        return ((Number) object).doubleValue();
+    }
+
+    public static Object add(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            long x = (Long) a, y = (Long) b, r = x + y;
+            if (((x ^ r) & (y ^ r)) >= 0) return r;
+        }
+        if (isDouble(a, b)) return toDouble(a) + toDouble(b);
+        return valueOf(toBigDecimal(a).add(toBigDecimal(b)));
+    }
+
+    public static Object subtract(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            long x = (Long) a, y = (Long) b, r = x - y;
+            if (((x ^ y) & (x ^ r)) >= 0) return r;
+        }
+        if (isDouble(a, b)) return toDouble(a) - toDouble(b);
+        return valueOf(toBigDecimal(a).subtract(toBigDecimal(b)));
+    }
+
+    public static Object multiply(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            long x = (Long) a, y = (Long) b, r = x * y;
+            if (Math.multiplyHigh(x, y) == (r >> 63)) return r;
+        }
+        if (isDouble(a, b)) return toDouble(a) * toDouble(b);
+        return valueOf(toBigDecimal(a).multiply(toBigDecimal(b)));
+    }
+
+    public static Object divide(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            long x = (Long) a, y = (Long) b;
+            if (y != 0 && x % y == 0 && !(x == Long.MIN_VALUE && y == -1)) return x / y;
+        }
+        if (isDouble(a, b)) return toDouble(a) / toDouble(b);
+        return valueOf(toBigDecimal(a).divide(toBigDecimal(b)));
+    }
+
+    public static Object remainder(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            long y = (Long) b;
+            if (y != 0) return (Long) a % y;
+        }
+        if (isDouble(a, b)) return toDouble(a) % toDouble(b);
+        return valueOf(toBigDecimal(a).remainder(toBigDecimal(b)));
+    }
+
+    public static Object negate(Object a) {
+        if (a instanceof Long && (Long) a != Long.MIN_VALUE) return -(Long) a;
+        else if (a instanceof Double) return -(Double) a;
+        else if (isNumber(a)) return valueOf(toBigDecimal(a).negate());
+        else throw new ScriptException("cannot negate a non-number");
+    }
+
+    public static int compare(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return Long.compare((Long) a, (Long) b);
+        if (isDouble(a, b)) return Double.compare(toDouble(a), toDouble(b));
+        return toBigDecimal(a).compareTo(toBigDecimal(b));
+    }
+
+    /**
+     * Number equality as scripts see it. Like {@link BigDecimal#equals}, {@code 2.0 == 2} is false unless one side is
+     * a double.
+     */
+    public static boolean equals(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return ((Long) a).longValue() == (Long) b;
+        if (isDouble(a, b)) return toDouble(a) == toDouble(b);
+        return toBigDecimal(a).equals(toBigDecimal(b));
+    }
+
+    public static boolean isZero(Object a) {
+        if (a instanceof Long) return (Long) a == 0;
+        else if (a instanceof Double) return (Double) a == 0;
+        else return a.equals(BigDecimal.ZERO);
+    }
+
+    public static int intValue(Object a) {
+        if (a instanceof Long) return ((Long) a).intValue();
+        else return toBigDecimal(a).intValue();
+    }
+
+}
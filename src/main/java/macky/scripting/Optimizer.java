@@ -0,0 +1,331 @@
+package macky.scripting;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Simplifies a {@link Resolver resolved} expression before it is built into nodes: folds operators, negations and
+ * accesses whose operands are constants, replaces {@code if} and {@code while} with a constant condition by the branch
+ * that runs, and drops {@code ;} no-ops that do not produce a block's value.
+ * <p>
+ * Given the {@link Scope#freeze frozen} bindings of a scope, reads of those globals are treated as constants too, so
+ * {@code config.port + 1} folds to a number. A frozen name that the script itself assigns to, declares, assigns into or
+ * calls a method on is left alone. An operation that would fail, such as {@code 1 / 0}, is not folded, so the error
+ * still happens when the script runs.
+ */
+public final class Optimizer implements Expression.Visitor<Expression> {
+
+    private static final Object UNKNOWN = new Object();
+
+    private final Map<String, Object> frozen;
+    private final Set<String> written;
+    private final Set<String> used;
+    private final LineTable lines;
+
+    private Optimizer(Map<String, Object> frozen, Set<String> written, Set<String> used, LineTable lines) {
+        this.frozen = frozen;
+        this.written = written;
+        this.used = used;
+        this.lines = lines;
+    }
+
+    public static Expression optimize(Expression expression) {
+        return optimize(expression, Collections.emptyMap());
+    }
+
+    public static Expression optimize(Expression expression, Map<String, Object> frozen) {
+        return optimize(expression, frozen, new HashSet<>());
+    }
+
+    /**
+     * Like {@link #optimize(Expression, Map)}, and adds the frozen names whose values the result depends on to
+     * {@code used}.
+     */
+    public static Expression optimize(Expression expression, Map<String, Object> frozen, Set<String> used) {
+        return optimize(expression, frozen, used, LineTable.NONE);
+    }
+
+    /**
+     * Like {@link #optimize(Expression, Map, Set)}, giving each optimized expression the line of the expression it
+     * replaces.
+     */
+    public static Expression optimize(Expression expression, Map<String, Object> frozen, Set<String> used, LineTable lines) {
+        return optimize(List.of(expression), frozen, used, lines).get(0);
+    }
+
+    /**
+     * Optimizes the top-level expressions of a script as one unit: a frozen name that any of them writes is not folded
+     * in any of them.
+     */
+    public static List<Expression> optimize(List<Expression> expressions, Map<String, Object> frozen, Set<String> used, LineTable lines) {
+        Set<String> written = new HashSet<>();
+        Optimizer folding = new Optimizer(Collections.emptyMap(), written, used, lines);
+        List<Expression> folded = expressions.stream().map(folding::optimizeIn).collect(Collectors.toList());
+        if (frozen.isEmpty()) return folded;
+        Map<String, Object> constants = new HashMap<>(frozen);
+        constants.keySet().removeAll(written);
+        Optimizer specializing = new Optimizer(constants, new HashSet<>(), used, lines);
+        return folded.stream().map(specializing::optimizeIn).collect(Collectors.toList());
+    }
+
+    private Expression optimizeIn(Expression expression) {
+        Expression optimized = expression.visit(this);
+        lines.copy(expression, optimized);
+        return optimized;
+    }
+
+    private List<Expression> optimizeIn(List<Expression> expressions) {
+        return expressions.stream().map(this::optimizeIn).collect(Collectors.toList());
+    }
+
+    /**
+     * Optimizes the expressions of a block. Only the last one gives the block its value, so no-ops before it can go.
+     */
+    private List<Expression> optimizeBlock(List<Expression> expressions) {
+        List<Expression> result = new ArrayList<>();
+        for (int i = 0; i < expressions.size(); i++) {
+            Expression expression = optimizeIn(expressions.get(i));
+            if (i == expressions.size() - 1 || !isNop(expression)) result.add(expression);
+        }
+        return result;
+    }
+
+    private static boolean isNop(Expression expression) {
+        return Expressions.caseOf(expression).nopExpr_(true).otherwise_(false);
+    }
+
+    private static Optional<String> rootName(Expression expression) {
+        return Expressions.caseOf(expression)
+                .accessVar(Optional::of)
+                .access((keyOwner, key, method) -> rootName(keyOwner))
+                .otherwise(Optional::empty);
+    }
+
+    /**
+     * The value of a literal, a frozen global or an access into one, or {@link #UNKNOWN}.
+     */
+    private Object constant(Expression expression) {
+        return Expressions.caseOf(expression)
+                .boolLiteral(value -> (Object) value)
+                .string(value -> (Object) value)
+                .number(value -> (Object) value)
+                .accessVar(this::frozenValue)
+                .access((keyOwner, key, method) -> method ? UNKNOWN : access(constant(keyOwner), constant(key)))
+                .otherwise(() -> UNKNOWN);
+    }
+
+    private Object frozenValue(String name) {
+        if (!frozen.containsKey(name)) return UNKNOWN;
+        used.add(name);
+        return frozen.get(name);
+    }
+
+    private static Object access(Object owner, Object key) {
+        if (owner == UNKNOWN || key == UNKNOWN) return UNKNOWN;
+        try {
+            return ScriptObjects.access(owner, key, false);
+        } catch (RuntimeException e) {
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * The literal for a value, if the value has one. Maps, lists and functions stay references.
+     */
+    private static Optional<Expression> literal(Object value) {
+        if (value == null) return Optional.of(Expressions.nopExpr());
+        else if (value instanceof Boolean) return Optional.of(Expressions.boolLiteral((Boolean) value));
+        else if (value instanceof String) return Optional.of(Expressions.string((String) value));
+        else if (Numbers.isNumber(value)) return Optional.of(Expressions.number((Number) value));
+        else return Optional.empty();
+    }
+
+    private Expression fold(Expression expression) {
+        Object value = constant(expression);
+        if (value == UNKNOWN) return expression;
+        return literal(value).orElse(expression);
+    }
+
+    @Override
+    public Expression boolLiteral(boolean boolLiteral) {
+        return Expressions.boolLiteral(boolLiteral);
+    }
+
+    @Override
+    public Expression breakStatement() {
+        return Expressions.breakStatement();
+    }
+
+    @Override
+    public Expression declFunc(List<String> funcParamNames, Expression funcBody) {
+        return Expressions.declFunc(funcParamNames, optimizeIn(funcBody));
+    }
+
+    @Override
+    public Expression ifExpr(Expression ifCondition, Expression ifBody, Optional<Expression> ifElse) {
+        Expression condition = optimizeIn(ifCondition);
+        Object value = constant(condition);
+        if (value != UNKNOWN) {
+            if (ScriptObjects.asBoolean(value)) return optimizeIn(ifBody);
+            else return ifElse.map(this::optimizeIn).orElseGet(Expressions::nopExpr);
+        }
+        return Expressions.ifExpr(condition, optimizeIn(ifBody), ifElse.map(this::optimizeIn));
+    }
+
+    @Override
+    public Expression whileExpr(Expression whileCondition, Expression whileBody) {
+        Expression condition = optimizeIn(whileCondition);
+        Object value = constant(condition);
+        if (value != UNKNOWN && !ScriptObjects.asBoolean(value)) return Expressions.nopExpr();
+        return Expressions.whileExpr(condition, optimizeIn(whileBody));
+    }
+
+    @Override
+    public Expression forExpr(Expression forInit, Expression forCondition, Expression forUpdate, Expression forBody) {
+        return Expressions.forExpr(optimizeIn(forInit), optimizeIn(forCondition), optimizeIn(forUpdate), optimizeIn(forBody));
+    }
+
+    @Override
+    public Expression returnExpr(Optional<Expression> returnExpr) {
+        return Expressions.returnExpr(returnExpr.map(this::optimizeIn));
+    }
+
+    @Override
+    public Expression loop(Expression loopExpr) {
+        return Expressions.loop(optimizeIn(loopExpr));
+    }
+
+    @Override
+    public Expression declVar(String declName, Expression declValue) {
+        written.add(declName);
+        return Expressions.declVar(declName, optimizeIn(declValue));
+    }
+
+    @Override
+    public Expression mapInit(List<Map.Entry<Expression, Expression>> mapInitExpr) {
+        return Expressions.mapInit(mapInitExpr.stream()
+                .map(entry -> new AbstractMap.SimpleEntry<>(optimizeIn(entry.getKey()), optimizeIn(entry.getValue())))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Expression listInit(List<Expression> listInitExpr) {
+        return Expressions.listInit(optimizeIn(listInitExpr));
+    }
+
+    @Override
+    public Expression nopExpr() {
+        return Expressions.nopExpr();
+    }
+
+    @Override
+    public Expression string(String stringExpr) {
+        return Expressions.string(stringExpr);
+    }
+
+    @Override
+    public Expression number(Number numberExpr) {
+        return Expressions.number(numberExpr);
+    }
+
+    @Override
+    public Expression bracketed(List<Expression> bracketedExpr) {
+        List<Expression> exprs = optimizeBlock(bracketedExpr);
+        // without declarations a bracketed list has no frame of its own
+        if (exprs.size() == 1) return exprs.get(0);
+        return Expressions.bracketed(exprs);
+    }
+
+    @Override
+    public Expression accessVar(String name) {
+        return fold(Expressions.accessVar(name));
+    }
+
+    @Override
+    public Expression callFunc(Expression callFunc, List<Expression> params) {
+        return Expressions.callFunc(optimizeIn(callFunc), optimizeIn(params));
+    }
+
+    @Override
+    public Expression access(Expression keyOwner, Expression key, boolean method) {
+        if (method) rootName(keyOwner).ifPresent(written::add);
+        return fold(Expressions.access(optimizeIn(keyOwner), optimizeIn(key), method));
+    }
+
+    @Override
+    public Expression unaryNegate(Expression expression) {
+        Expression operand = optimizeIn(expression);
+        Object value = constant(operand);
+        if (value != UNKNOWN && Numbers.isNumber(value)) return Expressions.number((Number) Numbers.negate(value));
+        return Expressions.unaryNegate(operand);
+    }
+
+    @Override
+    public Expression operator(Expression left, Operator operator, Expression right) {
+        return Operators.caseOf(operator)
+                .basic(basicOperator -> operation(basicOperator, optimizeIn(left), optimizeIn(right)))
+                .assignment(basicOperator -> {
+                    rootName(left).ifPresent(written::add);
+                    return Expressions.operator(assignmentTarget(left), operator, optimizeIn(right));
+                });
+    }
+
+    /**
+     * Optimizes the owner and key of an assignment target but never folds the target itself.
+     */
+    private Expression assignmentTarget(Expression left) {
+        return Expressions.caseOf(left)
+                .access((keyOwner, key, method) -> Expressions.access(optimizeIn(keyOwner), optimizeIn(key), method))
+                .otherwise(() -> left);
+    }
+
+    private Expression operation(BasicOperator operator, Expression left, Expression right) {
+        Expression unfolded = Expressions.operator(left, Operators.basic(operator), right);
+        Object a = constant(left);
+        if (a == UNKNOWN) return unfolded;
+        if (operator == BasicOperator.AND) return ScriptObjects.asBoolean(a) ? right : left;
+        if (operator == BasicOperator.OR) return ScriptObjects.asBoolean(a) ? left : right;
+        Object b = constant(right);
+        if (b == UNKNOWN) return unfolded;
+        try {
+            return literal(operator.getBinary().call(a, b)).orElse(unfolded);
+        } catch (RuntimeException e) {
+            return unfolded;
+        }
+    }
+
+    @Override
+    public Expression localVar(String localName, int localDepth, int localSlot) {
+        return Expressions.localVar(localName, localDepth, localSlot);
+    }
+
+    @Override
+    public Expression declLocal(String declLocalName, int declLocalSlot, Expression declLocalValue) {
+        return Expressions.declLocal(declLocalName, declLocalSlot, optimizeIn(declLocalValue));
+    }
+
+    @Override
+    public Expression block(List<String> blockNames, List<Expression> blockExprs) {
+        return Expressions.block(blockNames, optimizeBlock(blockExprs));
+    }
+
+    @Override
+    public Expression closure(List<String> closureNames, int closureParamCount, Expression closureBody) {
+        return Expressions.closure(closureNames, closureParamCount, optimizeIn(closureBody));
+    }
+
+    @Override
+    public Expression forIn(String forInName, int forInSlot, Expression forInIterable, Expression forInBody) {
+        if (forInSlot < 0) written.add(forInName);
+        return Expressions.forIn(forInName, forInSlot, optimizeIn(forInIterable), optimizeIn(forInBody));
+    }
+
+}
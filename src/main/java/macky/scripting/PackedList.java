@@ -0,0 +1,357 @@
+package macky.scripting;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A list that stores its elements unboxed while they are all longs or all doubles, in 8 bytes each, and switches to an
+ * array of objects for good as soon as anything else is stored in it. Lists created by {@code list [...]} are packed
+ * lists. The bulk operations ({@link #sum}, {@link #dot}, ...) run over the primitive array when there is one and fall
+ * back to {@link Numbers} arithmetic otherwise, so they give the same results either way.
+ */
+public final class PackedList extends AbstractList<Object> implements ScriptingList, RandomAccess {
+
+    private static final int LONGS = 0;
+    private static final int DOUBLES = 1;
+    private static final int OBJECTS = 2;
+
+    private int kind;
+    private long[] longs;
+    private double[] doubles;
+    private Object[] objects;
+    private int size;
+
+    private PackedList(int kind, long[] longs, double[] doubles, Object[] objects, int size) {
+        this.kind = kind;
+        this.longs = longs;
+        this.doubles = doubles;
+        this.objects = objects;
+        this.size = size;
+    }
+
+    public PackedList() {
+        this(LONGS, new long[0], null, null, 0);
+    }
+
+    public static PackedList ofLongs(long... values) {
+        return new PackedList(LONGS, values, null, null, values.length);
+    }
+
+    public static PackedList ofDoubles(double... values) {
+        return new PackedList(DOUBLES, null, values, null, values.length);
+    }
+
+    /**
+     * A list of the given values, packed if they allow it. The array is used as is if they do not.
+     */
+    public static PackedList of(Object[] values) {
+        int kind = kindOf(values);
+        if (kind == LONGS) {
+            long[] longs = new long[values.length];
+            for (int i = 0; i < longs.length; i++) {
+                longs[i] = (Long) values[i];
+            }
+            return ofLongs(longs);
+        } else if (kind == DOUBLES) {
+            double[] doubles = new double[values.length];
+            for (int i = 0; i < doubles.length; i++) {
+                doubles[i] = (Double) values[i];
+            }
+            return ofDoubles(doubles);
+        }
+        return new PackedList(OBJECTS, null, null, values, values.length);
+    }
+
+    public static PackedList copyOf(List<?> values) {
+        if (values instanceof PackedList) return ((PackedList) values).slice(0, values.size());
+        return of(values.toArray());
+    }
+
+    private static int kindOf(Object[] values) {
+        if (values.length == 0) return LONGS;
+        int kind = values[0] instanceof Long ? LONGS : values[0] instanceof Double ? DOUBLES : OBJECTS;
+        for (int i = 1; i < values.length && kind != OBJECTS; i++) {
+            if (kind != (values[i] instanceof Long ? LONGS : values[i] instanceof Double ? DOUBLES : OBJECTS)) kind = OBJECTS;
+        }
+        return kind;
+    }
+
+    public boolean isPacked() {
+        return kind != OBJECTS;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index + " out of bounds for length " + size);
+        if (kind == LONGS) return longs[index];
+        else if (kind == DOUBLES) return doubles[index];
+        else return objects[index];
+    }
+
+    @Override
+    public Object set(int index, Object value) {
+        Object old = get(index);
+        if (kind == LONGS && value instanceof Long) {
+            longs[index] = (Long) value;
+        } else if (kind == DOUBLES && value instanceof Double) {
+            doubles[index] = (Double) value;
+        } else {
+            if (size == 1 && adopt(value)) return old;
+            generalize();
+            objects[index] = value;
+        }
+        return old;
+    }
+
+    @Override
+    public void add(int index, Object value) {
+        if (index < 0 || index > size) throw new IndexOutOfBoundsException("index " + index + " out of bounds for length " + size);
+        if (size == 0) adopt(value);
+        if (kind == LONGS && value instanceof Long) {
+            if (size == longs.length) longs = Arrays.copyOf(longs, grow());
+            System.arraycopy(longs, index, longs, index + 1, size - index);
+            longs[index] = (Long) value;
+        } else if (kind == DOUBLES && value instanceof Double) {
+            if (size == doubles.length) doubles = Arrays.copyOf(doubles, grow());
+            System.arraycopy(doubles, index, doubles, index + 1, size - index);
+            doubles[index] = (Double) value;
+        } else {
+            generalize();
+            if (size == objects.length) objects = Arrays.copyOf(objects, grow());
+            System.arraycopy(objects, index, objects, index + 1, size - index);
+            objects[index] = value;
+        }
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Object remove(int index) {
+        Object old = get(index);
+        if (kind == LONGS) System.arraycopy(longs, index + 1, longs, index, size - index - 1);
+        else if (kind == DOUBLES) System.arraycopy(doubles, index + 1, doubles, index, size - index - 1);
+        else {
+            System.arraycopy(objects, index + 1, objects, index, size - index - 1);
+            objects[size - 1] = null;
+        }
+        size--;
+        modCount++;
+        return old;
+    }
+
+    private int grow() {
+        return Math.max(8, size + (size >> 1));
+    }
+
+    /**
+     * Takes on the representation of the only element a list of at most one element is about to hold, so that a list
+     * that starts out empty is packed for whatever kind of number is put in it.
+     */
+    private boolean adopt(Object value) {
+        if (value instanceof Long && kind != LONGS) {
+            longs = new long[Math.max(size, 1)];
+            if (size == 1) longs[0] = (Long) value;
+            kind = LONGS;
+            doubles = null;
+            objects = null;
+            return true;
+        } else if (value instanceof Double && kind != DOUBLES) {
+            doubles = new double[Math.max(size, 1)];
+            if (size == 1) doubles[0] = (Double) value;
+            kind = DOUBLES;
+            longs = null;
+            objects = null;
+            return true;
+        }
+        return false;
+    }
+
+    private void generalize() {
+        if (kind == OBJECTS) return;
+        Object[] objects = new Object[Math.max(size, kind == LONGS ? longs.length : doubles.length)];
+        for (int i = 0; i < size; i++) {
+            objects[i] = get(i);
+        }
+        this.objects = objects;
+        this.longs = null;
+        this.doubles = null;
+        this.kind = OBJECTS;
+    }
+
+    @Override
+    public int listSize() {
+        return size;
+    }
+
+    @Override
+    public Object listGet(int index) {
+        return get(index);
+    }
+
+    @Override
+    public void listSet(int index, Object value) {
+        set(index, value);
+    }
+
+    @Override
+    public void listAdd(int index, Object value) {
+        add(index, value);
+    }
+
+    public static Object sum(List<?> list) {
+        if (list.isEmpty()) return 0L;
+        if (list instanceof PackedList) {
+            PackedList packed = (PackedList) list;
+            if (packed.kind == LONGS) {
+                long sum = 0;
+                for (int i = 0; i < packed.size; i++) {
+                    long x = packed.longs[i], r = sum + x;
+                    if (((sum ^ r) & (x ^ r)) < 0) return sumFrom(list, i, sum);
+                    sum = r;
+                }
+                return sum;
+            } else if (packed.kind == DOUBLES) {
+                double sum = 0;
+                for (int i = 0; i < packed.size; i++) {
+                    sum += packed.doubles[i];
+                }
+                return sum;
+            }
+        }
+        return sumFrom(list, 0, 0L);
+    }
+
+    private static Object sumFrom(List<?> list, int start, Object sum) {
+        for (int i = start; i < list.size(); i++) {
+            sum = Numbers.add(sum, list.get(i));
+        }
+        return sum;
+    }
+
+    public static Object min(List<?> list) {
+        return extreme(list, -1);
+    }
+
+    public static Object max(List<?> list) {
+        return extreme(list, 1);
+    }
+
+    private static Object extreme(List<?> list, int sign) {
+        if (list.isEmpty()) throw new ScriptException("expected a non-empty list");
+        if (list instanceof PackedList) {
+            PackedList packed = (PackedList) list;
+            if (packed.kind == LONGS) {
+                long result = packed.longs[0];
+                for (int i = 1; i < packed.size; i++) {
+                    result = sign < 0 ? Math.min(result, packed.longs[i]) : Math.max(result, packed.longs[i]);
+                }
+                return result;
+            } else if (packed.kind == DOUBLES) {
+                double result = packed.doubles[0];
+                for (int i = 1; i < packed.size; i++) {
+                    double x = packed.doubles[i];
+                    if (Double.compare(x, result) * sign > 0) result = x;
+                }
+                return result;
+            }
+        }
+        Object result = list.get(0);
+        for (int i = 1; i < list.size(); i++) {
+            if (Numbers.compare(list.get(i), result) * sign > 0) result = list.get(i);
+        }
+        return result;
+    }
+
+    public static Object dot(List<?> a, List<?> b) {
+        if (a.size() != b.size()) throw new ScriptException("expected lists of the same length, got " + a.size() + " and " + b.size());
+        if (a instanceof PackedList && b instanceof PackedList) {
+            PackedList x = (PackedList) a, y = (PackedList) b;
+            if (x.kind == LONGS && y.kind == LONGS) {
+                long sum = 0;
+                for (int i = 0; i < x.size; i++) {
+                    long product = x.longs[i] * y.longs[i], r = sum + product;
+                    if (Math.multiplyHigh(x.longs[i], y.longs[i]) != (product >> 63) || ((sum ^ r) & (product ^ r)) < 0) return dotFrom(a, b, i, sum);
+                    sum = r;
+                }
+                return sum;
+            } else if (x.kind != OBJECTS && y.kind != OBJECTS) {
+                double sum = 0;
+                for (int i = 0; i < x.size; i++) {
+                    sum += x.doubleAt(i) * y.doubleAt(i);
+                }
+                return sum;
+            }
+        }
+        return dotFrom(a, b, 0, 0L);
+    }
+
+    private double doubleAt(int index) {
+        return kind == DOUBLES ? doubles[index] : longs[index];
+    }
+
+    private static Object dotFrom(List<?> a, List<?> b, int start, Object sum) {
+        for (int i = start; i < a.size(); i++) {
+            sum = Numbers.add(sum, Numbers.multiply(a.get(i), b.get(i)));
+        }
+        return sum;
+    }
+
+    /**
+     * A new list of every element multiplied by {@code factor}.
+     */
+    public static PackedList scale(List<?> list, Object factor) {
+        if (list instanceof PackedList) {
+            PackedList packed = (PackedList) list;
+            if (packed.kind == LONGS && factor instanceof Long) {
+                long f = (Long) factor;
+                long[] result = new long[packed.size];
+                for (int i = 0; i < result.length; i++) {
+                    long x = packed.longs[i], product = x * f;
+                    if (Math.multiplyHigh(x, f) != (product >> 63)) return scaleFrom(list, factor);
+                    result[i] = product;
+                }
+                return ofLongs(result);
+            } else if (packed.kind != OBJECTS && (factor instanceof Double || packed.kind == DOUBLES && factor instanceof Long)) {
+                double f = ((Number) factor).doubleValue();
+                double[] result = new double[packed.size];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = packed.doubleAt(i) * f;
+                }
+                return ofDoubles(result);
+            }
+        }
+        return scaleFrom(list, factor);
+    }
+
+    private static PackedList scaleFrom(List<?> list, Object factor) {
+        Object[] result = new Object[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = Numbers.multiply(list.get(i), factor);
+        }
+        return of(result);
+    }
+
+    /**
+     * A new list of the elements from {@code from}, inclusive, to {@code to}, exclusive.
+     */
+    public PackedList slice(int from, int to) {
+        if (from < 0 || to > size || from > to) throw new ScriptException("slice " + from + ".." + to + " out of bounds for length " + size);
+        if (kind == LONGS) return ofLongs(Arrays.copyOfRange(longs, from, to));
+        else if (kind == DOUBLES) return ofDoubles(Arrays.copyOfRange(doubles, from, to));
+        else return new PackedList(OBJECTS, null, null, Arrays.copyOfRange(objects, from, to), to - from);
+    }
+
+    public static PackedList slice(List<?> list, int from, int to) {
+        if (list instanceof PackedList) return ((PackedList) list).slice(from, to);
+        if (from < 0 || to > list.size() || from > to) throw new ScriptException("slice " + from + ".." + to + " out of bounds for length " + list.size());
+        return of(list.subList(from, to).toArray());
+    }
+
+}
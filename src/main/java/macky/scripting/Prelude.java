@@ -0,0 +1,63 @@
+package macky.scripting;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Globals shared by every execution of a script, such as host functions and configuration. A prelude cannot change
+ * once it is built, so one instance can back any number of {@link Scope scopes} on any number of threads. Scripts read
+ * prelude names like other globals but cannot assign to them; a {@code let} shadows one in its own scope only.
+ * <p>
+ * The values should be immutable or thread-safe themselves, e.g. {@code Map.of(...)} for a configuration map, since
+ * every execution sees the same instances. Like {@link Scope#freeze frozen} globals, prelude values may be folded into
+ * scripts compiled against them.
+ */
+public final class Prelude {
+
+    public static final Prelude EMPTY = new Builder().build();
+
+    private final Map<String, Object> bindings;
+
+    private Prelude(Map<String, Object> bindings) {
+        this.bindings = bindings;
+    }
+
+    public boolean has(String name) {
+        return bindings.containsKey(name);
+    }
+
+    public Object get(String name) {
+        return bindings.get(name);
+    }
+
+    public Set<String> getNames() {
+        return bindings.keySet();
+    }
+
+    public boolean isEmpty() {
+        return bindings.isEmpty();
+    }
+
+    /**
+     * A fresh scope for one execution, backed by this prelude.
+     */
+    public Scope newScope() {
+        return new Scope(this);
+    }
+
+    public static final class Builder {
+        private final Map<String, Object> bindings = new HashMap<>();
+
+        public Builder define(String name, Object value) {
+            bindings.put(name, value);
+            return this;
+        }
+
+        public Prelude build() {
+            return new Prelude(Collections.unmodifiableMap(new HashMap<>(bindings)));
+        }
+    }
+
+}
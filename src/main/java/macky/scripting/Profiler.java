@@ -0,0 +1,280 @@
+package macky.scripting;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Samples the script call stacks of the evaluations it is attached to. Attach a profiler with
+ * {@link Scope#setProfiler}; evaluations in other scopes pay one null check per statement and call.
+ * <p>
+ * Calls of each function and executions of each line are counted exactly. Time is estimated: every
+ * {@link Builder#interval interval} a background thread records where each attached evaluation is, so a function's
+ * share of the samples is its share of the time. Functions are named after the variable or map key they were first
+ * assigned to, or {@code function@<line>} if anonymous, and lines are named {@code <function>:<line>}; top-level code
+ * belongs to {@code <script>}.
+ * <p>
+ * A profiler is thread-safe and may be shared by any number of evaluations. Close it to stop the sampling thread.
+ */
+public final class Profiler implements AutoCloseable {
+
+    public static final String SCRIPT = "<script>";
+
+    private final long intervalNanos;
+    private final Set<Stack> active = ConcurrentHashMap.newKeySet();
+    private final Thread sampler;
+    private volatile boolean closed;
+
+    private final Map<String, long[]> stacks = new HashMap<>();
+    private final Map<String, long[]> selfSamples = new HashMap<>();
+    private final Map<String, long[]> totalSamples = new HashMap<>();
+    private final Map<String, long[]> lineSamples = new HashMap<>();
+    private final Map<String, long[]> calls = new HashMap<>();
+    private final Map<String, long[]> lineCounts = new HashMap<>();
+    private long samples;
+    private long evaluations;
+    private long evaluationNanos;
+
+    private Profiler(Builder builder) {
+        this.intervalNanos = builder.interval.toNanos();
+        this.sampler = new Thread(this::run, "script-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * The call stack of one evaluation. Only the evaluating thread writes to it; the sampler reads it without
+     * synchronization and may see a stack that is a call or statement out of date.
+     */
+    public static final class Stack {
+        private final long start = System.nanoTime();
+        private final Map<String, long[]> calls = new HashMap<>();
+        private final Map<String, long[]> lines = new HashMap<>();
+        private String[] functions = new String[32];
+        private String[] sites = new String[32];
+        private int depth;
+
+        private Stack() {
+            functions[0] = SCRIPT;
+        }
+
+        public void enter(String function) {
+            if (depth + 1 == functions.length) grow();
+            functions[depth + 1] = function;
+            sites[depth + 1] = null;
+            depth++;
+            count(calls, function, 1);
+        }
+
+        public void exit() {
+            depth--;
+        }
+
+        /**
+         * Marks the start of the statement at the given site in the current function.
+         */
+        public void line(String site) {
+            sites[depth] = site;
+            count(lines, site, 1);
+        }
+
+        private void grow() {
+            String[] functions = new String[this.functions.length * 2];
+            String[] sites = new String[functions.length];
+            System.arraycopy(this.functions, 0, functions, 0, this.functions.length);
+            System.arraycopy(this.sites, 0, sites, 0, this.sites.length);
+            this.functions = functions;
+            this.sites = sites;
+        }
+    }
+
+    public Stack begin() {
+        Stack stack = new Stack();
+        active.add(stack);
+        return stack;
+    }
+
+    public void end(Stack stack) {
+        active.remove(stack);
+        long nanos = System.nanoTime() - stack.start;
+        synchronized (this) {
+            evaluations++;
+            evaluationNanos += nanos;
+            stack.calls.forEach((function, count) -> count(calls, function, count[0]));
+            stack.lines.forEach((site, count) -> count(lineCounts, site, count[0]));
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            LockSupport.parkNanos(intervalNanos);
+            if (active.isEmpty()) continue;
+            synchronized (this) {
+                for (Stack stack : active) {
+                    sample(stack);
+                }
+            }
+        }
+    }
+
+    private void sample(Stack stack) {
+        String[] functions = stack.functions;
+        String[] sites = stack.sites;
+        int depth = Math.min(stack.depth, functions.length - 1);
+        if (depth < 0) return;
+        StringBuilder collapsed = new StringBuilder();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i <= depth; i++) {
+            String function = functions[i];
+            if (function == null) return;
+            if (i > 0) collapsed.append(';');
+            collapsed.append(function);
+            if (seen.add(function)) count(totalSamples, function, 1);
+        }
+        count(selfSamples, functions[depth], 1);
+        String site = sites[depth];
+        if (site != null) {
+            collapsed.append(';').append(site);
+            count(lineSamples, site, 1);
+        }
+        count(stacks, collapsed.toString(), 1);
+        samples++;
+    }
+
+    private static void count(Map<String, long[]> counts, String key, long n) {
+        counts.computeIfAbsent(key, k -> new long[1])[0] += n;
+    }
+
+    private static long get(Map<String, long[]> counts, String key) {
+        long[] count = counts.get(key);
+        return count == null ? 0 : count[0];
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    public synchronized long getEvaluations() {
+        return evaluations;
+    }
+
+    public synchronized long getCalls(String function) {
+        return get(calls, function);
+    }
+
+    public synchronized long getLineCount(String site) {
+        return get(lineCounts, site);
+    }
+
+    /**
+     * Samples taken while the function was running its own code rather than a function it called.
+     */
+    public synchronized long getSelfSamples(String function) {
+        return get(selfSamples, function);
+    }
+
+    /**
+     * Samples taken while the function was anywhere on the stack.
+     */
+    public synchronized long getTotalSamples(String function) {
+        return get(totalSamples, function);
+    }
+
+    public synchronized long getLineSamples(String site) {
+        return get(lineSamples, site);
+    }
+
+    /**
+     * The samples in the collapsed stack format read by flame graph tools: one line per distinct stack, outermost
+     * frame first, followed by the number of samples.
+     */
+    public synchronized String toCollapsed() {
+        StringBuilder result = new StringBuilder();
+        stacks.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> result.append(entry.getKey()).append(' ').append(entry.getValue()[0]).append('\n'));
+        return result.toString();
+    }
+
+    /**
+     * A text report of the {@code top} functions by self time and the {@code top} lines by time.
+     */
+    public synchronized String report(int top) {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%d samples every %.3fms, %d evaluations in %.3fms%n",
+                samples, intervalNanos / 1e6, evaluations, evaluationNanos / 1e6));
+        result.append(String.format("%n%8s %8s %12s  %s%n", "self", "total", "calls", "function"));
+        Set<String> functions = new HashSet<>(calls.keySet());
+        functions.addAll(totalSamples.keySet());
+        for (String function : top(functions, selfSamples, totalSamples, top)) {
+            result.append(String.format("%7.1f%% %7.1f%% %12d  %s%n",
+                    percent(get(selfSamples, function)), percent(get(totalSamples, function)), get(calls, function), function));
+        }
+        result.append(String.format("%n%8s %12s  %s%n", "time", "count", "line"));
+        Set<String> sites = new HashSet<>(lineCounts.keySet());
+        sites.addAll(lineSamples.keySet());
+        for (String site : top(sites, lineSamples, lineCounts, top)) {
+            result.append(String.format("%7.1f%% %12d  %s%n", percent(get(lineSamples, site)), get(lineCounts, site), site));
+        }
+        return result.toString();
+    }
+
+    private static List<String> top(Set<String> keys, Map<String, long[]> first, Map<String, long[]> second, int top) {
+        List<String> result = new ArrayList<>(keys);
+        result.sort(Comparator.<String>comparingLong(key -> get(first, key))
+                .thenComparingLong(key -> get(second, key))
+                .reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        return result.subList(0, Math.min(top, result.size()));
+    }
+
+    private double percent(long count) {
+        return samples == 0 ? 0 : 100.0 * count / samples;
+    }
+
+    public synchronized void reset() {
+        stacks.clear();
+        selfSamples.clear();
+        totalSamples.clear();
+        lineSamples.clear();
+        calls.clear();
+        lineCounts.clear();
+        samples = 0;
+        evaluations = 0;
+        evaluationNanos = 0;
+    }
+
+    /**
+     * Stops the sampling thread. Counts and samples taken so far can still be read.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(sampler);
+    }
+
+    public static final class Builder {
+        private Duration interval = Duration.ofMillis(10);
+
+        /**
+         * How often to sample. Shorter intervals give more precise times at the cost of more time spent in the sampling
+         * thread.
+         */
+        public Builder interval(Duration interval) {
+            this.interval = interval;
+            return this;
+        }
+
+        public Profiler build() {
+            return new Profiler(this);
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+package macky.scripting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Decides whether a resolved function changes nothing but its own locals and calls no function, so that concurrent
+ * calls cannot see each other: such a function may be {@link ScriptFunction#fork forked}. The analysis is
+ * conservative. A function fails it if it defines or assigns a global, assigns an entry of a map or list, calls any
+ * function, or assigns a local other than its parameters and the locals it has bound with a {@code let} before the
+ * assignment, as an assignment to a local that is still unset falls back to a variable of the same name outside the
+ * function.
+ */
+public final class Purity implements Expression.Visitor<Boolean> {
+
+    private final List<String> bound = new ArrayList<>();
+
+    private Purity() {
+
+    }
+
+    /**
+     * Whether a function with the given locals, of which the first {@code paramCount} are parameters, is pure.
+     */
+    public static boolean isPure(int paramCount, List<String> names, Expression body) {
+        Purity purity = new Purity();
+        purity.bound.addAll(names.subList(0, paramCount));
+        return body.visit(purity);
+    }
+
+    /**
+     * Visits an expression whose {@code let}s are out of scope once it is done.
+     */
+    private boolean scoped(Expression expression) {
+        int size = bound.size();
+        boolean pure = expression.visit(this);
+        bound.subList(size, bound.size()).clear();
+        return pure;
+    }
+
+    private boolean all(List<Expression> expressions) {
+        for (Expression expression : expressions) {
+            if (!expression.visit(this)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Boolean boolLiteral(boolean boolLiteral) {
+        return true;
+    }
+
+    @Override
+    public Boolean breakStatement() {
+        return true;
+    }
+
+    @Override
+    public Boolean declFunc(List<String> funcParamNames, Expression funcBody) {
+        int size = bound.size();
+        bound.addAll(funcParamNames);
+        boolean pure = funcBody.visit(this);
+        bound.subList(size, bound.size()).clear();
+        return pure;
+    }
+
+    @Override
+    public Boolean ifExpr(Expression ifCondition, Expression ifBody, Optional<Expression> ifElse) {
+        return ifCondition.visit(this) && scoped(ifBody) && ifElse.map(this::scoped).orElse(true);
+    }
+
+    @Override
+    public Boolean whileExpr(Expression whileCondition, Expression whileBody) {
+        return whileCondition.visit(this) && scoped(whileBody);
+    }
+
+    @Override
+    public Boolean forExpr(Expression forInit, Expression forCondition, Expression forUpdate, Expression forBody) {
+        return forInit.visit(this) && forCondition.visit(this) && scoped(forBody) && forUpdate.visit(this);
+    }
+
+    @Override
+    public Boolean returnExpr(Optional<Expression> returnExpr) {
+        return returnExpr.map(expression -> expression.visit(this)).orElse(true);
+    }
+
+    @Override
+    public Boolean loop(Expression loopExpr) {
+        return scoped(loopExpr);
+    }
+
+    @Override
+    public Boolean declVar(String declName, Expression declValue) {
+        return false;
+    }
+
+    @Override
+    public Boolean mapInit(List<Map.Entry<Expression, Expression>> mapInitExpr) {
+        for (Map.Entry<Expression, Expression> entry : mapInitExpr) {
+            if (!entry.getKey().visit(this) || !entry.getValue().visit(this)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Boolean listInit(List<Expression> listInitExpr) {
+        return all(listInitExpr);
+    }
+
+    @Override
+    public Boolean nopExpr() {
+        return true;
+    }
+
+    @Override
+    public Boolean string(String stringExpr) {
+        return true;
+    }
+
+    @Override
+    public Boolean number(Number numberExpr) {
+        return true;
+    }
+
+    @Override
+    public Boolean bracketed(List<Expression> bracketedExpr) {
+        int size = bound.size();
+        boolean pure = all(bracketedExpr);
+        bound.subList(size, bound.size()).clear();
+        return pure;
+    }
+
+    @Override
+    public Boolean accessVar(String name) {
+        return true;
+    }
+
+    @Override
+    public Boolean callFunc(Expression callFunc, List<Expression> params) {
+        return false;
+    }
+
+    @Override
+    public Boolean access(Expression keyOwner, Expression key, boolean method) {
+        return keyOwner.visit(this) && key.visit(this);
+    }
+
+    @Override
+    public Boolean unaryNegate(Expression expression) {
+        return expression.visit(this);
+    }
+
+    @Override
+    public Boolean operator(Expression left, Operator operator, Expression right) {
+        if (!Operators.getTransformation(operator).isPresent()) return left.visit(this) && right.visit(this);
+        return Expressions.getLocalName(left).filter(bound::contains).isPresent() && right.visit(this);
+    }
+
+    @Override
+    public Boolean localVar(String localName, int localDepth, int localSlot) {
+        return true;
+    }
+
+    @Override
+    public Boolean declLocal(String declLocalName, int declLocalSlot, Expression declLocalValue) {
+        if (!declLocalValue.visit(this)) return false;
+        bound.add(declLocalName);
+        return true;
+    }
+
+    @Override
+    public Boolean block(List<String> blockNames, List<Expression> blockExprs) {
+        return bracketed(blockExprs);
+    }
+
+    @Override
+    public Boolean closure(List<String> closureNames, int closureParamCount, Expression closureBody) {
+        return declFunc(closureNames.subList(0, closureParamCount), closureBody);
+    }
+
+    @Override
+    public Boolean forIn(String forInName, int forInSlot, Expression forInIterable, Expression forInBody) {
+        if (forInSlot < 0 || !forInIterable.visit(this)) return false;
+        int size = bound.size();
+        bound.add(forInName);
+        boolean pure = forInBody.visit(this);
+        bound.subList(size, bound.size()).clear();
+        return pure;
+    }
+
+}
@@ -0,0 +1,108 @@
+package macky.scripting;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * The integers from a start up to but not including an end, a step apart, as a list that computes its elements instead
+ * of storing them, made by {@code range(...)}. Iterating a range with {@code for ... in} counts with a primitive long,
+ * so a counting loop takes constant memory whatever its length. A range cannot be changed.
+ */
+public final class Range extends AbstractList<Object> implements ScriptingList, RandomAccess {
+
+    private final long start;
+    private final long step;
+    private final int size;
+
+    public Range(long start, long end, long step) {
+        if (step == 0) throw new ScriptException("range step must not be zero");
+        this.start = start;
+        this.step = step;
+        this.size = size(start, end, step);
+    }
+
+    private static int size(long start, long end, long step) {
+        if (step > 0 ? end <= start : end >= start) return 0;
+        long span;
+        try {
+            span = Math.abs(Math.subtractExact(end, start));
+        } catch (ArithmeticException e) {
+            throw new ScriptException("range is too large");
+        }
+        long magnitude = Math.abs(step);
+        long size = span / magnitude + (span % magnitude == 0 ? 0 : 1);
+        if (size > Integer.MAX_VALUE) throw new ScriptException("range is too large");
+        return (int) size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index + " out of bounds for length " + size);
+        return start + index * step;
+    }
+
+    @Override
+    public Object set(int index, Object value) {
+        throw new ScriptException("cannot change a range");
+    }
+
+    @Override
+    public void add(int index, Object value) {
+        throw new ScriptException("cannot change a range");
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return new Iterator<>() {
+            private long next = start;
+            private int remaining = size;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public Object next() {
+                if (remaining == 0) throw new NoSuchElementException();
+                long value = next;
+                next += step;
+                remaining--;
+                return value;
+            }
+        };
+    }
+
+    @Override
+    public int listSize() {
+        return size;
+    }
+
+    @Override
+    public Object listGet(int index) {
+        return get(index);
+    }
+
+    @Override
+    public void listSet(int index, Object value) {
+        set(index, value);
+    }
+
+    @Override
+    public void listAdd(int index, Object value) {
+        add(index, value);
+    }
+
+    @Override
+    public Iterator<Object> listIterate() {
+        return iterator();
+    }
+
+}
@@ -0,0 +1,369 @@
+package macky.scripting;
+
+import macky.scripting.jfr.ScriptEvents;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A script evaluated against a scope and kept up to date as the host changes its globals with {@link Scope#update}.
+ * While each top-level expression runs, the globals it reads and the map entries it reads from them are recorded with
+ * the values it saw. An update recomputes an expression only if one of those has a different value now, then goes on to
+ * the expressions that read the globals it wrote; every other expression keeps its result. Reads are recorded under a
+ * lock, as forked functions may read globals from several threads at once.
+ * <p>
+ * Maps read from globals are handed to the script as views that look the map up again on every access, so an entry
+ * read is recorded by its path from the global, e.g. {@code config.db.port}, and a script that kept a map in another
+ * global sees the same map a full run would. A view never leaves the script: a global it is stored in and the result
+ * get the map itself, and the expression that stored it is recomputed when the map is replaced, while those that read
+ * the other global follow changes in place. Values are compared with {@code equals}, maps entry by entry, so a host
+ * may update a global with a freshly built map or with the one it changed in place; a list changed in place has to be
+ * rebound to a new one to be noticed.
+ * <p>
+ * An expression that reads a global an earlier one wrote, and then writes it itself or leaves it to a later one, would
+ * see the value the last run left behind; updating it runs everything again from the earlier writer on.
+ * <p>
+ * Recomputing part of a script is only sound for top-level expressions that depend on nothing but what they read: one
+ * that calls a host function with side effects, or that keeps state between runs, sees the difference.
+ */
+public final class Reactive implements AutoCloseable {
+
+    private enum Kind {
+        /** a value other than a map, compared with equals */
+        VALUE,
+        /** a map whose entries are recorded as reads of their own */
+        MAP,
+        /** a map used as a whole, compared with a copy of it */
+        ENTRIES,
+        /** a map the expression changed, compared by identity */
+        SAME,
+    }
+
+    private static final class Read {
+
+        private final String name;
+        private final Object[] path;
+        private final Kind kind;
+        private final Object value;
+
+        Read(String name, Object[] path, Kind kind, Object value) {
+            this.name = name;
+            this.path = path;
+            this.kind = kind;
+            this.value = value;
+        }
+
+        boolean changed(Scope scope) {
+            Object now = resolve(scope, name, path, ABSENT);
+            switch (kind) {
+                case VALUE:
+                    return now instanceof View || value instanceof View ? now != value : !Objects.equals(now, value);
+                case MAP:
+                    return !(now instanceof Map);
+                case ENTRIES:
+                    return !value.equals(now);
+                default:
+                    return now != value;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Read)) return false;
+            Read read = (Read) o;
+            return name.equals(read.name) && Arrays.equals(path, read.path) && kind == read.kind;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, Arrays.hashCode(path), kind);
+        }
+
+    }
+
+    /**
+     * What one top-level expression read and wrote the last time it ran, and its result.
+     */
+    private static final class Memo {
+        private final Set<Read> reads = new LinkedHashSet<>();
+        private final Set<String> writes = new LinkedHashSet<>();
+        /** the globals it stored a map from another global in, and that global */
+        private final Map<String, String> aliases = new LinkedHashMap<>();
+        private Object result;
+        private boolean failed = true;
+    }
+
+    private static final Object ABSENT = new Object();
+    private static final Object[] ROOT = new Object[0];
+
+    private final CompiledScript script;
+    private final Scope scope;
+    private final Memo[] memos;
+    private Memo current;
+    private int recomputed;
+
+    Reactive(CompiledScript script, Scope scope) {
+        this.script = script;
+        this.scope = scope;
+        this.memos = new Memo[script.size()];
+        for (int i = 0; i < memos.length; i++) {
+            memos[i] = new Memo();
+        }
+        update(new LinkedHashSet<>());
+        scope.attach(this);
+    }
+
+    /**
+     * The result of the script as of the last update.
+     */
+    public Object getResult() {
+        return memos.length == 0 ? null : memos[memos.length - 1].result;
+    }
+
+    /**
+     * The number of top-level expressions the last update recomputed.
+     */
+    public int getRecomputed() {
+        return recomputed;
+    }
+
+    /**
+     * Stops following updates of the scope.
+     */
+    @Override
+    public void close() {
+        scope.detach(this);
+    }
+
+    /**
+     * Recomputes the expressions affected by a change to the globals in {@code changed}, adding the globals they
+     * write. If an expression fails, it and every expression after it are recomputed by the next update, as the
+     * changes they have not seen yet are lost.
+     */
+    void update(Set<String> changed) {
+        Budget budget = new Budget(scope.getLimits());
+        Profiler profiler = scope.getProfiler();
+        Profiler.Stack profile = profiler == null ? null : profiler.begin();
+        boolean[] ran = new boolean[memos.length];
+        int from = memos.length;
+        int i = 0;
+        try {
+            for (; i < memos.length; i++) {
+                Memo memo = memos[i];
+                if (i < from && !memo.failed && !affected(memo, changed)) {
+                    memo.aliases.forEach((alias, name) -> {
+                        if (changed.contains(name)) changed.add(alias);
+                    });
+                    continue;
+                }
+                int writer = rewind(i, memo, ran);
+                if (writer < 0) {
+                    changed.addAll(memo.writes);
+                    memos[i] = new Memo();
+                    run(memos[i], i, budget, profile);
+                    ran[i] = true;
+                    changed.addAll(memos[i].writes);
+                    writer = rewind(i, memos[i], ran);
+                }
+                if (writer >= 0) {
+                    from = writer;
+                    i = writer - 1;
+                }
+            }
+        } catch (ScriptException e) {
+            ScriptEvents.error(e);
+            throw e;
+        } finally {
+            for (; i < memos.length; i++) {
+                memos[i].failed = true;
+            }
+            recomputed = 0;
+            for (boolean done : ran) {
+                if (done) recomputed++;
+            }
+            if (profile != null) profiler.end(profile);
+        }
+    }
+
+    /**
+     * The expression to go back to before recomputing the one at {@code index}, or -1. If it reads a global that an
+     * earlier expression wrote, while it or a later one writes that global too, the global holds what the last run
+     * left rather than what a full run would see there; so everything from the last earlier writer on is run again,
+     * unless that writer already ran in this update.
+     */
+    private int rewind(int index, Memo memo, boolean[] ran) {
+        int earliest = -1;
+        for (Read read : memo.reads) {
+            if (!writtenFrom(index, memo, read.name)) continue;
+            for (int j = index - 1; j >= 0; j--) {
+                if (memos[j].writes.contains(read.name)) {
+                    if (!ran[j] && (earliest < 0 || j < earliest)) earliest = j;
+                    break;
+                }
+            }
+        }
+        return earliest;
+    }
+
+    private boolean writtenFrom(int index, Memo memo, String name) {
+        if (memo.writes.contains(name)) return true;
+        for (int j = index; j < memos.length; j++) {
+            if (memos[j].writes.contains(name)) return true;
+        }
+        return false;
+    }
+
+    private boolean affected(Memo memo, Set<String> changed) {
+        for (Read read : memo.reads) {
+            if (changed.contains(read.name) && read.changed(scope)) return true;
+        }
+        return false;
+    }
+
+    private void run(Memo memo, int index, Budget budget, Profiler.Stack profile) {
+        current = memo;
+        scope.track(this);
+        try {
+            memo.result = unwrap(ScriptObjects.flatten(script.execute(index, scope, budget, profile)));
+            memo.failed = false;
+        } finally {
+            scope.track(null);
+            current = null;
+        }
+    }
+
+    private synchronized void record(String name, Object[] path, Kind kind, Object value) {
+        if (current != null) current.reads.add(new Read(name, path, kind, value));
+    }
+
+    /**
+     * Records a read of a global or of an entry below it, and returns what the script sees.
+     */
+    private Object read(String name, Object[] path, Object value) {
+        if (value instanceof Map && !(value instanceof View)) {
+            record(name, path, Kind.MAP, null);
+            return new View(name, path);
+        }
+        record(name, path, Kind.VALUE, value);
+        return value;
+    }
+
+    Object read(String name, Object value) {
+        return read(name, ROOT, value);
+    }
+
+    /**
+     * Records a write of a global, and returns the value to store: the map itself rather than a view of it, which is
+     * recorded as read and as kept in the global.
+     */
+    synchronized Object write(String name, Object value) {
+        if (!(value instanceof View)) {
+            if (current != null) current.writes.add(name);
+            return value;
+        }
+        View view = (View) value;
+        if (current != null) {
+            current.writes.add(name);
+            current.aliases.put(name, view.name);
+        }
+        return unwrap(view);
+    }
+
+    /**
+     * The map a view stands for, recorded as read by identity, as it is kept in place of the view; other values as
+     * they are.
+     */
+    private Object unwrap(Object value) {
+        if (!(value instanceof View)) return value;
+        View view = (View) value;
+        Map<Object, Object> target = view.target();
+        record(view.name, view.path, Kind.SAME, target);
+        return target;
+    }
+
+    /**
+     * The value at {@code path} below a global as it is now, looking through views, or {@code absent}.
+     */
+    private static Object resolve(Scope scope, String name, Object[] path, Object absent) {
+        Object value = scope.peek(name, absent);
+        for (Object key : path) {
+            if (value instanceof View) value = ((View) value).target();
+            if (!(value instanceof Map)) return absent;
+            value = ((Map<?, ?>) value).get(key);
+        }
+        return value;
+    }
+
+    private final class View extends AbstractMap<Object, Object> {
+
+        private final String name;
+        private final Object[] path;
+
+        View(String name, Object[] path) {
+            this.name = name;
+            this.path = path;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> target() {
+            Object value = resolve(scope, name, path, null);
+            return value instanceof Map ? (Map<Object, Object>) value : Map.of();
+        }
+
+        private Object[] child(Object key) {
+            Object[] child = Arrays.copyOf(path, path.length + 1);
+            child[path.length] = key;
+            return child;
+        }
+
+        /**
+         * The map as it is now, recording that the script used it as a whole.
+         */
+        private Map<Object, Object> entries() {
+            Map<Object, Object> target = target();
+            record(name, path, Kind.ENTRIES, new LinkedHashMap<>(target));
+            return target;
+        }
+
+        @Override
+        public Object get(Object key) {
+            return read(name, child(key), target().get(key));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return entries().containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return entries().size();
+        }
+
+        @Override
+        public Set<Entry<Object, Object>> entrySet() {
+            return entries().entrySet();
+        }
+
+        @Override
+        public Object put(Object key, Object value) {
+            Map<Object, Object> target = target();
+            record(name, path, Kind.SAME, target);
+            return target.put(key, value);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            Map<Object, Object> target = target();
+            record(name, path, Kind.SAME, target);
+            return target.remove(key);
+        }
+
+    }
+
+}
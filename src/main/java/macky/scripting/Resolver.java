@@ -0,0 +1,396 @@
+package macky.scripting;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+public final class Resolver implements Expression.Visitor<Expression> {
+
+    private static final class Block {
+        private final Block parent;
+        private final boolean function;
+        private final List<String> names = new ArrayList<>();
+
+        Block(Block parent, boolean function) {
+            this.parent = parent;
+            this.function = function;
+        }
+
+        boolean hasFrame() {
+            return function || !names.isEmpty();
+        }
+
+        boolean declared(String name) {
+            for (Block block = this; block != null; block = block.parent) {
+                if (block.names.contains(name)) return true;
+            }
+            return false;
+        }
+    }
+
+    private final Block block;
+    private final LineTable lines;
+
+    private Resolver(Block block, LineTable lines) {
+        this.block = block;
+        this.lines = lines;
+    }
+
+    public static Expression resolve(Expression expression) {
+        return resolve(expression, LineTable.NONE);
+    }
+
+    /**
+     * Resolves an expression, giving each resolved expression the line of the expression it was resolved from.
+     */
+    public static Expression resolve(Expression expression, LineTable lines) {
+        Expression resolved = expression.visit(new Resolver(null, lines));
+        lines.copy(expression, resolved);
+        return resolved;
+    }
+
+    private Expression resolveIn(Expression expression) {
+        Expression resolved = expression.visit(this);
+        lines.copy(expression, resolved);
+        return resolved;
+    }
+
+    private List<Expression> resolveIn(List<Expression> expressions) {
+        return expressions.stream().map(this::resolveIn).collect(Collectors.toList());
+    }
+
+    private List<Expression> resolveBlock(Block block, List<Expression> expressions) {
+        Declarations lets = new Declarations(block, false);
+        expressions.forEach(expression -> expression.visit(lets));
+        Declarations assignments = new Declarations(block, true);
+        expressions.forEach(expression -> expression.visit(assignments));
+        return new Resolver(block, lines).resolveIn(expressions);
+    }
+
+    private Expression lookup(String name) {
+        int depth = 0;
+        for (Block current = block; current != null; current = current.parent) {
+            int slot = current.names.lastIndexOf(name);
+            if (slot >= 0) return Expressions.localVar(name, depth, slot);
+            if (current.hasFrame()) depth++;
+        }
+        return Expressions.accessVar(name);
+    }
+
+    @Override
+    public Expression boolLiteral(boolean boolLiteral) {
+        return Expressions.boolLiteral(boolLiteral);
+    }
+
+    @Override
+    public Expression breakStatement() {
+        return Expressions.breakStatement();
+    }
+
+    @Override
+    public Expression declFunc(List<String> funcParamNames, Expression funcBody) {
+        Block function = new Block(block, true);
+        function.names.addAll(funcParamNames);
+        Expression body = Expressions.getBracketedExpr(funcBody)
+                .map(exprs -> Expressions.bracketed(resolveBlock(function, exprs)))
+                .orElseGet(() -> resolveBlock(function, Collections.singletonList(funcBody)).get(0));
+        return Expressions.closure(List.copyOf(function.names), funcParamNames.size(), body);
+    }
+
+    @Override
+    public Expression ifExpr(Expression ifCondition, Expression ifBody, Optional<Expression> ifElse) {
+        return Expressions.ifExpr(resolveIn(ifCondition), resolveIn(ifBody), ifElse.map(this::resolveIn));
+    }
+
+    @Override
+    public Expression whileExpr(Expression whileCondition, Expression whileBody) {
+        return Expressions.whileExpr(resolveIn(whileCondition), resolveIn(whileBody));
+    }
+
+    @Override
+    public Expression forExpr(Expression forInit, Expression forCondition, Expression forUpdate, Expression forBody) {
+        return Expressions.forExpr(resolveIn(forInit), resolveIn(forCondition), resolveIn(forUpdate), resolveIn(forBody));
+    }
+
+    @Override
+    public Expression returnExpr(Optional<Expression> returnExpr) {
+        return Expressions.returnExpr(returnExpr.map(this::resolveIn));
+    }
+
+    @Override
+    public Expression loop(Expression loopExpr) {
+        return Expressions.loop(resolveIn(loopExpr));
+    }
+
+    @Override
+    public Expression declVar(String declName, Expression declValue) {
+        if (block == null) return Expressions.declVar(declName, resolveIn(declValue));
+        return Expressions.declLocal(declName, block.names.lastIndexOf(declName), resolveIn(declValue));
+    }
+
+    @Override
+    public Expression mapInit(List<Map.Entry<Expression, Expression>> mapInitExpr) {
+        return Expressions.mapInit(mapInitExpr.stream()
+                .map(entry -> new AbstractMap.SimpleEntry<>(resolveIn(entry.getKey()), resolveIn(entry.getValue())))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Expression listInit(List<Expression> listInitExpr) {
+        return Expressions.listInit(resolveIn(listInitExpr));
+    }
+
+    @Override
+    public Expression nopExpr() {
+        return Expressions.nopExpr();
+    }
+
+    @Override
+    public Expression string(String stringExpr) {
+        return Expressions.string(stringExpr);
+    }
+
+    @Override
+    public Expression number(Number numberExpr) {
+        return Expressions.number(numberExpr);
+    }
+
+    @Override
+    public Expression bracketed(List<Expression> bracketedExpr) {
+        Block inner = new Block(block, false);
+        List<Expression> exprs = resolveBlock(inner, bracketedExpr);
+        if (inner.names.isEmpty()) return Expressions.bracketed(exprs);
+        return Expressions.block(List.copyOf(inner.names), exprs);
+    }
+
+    @Override
+    public Expression accessVar(String name) {
+        return lookup(name);
+    }
+
+    @Override
+    public Expression callFunc(Expression callFunc, List<Expression> params) {
+        return Expressions.callFunc(resolveIn(callFunc), resolveIn(params));
+    }
+
+    @Override
+    public Expression access(Expression keyOwner, Expression key, boolean method) {
+        return Expressions.access(resolveIn(keyOwner), resolveIn(key), method);
+    }
+
+    @Override
+    public Expression unaryNegate(Expression expression) {
+        return Expressions.unaryNegate(resolveIn(expression));
+    }
+
+    @Override
+    public Expression operator(Expression left, Operator operator, Expression right) {
+        return Expressions.operator(resolveIn(left), operator, resolveIn(right));
+    }
+
+    @Override
+    public Expression localVar(String localName, int localDepth, int localSlot) {
+        return Expressions.localVar(localName, localDepth, localSlot);
+    }
+
+    @Override
+    public Expression declLocal(String declLocalName, int declLocalSlot, Expression declLocalValue) {
+        return Expressions.declLocal(declLocalName, declLocalSlot, declLocalValue);
+    }
+
+    @Override
+    public Expression block(List<String> blockNames, List<Expression> blockExprs) {
+        return Expressions.block(blockNames, blockExprs);
+    }
+
+    @Override
+    public Expression closure(List<String> closureNames, int closureParamCount, Expression closureBody) {
+        return Expressions.closure(closureNames, closureParamCount, closureBody);
+    }
+
+    @Override
+    public Expression forIn(String forInName, int forInSlot, Expression forInIterable, Expression forInBody) {
+        int slot = block == null ? -1 : block.names.lastIndexOf(forInName);
+        return Expressions.forIn(forInName, slot, resolveIn(forInIterable), resolveIn(forInBody));
+    }
+
+    /**
+     * Collects the names a block declares directly, i.e. without descending into nested blocks or functions.
+     * The first pass collects {@code let}s and {@code for ... in} variables, the second pass collects assignments to
+     * names that are not declared anywhere in the enclosing blocks, which the interpreter used to create in the
+     * innermost scope.
+     */
+    private static final class Declarations implements Expression.Visitor<Void> {
+
+        private final Block block;
+        private final boolean assignments;
+
+        Declarations(Block block, boolean assignments) {
+            this.block = block;
+            this.assignments = assignments;
+        }
+
+        private void declare(String name) {
+            if (!block.names.contains(name)) block.names.add(name);
+        }
+
+        private Void visit(Expression expression) {
+            return expression.visit(this);
+        }
+
+        @Override
+        public Void boolLiteral(boolean boolLiteral) {
+            return null;
+        }
+
+        @Override
+        public Void breakStatement() {
+            return null;
+        }
+
+        @Override
+        public Void declFunc(List<String> funcParamNames, Expression funcBody) {
+            return null;
+        }
+
+        @Override
+        public Void ifExpr(Expression ifCondition, Expression ifBody, Optional<Expression> ifElse) {
+            visit(ifCondition);
+            visit(ifBody);
+            ifElse.ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void whileExpr(Expression whileCondition, Expression whileBody) {
+            visit(whileCondition);
+            return visit(whileBody);
+        }
+
+        @Override
+        public Void forExpr(Expression forInit, Expression forCondition, Expression forUpdate, Expression forBody) {
+            visit(forInit);
+            visit(forCondition);
+            visit(forUpdate);
+            return visit(forBody);
+        }
+
+        @Override
+        public Void returnExpr(Optional<Expression> returnExpr) {
+            returnExpr.ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void loop(Expression loopExpr) {
+            return visit(loopExpr);
+        }
+
+        @Override
+        public Void declVar(String declName, Expression declValue) {
+            if (!assignments) declare(declName);
+            return visit(declValue);
+        }
+
+        @Override
+        public Void mapInit(List<Map.Entry<Expression, Expression>> mapInitExpr) {
+            for (Map.Entry<Expression, Expression> entry : mapInitExpr) {
+                visit(entry.getKey());
+                visit(entry.getValue());
+            }
+            return null;
+        }
+
+        @Override
+        public Void listInit(List<Expression> listInitExpr) {
+            listInitExpr.forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void nopExpr() {
+            return null;
+        }
+
+        @Override
+        public Void string(String stringExpr) {
+            return null;
+        }
+
+        @Override
+        public Void number(Number numberExpr) {
+            return null;
+        }
+
+        @Override
+        public Void bracketed(List<Expression> bracketedExpr) {
+            return null;
+        }
+
+        @Override
+        public Void accessVar(String name) {
+            return null;
+        }
+
+        @Override
+        public Void callFunc(Expression callFunc, List<Expression> params) {
+            visit(callFunc);
+            params.forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void access(Expression keyOwner, Expression key, boolean method) {
+            visit(keyOwner);
+            return visit(key);
+        }
+
+        @Override
+        public Void unaryNegate(Expression expression) {
+            return visit(expression);
+        }
+
+        @Override
+        public Void operator(Expression left, Operator operator, Expression right) {
+            if (assignments) {
+                Operators.getTransformation(operator).ifPresent(transformation -> Expressions.getName(left)
+                        .filter(name -> !block.declared(name))
+                        .ifPresent(this::declare));
+            }
+            visit(left);
+            return visit(right);
+        }
+
+        @Override
+        public Void localVar(String localName, int localDepth, int localSlot) {
+            return null;
+        }
+
+        @Override
+        public Void declLocal(String declLocalName, int declLocalSlot, Expression declLocalValue) {
+            return null;
+        }
+
+        @Override
+        public Void block(List<String> blockNames, List<Expression> blockExprs) {
+            return null;
+        }
+
+        @Override
+        public Void closure(List<String> closureNames, int closureParamCount, Expression closureBody) {
+            return null;
+        }
+
+        @Override
+        public Void forIn(String forInName, int forInSlot, Expression forInIterable, Expression forInBody) {
+            if (!assignments) declare(forInName);
+            visit(forInIterable);
+            return visit(forInBody);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package macky.scripting;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A string made by {@code +} that has not been copied into one piece yet. Concatenation only links the two halves, so
+ * building a long string one piece at a time takes time linear in its length; the characters are copied once, the
+ * first time the whole string is read through {@link #toString}. A rope then drops its pieces, so that it does not
+ * keep both the pieces and the copy alive.
+ * <p>
+ * Scripts see ropes as strings. Built-ins take them through {@link ScriptObjects#getString}, collections convert them
+ * when they are used as keys and {@link CompiledScript#evaluate} returns a {@link String}, but host functions may
+ * receive a rope wherever they receive a string and should treat it as a {@link CharSequence}.
+ */
+public final class Rope implements CharSequence {
+
+    /**
+     * Results shorter than this are copied straight away, since a rope costs more than copying a short string.
+     */
+    static final int FLAT_LIMIT = 256;
+
+    /**
+     * The pieces, cleared once {@link #flat} is set. They are volatile so that a thread that sees them cleared also sees
+     * the copy.
+     */
+    private volatile CharSequence left;
+    private volatile CharSequence right;
+    private final int length;
+    private volatile String flat;
+
+    private Rope(CharSequence left, CharSequence right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    public static boolean isString(Object object) {
+        return object instanceof String || object instanceof Rope;
+    }
+
+    /**
+     * {@code a + b} for two strings or ropes.
+     */
+    public static CharSequence concat(CharSequence a, CharSequence b) {
+        if (a.length() == 0) return b;
+        if (b.length() == 0) return a;
+        long length = (long) a.length() + b.length();
+        if (length > Integer.MAX_VALUE - 8) throw new ScriptException("string too long");
+        if (length < FLAT_LIMIT) return a.toString().concat(b.toString());
+        return new Rope(a, b, (int) length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        String flat = this.flat;
+        if (flat == null) {
+            this.flat = flat = flatten();
+            left = null;
+            right = null;
+        }
+        return flat;
+    }
+
+    /**
+     * Copies the pieces from the last to the first, so that the explicit stack stays small for the usual left-leaning
+     * rope that repeated {@code s += x} builds.
+     */
+    private String flatten() {
+        char[] chars = new char[length];
+        int end = length;
+        Deque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            CharSequence piece = pending.pop();
+            if (piece instanceof Rope) {
+                Rope rope = (Rope) piece;
+                CharSequence left = rope.left;
+                CharSequence right = rope.right;
+                if (rope.flat == null && left != null && right != null) {
+                    pending.push(left);
+                    pending.push(right);
+                    continue;
+                }
+                piece = rope.flat;
+            }
+            String s = piece.toString();
+            end -= s.length();
+            s.getChars(0, s.length(), chars, end);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Rope && ((Rope) o).length == length && o.toString().equals(toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+}
@@ -1,53 +1,237 @@
 package macky.scripting;
 
-import java.math.BigDecimal;
+import macky.scripting.jfr.ScriptEvents;
+import macky.scripting.node.NodeBuilder;
+import macky.scripting.node.RootNode;
+
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * The globals of one execution. A scope is not thread-safe: give each execution its own, e.g. from
+ * {@link Prelude#newScope()}, and share host functions and configuration through the {@link Prelude} instead of a
+ * common parent scope. Scopes are cheap to create; nothing is copied from the prelude.
+ */
 public class Scope {
 
-    public static boolean TRACE = false;
+    /**
+     * Wraps nodes built from now on in {@link macky.scripting.node.TraceNode}s. Trees that were already built are not
+     * affected.
+     */
+    public static volatile boolean TRACE = false;
+
+    /**
+     * The trees {@link #evaluate(Expression)} built, so that evaluating an expression again reuses its tree and what the
+     * tree specialized itself to. Keyed by identity: an expression is never hashed or compared as a tree.
+     */
+    private static final WeakIdentityCache<Expression, RootNode> TREES = new WeakIdentityCache<>();
 
     private final Scope parent;
+    private final Prelude prelude;
     private final Map<String, Object> vars = new HashMap<>();
+    private Set<String> frozen;
+    private ExecutionLimits limits;
+    private Profiler profiler;
+    private List<Reactive> reactives;
+    private Reactive tracker;
 
-    public static final ScriptException BREAK = new ScriptException("break");
+    public static final ScriptException BREAK = ControlFlowException.BREAK;
 
     public Scope() {
-        parent = null;
+        this(Prelude.EMPTY);
+    }
+
+    public Scope(Prelude prelude) {
+        this.parent = null;
+        this.prelude = prelude;
+        this.limits = ExecutionLimits.NONE;
     }
 
     public Scope(Scope parent) {
         this.parent = parent;
+        this.prelude = parent.prelude;
+        this.limits = parent.limits;
+        this.profiler = parent.profiler;
+    }
+
+    public Prelude getPrelude() {
+        return prelude;
     }
 
+    public ExecutionLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Bounds every evaluation that runs in this scope from now on. Scopes pushed from this one start with the same
+     * limits.
+     */
+    public void setLimits(ExecutionLimits limits) {
+        this.limits = limits;
+    }
 
     public void let(String name, Object value) {
+        checkNotFrozen(name);
+        if (tracker != null) value = tracker.write(name, value);
+        vars.put(name, value);
+    }
+
+    /**
+     * Binds a global that scripts may read but not reassign. The embedder also promises not to change the value or,
+     * for maps and lists, its contents, so {@link CompiledScript#compile(String, Scope)} may fold reads of it into the
+     * script.
+     */
+    public void freeze(String name, Object value) {
+        checkNotFrozen(name);
         vars.put(name, value);
+        if (frozen == null) frozen = new HashSet<>();
+        frozen.add(name);
+    }
+
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Profiles every compiled script evaluated in this scope from now on, or stops profiling if {@code profiler} is
+     * null. Scopes pushed from this one use the same profiler.
+     */
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public boolean isFrozen(String name) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            if (scope.vars.containsKey(name)) return scope.frozen != null && scope.frozen.contains(name);
+        }
+        return prelude.has(name);
+    }
+
+    /**
+     * The frozen and prelude globals visible from this scope. A name shadowed by a nearer binding that is not frozen is
+     * left out.
+     */
+    public Map<String, Object> getFrozen() {
+        Map<String, Object> result = new HashMap<>();
+        Set<String> shadowed = new HashSet<>();
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            for (Map.Entry<String, Object> entry : scope.vars.entrySet()) {
+                if (!shadowed.add(entry.getKey())) continue;
+                if (scope.frozen != null && scope.frozen.contains(entry.getKey())) result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String name : prelude.getNames()) {
+            if (!shadowed.contains(name)) result.put(name, prelude.get(name));
+        }
+        return result;
+    }
+
+    private void checkNotFrozen(String name) {
+        if (frozen != null && frozen.contains(name)) throw new ScriptException("cannot assign to frozen variable " + name);
     }
 
     public boolean has(String name) {
-        if (vars.containsKey(name)) return true;
-        else if (parent != null) return parent.has(name);
-        else return false;
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            if (scope.vars.containsKey(name)) return true;
+        }
+        return prelude.has(name);
     }
 
     public void set(String name, Object value) {
-        if (vars.containsKey(name)) {
-            vars.put(name, value);
-        } else if (parent != null && parent.has(name)) {
-            parent.set(name, value);
-        } else {
-            vars.put(name, value);
+        if (tracker != null) value = tracker.write(name, value);
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            if (scope.vars.containsKey(name)) {
+                scope.checkNotFrozen(name);
+                scope.vars.put(name, value);
+                return;
+            }
         }
+        if (prelude.has(name)) throw new ScriptException("cannot assign to frozen variable " + name);
+        vars.put(name, value);
     }
 
     public Object get(String name) throws ScriptException {
-        if (vars.containsKey(name)) return vars.get(name);
-        else if (parent != null) return parent.get(name);
-        else throw new ScriptException("unknown variable " + name);
+        Object value = lookup(name);
+        return tracker == null ? value : tracker.read(name, value);
+    }
+
+    /**
+     * Reads a global from a site that {@code globals} numbers {@code index}, for scopes that resolve the globals of a
+     * script ahead of time.
+     */
+    Object get(Globals globals, int index, String name) {
+        return get(name);
+    }
+
+    private Object lookup(String name) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Object value = scope.vars.get(name);
+            if (value != null || scope.vars.containsKey(name)) return value;
+        }
+        if (prelude.has(name)) return prelude.get(name);
+        throw new ScriptException("unknown variable " + name);
+    }
+
+    /**
+     * Rebinds a global like {@link #set}, then brings the {@link Reactive} evaluations in this scope up to date:
+     * each recomputes the top-level expressions that read the global, or an entry of it, and saw a different value
+     * than it has now, and in turn those that read what they recompute. Nothing else is evaluated again. If an
+     * evaluation fails, the others are still brought up to date and the first error is thrown.
+     */
+    public void update(String name, Object value) {
+        set(name, value);
+        if (reactives == null) return;
+        Set<String> changed = new LinkedHashSet<>();
+        changed.add(name);
+        RuntimeException failure = null;
+        for (Reactive reactive : new ArrayList<>(reactives)) {
+            try {
+                reactive.update(changed);
+            } catch (RuntimeException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    void attach(Reactive reactive) {
+        if (reactives == null) reactives = new ArrayList<>();
+        reactives.add(reactive);
+    }
+
+    void detach(Reactive reactive) {
+        if (reactives != null) reactives.remove(reactive);
+    }
+
+    /**
+     * Reports the globals read and written through this scope to {@code tracker}, or stops if it is null.
+     */
+    void track(Reactive tracker) {
+        this.tracker = tracker;
+    }
+
+    /**
+     * The value of a global as it is now, without reporting the read, or {@code absent} if there is none.
+     */
+    Object peek(String name, Object absent) {
+        return has(name) ? lookup(name) : absent;
+    }
+
+    int size() {
+        return vars.size();
+    }
+
+    /**
+     * Drops the globals bound in this scope itself.
+     */
+    void clear() {
+        vars.clear();
+        frozen = null;
     }
 
     public Scope push() {
@@ -55,141 +239,13 @@ public class Scope {
     }
 
     public Object evaluate(Expression expression) {
-        Object debug = Expressions.caseOf(expression)
-                .boolLiteral(b -> (Object) b)
-                .breakStatement(() -> {
-                    throw new ScriptException("break statements are not yet supported");
-                })
-                .declFunc((funcParamNames, funcBody) -> {
-                    return new ScriptFunction() {
-                        @Override
-                        public Object call(List<Object> params) {
-                            ScriptFunction.argCount(params, funcParamNames.size());
-                            Scope scope = push();
-                            for (int i = 0; i < funcParamNames.size(); i++) {
-                                scope.let(funcParamNames.get(i), params.get(i));
-                            }
-                            try {
-                                return scope.evaluate(funcBody);
-                            } catch (ScriptReturnException scriptReturnException) {
-                                return scriptReturnException.getReturnValue();
-                            }
-                        }
-                    };
-                })
-                .ifExpr((ifCondition, ifBody, ifElse) -> {
-                    if (ScriptObjects.asBoolean(evaluate(ifCondition))) {
-                        return push().evaluate(ifBody);
-                    } else return ifElse.map(value -> push().evaluate(value)).orElse(null);
-                })
-                .whileExpr((whileCondition, whileBody) -> {
-                    Object last = null;
-                    while (ScriptObjects.asBoolean(evaluate(whileCondition))) {
-                        last = push().evaluate(whileBody);
-                    }
-                    return last;
-                })
-                .forExpr((forInit, forCondition, forUpdate, forBody) -> {
-                    evaluate(forInit);
-                    Object last = null;
-                    while (ScriptObjects.asBoolean(evaluate(forCondition))) {
-                        last = push().evaluate(forBody);
-                        evaluate(forUpdate);
-                    }
-                    return last;
-                })
-                .returnExpr(expr -> {
-                    if (expr.isPresent()) {
-                        throw new ScriptReturnException(evaluate(expr.get()));
-                    }
-                    else throw new ScriptReturnException(null);
-                })
-                .loop(loopBody -> {
-                    while (true) {
-                        push().evaluate(loopBody);
-                    }
-                })
-                .declVar((declName, declValue) -> {
-                    Object value = evaluate(declValue);
-                    let(declName, value);
-                    return value;
-                })
-                .mapInit(list -> {
-                    Map<Object, Object> res = new HashMap<>();
-                    for (Map.Entry<Expression, Expression> entry : list) {
-                        res.put(evaluate(entry.getKey()), evaluate(entry.getValue()));
-                    }
-                    return res;
-                })
-                .listInit(list -> {
-                    List<Object> res = new ArrayList<>();
-                    for (Expression entry : list) {
-                        res.add(evaluate(entry));
-                    }
-                    return res;
-                })
-                .nopExpr(() -> null)
-                .string(string -> string)
-                .number(number -> number)
-                .bracketed(exprs -> {
-                    Object last = null;
-                    Scope scope = push();
-                    for (Expression expr : exprs) {
-                        last = scope.evaluate(expr);
-                    }
-                    return last;
-                })
-                .accessVar(this::get)
-                .callFunc((callFunc, params) -> {
-                    List<Object> params1 = new ArrayList<>();
-                    for (Expression param : params) {
-                        params1.add(evaluate(param));
-                    }
-                    return ScriptObjects.getFunction(evaluate(callFunc)).call(params1);
-                })
-                .access((keyOwner, key, method) -> ScriptObjects.access(evaluate(keyOwner), evaluate(key), method))
-                .unaryNegate(expr -> {
-                    Object val = evaluate(expr);
-                    if (val instanceof BigDecimal) {
-                        return ((BigDecimal) val).negate();
-                    } else {
-                        throw new ScriptException("cannot negate a non-number");
-                    }
-                })
-                .operator((left, operator, right) -> Operators.caseOf(operator)
-                        .basic(basicOperator -> basicOperator.getOp().call(this, evaluate(left), right))
-                        .assignment(basicOperator -> Expressions.caseOf(left)
-                                .accessVar(varName -> {
-                                    Object result;
-                                    if (basicOperator.isPresent())
-                                        result = basicOperator.get().getOp().call(this, get(varName), right);
-                                    else result = evaluate(right);
-                                    set(varName, result);
-                                    return result;
-                                })
-                                .access((keyOwner, key, method) -> {
-                                    if(method) {
-                                        throw new ScriptException("cannot assign to a method access");
-                                    }
-                                    Object owner = evaluate(keyOwner);
-                                    Object realKey = evaluate(key);
-                                    Object result;
-                                    if (basicOperator.isPresent())
-                                        result = basicOperator.get().getOp().call(this, ScriptObjects.access(owner, realKey, false), right);
-                                    else result = evaluate(right);
-                                    ScriptObjects.assign(owner, realKey, result);
-                                    return result;
-                                })
-                                .otherwise(() -> {
-                                    throw new ScriptException("cannot assign to non-reference");
-                                })
-                        )
-                )
-                ;
-        if(TRACE) {
-            System.out.println("evaluated `" + expression.toCode() + "` => " + debug);
+        try {
+            if (TRACE) return NodeBuilder.build(Resolver.resolve(expression)).execute(this);
+            return TREES.get(expression, key -> NodeBuilder.build(Resolver.resolve(key))).execute(this);
+        } catch (ScriptException e) {
+            ScriptEvents.error(e);
+            throw e;
         }
-        return debug;
     }
 
 }
@@ -0,0 +1,113 @@
+package macky.scripting;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded LRU cache. Lookups go through a concurrent map and never block; the recency order is kept under a lock
+ * that a hit only tries to take, so under contention some hits are not recorded and eviction becomes approximately
+ * LRU. Loads run outside the lock, so two threads missing on the same key may both load it; the first one to finish
+ * is kept.
+ */
+final class ScriptCache<K, V> {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+
+    private final Map<K, V> values = new ConcurrentHashMap<>();
+    private final LinkedHashMap<K, V> order = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ScriptCache(int maxEntries, long maxWeight, ToLongFunction<V> weigher) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    V get(K key, Function<K, V> loader) {
+        V value = values.get(key);
+        if (value != null) {
+            hits.increment();
+            if (lock.tryLock()) {
+                try {
+                    order.get(key);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return value;
+        }
+        misses.increment();
+        V loaded = loader.apply(key);
+        long loadedWeight = weigher.applyAsLong(loaded);
+        if (maxEntries <= 0 || loadedWeight > maxWeight) return loaded;
+        lock.lock();
+        try {
+            V existing = order.get(key);
+            if (existing != null) return existing;
+            order.put(key, loaded);
+            values.put(key, loaded);
+            weight += loadedWeight;
+            Iterator<Map.Entry<K, V>> eldest = order.entrySet().iterator();
+            while (order.size() > maxEntries || weight > maxWeight) {
+                Map.Entry<K, V> entry = eldest.next();
+                values.remove(entry.getKey());
+                weight -= weigher.applyAsLong(entry.getValue());
+                eldest.remove();
+                evictions.increment();
+            }
+            return loaded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            values.clear();
+            order.clear();
+            weight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        return values.size();
+    }
+
+    long weight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+}
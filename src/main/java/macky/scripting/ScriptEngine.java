@@ -0,0 +1,174 @@
+package macky.scripting;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compiles scripts once and hands out the cached result for any later request with the same source text. An engine is
+ * thread-safe, and so are the {@link CompiledScript}s it returns. Scripts are specialized for the engine's
+ * {@link Prelude}, so evaluate them in scopes from {@link #newScope()}.
+ */
+public final class ScriptEngine {
+
+    private final ScriptCache<String, CompiledScript> cache;
+    private final Prelude prelude;
+    private final ExecutionLimits limits;
+    private final Interpreter interpreter;
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder compilations = new LongAdder();
+    private final LatencyHistogram evaluationTime = new LatencyHistogram();
+    private final LatencyHistogram compileTime = new LatencyHistogram();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private ScriptEngine(Builder builder) {
+        this.cache = new ScriptCache<>(builder.maxEntries, builder.maxWeight, script -> script.getSource().length());
+        this.prelude = builder.prelude;
+        this.limits = builder.limits;
+        this.interpreter = builder.interpreter;
+    }
+
+    public CompiledScript compile(String source) {
+        return cache.get(source, this::load);
+    }
+
+    private CompiledScript load(String source) {
+        long start = System.nanoTime();
+        try {
+            return prelude.isEmpty() ? CompiledScript.compile(source, interpreter) : CompiledScript.compile(source, prelude.newScope(), interpreter);
+        } catch (RuntimeException e) {
+            error(e);
+            throw e;
+        } finally {
+            compilations.increment();
+            compileTime.record(System.nanoTime() - start);
+        }
+    }
+
+    public Object evaluate(Scope scope, String source) {
+        return evaluate(scope, compile(source));
+    }
+
+    /**
+     * Evaluates a script, counting it in this engine's {@link #getMetrics() metrics}.
+     */
+    public Object evaluate(Scope scope, CompiledScript script) {
+        long start = System.nanoTime();
+        try {
+            return script.evaluate(scope);
+        } catch (RuntimeException e) {
+            error(e);
+            throw e;
+        } finally {
+            evaluations.increment();
+            evaluationTime.record(System.nanoTime() - start);
+        }
+    }
+
+    private void error(RuntimeException e) {
+        errors.computeIfAbsent(e.getClass().getSimpleName(), type -> new LongAdder()).increment();
+    }
+
+    public ScriptMetrics getMetrics() {
+        Map<String, Long> errorCounts = new HashMap<>();
+        errors.forEach((type, count) -> errorCounts.put(type, count.sum()));
+        return new ScriptMetrics(evaluations.sum(), compilations.sum(), evaluationTime.snapshot(), compileTime.snapshot(),
+                cache.hits(), cache.misses(), errorCounts);
+    }
+
+    /**
+     * Evaluates a script in a fresh scope.
+     */
+    public Object evaluate(String source) {
+        return evaluate(newScope(), source);
+    }
+
+    public Scope newScope() {
+        Scope scope = prelude.newScope();
+        scope.setLimits(limits);
+        return scope;
+    }
+
+    public Prelude getPrelude() {
+        return prelude;
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    public long getCacheWeight() {
+        return cache.weight();
+    }
+
+    public long getCacheHits() {
+        return cache.hits();
+    }
+
+    public long getCacheMisses() {
+        return cache.misses();
+    }
+
+    public long getCacheEvictions() {
+        return cache.evictions();
+    }
+
+    public static final class Builder {
+        private int maxEntries = 1024;
+        private long maxWeight = Long.MAX_VALUE;
+        private Prelude prelude = Prelude.EMPTY;
+        private ExecutionLimits limits = ExecutionLimits.NONE;
+        private Interpreter interpreter = Interpreter.TREE;
+
+        /**
+         * The most scripts kept at once. Zero disables caching.
+         */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * The most source characters kept at once, summed over all cached scripts.
+         */
+        public Builder maxWeight(long maxWeight) {
+            this.maxWeight = maxWeight;
+            return this;
+        }
+
+        /**
+         * The globals every script run by this engine can see.
+         */
+        public Builder prelude(Prelude prelude) {
+            this.prelude = prelude;
+            return this;
+        }
+
+        /**
+         * The limits of scopes from {@link ScriptEngine#newScope()}, and so of every evaluation through
+         * {@link ScriptEngine#evaluate(String)} and {@link ScriptExecutor#submit(String, String)}.
+         */
+        public Builder limits(ExecutionLimits limits) {
+            this.limits = limits;
+            return this;
+        }
+
+        /**
+         * The engine the scripts it compiles run on.
+         */
+        public Builder interpreter(Interpreter interpreter) {
+            this.interpreter = interpreter;
+            return this;
+        }
+
+        public ScriptEngine build() {
+            return new ScriptEngine(this);
+        }
+    }
+
+}
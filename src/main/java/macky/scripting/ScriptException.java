@@ -6,4 +6,12 @@ public class ScriptException extends RuntimeException {
         super(message);
     }
 
+    public ScriptException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    protected ScriptException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
+
 }
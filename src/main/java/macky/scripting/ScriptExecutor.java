@@ -0,0 +1,240 @@
+package macky.scripting;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs evaluations asynchronously, one task per evaluation, on behalf of tenants. A tenant runs at most
+ * {@link Builder#maxConcurrentPerTenant} evaluations at once; further submissions wait in a per-tenant FIFO queue, so one
+ * busy tenant cannot take the slots of the others. The queues are bounded, and a submission that does not fit fails
+ * with a {@link RejectedExecutionException} right away instead of piling up.
+ * <p>
+ * Evaluations run on virtual threads when the runtime has them, so host functions that block only park their own
+ * thread. On older runtimes they run on a {@link ForkJoinPool}; host functions wrapped with
+ * {@link ScriptFunction#blocking} let that pool add workers while they block.
+ */
+public final class ScriptExecutor implements AutoCloseable {
+
+    private final ScriptEngine engine;
+    private final ExecutorService executor;
+    private final int maxConcurrentPerTenant;
+    private final int maxQueuedPerTenant;
+    private final int maxQueued;
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition idle = lock.newCondition();
+    private volatile boolean closed;
+
+    private ScriptExecutor(Builder builder) {
+        this.engine = builder.engine;
+        this.executor = builder.executor != null ? builder.executor : newExecutor();
+        this.maxConcurrentPerTenant = builder.maxConcurrentPerTenant;
+        this.maxQueuedPerTenant = builder.maxQueuedPerTenant;
+        this.maxQueued = builder.maxQueued;
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()} where it exists, looked up reflectively so that this class
+     * still runs on runtimes without virtual threads.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) MethodHandles.publicLookup()
+                    .findStatic(java.util.concurrent.Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class))
+                    .invoke();
+        } catch (Throwable e) {
+            return new ForkJoinPool(Runtime.getRuntime().availableProcessors(), ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        }
+    }
+
+    private static final class Tenant {
+        private final ArrayDeque<Task> pending = new ArrayDeque<>();
+        private int running;
+    }
+
+    private final class Task implements Runnable {
+        private final String tenant;
+        private final CompiledScript script;
+        private final Scope scope;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private boolean start;
+        private boolean rejected;
+
+        Task(String tenant, CompiledScript script, Scope scope) {
+            this.tenant = tenant;
+            this.script = script;
+            this.scope = scope;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result.complete(engine.evaluate(scope, script));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                finish(this);
+            }
+        }
+    }
+
+    public CompletableFuture<Object> submit(String tenant, String source) {
+        return submit(tenant, source, engine.newScope());
+    }
+
+    public CompletableFuture<Object> submit(String tenant, String source, Scope scope) {
+        CompiledScript script;
+        try {
+            script = engine.compile(source);
+        } catch (ScriptException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return submit(tenant, script, scope);
+    }
+
+    public CompletableFuture<Object> submit(String tenant, CompiledScript script, Scope scope) {
+        if (closed) return CompletableFuture.failedFuture(new RejectedExecutionException("executor is closed"));
+        Task task = new Task(tenant, script, scope);
+        inFlight.incrementAndGet();
+        tenants.compute(tenant, (id, state) -> {
+            if (state == null) state = new Tenant();
+            if (state.running < maxConcurrentPerTenant) {
+                state.running++;
+                task.start = true;
+            } else if (state.pending.size() < maxQueuedPerTenant && queued.incrementAndGet() <= maxQueued) {
+                state.pending.add(task);
+            } else {
+                if (state.pending.size() < maxQueuedPerTenant) queued.decrementAndGet();
+                task.rejected = true;
+            }
+            return state.running == 0 && state.pending.isEmpty() ? null : state;
+        });
+        if (task.rejected) {
+            done();
+            task.result.completeExceptionally(new RejectedExecutionException("queue for tenant " + tenant + " is full"));
+        } else if (task.start) {
+            dispatch(task);
+        }
+        return task.result;
+    }
+
+    private void dispatch(Task task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.result.completeExceptionally(e);
+            finish(task);
+        }
+    }
+
+    private void finish(Task task) {
+        Task[] next = new Task[1];
+        tenants.compute(task.tenant, (id, state) -> {
+            next[0] = state.pending.poll();
+            if (next[0] != null) queued.decrementAndGet();
+            else state.running--;
+            return state.running == 0 && state.pending.isEmpty() ? null : state;
+        });
+        done();
+        if (next[0] != null) dispatch(next[0]);
+    }
+
+    private void done() {
+        if (inFlight.decrementAndGet() == 0 && closed) {
+            lock.lock();
+            try {
+                idle.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Submitted evaluations that have not completed yet, running or queued.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Stops accepting submissions and waits until everything already submitted has completed. If the calling thread is
+     * interrupted, it stops waiting and keeps its interrupt status.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        lock.lock();
+        try {
+            while (inFlight.get() > 0) {
+                idle.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        executor.shutdown();
+    }
+
+    public static final class Builder {
+        private ScriptEngine engine;
+        private ExecutorService executor;
+        private int maxConcurrentPerTenant = 64;
+        private int maxQueuedPerTenant = 1024;
+        private int maxQueued = 65536;
+
+        public Builder engine(ScriptEngine engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        /**
+         * Runs evaluations on the given executor instead of virtual threads. The executor is shut down on close.
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Builder maxConcurrentPerTenant(int maxConcurrentPerTenant) {
+            this.maxConcurrentPerTenant = maxConcurrentPerTenant;
+            return this;
+        }
+
+        public Builder maxQueuedPerTenant(int maxQueuedPerTenant) {
+            this.maxQueuedPerTenant = maxQueuedPerTenant;
+            return this;
+        }
+
+        /**
+         * The most evaluations waiting for a slot, summed over all tenants.
+         */
+        public Builder maxQueued(int maxQueued) {
+            this.maxQueued = maxQueued;
+            return this;
+        }
+
+        public ScriptExecutor build() {
+            if (engine == null) engine = new ScriptEngine.Builder().build();
+            return new ScriptExecutor(this);
+        }
+    }
+
+}
@@ -1,17 +1,178 @@
 package macky.scripting;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public abstract class ScriptFunction {
 
     public abstract Object call(List<Object> params);
 
+    /*
+     * Fixed-arity entry points. Call sites use these so that script functions can bind their parameters without
+     * building a list; functions that only implement call(List) get one built for them here.
+     */
+
+    public Object call0() {
+        return call(new ArrayList<>(0));
+    }
+
+    public Object call1(Object a) {
+        List<Object> params = new ArrayList<>(1);
+        params.add(a);
+        return call(params);
+    }
+
+    public Object call2(Object a, Object b) {
+        List<Object> params = new ArrayList<>(2);
+        params.add(a);
+        params.add(b);
+        return call(params);
+    }
+
+    public Object call3(Object a, Object b, Object c) {
+        List<Object> params = new ArrayList<>(3);
+        params.add(a);
+        params.add(b);
+        params.add(c);
+        return call(params);
+    }
+
+    public Object callN(Object[] args) {
+        return call(new ArrayList<>(Arrays.asList(args)));
+    }
+
+    /**
+     * A copy of this function for a task that calls it on another thread while other tasks call it too, or null if
+     * calls must not run concurrently, which is the default. Script functions that change nothing but their own locals
+     * and call no other function return a copy charged to a fork of their evaluation's budget; host functions opt in
+     * with {@link #pure}.
+     */
+    public ScriptFunction fork() {
+        return null;
+    }
+
+    /**
+     * Called on a {@link #fork} once its task is done.
+     */
+    public void join() {
+
+    }
+
     @Override
     public String toString() {
         return "<function>";
     }
 
+    /**
+     * Marks a host function as free of side effects and safe to call from several threads at once, so that the
+     * parallel list functions may split their work across threads.
+     */
+    public static ScriptFunction pure(ScriptFunction function) {
+        return new ScriptFunction() {
+            @Override
+            public Object call(List<Object> params) {
+                return function.call(params);
+            }
+
+            @Override
+            public Object call0() {
+                return function.call0();
+            }
+
+            @Override
+            public Object call1(Object a) {
+                return function.call1(a);
+            }
+
+            @Override
+            public Object call2(Object a, Object b) {
+                return function.call2(a, b);
+            }
+
+            @Override
+            public Object call3(Object a, Object b, Object c) {
+                return function.call3(a, b, c);
+            }
+
+            @Override
+            public Object callN(Object[] args) {
+                return function.callN(args);
+            }
+
+            @Override
+            public ScriptFunction fork() {
+                return this;
+            }
+        };
+    }
+
+    /**
+     * A host function that may block, e.g. on I/O.
+     */
+    public interface Blocking {
+        Object call(List<Object> params) throws Exception;
+    }
+
+    /**
+     * Wraps a host function that may block. On a virtual thread the call simply parks the thread. On a
+     * {@link ForkJoinPool} worker, such as the fallback pool of {@link ScriptExecutor}, the pool is told that the worker
+     * is blocked so it can start another one and keep its parallelism.
+     */
+    public static ScriptFunction blocking(Blocking blocking) {
+        return new ScriptFunction() {
+            @Override
+            public Object call(List<Object> params) {
+                try {
+                    if (!ForkJoinTask.inForkJoinPool()) return blocking.call(params);
+                    BlockingCall call = new BlockingCall(blocking, params);
+                    ForkJoinPool.managedBlock(call);
+                    return call.result;
+                } catch (ScriptException e) {
+                    throw e;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ScriptException("interrupted", e);
+                } catch (Exception e) {
+                    throw new ScriptException("host call failed: " + e.getMessage(), e);
+                }
+            }
+        };
+    }
+
+    private static final class BlockingCall implements ForkJoinPool.ManagedBlocker {
+        private final Blocking blocking;
+        private final List<Object> params;
+        private Object result;
+        private boolean done;
+
+        BlockingCall(Blocking blocking, List<Object> params) {
+            this.blocking = blocking;
+            this.params = params;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            try {
+                result = blocking.call(params);
+            } catch (InterruptedException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ScriptException("host call failed: " + e.getMessage(), e);
+            }
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+    }
+
     public interface Numeric {
         Object call(BigDecimal a, BigDecimal b);
     }
@@ -24,26 +185,31 @@ public abstract class ScriptFunction {
         }
     }
 
-    static <T> void minArgCount(List<T> params, int count) {
+    public static <T> void minArgCount(List<T> params, int count) {
         if(params.size() < count) throw new ScriptException("invalid arg count");
     }
 
-    static <T> void maxArgCount(List<T> params, int count) {
+    public static <T> void maxArgCount(List<T> params, int count) {
         if(params.size() > count) throw new ScriptException("invalid arg count");
     }
 
-    static <T> void argCount(List<T> params, int count) {
+    public static <T> void argCount(List<T> params, int count) {
         minArgCount(params, count);
         maxArgCount(params, count);
     }
 
-    static ScriptFunction from(Binary binary) {
+    public static ScriptFunction from(Binary binary) {
         return new ScriptFunction() {
             @Override
             public Object call(List<Object> params) {
                 argCount(params, 2);
                 return binary.call(params.get(0), params.get(1));
             }
+
+            @Override
+            public Object call2(Object a, Object b) {
+                return binary.call(a, b);
+            }
         };
     }
 
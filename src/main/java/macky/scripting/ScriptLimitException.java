@@ -0,0 +1,28 @@
+package macky.scripting;
+
+/**
+ * Thrown when an evaluation exceeds one of its {@link ExecutionLimits}.
+ */
+public final class ScriptLimitException extends ScriptException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Limit {
+        STEPS,
+        TIME,
+        COLLECTION_SIZE,
+        ALLOCATIONS
+    }
+
+    private final Limit limit;
+
+    public ScriptLimitException(Limit limit, String message) {
+        super(message);
+        this.limit = limit;
+    }
+
+    public Limit getLimit() {
+        return limit;
+    }
+
+}
@@ -0,0 +1,83 @@
+package macky.scripting;
+
+import java.util.Map;
+
+/**
+ * What a {@link ScriptEngine} has done since it was built, as of one moment. Counters only grow, so rates come from
+ * the difference between two snapshots, e.g. {@link #getEvaluationsPerSecond(ScriptMetrics)}.
+ */
+public final class ScriptMetrics {
+
+    private final long timestamp;
+    private final long evaluations;
+    private final long compilations;
+    private final LatencyHistogram.Snapshot evaluationTime;
+    private final LatencyHistogram.Snapshot compileTime;
+    private final long cacheHits;
+    private final long cacheMisses;
+    private final Map<String, Long> errors;
+
+    ScriptMetrics(long evaluations, long compilations, LatencyHistogram.Snapshot evaluationTime, LatencyHistogram.Snapshot compileTime,
+                  long cacheHits, long cacheMisses, Map<String, Long> errors) {
+        this.timestamp = System.nanoTime();
+        this.evaluations = evaluations;
+        this.compilations = compilations;
+        this.evaluationTime = evaluationTime;
+        this.compileTime = compileTime;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.errors = Map.copyOf(errors);
+    }
+
+    /**
+     * When the snapshot was taken, in {@link System#nanoTime()} units.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public double getEvaluationsPerSecond(ScriptMetrics earlier) {
+        long nanos = timestamp - earlier.timestamp;
+        return nanos <= 0 ? 0 : (evaluations - earlier.evaluations) * 1e9 / nanos;
+    }
+
+    public LatencyHistogram.Snapshot getEvaluationTime() {
+        return evaluationTime;
+    }
+
+    /**
+     * Scripts parsed and built, i.e. cache misses, whether or not the result fit in the cache.
+     */
+    public long getCompilations() {
+        return compilations;
+    }
+
+    public LatencyHistogram.Snapshot getCompileTime() {
+        return compileTime;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public double getCacheHitRate() {
+        long lookups = cacheHits + cacheMisses;
+        return lookups == 0 ? 0 : (double) cacheHits / lookups;
+    }
+
+    /**
+     * Failed compilations and evaluations by the simple class name of the exception.
+     */
+    public Map<String, Long> getErrors() {
+        return errors;
+    }
+
+}
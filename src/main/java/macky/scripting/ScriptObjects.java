@@ -2,6 +2,8 @@ package macky.scripting;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -12,7 +14,8 @@ public class ScriptObjects {
         @Override
         public Object call(List<Object> params) {
             argCount(params, 1);
-            return new BigDecimal(getString(params.get(0)).length());
+            Object string = params.get(0);
+            return (long) (string instanceof Rope ? ((Rope) string).length() : getString(string).length());
         }
     };
 
@@ -21,8 +24,8 @@ public class ScriptObjects {
         public Object call(List<Object> params) {
             argCount(params, 3);
             String v = getString(params.get(0));
-            int a = getNumber(params.get(1)).intValue();
-            int b = getNumber(params.get(2)).intValue();
+            int a = getInt(params.get(1));
+            int b = getInt(params.get(2));
             try {
                 return v.substring(a, b);
             } catch (StringIndexOutOfBoundsException e) {
@@ -36,7 +39,7 @@ public class ScriptObjects {
         public Object call(List<Object> params) {
             argCount(params, 2);
             String v = getString(params.get(0));
-            int a = getNumber(params.get(1)).intValue();
+            int a = getInt(params.get(1));
             try {
                 return v.substring(0, a);
             } catch (StringIndexOutOfBoundsException e) {
@@ -50,7 +53,7 @@ public class ScriptObjects {
         public Object call(List<Object> params) {
             argCount(params, 2);
             String v = getString(params.get(0));
-            int a = getNumber(params.get(1)).intValue();
+            int a = getInt(params.get(1));
             try {
                 return v.substring(v.length() - a);
             } catch (StringIndexOutOfBoundsException e) {
@@ -64,7 +67,7 @@ public class ScriptObjects {
         public Object call(List<Object> params) {
             argCount(params, 2);
             String v = getString(params.get(0));
-            int a = getNumber(params.get(1)).intValue();
+            int a = getInt(params.get(1));
             try {
                 return "" + v.charAt(a);
             } catch (StringIndexOutOfBoundsException e) {
@@ -73,6 +76,42 @@ public class ScriptObjects {
         }
     };
 
+    public static final ScriptFunction STRING_BUILDER = new ScriptFunction() {
+        @Override
+        public Object call(List<Object> params) {
+            argCount(params, 0);
+            return new StringBuilder();
+        }
+    };
+
+    /**
+     * {@code append(builder, strings...)}. Returns the builder.
+     */
+    public static final ScriptFunction STRING_APPEND = new ScriptFunction() {
+        @Override
+        public Object call(List<Object> params) {
+            minArgCount(params, 1);
+            StringBuilder builder = getStringBuilder(params.get(0));
+            for (int i = 1; i < params.size(); i++) {
+                append(builder, params.get(i));
+            }
+            return builder;
+        }
+
+        @Override
+        public Object call2(Object a, Object b) {
+            return append(getStringBuilder(a), b);
+        }
+    };
+
+    public static final ScriptFunction STRING_BUILD = new ScriptFunction() {
+        @Override
+        public Object call(List<Object> params) {
+            argCount(params, 1);
+            return getStringBuilder(params.get(0)).toString();
+        }
+    };
+
     public static final ScriptFunction MAP_KEYS = new ScriptFunction() {
         @Override
         public Object call(List<Object> params) {
@@ -85,7 +124,7 @@ public class ScriptObjects {
         @Override
         public Object call(List<Object> params) {
             argCount(params, 1);
-            return new BigDecimal(getMap(params.get(0)).mapSize());
+            return (long) getMap(params.get(0)).mapSize();
         }
     };
 
@@ -93,20 +132,215 @@ public class ScriptObjects {
         @Override
         public Object call(List<Object> params) {
             argCount(params, 1);
-            return new BigDecimal(getList(params.get(0)).listSize());
+            return (long) getList(params.get(0)).listSize();
+        }
+    };
+
+    public static final ScriptFunction LIST_SUM = new ScriptFunction() {
+        @Override
+        public Object call(List<Object> params) {
+            argCount(params, 1);
+            return PackedList.sum(getElements(params.get(0)));
+        }
+    };
+
+    public static final ScriptFunction LIST_MIN = new ScriptFunction() {
+        @Override
+        public Object call(List<Object> params) {
+            argCount(params, 1);
+            return PackedList.min(getElements(params.get(0)));
+        }
+    };
+
+    public static final ScriptFunction LIST_MAX = new ScriptFunction() {
+        @Override
+        public Object call(List<Object> params) {
+            argCount(params, 1);
+            return PackedList.max(getElements(params.get(0)));
+        }
+    };
+
+    public static final ScriptFunction LIST_DOT = new ScriptFunction() {
+        @Override
+        public Object call(List<Object> params) {
+            argCount(params, 2);
+            return PackedList.dot(getElements(params.get(0)), getElements(params.get(1)));
+        }
+    };
+
+    public static final ScriptFunction LIST_SCALE = new ScriptFunction() {
+        @Override
+        public Object call(List<Object> params) {
+            argCount(params, 2);
+            return PackedList.scale(getElements(params.get(0)), params.get(1));
+        }
+    };
+
+    public static final ScriptFunction LIST_SLICE = new ScriptFunction() {
+        @Override
+        public Object call(List<Object> params) {
+            argCount(params, 3);
+            return PackedList.slice(getElements(params.get(0)), getInt(params.get(1)), getInt(params.get(2)));
         }
     };
 
+    /**
+     * {@code range(end)}, {@code range(start, end)} or {@code range(start, end, step)}: a {@link Range} of the
+     * integers from start, 0 by default, up to but not including end, step apart, 1 by default.
+     */
+    public static final ScriptFunction RANGE = new ScriptFunction() {
+        @Override
+        public Object call(List<Object> params) {
+            minArgCount(params, 1);
+            maxArgCount(params, 3);
+            if (params.size() == 1) return new Range(0, getLong(params.get(0)), 1);
+            long step = params.size() == 3 ? getLong(params.get(2)) : 1;
+            return new Range(getLong(params.get(0)), getLong(params.get(1)), step);
+        }
+    };
+
+    /*
+     * Higher-order list functions, see ListFunctions. The PARALLEL_ variants split long lists across threads when the
+     * function argument can be forked.
+     */
+
+    /**
+     * {@code map(list, function)}: a list of the results of calling the function with each element.
+     */
+    public static final ScriptFunction LIST_MAP = ScriptFunction.from((list, function) -> ListFunctions.map(list, getFunction(function), false));
+
+    public static final ScriptFunction PARALLEL_MAP = ScriptFunction.from((list, function) -> ListFunctions.map(list, getFunction(function), true));
+
+    /**
+     * {@code filter(list, predicate)}: a list of the elements for which the predicate is true.
+     */
+    public static final ScriptFunction LIST_FILTER = ScriptFunction.from((list, predicate) -> ListFunctions.filter(list, getFunction(predicate), false));
+
+    public static final ScriptFunction PARALLEL_FILTER = ScriptFunction.from((list, predicate) -> ListFunctions.filter(list, getFunction(predicate), true));
+
+    /**
+     * {@code reduce(list, function)} or {@code reduce(list, function, initial)}: folds the elements from the left with
+     * a function of two arguments, starting from the initial value or else from the first element.
+     */
+    public static final ScriptFunction LIST_REDUCE = reduce(false);
+
+    /**
+     * Like {@link #LIST_REDUCE}, for an associative function.
+     */
+    public static final ScriptFunction PARALLEL_REDUCE = reduce(true);
+
+    /**
+     * {@code sortBy(list, key)}: a list of the elements in the order of the numbers or strings the key function gives
+     * them. Elements with equal keys keep their order.
+     */
+    public static final ScriptFunction LIST_SORT_BY = ScriptFunction.from((list, key) -> ListFunctions.sortBy(list, getFunction(key), false));
+
+    public static final ScriptFunction PARALLEL_SORT_BY = ScriptFunction.from((list, key) -> ListFunctions.sortBy(list, getFunction(key), true));
+
+    /**
+     * {@code groupBy(list, key)}: a map from each key the key function gives to the list of elements with that key.
+     */
+    public static final ScriptFunction LIST_GROUP_BY = ScriptFunction.from((list, key) -> ListFunctions.groupBy(list, getFunction(key), false));
+
+    public static final ScriptFunction PARALLEL_GROUP_BY = ScriptFunction.from((list, key) -> ListFunctions.groupBy(list, getFunction(key), true));
+
+    /**
+     * Iterates a collection of the host, turning its check for changes made while iterating into a script error.
+     */
+    private static final class Elements implements Iterator<Object> {
+
+        private final Iterator<?> iterator;
+
+        Elements(Iterator<?> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Object next() {
+            try {
+                return iterator.next();
+            } catch (ConcurrentModificationException e) {
+                throw new ScriptException("cannot change a collection while iterating over it");
+            }
+        }
+
+    }
+
     private ScriptObjects() {
 
     }
 
+    private static ScriptFunction reduce(boolean parallel) {
+        return new ScriptFunction() {
+            @Override
+            public Object call(List<Object> params) {
+                minArgCount(params, 2);
+                maxArgCount(params, 3);
+                return call3(params.get(0), params.get(1), params.size() == 3 ? params.get(2) : ListFunctions.NONE);
+            }
+
+            @Override
+            public Object call2(Object list, Object function) {
+                return ListFunctions.reduce(list, getFunction(function), ListFunctions.NONE, parallel);
+            }
+
+            @Override
+            public Object call3(Object list, Object function, Object initial) {
+                return ListFunctions.reduce(list, getFunction(function), initial, parallel);
+            }
+        };
+    }
+
+    private static StringBuilder getStringBuilder(Object object) {
+        if (object instanceof StringBuilder) return (StringBuilder) object;
+        else throw new ScriptException("expected a string builder, got " + object);
+    }
+
+    private static StringBuilder append(StringBuilder builder, Object string) {
+        if (string instanceof String) builder.append((String) string);
+        else if (string instanceof Rope) builder.append((Rope) string);
+        else throw new ScriptException("expected a string, got " + string);
+        return builder;
+    }
+
+    /**
+     * {@code a + b}: concatenates strings and adds numbers.
+     */
+    public static Object add(Object a, Object b) {
+        if (Rope.isString(a) && Rope.isString(b)) return Rope.concat((CharSequence) a, (CharSequence) b);
+        return Numbers.add(a, b);
+    }
+
+    /**
+     * A string as the {@link String} it stands for, for handing to the host or using as a key.
+     */
+    public static Object flatten(Object object) {
+        return object instanceof Rope ? object.toString() : object;
+    }
+
     public static Set<Object> getKeys(Object object) {
         if(object instanceof Map) return ((Map<Object, Object>) object).keySet();
         else if (object instanceof ScriptingMap) return ((ScriptingMap) object).mapKeys();
         else throw new ScriptException("expected a map, got " + object);
     }
 
+    /**
+     * What {@code for ... in} visits: the elements of a list or the keys of a map, one at a time without copying them.
+     */
+    public static Iterator<?> iterate(Object object) {
+        if (object instanceof Range) return ((Range) object).iterator();
+        else if (object instanceof Map) return new Elements(((Map<?, ?>) object).keySet().iterator());
+        else if (object instanceof List) return new Elements(((List<?>) object).iterator());
+        else if (object instanceof ScriptingMap) return ((ScriptingMap) object).mapIterate();
+        else if (object instanceof ScriptingList) return ((ScriptingList) object).listIterate();
+        else throw new ScriptException("expected a map or list, got " + object);
+    }
+
     public static int getLength(Object object) {
         if(object instanceof Map) return ((Map<Object, Object>) object).size();
         else if (object instanceof List) return ((List<Object>) object).size();
@@ -116,8 +350,9 @@ public class ScriptObjects {
     }
 
     public static boolean asBoolean(Object object) {
-        if (object instanceof BigDecimal) return object.equals(BigDecimal.ZERO);
+        if (Numbers.isNumber(object)) return Numbers.isZero(object);
         else if (object instanceof String) return ((String) object).length() > 0;
+        else if (object instanceof Rope) return ((Rope) object).length() > 0;
         else if (object instanceof Boolean) return (boolean) object;
         else if (object == null) return false;
         else if (object instanceof Map) return ((Map<?, ?>) object).size() > 0;
@@ -127,12 +362,30 @@ public class ScriptObjects {
     }
 
     public static BigDecimal getNumber(Object object) {
-        if (object instanceof BigDecimal) return (BigDecimal) object;
-        else throw new ScriptException("expected a number, got " + object);
+        return Numbers.toBigDecimal(object);
+    }
+
+    public static long getLong(Object object) {
+        if (object instanceof Long) return (Long) object;
+        else return getNumber(object).longValue();
+    }
+
+    public static double getDouble(Object object) {
+        if (object instanceof Long || object instanceof Double) return ((Number) object).doubleValue();
+        else return getNumber(object).doubleValue();
+    }
+
+    public static int getInt(Object object) {
+        return Numbers.intValue(object);
+    }
+
+    public static Object negate(Object object) {
+        return Numbers.negate(object);
     }
 
     public static String getString(Object object) {
         if (object instanceof String) return (String) object;
+        else if (object instanceof Rope) return object.toString();
         else throw new ScriptException("expected a string, got " + object);
     }
 
@@ -155,14 +408,22 @@ public class ScriptObjects {
         else throw new ScriptException("expected a list, got " + object);
     }
 
+    /**
+     * A list as a {@link List}, for operations that work on the elements in bulk rather than one at a time.
+     */
+    public static List<?> getElements(Object object) {
+        if (object instanceof List) return (List<?>) object;
+        else throw new ScriptException("expected a list, got " + object);
+    }
+
     public static ScriptFunction getFunction(Object object) {
         if (object instanceof ScriptFunction) return (ScriptFunction) object;
         else throw new ScriptException("expected a function, got " + object);
     }
 
     public static Object getUserData(Object object) {
-        if (object instanceof BigDecimal ||
-                object instanceof String ||
+        if (Numbers.isNumber(object) ||
+                Rope.isString(object) ||
                 object instanceof Boolean ||
                 object == null ||
                 object instanceof Map ||
@@ -172,8 +433,8 @@ public class ScriptObjects {
     }
 
     public static ObjectType getObjectType(Object object) {
-        if (object instanceof BigDecimal) return ObjectType.NUMBER;
-        else if (object instanceof String) return ObjectType.STRING;
+        if (Numbers.isNumber(object)) return ObjectType.NUMBER;
+        else if (Rope.isString(object)) return ObjectType.STRING;
         else if (object instanceof Boolean) return ObjectType.BOOLEAN;
         else if (object == null) return ObjectType.NULL;
         else if (object instanceof Map) return ObjectType.MAP;
@@ -182,58 +443,71 @@ public class ScriptObjects {
         else return ObjectType.USERDATA;
     }
 
+    public static int getIndex(Object key, int size) {
+        int index = getInt(key);
+        if (index < 0 || index >= size) {
+            throw new ScriptException("list index out of bounds");
+        }
+        return index;
+    }
+
     public static Object access(Object owner, Object key, boolean method) {
         Object result;
         if(owner instanceof Map) {
-            result = ((Map<Object, Object>) owner).get(key);
+            result = ((Map<Object, Object>) owner).get(flatten(key));
         } else if (owner instanceof List) {
-            int index = getNumber(key).intValue();
-            if (index < 0 || index >= ((List<?>) owner).size()) {
-                throw new ScriptException("list index out of bounds");
-            }
-            result = ((List<?>) owner).get(index);
+            result = ((List<?>) owner).get(getIndex(key, ((List<?>) owner).size()));
         } else if (owner instanceof ScriptingMap) {
-            result = ((ScriptingMap) owner).mapGet(key);
+            result = ((ScriptingMap) owner).mapGet(flatten(key));
         } else if (owner instanceof ScriptingList) {
-            int index = getNumber(key).intValue();
-            if (index < 0 || index >= ((List<?>) owner).size()) {
-                throw new ScriptException("list index out of bounds");
-            }
-            result = ((ScriptingList) owner).listGet(index);
+            result = ((ScriptingList) owner).listGet(getIndex(key, ((ScriptingList) owner).listSize()));
         } else {
             throw new ScriptException("expected a map or list, got " + owner);
         }
-        if(method) {
-            ScriptFunction function = getFunction(result);
-            return new ScriptFunction() {
-                @Override
-                public Object call(List<Object> params) {
-                    params.add(0, owner);
-                    return function.call(params);
-                }
-            };
-        } else {
-            return result;
-        }
+        return method ? bind(owner, getFunction(result)) : result;
+    }
+
+    /**
+     * The method {@code owner:key} as a function value, which passes the owner as the first argument.
+     */
+    public static ScriptFunction bind(Object owner, ScriptFunction function) {
+        return new ScriptFunction() {
+            @Override
+            public Object call(List<Object> params) {
+                params.add(0, owner);
+                return function.call(params);
+            }
+
+            @Override
+            public Object call0() {
+                return function.call1(owner);
+            }
+
+            @Override
+            public Object call1(Object a) {
+                return function.call2(owner, a);
+            }
+
+            @Override
+            public Object call2(Object a, Object b) {
+                return function.call3(owner, a, b);
+            }
+        };
+    }
+
+    public static ScriptFunction getMethod(Object owner, Object key) {
+        return getFunction(access(owner, key, false));
     }
 
     public static void assign(Object owner, Object key, Object value) {
         if(owner instanceof Map) {
-            ((Map<Object, Object>) owner).put(key, value);
+            ((Map<Object, Object>) owner).put(flatten(key), value);
         } else if (owner instanceof List) {
-            int index = getNumber(key).intValue();
-            if (index < 0 || index >= ((List<?>) owner).size()) {
-                throw new ScriptException("list index out of bounds");
-            }
-            ((List<Object>) owner).set(index, value);
+            ((List<Object>) owner).set(getIndex(key, ((List<?>) owner).size()), value);
         } else if (owner instanceof ScriptingMap) {
-            ((ScriptingMap) owner).mapSet(key, value);
+            ((ScriptingMap) owner).mapSet(flatten(key), value);
         } else if (owner instanceof ScriptingList) {
-            int index = getNumber(key).intValue();
-            if (index < 0 || index >= ((ScriptingList) owner).listSize()) {
-                throw new ScriptException("list index out of bounds");
-            }
-            ((ScriptingList) owner).listSet(index, value);
+            ((ScriptingList) owner).listSet(getIndex(key, ((ScriptingList) owner).listSize()), value);
         } else {
             throw new ScriptException("expected a map or list, got " + owner);
         }
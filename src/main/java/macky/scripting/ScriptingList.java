@@ -1,6 +1,8 @@
 package macky.scripting;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 public interface ScriptingList {
 
@@ -12,6 +14,26 @@ public interface ScriptingList {
 
     void listAdd(int index, Object value);
 
+    /**
+     * The elements in order, for {@code for ... in}. Reads them one at a time with {@link #listGet} by default.
+     */
+    default Iterator<Object> listIterate() {
+        return new Iterator<>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < listSize();
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return listGet(index++);
+            }
+        };
+    }
+
     static ScriptingList wrap(List<Object> list) {
         return new ScriptingList() {
             @Override
@@ -1,6 +1,7 @@
 package macky.scripting;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -14,6 +15,13 @@ public interface ScriptingMap {
 
     Set<Object> mapKeys();
 
+    /**
+     * The keys, for {@code for ... in}. Iterates {@link #mapKeys} by default.
+     */
+    default Iterator<Object> mapIterate() {
+        return mapKeys().iterator();
+    }
+
     final class Builder {
         private final Map<Object, Object> data;
 
@@ -0,0 +1,313 @@
+package macky.scripting;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A map whose string keys are described by a {@link Shape} shared with every other map that got the same keys in the
+ * same order, so that each map only holds an array of values. Maps created by {@code map { ... }} are shaped maps.
+ * Storing a key that is not a string, removing a key or growing past {@link Shape#MAX_SLOTS} keys turns the map into
+ * an ordinary hash map for good.
+ * <p>
+ * Entries iterate in the order their keys were added; adding or removing a key other than through the iterator fails
+ * the iteration with a {@link ScriptException}. Like {@link HashMap}, a shaped map is not safe to modify from several
+ * threads at once; shapes are.
+ */
+public final class ShapedMap extends AbstractMap<Object, Object> implements ScriptingMap {
+
+    /**
+     * The keys of a shaped map and the slot each one's value is in. Adding a key to a map moves it to the shape that
+     * {@link #with} returns, which is the same object for every map making the same transition.
+     */
+    public static final class Shape {
+
+        public static final int MAX_SLOTS = 32;
+        static final int MAX_SHAPES = 1 << 16;
+        private static final int INDEX_THRESHOLD = 8;
+        private static final AtomicInteger count = new AtomicInteger();
+
+        public static final Shape EMPTY = new Shape(new String[0]);
+
+        private final String[] keys;
+        private final Map<String, Integer> index;
+        private volatile ConcurrentMap<String, Shape> transitions;
+
+        private Shape(String[] keys) {
+            this.keys = keys;
+            if (keys.length > INDEX_THRESHOLD) {
+                index = new HashMap<>();
+                for (int i = 0; i < keys.length; i++) {
+                    index.put(keys[i], i);
+                }
+            } else {
+                index = null;
+            }
+        }
+
+        public int size() {
+            return keys.length;
+        }
+
+        public String getKey(int slot) {
+            return keys[slot];
+        }
+
+        /**
+         * The slot of {@code key}, or -1 if maps of this shape do not have it.
+         */
+        public int indexOf(Object key) {
+            if (!(key instanceof String)) return -1;
+            if (index != null) {
+                Integer slot = index.get(key);
+                return slot == null ? -1 : slot;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) return i;
+            }
+            return -1;
+        }
+
+        /**
+         * The shape of a map of this shape once {@code key} is added to it, or null if that would take it past
+         * {@link #MAX_SLOTS} keys or there are already {@link #MAX_SHAPES} shapes.
+         */
+        public Shape with(String key) {
+            if (indexOf(key) >= 0) return this;
+            ConcurrentMap<String, Shape> transitions = this.transitions;
+            if (transitions == null) {
+                synchronized (this) {
+                    transitions = this.transitions;
+                    if (transitions == null) this.transitions = transitions = new ConcurrentHashMap<>();
+                }
+            }
+            Shape next = transitions.get(key);
+            if (next != null || keys.length == MAX_SLOTS) return next;
+            return transitions.computeIfAbsent(key, k -> {
+                if (count.incrementAndGet() > MAX_SHAPES) {
+                    count.decrementAndGet();
+                    return null;
+                }
+                String[] keys = Arrays.copyOf(this.keys, this.keys.length + 1);
+                keys[this.keys.length] = k;
+                return new Shape(keys);
+            });
+        }
+
+    }
+
+    private Shape shape;
+    private Object[] values;
+    private Map<Object, Object> dictionary;
+    private int modCount;
+
+    public ShapedMap() {
+        this(Shape.EMPTY, new Object[0]);
+    }
+
+    /**
+     * A map of the given shape, holding {@code values} in slot order. The array is used as is.
+     */
+    public ShapedMap(Shape shape, Object[] values) {
+        if (values.length < shape.size()) throw new IllegalArgumentException("expected " + shape.size() + " values, got " + values.length);
+        this.shape = shape;
+        this.values = values;
+    }
+
+    /**
+     * The shape of this map, or null once it has turned into an ordinary hash map.
+     */
+    public Shape getShape() {
+        return shape;
+    }
+
+    public Object getSlot(int slot) {
+        return values[slot];
+    }
+
+    public void setSlot(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    private void toDictionary() {
+        Map<Object, Object> dictionary = new LinkedHashMap<>();
+        for (int i = 0; i < shape.size(); i++) {
+            dictionary.put(shape.getKey(i), values[i]);
+        }
+        this.dictionary = dictionary;
+        this.shape = null;
+        this.values = null;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return shape != null ? shape.size() : dictionary.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return shape != null ? shape.indexOf(key) >= 0 : dictionary.containsKey(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (shape == null) return dictionary.get(key);
+        int slot = shape.indexOf(key);
+        return slot < 0 ? null : values[slot];
+    }
+
+    @Override
+    public Object put(Object key, Object value) {
+        if (shape != null) {
+            int slot = shape.indexOf(key);
+            if (slot >= 0) {
+                Object old = values[slot];
+                values[slot] = value;
+                return old;
+            }
+            Shape next = key instanceof String ? shape.with((String) key) : null;
+            if (next != null) {
+                int size = shape.size();
+                if (size == values.length) values = Arrays.copyOf(values, Math.max(4, size + (size >> 1)));
+                values[size] = value;
+                shape = next;
+                modCount++;
+                return null;
+            }
+            toDictionary();
+        }
+        int size = dictionary.size();
+        Object old = dictionary.put(key, value);
+        if (dictionary.size() != size) modCount++;
+        return old;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (shape != null) {
+            if (shape.indexOf(key) < 0) return null;
+            toDictionary();
+        }
+        int size = dictionary.size();
+        Object old = dictionary.remove(key);
+        if (dictionary.size() != size) modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        shape = Shape.EMPTY;
+        values = new Object[0];
+        dictionary = null;
+        modCount++;
+    }
+
+    @Override
+    public Set<Entry<Object, Object>> entrySet() {
+        return new AbstractSet<Entry<Object, Object>>() {
+            @Override
+            public int size() {
+                return ShapedMap.this.size();
+            }
+
+            @Override
+            public Iterator<Entry<Object, Object>> iterator() {
+                if (shape == null) {
+                    Iterator<Entry<Object, Object>> entries = dictionary.entrySet().iterator();
+                    return new Iterator<Entry<Object, Object>>() {
+                        private int expectedModCount = modCount;
+
+                        @Override
+                        public boolean hasNext() {
+                            checkModCount(expectedModCount);
+                            return entries.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Object, Object> next() {
+                            checkModCount(expectedModCount);
+                            return entries.next();
+                        }
+
+                        @Override
+                        public void remove() {
+                            entries.remove();
+                            expectedModCount = ++modCount;
+                        }
+                    };
+                }
+                Shape shape = ShapedMap.this.shape;
+                return new Iterator<Entry<Object, Object>>() {
+                    private int next;
+                    private int expectedModCount = modCount;
+
+                    @Override
+                    public boolean hasNext() {
+                        checkModCount(expectedModCount);
+                        return next < shape.size();
+                    }
+
+                    @Override
+                    public Entry<Object, Object> next() {
+                        checkModCount(expectedModCount);
+                        if (next >= shape.size()) throw new NoSuchElementException();
+                        String key = shape.getKey(next++);
+                        return new SimpleEntry<Object, Object>(key, get(key)) {
+                            @Override
+                            public Object setValue(Object value) {
+                                super.setValue(value);
+                                return put(key, value);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (next == 0) throw new IllegalStateException();
+                        ShapedMap.this.remove(shape.getKey(next - 1));
+                        expectedModCount = modCount;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Fails an iteration that began when the map's mod count was {@code expected} if a key was added or removed since,
+     * checked by {@code hasNext} too, so that a key added while visiting the last entry is not silently skipped.
+     */
+    private void checkModCount(int expected) {
+        if (modCount != expected) throw new ScriptException("cannot change a collection while iterating over it");
+    }
+
+    @Override
+    public int mapSize() {
+        return size();
+    }
+
+    @Override
+    public Object mapGet(Object key) {
+        return get(key);
+    }
+
+    @Override
+    public void mapSet(Object key, Object value) {
+        put(key, value);
+    }
+
+    @Override
+    public Set<Object> mapKeys() {
+        return keySet();
+    }
+
+}
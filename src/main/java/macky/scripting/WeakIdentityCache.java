@@ -0,0 +1,66 @@
+package macky.scripting;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Cache keyed by the identity of objects it holds weakly, so an entry goes away once nothing else refers to its key.
+ * Keys are never hashed or compared by value. Lookups go through a concurrent map and never block; entries of keys that
+ * have been collected are dropped on the next load. Loads run outside the map, so two threads missing on the same key
+ * may both load it; the first one to finish is kept. A value must not refer to its own key, or the key is never
+ * collected.
+ */
+final class WeakIdentityCache<K, V> {
+
+    private final Map<Key, V> values = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+    V get(K key, Function<K, V> loader) {
+        V value = values.get(new Key(key, null));
+        if (value != null) return value;
+        expunge();
+        V loaded = loader.apply(key);
+        V existing = values.putIfAbsent(new Key(key, queue), loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    int size() {
+        expunge();
+        return values.size();
+    }
+
+    private void expunge() {
+        for (Reference<?> key; (key = queue.poll()) != null; ) {
+            values.remove(key);
+        }
+    }
+
+    private static final class Key extends WeakReference<Object> {
+
+        private final int hash;
+
+        Key(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof Key)) return false;
+            Object referent = get();
+            return referent != null && referent == ((Key) other).get();
+        }
+
+    }
+
+}
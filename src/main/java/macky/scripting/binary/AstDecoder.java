@@ -0,0 +1,182 @@
+package macky.scripting.binary;
+
+import macky.scripting.BasicOperator;
+import macky.scripting.Expression;
+import macky.scripting.Expressions;
+import macky.scripting.Operator;
+import macky.scripting.Operators;
+import macky.scripting.ScriptException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static macky.scripting.binary.AstFormat.*;
+
+final class AstDecoder {
+
+    private static final BasicOperator[] OPERATORS = BasicOperator.values();
+
+    private final ByteBuffer in;
+    private final Object[] constants;
+
+    AstDecoder(ByteBuffer in, Object[] constants) {
+        this.in = in;
+        this.constants = constants;
+    }
+
+    static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new ScriptException("malformed varint in script bundle");
+    }
+
+    static Object[] readConstants(ByteBuffer in) {
+        Object[] constants = new Object[readVarint(in)];
+        for (int i = 0; i < constants.length; i++) {
+            byte tag = in.get();
+            switch (tag) {
+                case CONSTANT_STRING: {
+                    byte[] bytes = new byte[readVarint(in)];
+                    in.get(bytes);
+                    constants[i] = new String(bytes, StandardCharsets.UTF_8);
+                    break;
+                }
+                case CONSTANT_LONG:
+                    constants[i] = in.getLong();
+                    break;
+                case CONSTANT_DOUBLE:
+                    constants[i] = Double.longBitsToDouble(in.getLong());
+                    break;
+                case CONSTANT_DECIMAL: {
+                    int scale = (int) in.getLong();
+                    byte[] unscaled = new byte[readVarint(in)];
+                    in.get(unscaled);
+                    constants[i] = new BigDecimal(new BigInteger(unscaled), scale);
+                    break;
+                }
+                default:
+                    throw new ScriptException("unknown constant tag " + tag + " in script bundle");
+            }
+        }
+        return constants;
+    }
+
+    private int varint() {
+        return readVarint(in);
+    }
+
+    private <T> T constant(Class<T> type) {
+        Object value = constants[varint()];
+        if (!type.isInstance(value)) throw new ScriptException("expected a " + type.getSimpleName() + " constant in script bundle");
+        return type.cast(value);
+    }
+
+    private List<String> strings() {
+        int size = varint();
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(constant(String.class));
+        }
+        return strings;
+    }
+
+    private List<Expression> expressions() {
+        int size = varint();
+        List<Expression> expressions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            expressions.add(decode());
+        }
+        return expressions;
+    }
+
+    private Optional<Expression> optional() {
+        return in.get() != 0 ? Optional.of(decode()) : Optional.empty();
+    }
+
+    private boolean bool() {
+        return in.get() != 0;
+    }
+
+    private Operator operator() {
+        int value = in.get() & 0xFF;
+        if (value < ASSIGNMENT) return Operators.basic(OPERATORS[value]);
+        else if (value == ASSIGNMENT) return Operators.assignment(Optional.empty());
+        else return Operators.assignment(Optional.of(OPERATORS[value - ASSIGNMENT - 1]));
+    }
+
+    Expression decode() {
+        byte tag = in.get();
+        switch (tag) {
+            case BOOL_LITERAL:
+                return Expressions.boolLiteral(bool());
+            case BREAK_STATEMENT:
+                return Expressions.breakStatement();
+            case DECL_FUNC:
+                return Expressions.declFunc(strings(), decode());
+            case IF_EXPR:
+                return Expressions.ifExpr(decode(), decode(), optional());
+            case WHILE_EXPR:
+                return Expressions.whileExpr(decode(), decode());
+            case FOR_EXPR:
+                return Expressions.forExpr(decode(), decode(), decode(), decode());
+            case RETURN_EXPR:
+                return Expressions.returnExpr(optional());
+            case LOOP:
+                return Expressions.loop(decode());
+            case DECL_VAR:
+                return Expressions.declVar(constant(String.class), decode());
+            case MAP_INIT: {
+                int size = varint();
+                List<Map.Entry<Expression, Expression>> entries = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    entries.add(new AbstractMap.SimpleEntry<>(decode(), decode()));
+                }
+                return Expressions.mapInit(entries);
+            }
+            case LIST_INIT:
+                return Expressions.listInit(expressions());
+            case NOP_EXPR:
+                return Expressions.nopExpr();
+            case STRING:
+                return Expressions.string(constant(String.class));
+            case NUMBER:
+                return Expressions.number(constant(Number.class));
+            case BRACKETED:
+                return Expressions.bracketed(expressions());
+            case ACCESS_VAR:
+                return Expressions.accessVar(constant(String.class));
+            case CALL_FUNC:
+                return Expressions.callFunc(decode(), expressions());
+            case ACCESS:
+                return Expressions.access(decode(), decode(), bool());
+            case UNARY_NEGATE:
+                return Expressions.unaryNegate(decode());
+            case OPERATOR:
+                return Expressions.operator(decode(), operator(), decode());
+            case LOCAL_VAR:
+                return Expressions.localVar(constant(String.class), varint(), varint());
+            case DECL_LOCAL:
+                return Expressions.declLocal(constant(String.class), varint(), decode());
+            case BLOCK:
+                return Expressions.block(strings(), expressions());
+            case CLOSURE:
+                return Expressions.closure(strings(), varint(), decode());
+            case FOR_IN:
+                return Expressions.forIn(constant(String.class), varint() - 1, decode(), decode());
+            default:
+                throw new ScriptException("unknown expression tag " + tag + " in script bundle");
+        }
+    }
+
+}
@@ -0,0 +1,317 @@
+package macky.scripting.binary;
+
+import macky.scripting.Expression;
+import macky.scripting.Operator;
+import macky.scripting.Operators;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static macky.scripting.binary.AstFormat.*;
+
+final class AstEncoder implements Expression.Visitor<Void> {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+
+    int position() {
+        return out.size();
+    }
+
+    byte[] bodies() {
+        return out.toByteArray();
+    }
+
+    void encode(Expression expression) {
+        expression.visit(this);
+    }
+
+    int constant(Object value) {
+        // keyed by class too, so 1L, 1.0D and 1 as a decimal stay distinct
+        return constantIndices.computeIfAbsent(List.of(value.getClass(), value), key -> {
+            constants.add(value);
+            return constants.size() - 1;
+        });
+    }
+
+    void writeConstants(ByteArrayOutputStream target) {
+        writeVarint(target, constants.size());
+        for (Object constant : constants) {
+            if (constant instanceof String) {
+                byte[] bytes = ((String) constant).getBytes(StandardCharsets.UTF_8);
+                target.write(CONSTANT_STRING);
+                writeVarint(target, bytes.length);
+                target.writeBytes(bytes);
+            } else if (constant instanceof Long) {
+                target.write(CONSTANT_LONG);
+                writeLong(target, (Long) constant);
+            } else if (constant instanceof Double) {
+                target.write(CONSTANT_DOUBLE);
+                writeLong(target, Double.doubleToRawLongBits((Double) constant));
+            } else {
+                BigDecimal decimal = (BigDecimal) constant;
+                byte[] unscaled = decimal.unscaledValue().toByteArray();
+                target.write(CONSTANT_DECIMAL);
+                writeLong(target, decimal.scale());
+                writeVarint(target, unscaled.length);
+                target.writeBytes(unscaled);
+            }
+        }
+    }
+
+    static void writeVarint(ByteArrayOutputStream target, int value) {
+        while ((value & ~0x7F) != 0) {
+            target.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target.write(value);
+    }
+
+    private static void writeLong(ByteArrayOutputStream target, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            target.write((int) (value >>> shift));
+        }
+    }
+
+    private void tag(byte tag) {
+        out.write(tag);
+    }
+
+    private void varint(int value) {
+        writeVarint(out, value);
+    }
+
+    private void constantRef(Object value) {
+        varint(constant(value));
+    }
+
+    private void strings(List<String> values) {
+        varint(values.size());
+        values.forEach(this::constantRef);
+    }
+
+    private void expressions(List<Expression> expressions) {
+        varint(expressions.size());
+        expressions.forEach(this::encode);
+    }
+
+    private void optional(Optional<Expression> expression) {
+        out.write(expression.isPresent() ? 1 : 0);
+        expression.ifPresent(this::encode);
+    }
+
+    private void operator(Operator operator) {
+        out.write(Operators.caseOf(operator)
+                .basic(Enum::ordinal)
+                .assignment(transformation -> ASSIGNMENT + transformation.map(op -> op.ordinal() + 1).orElse(0)));
+    }
+
+    @Override
+    public Void boolLiteral(boolean boolLiteral) {
+        tag(BOOL_LITERAL);
+        out.write(boolLiteral ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Void breakStatement() {
+        tag(BREAK_STATEMENT);
+        return null;
+    }
+
+    @Override
+    public Void declFunc(List<String> funcParamNames, Expression funcBody) {
+        tag(DECL_FUNC);
+        strings(funcParamNames);
+        encode(funcBody);
+        return null;
+    }
+
+    @Override
+    public Void ifExpr(Expression ifCondition, Expression ifBody, Optional<Expression> ifElse) {
+        tag(IF_EXPR);
+        encode(ifCondition);
+        encode(ifBody);
+        optional(ifElse);
+        return null;
+    }
+
+    @Override
+    public Void whileExpr(Expression whileCondition, Expression whileBody) {
+        tag(WHILE_EXPR);
+        encode(whileCondition);
+        encode(whileBody);
+        return null;
+    }
+
+    @Override
+    public Void forExpr(Expression forInit, Expression forCondition, Expression forUpdate, Expression forBody) {
+        tag(FOR_EXPR);
+        encode(forInit);
+        encode(forCondition);
+        encode(forUpdate);
+        encode(forBody);
+        return null;
+    }
+
+    @Override
+    public Void returnExpr(Optional<Expression> returnExpr) {
+        tag(RETURN_EXPR);
+        optional(returnExpr);
+        return null;
+    }
+
+    @Override
+    public Void loop(Expression loopExpr) {
+        tag(LOOP);
+        encode(loopExpr);
+        return null;
+    }
+
+    @Override
+    public Void declVar(String declName, Expression declValue) {
+        tag(DECL_VAR);
+        constantRef(declName);
+        encode(declValue);
+        return null;
+    }
+
+    @Override
+    public Void mapInit(List<Map.Entry<Expression, Expression>> mapInitExpr) {
+        tag(MAP_INIT);
+        varint(mapInitExpr.size());
+        for (Map.Entry<Expression, Expression> entry : mapInitExpr) {
+            encode(entry.getKey());
+            encode(entry.getValue());
+        }
+        return null;
+    }
+
+    @Override
+    public Void listInit(List<Expression> listInitExpr) {
+        tag(LIST_INIT);
+        expressions(listInitExpr);
+        return null;
+    }
+
+    @Override
+    public Void nopExpr() {
+        tag(NOP_EXPR);
+        return null;
+    }
+
+    @Override
+    public Void string(String stringExpr) {
+        tag(STRING);
+        constantRef(stringExpr);
+        return null;
+    }
+
+    @Override
+    public Void number(Number numberExpr) {
+        tag(NUMBER);
+        constantRef(numberExpr);
+        return null;
+    }
+
+    @Override
+    public Void bracketed(List<Expression> bracketedExpr) {
+        tag(BRACKETED);
+        expressions(bracketedExpr);
+        return null;
+    }
+
+    @Override
+    public Void accessVar(String name) {
+        tag(ACCESS_VAR);
+        constantRef(name);
+        return null;
+    }
+
+    @Override
+    public Void callFunc(Expression callFunc, List<Expression> params) {
+        tag(CALL_FUNC);
+        encode(callFunc);
+        expressions(params);
+        return null;
+    }
+
+    @Override
+    public Void access(Expression keyOwner, Expression key, boolean method) {
+        tag(ACCESS);
+        encode(keyOwner);
+        encode(key);
+        out.write(method ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Void unaryNegate(Expression expression) {
+        tag(UNARY_NEGATE);
+        encode(expression);
+        return null;
+    }
+
+    @Override
+    public Void operator(Expression left, Operator operator, Expression right) {
+        tag(OPERATOR);
+        encode(left);
+        operator(operator);
+        encode(right);
+        return null;
+    }
+
+    @Override
+    public Void localVar(String localName, int localDepth, int localSlot) {
+        tag(LOCAL_VAR);
+        constantRef(localName);
+        varint(localDepth);
+        varint(localSlot);
+        return null;
+    }
+
+    @Override
+    public Void declLocal(String declLocalName, int declLocalSlot, Expression declLocalValue) {
+        tag(DECL_LOCAL);
+        constantRef(declLocalName);
+        varint(declLocalSlot);
+        encode(declLocalValue);
+        return null;
+    }
+
+    @Override
+    public Void block(List<String> blockNames, List<Expression> blockExprs) {
+        tag(BLOCK);
+        strings(blockNames);
+        expressions(blockExprs);
+        return null;
+    }
+
+    @Override
+    public Void closure(List<String> closureNames, int closureParamCount, Expression closureBody) {
+        tag(CLOSURE);
+        strings(closureNames);
+        varint(closureParamCount);
+        encode(closureBody);
+        return null;
+    }
+
+    @Override
+    public Void forIn(String forInName, int forInSlot, Expression forInIterable, Expression forInBody) {
+        tag(FOR_IN);
+        constantRef(forInName);
+        // shifted by one, since a global loop variable has slot -1
+        varint(forInSlot + 1);
+        encode(forInIterable);
+        encode(forInBody);
+        return null;
+    }
+
+}
@@ -0,0 +1,61 @@
+package macky.scripting.binary;
+
+/**
+ * Layout of a script bundle. All multi-byte fixed-width values are big-endian, counts and indices are unsigned
+ * LEB128 varints.
+ *
+ * <pre>
+ * header    magic:int version:short flags:short crc32:int     crc32 covers every byte after the header
+ * constants count, then per constant a tag byte and its data
+ * scripts   count, then per script a name constant, an expression count and one body offset per expression
+ * bodies    length, then the encoded expressions back to back
+ * </pre>
+ *
+ * An expression is a tag byte (its position in {@link macky.scripting.Expression.Visitor}) followed by its fields
+ * in declaration order. Strings and numbers are constant indices.
+ */
+final class AstFormat {
+
+    static final int MAGIC = 0x4D4B5342;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 12;
+
+    static final byte CONSTANT_STRING = 0;
+    static final byte CONSTANT_LONG = 1;
+    static final byte CONSTANT_DOUBLE = 2;
+    static final byte CONSTANT_DECIMAL = 3;
+
+    static final byte BOOL_LITERAL = 0;
+    static final byte BREAK_STATEMENT = 1;
+    static final byte DECL_FUNC = 2;
+    static final byte IF_EXPR = 3;
+    static final byte WHILE_EXPR = 4;
+    static final byte FOR_EXPR = 5;
+    static final byte RETURN_EXPR = 6;
+    static final byte LOOP = 7;
+    static final byte DECL_VAR = 8;
+    static final byte MAP_INIT = 9;
+    static final byte LIST_INIT = 10;
+    static final byte NOP_EXPR = 11;
+    static final byte STRING = 12;
+    static final byte NUMBER = 13;
+    static final byte BRACKETED = 14;
+    static final byte ACCESS_VAR = 15;
+    static final byte CALL_FUNC = 16;
+    static final byte ACCESS = 17;
+    static final byte UNARY_NEGATE = 18;
+    static final byte OPERATOR = 19;
+    static final byte LOCAL_VAR = 20;
+    static final byte DECL_LOCAL = 21;
+    static final byte BLOCK = 22;
+    static final byte CLOSURE = 23;
+    static final byte FOR_IN = 24;
+
+    // operators are a single byte: a basic operator's ordinal, or ASSIGNMENT plus one plus the transformation's
+    static final int ASSIGNMENT = 64;
+
+    private AstFormat() {
+
+    }
+
+}
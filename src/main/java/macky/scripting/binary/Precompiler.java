@@ -0,0 +1,51 @@
+package macky.scripting.binary;
+
+import macky.scripting.ScriptException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Precompiles every file under a directory into one bundle. Scripts are named by their path relative to that
+ * directory, with {@code /} as the separator.
+ *
+ * <pre>Precompiler &lt;script directory&gt; &lt;bundle file&gt;</pre>
+ */
+public final class Precompiler {
+
+    private Precompiler() {
+
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: Precompiler <script directory> <bundle file>");
+            System.exit(2);
+        }
+        Path directory = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        ScriptBundle.Writer writer = new ScriptBundle.Writer();
+        for (Path file : files) {
+            String name = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+            try {
+                writer.addSource(name, Files.readString(file));
+            } catch (ScriptException e) {
+                System.err.println(name + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (output.getParent() != null) Files.createDirectories(output.getParent());
+        writer.write(output);
+        System.out.println("precompiled " + files.size() + " scripts into " + output);
+    }
+
+}
@@ -0,0 +1,148 @@
+package macky.scripting.binary;
+
+import macky.scripting.CompiledScript;
+import macky.scripting.Expression;
+import macky.scripting.ScriptException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import static macky.scripting.binary.AstFormat.*;
+
+/**
+ * Precompiled scripts in the binary format described in {@link AstFormat}. Loading only checks the header and the
+ * checksum and reads the constant pool; a script's expressions are decoded the first time it is asked for.
+ */
+public final class ScriptBundle {
+
+    private final ByteBuffer buffer;
+    private final Object[] constants;
+    private final Map<String, int[]> offsets;
+    private final Map<String, CompiledScript> scripts = new ConcurrentHashMap<>();
+
+    private ScriptBundle(ByteBuffer buffer, Object[] constants, Map<String, int[]> offsets) {
+        this.buffer = buffer;
+        this.constants = constants;
+        this.offsets = offsets;
+    }
+
+    public static ScriptBundle load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static ScriptBundle read(ByteBuffer buffer) {
+        ByteBuffer in = buffer.duplicate();
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) throw new ScriptException("not a script bundle");
+        short version = in.getShort();
+        if (version != VERSION) throw new ScriptException("unsupported script bundle version " + version);
+        in.getShort();
+        int checksum = in.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(in.duplicate());
+        if ((int) crc.getValue() != checksum) throw new ScriptException("script bundle checksum mismatch");
+
+        Object[] constants = AstDecoder.readConstants(in);
+        int scriptCount = AstDecoder.readVarint(in);
+        Map<String, int[]> relative = new LinkedHashMap<>();
+        for (int i = 0; i < scriptCount; i++) {
+            Object name = constants[AstDecoder.readVarint(in)];
+            int[] scriptOffsets = new int[AstDecoder.readVarint(in)];
+            for (int j = 0; j < scriptOffsets.length; j++) {
+                scriptOffsets[j] = AstDecoder.readVarint(in);
+            }
+            relative.put((String) name, scriptOffsets);
+        }
+        int length = AstDecoder.readVarint(in);
+        int bodies = in.position();
+        if (bodies + length != in.limit()) throw new ScriptException("script bundle is truncated");
+        relative.values().forEach(scriptOffsets -> {
+            for (int j = 0; j < scriptOffsets.length; j++) {
+                scriptOffsets[j] += bodies;
+            }
+        });
+        return new ScriptBundle(buffer, constants, relative);
+    }
+
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(offsets.keySet());
+    }
+
+    public List<Expression> getExpressions(String name) {
+        int[] scriptOffsets = offsets.get(name);
+        if (scriptOffsets == null) throw new ScriptException("no script named " + name + " in bundle");
+        List<Expression> expressions = new ArrayList<>(scriptOffsets.length);
+        for (int offset : scriptOffsets) {
+            expressions.add(new AstDecoder(buffer.duplicate().position(offset), constants).decode());
+        }
+        return expressions;
+    }
+
+    public CompiledScript getScript(String name) {
+        return scripts.computeIfAbsent(name, key -> CompiledScript.of(getExpressions(key)));
+    }
+
+    public static final class Writer {
+        private final Map<String, List<Expression>> scripts = new LinkedHashMap<>();
+
+        public Writer add(String name, List<Expression> expressions) {
+            scripts.put(name, expressions);
+            return this;
+        }
+
+        public Writer addSource(String name, String source) {
+            return add(name, CompiledScript.parse(source));
+        }
+
+        public byte[] toByteArray() {
+            AstEncoder encoder = new AstEncoder();
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            AstEncoder.writeVarint(table, scripts.size());
+            for (Map.Entry<String, List<Expression>> script : scripts.entrySet()) {
+                AstEncoder.writeVarint(table, encoder.constant(script.getKey()));
+                AstEncoder.writeVarint(table, script.getValue().size());
+                for (Expression expression : script.getValue()) {
+                    AstEncoder.writeVarint(table, encoder.position());
+                    encoder.encode(expression);
+                }
+            }
+            byte[] bodies = encoder.bodies();
+
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            encoder.writeConstants(payload);
+            payload.writeBytes(table.toByteArray());
+            AstEncoder.writeVarint(payload, bodies.length);
+            payload.writeBytes(bodies);
+            byte[] payloadBytes = payload.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(payloadBytes);
+            return ByteBuffer.allocate(HEADER_SIZE + payloadBytes.length)
+                    .putInt(MAGIC)
+                    .putShort(VERSION)
+                    .putShort((short) 0)
+                    .putInt((int) crc.getValue())
+                    .put(payloadBytes)
+                    .array();
+        }
+
+        public void write(Path path) throws IOException {
+            Files.write(path, toByteArray());
+        }
+    }
+
+}
@@ -0,0 +1,828 @@
+package macky.scripting.compiler;
+
+import macky.scripting.BasicOperator;
+import macky.scripting.Expression;
+import macky.scripting.Expressions;
+import macky.scripting.Globals;
+import macky.scripting.LineTable;
+import macky.scripting.Operator;
+import macky.scripting.Operators;
+import macky.scripting.Purity;
+import macky.scripting.node.NodeBuilder;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.util.TraceClassVisitor;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.objectweb.asm.Opcodes.*;
+
+final class CodeGenerator {
+
+    static final class UnsupportedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String SCOPE = "macky/scripting/Scope";
+    private static final String BUDGET = "macky/scripting/Budget";
+    private static final String PROFILE = "macky/scripting/Profiler$Stack";
+    private static final String GLOBALS = "macky/scripting/Globals";
+    private static final String FRAME = "macky/scripting/Frame";
+    private static final String SCRIPT_OBJECTS = "macky/scripting/ScriptObjects";
+    private static final String SCRIPT_FUNCTION = "macky/scripting/ScriptFunction";
+    private static final String NUMBERS = "macky/scripting/Numbers";
+    private static final String NODE = "macky/scripting/node/Node";
+    private static final String PACKED_LIST = "macky/scripting/PackedList";
+    private static final String RETURN_EXCEPTION = "macky/scripting/ScriptReturnException";
+    private static final String CONTROL_FLOW = "macky/scripting/ControlFlowException";
+    private static final String SCRIPT_EXCEPTION = "macky/scripting/ScriptException";
+    private static final String COMPILED_EXPRESSION = Type.getInternalName(CompiledExpression.class);
+    private static final String COMPILED_FUNCTION = Type.getInternalName(CompiledFunction.class);
+
+    private static final String OBJECT_DESC = "Ljava/lang/Object;";
+    private static final String SCOPE_DESC = "L" + SCOPE + ";";
+    private static final String FRAME_DESC = "L" + FRAME + ";";
+    private static final String BUDGET_DESC = "L" + BUDGET + ";";
+    private static final String FUNCTION_DESC = "L" + SCRIPT_FUNCTION + ";";
+    private static final String CONSTANTS = "$constants";
+    private static final String CONSTANTS_DESC = "[Ljava/lang/Object;";
+    private static final String OBJECTS_DESC = "[Ljava/lang/Object;";
+    private static final String[] CALL_ARITIES = {"call0", "call1", "call2", "call3"};
+
+    private final String unitName;
+    private final LineTable lines;
+    private final Globals globals;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<String, byte[]> classes = new LinkedHashMap<>();
+    private int functionCount = 0;
+    // the name given to the closure generated next, see MethodGenerator.named
+    private String closureName;
+    private Expression current;
+
+    CodeGenerator(String unitName, LineTable lines, Globals globals) {
+        this.unitName = unitName;
+        this.lines = lines;
+        this.globals = globals;
+    }
+
+    CompiledExpression generate(Expression resolved) {
+        ClassWriter writer = newClassWriter();
+        ClassVisitor cv = trace(writer);
+        cv.visit(V11, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, unitName, null, OBJECT, new String[]{COMPILED_EXPRESSION});
+        cv.visitField(ACC_PUBLIC | ACC_STATIC, CONSTANTS, CONSTANTS_DESC, null, null).visitEnd();
+        generateConstructor(cv, OBJECT, "()V");
+
+        MethodVisitor mv = cv.visitMethod(ACC_PUBLIC, "execute", "(" + SCOPE_DESC + BUDGET_DESC + "L" + PROFILE + ";)" + OBJECT_DESC, null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(NEW, FRAME);
+        mv.visitInsn(DUP);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitMethodInsn(INVOKESPECIAL, FRAME, "<init>", "(" + SCOPE_DESC + BUDGET_DESC + "L" + PROFILE + ";)V", false);
+        mv.visitVarInsn(ASTORE, 4);
+        // a return at the top level throws the shared signal, which becomes the result like in RootNode
+        Label start = new Label(), end = new Label(), handler = new Label(), notReturn = new Label();
+        mv.visitTryCatchBlock(start, end, handler, CONTROL_FLOW);
+        mv.visitLabel(start);
+        new MethodGenerator(mv, 4, 2, 5, false).generate(resolved);
+        mv.visitInsn(ARETURN);
+        mv.visitLabel(end);
+        mv.visitLabel(handler);
+        mv.visitFieldInsn(GETSTATIC, CONTROL_FLOW, "RETURN", "L" + CONTROL_FLOW + ";");
+        mv.visitJumpInsn(IF_ACMPNE, notReturn);
+        mv.visitTypeInsn(NEW, RETURN_EXCEPTION);
+        mv.visitInsn(DUP);
+        mv.visitVarInsn(ALOAD, 4);
+        mv.visitMethodInsn(INVOKEVIRTUAL, FRAME, "getReturnValue", "()" + OBJECT_DESC, false);
+        mv.visitMethodInsn(INVOKESPECIAL, RETURN_EXCEPTION, "<init>", "(" + OBJECT_DESC + ")V", false);
+        mv.visitInsn(ATHROW);
+        mv.visitLabel(notReturn);
+        throwScriptException(mv, "break outside of a loop");
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cv.visitEnd();
+        classes.put(unitName, writer.toByteArray());
+
+        ScriptClassLoader loader = new ScriptClassLoader(ScriptCompiler.class.getClassLoader());
+        Class<?> unit = null;
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            Class<?> defined = loader.define(entry.getKey(), entry.getValue());
+            if (entry.getKey().equals(unitName)) unit = defined;
+        }
+        try {
+            unit.getField(CONSTANTS).set(null, constants.toArray());
+            return (CompiledExpression) unit.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedException("could not instantiate " + unitName, e);
+        }
+    }
+
+    private String generateFunction(String label, List<String> names, int paramCount, Expression body) {
+        String name = unitName + "$Fn" + (functionCount++);
+        ClassWriter writer = newClassWriter();
+        ClassVisitor cv = trace(writer);
+        cv.visit(V11, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, name, null, COMPILED_FUNCTION, null);
+
+        MethodVisitor mv = cv.visitMethod(ACC_PUBLIC, "<init>", "(" + FRAME_DESC + ")V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitLdcInsn(label);
+        mv.visitFieldInsn(GETSTATIC, unitName, CONSTANTS, CONSTANTS_DESC);
+        pushInt(mv, constant(names));
+        mv.visitInsn(AALOAD);
+        mv.visitTypeInsn(CHECKCAST, "java/util/List");
+        pushInt(mv, paramCount);
+        mv.visitInsn(Purity.isPure(paramCount, names, body) ? ICONST_1 : ICONST_0);
+        mv.visitMethodInsn(INVOKESPECIAL, COMPILED_FUNCTION, "<init>", "(" + FRAME_DESC + "Ljava/lang/String;Ljava/util/List;IZ)V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cv.visitMethod(ACC_PROTECTED, "with", "(" + FRAME_DESC + ")L" + COMPILED_FUNCTION + ";", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(NEW, name);
+        mv.visitInsn(DUP);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKESPECIAL, name, "<init>", "(" + FRAME_DESC + ")V", false);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // returns compile to areturn; the base class handles signals thrown from fallback nodes
+        mv = cv.visitMethod(ACC_PROTECTED, "body", "(" + FRAME_DESC + ")" + OBJECT_DESC, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKEVIRTUAL, FRAME, "getBudget", "()" + BUDGET_DESC, false);
+        mv.visitVarInsn(ASTORE, 2);
+        new MethodGenerator(mv, 1, 2, 3, true).tail(body);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cv.visitEnd();
+        classes.put(name, writer.toByteArray());
+        return name;
+    }
+
+    private static String callDescriptor(int arity) {
+        return "(" + OBJECT_DESC.repeat(arity) + ")" + OBJECT_DESC;
+    }
+
+    private static void generateConstructor(ClassVisitor cv, String superName, String descriptor) {
+        MethodVisitor mv = cv.visitMethod(ACC_PUBLIC, "<init>", descriptor, null, null);
+        mv.visitCode();
+        Type[] arguments = Type.getArgumentTypes(descriptor);
+        mv.visitVarInsn(ALOAD, 0);
+        for (int i = 0; i < arguments.length; i++) {
+            mv.visitVarInsn(ALOAD, i + 1);
+        }
+        mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", descriptor, false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private ClassWriter newClassWriter() {
+        return new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                if (type1.startsWith(unitName) || type2.startsWith(unitName)) return OBJECT;
+                return super.getCommonSuperClass(type1, type2);
+            }
+
+            @Override
+            protected ClassLoader getClassLoader() {
+                return ScriptCompiler.class.getClassLoader();
+            }
+        };
+    }
+
+    private static ClassVisitor trace(ClassWriter writer) {
+        if (ScriptCompiler.TRACE) {
+            return new TraceClassVisitor(writer, new PrintWriter(System.out, true));
+        } else {
+            return writer;
+        }
+    }
+
+    private static void throwScriptException(MethodVisitor mv, String message) {
+        mv.visitTypeInsn(NEW, SCRIPT_EXCEPTION);
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn(message);
+        mv.visitMethodInsn(INVOKESPECIAL, SCRIPT_EXCEPTION, "<init>", "(Ljava/lang/String;)V", false);
+        mv.visitInsn(ATHROW);
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) mv.visitInsn(ICONST_0 + value);
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) mv.visitIntInsn(BIPUSH, value);
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) mv.visitIntInsn(SIPUSH, value);
+        else mv.visitLdcInsn(value);
+    }
+
+    private int constant(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    private final class MethodGenerator implements Expression.Visitor<Void> {
+
+        private final MethodVisitor mv;
+        private final boolean inFunction;
+        private final int budget;
+        private int frame;
+        private int nextLocal;
+        // a break may only jump when nothing of the loop body is left on the operand stack
+        private boolean statement;
+        // the value becomes the value of the function, so calls in it are tail calls
+        private boolean tail;
+        private Label breakLabel;
+
+        MethodGenerator(MethodVisitor mv, int frame, int budget, int nextLocal, boolean inFunction) {
+            this.mv = mv;
+            this.frame = frame;
+            this.budget = budget;
+            this.nextLocal = nextLocal;
+            this.inFunction = inFunction;
+        }
+
+        void generate(Expression expression) {
+            visit(expression, false, false);
+        }
+
+        private void statement(Expression expression) {
+            visit(expression, true, false);
+        }
+
+        /**
+         * Generates an expression whose value becomes the value of the enclosing function, like
+         * {@code NodeBuilder.tail}. Outside of a function it is generated as usual.
+         */
+        void tail(Expression expression) {
+            visit(expression, false, inFunction);
+        }
+
+        private void visit(Expression expression, boolean atStatement, boolean atTail) {
+            statement = atStatement;
+            tail = atTail;
+            current = expression;
+            expression.visit(this);
+        }
+
+        /**
+         * Generates a value that is given a name, which becomes the profiler label of the value if it is a function.
+         */
+        private void named(String name, Expression value) {
+            if (Expressions.getClosureBody(value).isPresent()) closureName = name.replaceAll("[;\\s]", "_");
+            generate(value);
+        }
+
+        private void poll() {
+            mv.visitVarInsn(ALOAD, budget);
+            mv.visitMethodInsn(INVOKEVIRTUAL, BUDGET, "poll", "()V", false);
+        }
+
+        private void allocate(int size) {
+            mv.visitVarInsn(ALOAD, budget);
+            pushInt(mv, size);
+            mv.visitMethodInsn(INVOKEVIRTUAL, BUDGET, "allocate", "(I)V", false);
+        }
+
+        private void generate(Expression expression, boolean atStatement) {
+            if (atStatement) statement(expression);
+            else generate(expression);
+        }
+
+        private int newLocal() {
+            return nextLocal++;
+        }
+
+        private void loadConstant(Object value) {
+            mv.visitFieldInsn(GETSTATIC, unitName, CONSTANTS, CONSTANTS_DESC);
+            pushInt(mv, constant(value));
+            mv.visitInsn(AALOAD);
+        }
+
+        private void fallback(Expression expression) {
+            loadConstant(NodeBuilder.build(expression, lines, globals));
+            mv.visitTypeInsn(CHECKCAST, NODE);
+            mv.visitVarInsn(ALOAD, frame);
+            mv.visitMethodInsn(INVOKEVIRTUAL, NODE, "execute", "(" + FRAME_DESC + ")" + OBJECT_DESC, false);
+        }
+
+        private void asBoolean() {
+            mv.visitMethodInsn(INVOKESTATIC, SCRIPT_OBJECTS, "asBoolean", "(" + OBJECT_DESC + ")Z", false);
+        }
+
+        private void loadFrame() {
+            mv.visitVarInsn(ALOAD, frame);
+        }
+
+        private void frameCall(String name, String descriptor) {
+            mv.visitMethodInsn(INVOKEVIRTUAL, FRAME, name, descriptor, false);
+        }
+
+        private void sequence(List<Expression> expressions) {
+            boolean atStatement = statement, atTail = tail;
+            if (expressions.isEmpty()) {
+                mv.visitInsn(ACONST_NULL);
+                return;
+            }
+            for (int i = 0; i < expressions.size(); i++) {
+                if (atTail && i == expressions.size() - 1) tail(expressions.get(i));
+                else generate(expressions.get(i), atStatement);
+                if (i != expressions.size() - 1) mv.visitInsn(POP);
+            }
+        }
+
+        private void operation(BasicOperator operator, Expression right) {
+            if (operator == BasicOperator.AND || operator == BasicOperator.OR) {
+                Label end = new Label();
+                mv.visitInsn(DUP);
+                asBoolean();
+                mv.visitJumpInsn(operator == BasicOperator.AND ? IFEQ : IFNE, end);
+                mv.visitInsn(POP);
+                generate(right);
+                mv.visitLabel(end);
+            } else {
+                generate(right);
+                String binary = "(" + OBJECT_DESC + OBJECT_DESC + ")";
+                switch (operator) {
+                    case ADD -> mv.visitMethodInsn(INVOKESTATIC, SCRIPT_OBJECTS, "add", binary + OBJECT_DESC, false);
+                    case SUB -> mv.visitMethodInsn(INVOKESTATIC, NUMBERS, "subtract", binary + OBJECT_DESC, false);
+                    case MUL -> mv.visitMethodInsn(INVOKESTATIC, NUMBERS, "multiply", binary + OBJECT_DESC, false);
+                    case DIV -> mv.visitMethodInsn(INVOKESTATIC, NUMBERS, "divide", binary + OBJECT_DESC, false);
+                    case MOD -> mv.visitMethodInsn(INVOKESTATIC, NUMBERS, "remainder", binary + OBJECT_DESC, false);
+                    case EQUALS, NOT_EQUALS -> {
+                        mv.visitMethodInsn(INVOKESTATIC, NUMBERS, "equals", binary + "Z", false);
+                        if (operator == BasicOperator.NOT_EQUALS) {
+                            mv.visitInsn(ICONST_1);
+                            mv.visitInsn(IXOR);
+                        }
+                        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", false);
+                    }
+                    default -> {
+                        mv.visitMethodInsn(INVOKESTATIC, NUMBERS, "compare", binary + "I", false);
+                        Label isFalse = new Label();
+                        Label end = new Label();
+                        mv.visitJumpInsn(switch (operator) {
+                            case LT -> IFGE;
+                            case LE -> IFGT;
+                            case GT -> IFLE;
+                            default -> IFLT;
+                        }, isFalse);
+                        mv.visitFieldInsn(GETSTATIC, "java/lang/Boolean", "TRUE", "Ljava/lang/Boolean;");
+                        mv.visitJumpInsn(GOTO, end);
+                        mv.visitLabel(isFalse);
+                        mv.visitFieldInsn(GETSTATIC, "java/lang/Boolean", "FALSE", "Ljava/lang/Boolean;");
+                        mv.visitLabel(end);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public Void boolLiteral(boolean boolLiteral) {
+            mv.visitFieldInsn(GETSTATIC, "java/lang/Boolean", boolLiteral ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+            return null;
+        }
+
+        @Override
+        public Void breakStatement() {
+            if (breakLabel == null) {
+                throwScriptException(mv, "break outside of a loop");
+            } else if (statement) {
+                mv.visitJumpInsn(GOTO, breakLabel);
+            } else {
+                throw new UnsupportedException("break inside an expression", null);
+            }
+            // unreachable, keeps the stack shape of an expression for the surrounding code
+            mv.visitInsn(ACONST_NULL);
+            return null;
+        }
+
+        @Override
+        public Void declFunc(List<String> funcParamNames, Expression funcBody) {
+            fallback(Expressions.declFunc(funcParamNames, funcBody));
+            return null;
+        }
+
+        @Override
+        public Void ifExpr(Expression ifCondition, Expression ifBody, Optional<Expression> ifElse) {
+            boolean atStatement = statement, atTail = tail;
+            Label otherwise = new Label(), end = new Label();
+            generate(ifCondition);
+            asBoolean();
+            mv.visitJumpInsn(IFEQ, otherwise);
+            if (atTail) tail(ifBody);
+            else generate(ifBody, atStatement);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(otherwise);
+            if (ifElse.isPresent() && atTail) tail(ifElse.get());
+            else if (ifElse.isPresent()) generate(ifElse.get(), atStatement);
+            else mv.visitInsn(ACONST_NULL);
+            mv.visitLabel(end);
+            return null;
+        }
+
+        private void loop(Expression condition, Expression body, Optional<Expression> update) {
+            int last = newLocal();
+            Label start = new Label(), end = new Label(), outerBreak = breakLabel;
+            mv.visitInsn(ACONST_NULL);
+            mv.visitVarInsn(ASTORE, last);
+            mv.visitLabel(start);
+            generate(condition);
+            asBoolean();
+            mv.visitJumpInsn(IFEQ, end);
+            poll();
+            breakLabel = end;
+            statement(body);
+            breakLabel = outerBreak;
+            mv.visitVarInsn(ASTORE, last);
+            if (update.isPresent()) {
+                generate(update.get());
+                mv.visitInsn(POP);
+            }
+            mv.visitJumpInsn(GOTO, start);
+            mv.visitLabel(end);
+            mv.visitVarInsn(ALOAD, last);
+        }
+
+        @Override
+        public Void whileExpr(Expression whileCondition, Expression whileBody) {
+            loop(whileCondition, whileBody, Optional.empty());
+            return null;
+        }
+
+        @Override
+        public Void forExpr(Expression forInit, Expression forCondition, Expression forUpdate, Expression forBody) {
+            generate(forInit);
+            mv.visitInsn(POP);
+            loop(forCondition, forBody, Optional.of(forUpdate));
+            return null;
+        }
+
+        @Override
+        public Void returnExpr(Optional<Expression> returnExpr) {
+            if (returnExpr.isPresent()) tail(returnExpr.get());
+            else mv.visitInsn(ACONST_NULL);
+            if (inFunction) {
+                mv.visitInsn(ARETURN);
+            } else {
+                int value = newLocal();
+                mv.visitVarInsn(ASTORE, value);
+                loadFrame();
+                mv.visitVarInsn(ALOAD, value);
+                frameCall("setReturnValue", "(" + OBJECT_DESC + ")V");
+                mv.visitFieldInsn(GETSTATIC, CONTROL_FLOW, "RETURN", "L" + CONTROL_FLOW + ";");
+                mv.visitInsn(ATHROW);
+            }
+            // unreachable, keeps the stack shape of an expression for the surrounding code
+            mv.visitInsn(ACONST_NULL);
+            return null;
+        }
+
+        @Override
+        public Void loop(Expression loopExpr) {
+            Label start = new Label(), end = new Label(), outerBreak = breakLabel;
+            mv.visitLabel(start);
+            poll();
+            breakLabel = end;
+            statement(loopExpr);
+            breakLabel = outerBreak;
+            mv.visitInsn(POP);
+            mv.visitJumpInsn(GOTO, start);
+            mv.visitLabel(end);
+            mv.visitInsn(ACONST_NULL);
+            return null;
+        }
+
+        @Override
+        public Void declVar(String declName, Expression declValue) {
+            int value = newLocal();
+            named(declName, declValue);
+            mv.visitVarInsn(ASTORE, value);
+            loadFrame();
+            mv.visitLdcInsn(declName);
+            mv.visitVarInsn(ALOAD, value);
+            frameCall("letGlobal", "(Ljava/lang/String;" + OBJECT_DESC + ")V");
+            mv.visitVarInsn(ALOAD, value);
+            return null;
+        }
+
+        @Override
+        public Void mapInit(List<Map.Entry<Expression, Expression>> mapInitExpr) {
+            allocate(mapInitExpr.size());
+            mv.visitTypeInsn(NEW, "macky/scripting/ShapedMap");
+            mv.visitInsn(DUP);
+            mv.visitMethodInsn(INVOKESPECIAL, "macky/scripting/ShapedMap", "<init>", "()V", false);
+            for (Map.Entry<Expression, Expression> entry : mapInitExpr) {
+                mv.visitInsn(DUP);
+                generate(entry.getKey());
+                Optional<String> key = Expressions.getStringExpr(entry.getKey());
+                if (key.isPresent()) named(key.get(), entry.getValue());
+                else generate(entry.getValue());
+                mv.visitMethodInsn(INVOKEINTERFACE, "java/util/Map", "put", "(" + OBJECT_DESC + OBJECT_DESC + ")" + OBJECT_DESC, true);
+                mv.visitInsn(POP);
+            }
+            return null;
+        }
+
+        @Override
+        public Void listInit(List<Expression> listInitExpr) {
+            allocate(listInitExpr.size());
+            pushInt(mv, listInitExpr.size());
+            mv.visitTypeInsn(ANEWARRAY, OBJECT);
+            for (int i = 0; i < listInitExpr.size(); i++) {
+                mv.visitInsn(DUP);
+                pushInt(mv, i);
+                generate(listInitExpr.get(i));
+                mv.visitInsn(AASTORE);
+            }
+            mv.visitMethodInsn(INVOKESTATIC, PACKED_LIST, "of", "(" + OBJECTS_DESC + ")L" + PACKED_LIST + ";", false);
+            return null;
+        }
+
+        @Override
+        public Void nopExpr() {
+            mv.visitInsn(ACONST_NULL);
+            return null;
+        }
+
+        @Override
+        public Void string(String stringExpr) {
+            mv.visitLdcInsn(stringExpr);
+            return null;
+        }
+
+        @Override
+        public Void number(Number numberExpr) {
+            loadConstant(numberExpr);
+            return null;
+        }
+
+        @Override
+        public Void bracketed(List<Expression> bracketedExpr) {
+            sequence(bracketedExpr);
+            return null;
+        }
+
+        @Override
+        public Void accessVar(String name) {
+            loadFrame();
+            loadConstant(globals);
+            mv.visitTypeInsn(CHECKCAST, GLOBALS);
+            pushInt(mv, globals.indexOf(name));
+            mv.visitLdcInsn(name);
+            frameCall("getGlobal", "(L" + GLOBALS + ";ILjava/lang/String;)" + OBJECT_DESC);
+            return null;
+        }
+
+        @Override
+        public Void callFunc(Expression callFunc, List<Expression> params) {
+            boolean atTail = tail;
+            boolean method = Expressions.getMethod(callFunc).orElse(false);
+            int[] args = new int[params.size() + (method ? 1 : 0)];
+            for (int i = 0; i < params.size(); i++) {
+                generate(params.get(i));
+                args[args.length - params.size() + i] = newLocal();
+                mv.visitVarInsn(ASTORE, args[args.length - params.size() + i]);
+            }
+            if (method) {
+                args[0] = newLocal();
+                generate(Expressions.getKeyOwner(callFunc).get());
+                mv.visitVarInsn(ASTORE, args[0]);
+                mv.visitVarInsn(ALOAD, args[0]);
+                generate(Expressions.getKey(callFunc).get());
+                mv.visitInsn(ICONST_0);
+                mv.visitMethodInsn(INVOKESTATIC, SCRIPT_OBJECTS, "access", "(" + OBJECT_DESC + OBJECT_DESC + "Z)" + OBJECT_DESC, false);
+            } else {
+                generate(callFunc);
+            }
+            mv.visitMethodInsn(INVOKESTATIC, COMPILED_FUNCTION, "callee", "(" + OBJECT_DESC + ")" + FUNCTION_DESC, false);
+            if (atTail) {
+                int callee = newLocal();
+                mv.visitVarInsn(ASTORE, callee);
+                loadFrame();
+                mv.visitVarInsn(ALOAD, callee);
+                arguments(args);
+                mv.visitMethodInsn(INVOKESTATIC, COMPILED_FUNCTION, "tailCall", "(" + FRAME_DESC + FUNCTION_DESC + OBJECTS_DESC + ")" + OBJECT_DESC, false);
+            } else if (args.length < CALL_ARITIES.length) {
+                for (int arg : args) {
+                    mv.visitVarInsn(ALOAD, arg);
+                }
+                mv.visitMethodInsn(INVOKEVIRTUAL, SCRIPT_FUNCTION, CALL_ARITIES[args.length], callDescriptor(args.length), false);
+            } else {
+                arguments(args);
+                mv.visitMethodInsn(INVOKEVIRTUAL, SCRIPT_FUNCTION, "callN", "(" + OBJECTS_DESC + ")" + OBJECT_DESC, false);
+            }
+            return null;
+        }
+
+        private void arguments(int[] args) {
+            pushInt(mv, args.length);
+            mv.visitTypeInsn(ANEWARRAY, OBJECT);
+            for (int i = 0; i < args.length; i++) {
+                mv.visitInsn(DUP);
+                pushInt(mv, i);
+                mv.visitVarInsn(ALOAD, args[i]);
+                mv.visitInsn(AASTORE);
+            }
+        }
+
+        @Override
+        public Void access(Expression keyOwner, Expression key, boolean method) {
+            generate(keyOwner);
+            generate(key);
+            mv.visitInsn(method ? ICONST_1 : ICONST_0);
+            mv.visitMethodInsn(INVOKESTATIC, SCRIPT_OBJECTS, "access", "(" + OBJECT_DESC + OBJECT_DESC + "Z)" + OBJECT_DESC, false);
+            return null;
+        }
+
+        @Override
+        public Void unaryNegate(Expression expression) {
+            generate(expression);
+            mv.visitMethodInsn(INVOKESTATIC, SCRIPT_OBJECTS, "negate", "(" + OBJECT_DESC + ")" + OBJECT_DESC, false);
+            return null;
+        }
+
+        @Override
+        public Void operator(Expression left, Operator operator, Expression right) {
+            Expression self = Expressions.operator(left, operator, right);
+            Operators.caseOf(operator)
+                    .basic(basicOperator -> {
+                        generate(left);
+                        operation(basicOperator, right);
+                        return null;
+                    })
+                    .assignment(basicOperator -> Expressions.caseOf(left)
+                            .accessVar(varName -> {
+                                if (basicOperator.isPresent()) {
+                                    accessVar(varName);
+                                    operation(basicOperator.get(), right);
+                                } else named(varName, right);
+                                int result = newLocal();
+                                mv.visitVarInsn(ASTORE, result);
+                                loadFrame();
+                                mv.visitLdcInsn(varName);
+                                mv.visitVarInsn(ALOAD, result);
+                                frameCall("setGlobal", "(Ljava/lang/String;" + OBJECT_DESC + ")V");
+                                mv.visitVarInsn(ALOAD, result);
+                                return (Void) null;
+                            })
+                            .access((keyOwner, key, method) -> {
+                                if (method) {
+                                    fallback(self);
+                                    return null;
+                                }
+                                int owner = newLocal(), realKey = newLocal(), result = newLocal();
+                                generate(keyOwner);
+                                mv.visitVarInsn(ASTORE, owner);
+                                generate(key);
+                                mv.visitVarInsn(ASTORE, realKey);
+                                if (basicOperator.isPresent()) {
+                                    mv.visitVarInsn(ALOAD, owner);
+                                    mv.visitVarInsn(ALOAD, realKey);
+                                    mv.visitInsn(ICONST_0);
+                                    mv.visitMethodInsn(INVOKESTATIC, SCRIPT_OBJECTS, "access", "(" + OBJECT_DESC + OBJECT_DESC + "Z)" + OBJECT_DESC, false);
+                                    operation(basicOperator.get(), right);
+                                } else generate(right);
+                                mv.visitVarInsn(ASTORE, result);
+                                mv.visitVarInsn(ALOAD, owner);
+                                mv.visitVarInsn(ALOAD, realKey);
+                                mv.visitVarInsn(ALOAD, result);
+                                mv.visitMethodInsn(INVOKESTATIC, SCRIPT_OBJECTS, "assign", "(" + OBJECT_DESC + OBJECT_DESC + OBJECT_DESC + ")V", false);
+                                mv.visitVarInsn(ALOAD, budget);
+                                mv.visitVarInsn(ALOAD, owner);
+                                mv.visitMethodInsn(INVOKEVIRTUAL, BUDGET, "checkSize", "(" + OBJECT_DESC + ")V", false);
+                                mv.visitVarInsn(ALOAD, result);
+                                return null;
+                            })
+                            .localVar((localName, localDepth, localSlot) -> {
+                                if (basicOperator.isPresent()) {
+                                    localVar(localName, localDepth, localSlot);
+                                    operation(basicOperator.get(), right);
+                                } else named(localName, right);
+                                int result = newLocal();
+                                mv.visitVarInsn(ASTORE, result);
+                                loadFrame();
+                                pushInt(mv, localDepth);
+                                pushInt(mv, localSlot);
+                                mv.visitLdcInsn(localName);
+                                mv.visitVarInsn(ALOAD, result);
+                                frameCall("set", "(IILjava/lang/String;" + OBJECT_DESC + ")V");
+                                mv.visitVarInsn(ALOAD, result);
+                                return null;
+                            })
+                            .otherwise(() -> {
+                                fallback(self);
+                                return null;
+                            })
+                    );
+            return null;
+        }
+
+        @Override
+        public Void localVar(String localName, int localDepth, int localSlot) {
+            loadFrame();
+            pushInt(mv, localDepth);
+            pushInt(mv, localSlot);
+            mv.visitLdcInsn(localName);
+            frameCall("get", "(IILjava/lang/String;)" + OBJECT_DESC);
+            return null;
+        }
+
+        @Override
+        public Void declLocal(String declLocalName, int declLocalSlot, Expression declLocalValue) {
+            int value = newLocal();
+            named(declLocalName, declLocalValue);
+            mv.visitVarInsn(ASTORE, value);
+            loadFrame();
+            pushInt(mv, declLocalSlot);
+            mv.visitVarInsn(ALOAD, value);
+            frameCall("let", "(I" + OBJECT_DESC + ")V");
+            mv.visitVarInsn(ALOAD, value);
+            return null;
+        }
+
+        @Override
+        public Void block(List<String> blockNames, List<Expression> blockExprs) {
+            int outer = frame;
+            loadFrame();
+            loadConstant(blockNames);
+            mv.visitTypeInsn(CHECKCAST, "java/util/List");
+            frameCall("push", "(Ljava/util/List;)" + FRAME_DESC);
+            frame = newLocal();
+            mv.visitVarInsn(ASTORE, frame);
+            sequence(blockExprs);
+            frame = outer;
+            return null;
+        }
+
+        @Override
+        public Void closure(List<String> closureNames, int closureParamCount, Expression closureBody) {
+            int line = lines.get(current);
+            String label = closureName != null ? closureName : line == 0 ? "function" : "function@" + line;
+            closureName = null;
+            String function = generateFunction(label, closureNames, closureParamCount, closureBody);
+            allocate(0);
+            mv.visitTypeInsn(NEW, function);
+            mv.visitInsn(DUP);
+            loadFrame();
+            mv.visitMethodInsn(INVOKESPECIAL, function, "<init>", "(" + FRAME_DESC + ")V", false);
+            return null;
+        }
+
+        @Override
+        public Void forIn(String forInName, int forInSlot, Expression forInIterable, Expression forInBody) {
+            int iterator = newLocal(), element = newLocal(), last = newLocal();
+            Label start = new Label(), end = new Label(), outerBreak = breakLabel;
+            generate(forInIterable);
+            mv.visitMethodInsn(INVOKESTATIC, SCRIPT_OBJECTS, "iterate", "(" + OBJECT_DESC + ")Ljava/util/Iterator;", false);
+            mv.visitVarInsn(ASTORE, iterator);
+            mv.visitInsn(ACONST_NULL);
+            mv.visitVarInsn(ASTORE, last);
+            mv.visitLabel(start);
+            mv.visitVarInsn(ALOAD, iterator);
+            mv.visitMethodInsn(INVOKEINTERFACE, "java/util/Iterator", "hasNext", "()Z", true);
+            mv.visitJumpInsn(IFEQ, end);
+            poll();
+            mv.visitVarInsn(ALOAD, iterator);
+            mv.visitMethodInsn(INVOKEINTERFACE, "java/util/Iterator", "next", "()" + OBJECT_DESC, true);
+            mv.visitVarInsn(ASTORE, element);
+            loadFrame();
+            if (forInSlot >= 0) {
+                pushInt(mv, forInSlot);
+                mv.visitVarInsn(ALOAD, element);
+                frameCall("let", "(I" + OBJECT_DESC + ")V");
+            } else {
+                mv.visitLdcInsn(forInName);
+                mv.visitVarInsn(ALOAD, element);
+                frameCall("letGlobal", "(Ljava/lang/String;" + OBJECT_DESC + ")V");
+            }
+            breakLabel = end;
+            statement(forInBody);
+            breakLabel = outerBreak;
+            mv.visitVarInsn(ASTORE, last);
+            mv.visitJumpInsn(GOTO, start);
+            mv.visitLabel(end);
+            mv.visitVarInsn(ALOAD, last);
+            return null;
+        }
+    }
+
+}
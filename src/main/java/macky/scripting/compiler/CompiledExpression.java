@@ -0,0 +1,27 @@
+package macky.scripting.compiler;
+
+import macky.scripting.Budget;
+import macky.scripting.Profiler;
+import macky.scripting.Scope;
+import macky.scripting.ScriptObjects;
+
+public interface CompiledExpression {
+
+    /**
+     * Evaluates against a scope, charging the given budget and, unless {@code profile} is null, profiling into it. The
+     * result is not flattened. Functions it calls are charged to the {@link Budget#current current} budget, so callers
+     * {@link Budget#enter enter} {@code budget} around it, like {@link #evaluate} does.
+     */
+    Object execute(Scope scope, Budget budget, Profiler.Stack profile);
+
+    default Object evaluate(Scope scope) {
+        Budget budget = new Budget(scope.getLimits());
+        Budget previous = budget.enter();
+        try {
+            return ScriptObjects.flatten(execute(scope, budget, null));
+        } finally {
+            budget.exit(previous);
+        }
+    }
+
+}
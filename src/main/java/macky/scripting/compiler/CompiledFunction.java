@@ -0,0 +1,170 @@
+package macky.scripting.compiler;
+
+import macky.scripting.Budget;
+import macky.scripting.ControlFlowException;
+import macky.scripting.Frame;
+import macky.scripting.Profiler;
+import macky.scripting.ScriptException;
+import macky.scripting.ScriptFunction;
+import macky.scripting.ScriptObjects;
+import macky.scripting.jfr.ScriptEvents;
+
+import java.util.List;
+
+/**
+ * A function generated by {@link ScriptCompiler}. Generated subclasses only supply the {@link #body}; calls, budget
+ * polls, profiling and tail calls work like the closures of the node tree.
+ */
+public abstract class CompiledFunction extends ScriptFunction {
+
+    /**
+     * What the body returns when it ends in a tail call, which has been left in its frame, see {@link #tailCall}.
+     */
+    protected static final Object PENDING = new Object();
+
+    protected final Frame frame;
+    private final String label;
+    private final List<String> names;
+    private final int paramCount;
+    private final boolean pure;
+
+    protected CompiledFunction(Frame frame, String label, List<String> names, int paramCount, boolean pure) {
+        this.frame = frame;
+        this.label = label;
+        this.names = names;
+        this.paramCount = paramCount;
+        this.pure = pure;
+    }
+
+    /**
+     * Runs the body once in the frame of a call.
+     */
+    protected abstract Object body(Frame inner);
+
+    /**
+     * The same function closed over another frame.
+     */
+    protected abstract CompiledFunction with(Frame frame);
+
+    @Override
+    public Object call(List<Object> params) {
+        argCount(params, paramCount);
+        Frame inner = frame.pushFunction(names);
+        for (int i = 0; i < paramCount; i++) {
+            inner.let(i, params.get(i));
+        }
+        return run(inner);
+    }
+
+    @Override
+    public ScriptFunction fork() {
+        return pure ? with(frame.fork()) : null;
+    }
+
+    @Override
+    public void join() {
+        frame.getBudget().join();
+    }
+
+    @Override
+    public Object call0() {
+        if (paramCount != 0) return super.call0();
+        return run(frame.pushFunction(names));
+    }
+
+    @Override
+    public Object call1(Object a) {
+        if (paramCount != 1) return super.call1(a);
+        Frame inner = frame.pushFunction(names);
+        inner.let(0, a);
+        return run(inner);
+    }
+
+    @Override
+    public Object call2(Object a, Object b) {
+        if (paramCount != 2) return super.call2(a, b);
+        Frame inner = frame.pushFunction(names);
+        inner.let(0, a);
+        inner.let(1, b);
+        return run(inner);
+    }
+
+    @Override
+    public Object call3(Object a, Object b, Object c) {
+        if (paramCount != 3) return super.call3(a, b, c);
+        Frame inner = frame.pushFunction(names);
+        inner.let(0, a);
+        inner.let(1, b);
+        inner.let(2, c);
+        return run(inner);
+    }
+
+    @Override
+    public Object callN(Object[] args) {
+        if (paramCount != args.length) return super.callN(args);
+        Frame inner = frame.pushFunction(names);
+        for (int i = 0; i < args.length; i++) {
+            inner.let(i, args[i]);
+        }
+        return run(inner);
+    }
+
+    private Object run(Frame inner) {
+        Object result = execute(inner);
+        while (result == PENDING) {
+            CompiledFunction function = (CompiledFunction) inner.getTailFunction();
+            inner = function.enter(inner.getTailArguments());
+            result = function.execute(inner);
+        }
+        return result;
+    }
+
+    private Frame enter(Object[] args) {
+        if (paramCount != args.length) throw new ScriptException("invalid arg count");
+        Frame inner = frame.pushFunction(names);
+        for (int i = 0; i < args.length; i++) {
+            inner.let(i, args[i]);
+        }
+        return inner;
+    }
+
+    private Object execute(Frame inner) {
+        Budget budget = inner.getBudget();
+        budget.poll();
+        Budget previous = budget.isCall() ? budget.enter() : null;
+        Profiler.Stack profile = inner.getProfile();
+        if (profile != null) profile.enter(label);
+        try {
+            return body(inner);
+        } catch (ControlFlowException controlFlow) {
+            if (controlFlow == ControlFlowException.RETURN) return inner.getReturnValue();
+            throw new ScriptException("break outside of a loop");
+        } finally {
+            if (profile != null) profile.exit();
+            if (budget.isCall()) budget.exit(previous);
+        }
+    }
+
+    /**
+     * A call in tail position of a body. A call to a compiled function is left in the frame and made by the caller of
+     * the body, so recursion in tail form runs in constant Java stack.
+     */
+    protected static Object tailCall(Frame frame, ScriptFunction callee, Object[] args) {
+        if (callee instanceof CompiledFunction) {
+            frame.setTailCall(callee, args);
+            return PENDING;
+        }
+        return callee.callN(args);
+    }
+
+    /**
+     * The function to call for a value. Host functions are wrapped to emit host call events while a recording has
+     * them enabled.
+     */
+    public static ScriptFunction callee(Object value) {
+        ScriptFunction function = ScriptObjects.getFunction(value);
+        if (function instanceof CompiledFunction || !ScriptEvents.isHostCallEnabled()) return function;
+        return ScriptEvents.traced(function);
+    }
+
+}
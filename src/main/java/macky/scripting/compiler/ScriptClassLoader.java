@@ -0,0 +1,17 @@
+package macky.scripting.compiler;
+
+final class ScriptClassLoader extends ClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    ScriptClassLoader(ClassLoader parent) {
+        super(parent);
+    }
+
+    Class<?> define(String internalName, byte[] bytes) {
+        return defineClass(internalName.replace('/', '.'), bytes, 0, bytes.length);
+    }
+
+}
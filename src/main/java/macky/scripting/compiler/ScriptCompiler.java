@@ -0,0 +1,45 @@
+package macky.scripting.compiler;
+
+import macky.scripting.Expression;
+import macky.scripting.Globals;
+import macky.scripting.LineTable;
+import macky.scripting.Resolver;
+import macky.scripting.node.NodeBuilder;
+import org.objectweb.asm.ClassTooLargeException;
+import org.objectweb.asm.MethodTooLargeException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ScriptCompiler {
+
+    public static volatile boolean TRACE = false;
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private ScriptCompiler() {
+
+    }
+
+    public static CompiledExpression compile(Expression expression) {
+        return compileResolved(Resolver.resolve(expression), LineTable.NONE, new Globals());
+    }
+
+    /**
+     * Compiles a resolved expression whose functions are labelled after the lines in {@code lines} and whose global
+     * reads are numbered in {@code globals}, like {@link NodeBuilder#build(Expression, LineTable, Globals)}. An
+     * expression that cannot be compiled runs as a node tree instead.
+     */
+    public static CompiledExpression compileResolved(Expression resolved, LineTable lines, Globals globals) {
+        CodeGenerator generator = new CodeGenerator("macky/scripting/compiler/Script$" + COUNTER.incrementAndGet(), lines, globals);
+        try {
+            return generator.generate(resolved);
+        } catch (CodeGenerator.UnsupportedException | MethodTooLargeException | ClassTooLargeException e) {
+            return NodeBuilder.build(resolved, lines, globals)::execute;
+        }
+    }
+
+    public static CompiledExpression interpret(Expression expression) {
+        return NodeBuilder.build(Resolver.resolve(expression))::execute;
+    }
+
+}
@@ -0,0 +1,24 @@
+package macky.scripting.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("macky.scripting.Compile")
+@Label("Script Compile")
+@Description("A script parsed, resolved, optimized and built into nodes")
+@Category("Macky Scripting")
+@StackTrace(false)
+public final class CompileEvent extends Event {
+
+    @Label("Source")
+    @Description("The start of the source text")
+    public String source;
+
+    @Label("Source Length")
+    public int sourceLength;
+
+}
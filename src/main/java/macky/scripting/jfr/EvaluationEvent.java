@@ -0,0 +1,24 @@
+package macky.scripting.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("macky.scripting.Evaluation")
+@Label("Script Evaluation")
+@Description("One evaluation of a compiled script")
+@Category("Macky Scripting")
+@StackTrace(false)
+public final class EvaluationEvent extends Event {
+
+    @Label("Source")
+    @Description("The start of the source text")
+    public String source;
+
+    @Label("Failed")
+    public boolean failed;
+
+}
@@ -0,0 +1,26 @@
+package macky.scripting.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("macky.scripting.HostCall")
+@Label("Host Function Call")
+@Description("A call from a script into a function implemented in Java")
+@Category("Macky Scripting")
+@StackTrace(false)
+public final class HostCallEvent extends Event {
+
+    @Label("Function")
+    public String function;
+
+    @Label("Function Class")
+    public Class<?> functionClass;
+
+    @Label("Arguments")
+    public int arguments;
+
+}
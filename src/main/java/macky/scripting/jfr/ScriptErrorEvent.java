@@ -0,0 +1,21 @@
+package macky.scripting.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("macky.scripting.ScriptError")
+@Label("Script Error")
+@Description("A compilation or evaluation that failed with a script exception, with the stack trace where it failed")
+@Category("Macky Scripting")
+public final class ScriptErrorEvent extends Event {
+
+    @Label("Exception Class")
+    public Class<?> exceptionClass;
+
+    @Label("Message")
+    public String message;
+
+}
@@ -0,0 +1,139 @@
+package macky.scripting.jfr;
+
+import jdk.jfr.EventType;
+import macky.scripting.ScriptException;
+import macky.scripting.ScriptFunction;
+
+import java.util.List;
+
+/**
+ * Helpers for emitting the Flight Recorder events of this package. Events cost next to nothing while no recording has
+ * them enabled: event objects that are never committed are optimized away, and host functions are only wrapped in a
+ * {@link #traced traced} function while {@link HostCallEvent} is enabled.
+ */
+public final class ScriptEvents {
+
+    private static final int SOURCE_LENGTH = 120;
+
+    private ScriptEvents() {
+
+    }
+
+    private static final class HostCalls {
+        private static final EventType TYPE = EventType.getEventType(HostCallEvent.class);
+    }
+
+    public static boolean isHostCallEnabled() {
+        return HostCalls.TYPE.isEnabled();
+    }
+
+    /**
+     * The start of a source text, short enough to put in every event.
+     */
+    public static String describe(String source) {
+        if (source == null || source.length() <= SOURCE_LENGTH) return source;
+        return source.substring(0, SOURCE_LENGTH) + "...";
+    }
+
+    /**
+     * Emits a {@link ScriptErrorEvent} for the error a compilation or evaluation failed with. Errors that are caught
+     * inside the library, e.g. while folding constants, are not reported.
+     */
+    public static void error(ScriptException error) {
+        ScriptErrorEvent event = new ScriptErrorEvent();
+        if (event.shouldCommit()) {
+            event.exceptionClass = error.getClass();
+            event.message = error.getMessage();
+            event.commit();
+        }
+    }
+
+    /**
+     * A function that emits a {@link HostCallEvent} for each call to the given host function.
+     */
+    public static ScriptFunction traced(ScriptFunction function) {
+        return new ScriptFunction() {
+            @Override
+            public Object call(List<Object> params) {
+                HostCallEvent event = begin();
+                try {
+                    return function.call(params);
+                } finally {
+                    commit(event, function, params.size());
+                }
+            }
+
+            @Override
+            public Object call0() {
+                HostCallEvent event = begin();
+                try {
+                    return function.call0();
+                } finally {
+                    commit(event, function, 0);
+                }
+            }
+
+            @Override
+            public Object call1(Object a) {
+                HostCallEvent event = begin();
+                try {
+                    return function.call1(a);
+                } finally {
+                    commit(event, function, 1);
+                }
+            }
+
+            @Override
+            public Object call2(Object a, Object b) {
+                HostCallEvent event = begin();
+                try {
+                    return function.call2(a, b);
+                } finally {
+                    commit(event, function, 2);
+                }
+            }
+
+            @Override
+            public Object call3(Object a, Object b, Object c) {
+                HostCallEvent event = begin();
+                try {
+                    return function.call3(a, b, c);
+                } finally {
+                    commit(event, function, 3);
+                }
+            }
+
+            @Override
+            public Object callN(Object[] args) {
+                HostCallEvent event = begin();
+                try {
+                    return function.callN(args);
+                } finally {
+                    commit(event, function, args.length);
+                }
+            }
+
+            @Override
+            public String toString() {
+                return function.toString();
+            }
+        };
+    }
+
+    private static HostCallEvent begin() {
+        HostCallEvent event = new HostCallEvent();
+        event.begin();
+        return event;
+    }
+
+    private static void commit(HostCallEvent event, ScriptFunction function, int arguments) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.function = function.toString();
+            event.functionClass = function.getClass();
+            event.arguments = arguments;
+            event.commit();
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package macky.scripting.node;
+
+import macky.scripting.BasicOperator;
+import macky.scripting.Frame;
+import macky.scripting.ScriptObjects;
+import macky.scripting.ShapedMap;
+
+public final class AccessAssignNode extends Node {
+
+    private final BasicOperator operator;
+    private Node owner;
+    private Node key;
+    private Node value;
+    private String field;
+    private final InlineCache cache = new InlineCache();
+    private final SlotCache slots = new SlotCache();
+
+    public AccessAssignNode(BasicOperator operator, Node owner, Node key, Node value) {
+        this.operator = operator;
+        this.owner = adopt(owner);
+        this.key = adopt(key);
+        this.value = adopt(value);
+        this.field = SlotCache.field(key);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Object o = owner.execute(frame);
+        Object k = key.execute(frame);
+        ShapedMap shaped = field != null && o instanceof ShapedMap ? (ShapedMap) o : null;
+        Accessor accessor = shaped == null ? cache.lookup(o) : null;
+        Object result;
+        if (operator == null) {
+            result = value.execute(frame);
+        } else {
+            Object current = shaped != null ? slots.get(shaped, field) : accessor.get(o, k);
+            if (operator == BasicOperator.AND) {
+                result = ScriptObjects.asBoolean(current) ? value.execute(frame) : current;
+            } else if (operator == BasicOperator.OR) {
+                result = ScriptObjects.asBoolean(current) ? current : value.execute(frame);
+            } else {
+                result = operator.getBinary().call(current, value.execute(frame));
+            }
+        }
+        if (shaped != null) slots.set(shaped, field, result);
+        else accessor.set(o, k, result);
+        frame.getBudget().checkSize(o);
+        return result;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (owner == oldChild) owner = newChild;
+        else if (key == oldChild) {
+            key = newChild;
+            field = SlotCache.field(newChild);
+        } else if (value == oldChild) value = newChild;
+    }
+
+}
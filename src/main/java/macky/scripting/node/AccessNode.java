@@ -0,0 +1,40 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+import macky.scripting.ShapedMap;
+
+public final class AccessNode extends Node {
+
+    private Node owner;
+    private Node key;
+    private String field;
+    private final InlineCache cache = new InlineCache();
+    private final SlotCache slots = new SlotCache();
+
+    public AccessNode(Node owner, Node key) {
+        this.owner = adopt(owner);
+        this.key = adopt(key);
+        this.field = SlotCache.field(key);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Object o = owner.execute(frame);
+        if (field != null && o instanceof ShapedMap) return slots.get((ShapedMap) o, field);
+        return cache.lookup(o).get(o, key.execute(frame));
+    }
+
+    InlineCache getCache() {
+        return cache;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (owner == oldChild) owner = newChild;
+        else if (key == oldChild) {
+            key = newChild;
+            field = SlotCache.field(newChild);
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package macky.scripting.node;
+
+import macky.scripting.ScriptObjects;
+import macky.scripting.ShapedMap;
+import macky.scripting.ScriptingList;
+import macky.scripting.ScriptingMap;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes one kind of collection the way {@link ScriptObjects#access} and {@link ScriptObjects#assign} do,
+ * without checking again which kind it is.
+ */
+abstract class Accessor {
+
+    static final Accessor MAP = new Accessor() {
+        @Override
+        Object get(Object owner, Object key) {
+            return ((Map<?, ?>) owner).get(ScriptObjects.flatten(key));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void set(Object owner, Object key, Object value) {
+            ((Map<Object, Object>) owner).put(ScriptObjects.flatten(key), value);
+        }
+    };
+
+    static final Accessor SHAPED_MAP = new Accessor() {
+        @Override
+        Object get(Object owner, Object key) {
+            return ((ShapedMap) owner).get(ScriptObjects.flatten(key));
+        }
+
+        @Override
+        void set(Object owner, Object key, Object value) {
+            ((ShapedMap) owner).put(ScriptObjects.flatten(key), value);
+        }
+    };
+
+    static final Accessor LIST = new Accessor() {
+        @Override
+        Object get(Object owner, Object key) {
+            List<?> list = (List<?>) owner;
+            return list.get(ScriptObjects.getIndex(key, list.size()));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void set(Object owner, Object key, Object value) {
+            List<Object> list = (List<Object>) owner;
+            list.set(ScriptObjects.getIndex(key, list.size()), value);
+        }
+    };
+
+    static final Accessor SCRIPTING_MAP = new Accessor() {
+        @Override
+        Object get(Object owner, Object key) {
+            return ((ScriptingMap) owner).mapGet(ScriptObjects.flatten(key));
+        }
+
+        @Override
+        void set(Object owner, Object key, Object value) {
+            ((ScriptingMap) owner).mapSet(ScriptObjects.flatten(key), value);
+        }
+    };
+
+    static final Accessor SCRIPTING_LIST = new Accessor() {
+        @Override
+        Object get(Object owner, Object key) {
+            ScriptingList list = (ScriptingList) owner;
+            return list.listGet(ScriptObjects.getIndex(key, list.listSize()));
+        }
+
+        @Override
+        void set(Object owner, Object key, Object value) {
+            ScriptingList list = (ScriptingList) owner;
+            list.listSet(ScriptObjects.getIndex(key, list.listSize()), value);
+        }
+    };
+
+    static final Accessor GENERIC = new Accessor() {
+        @Override
+        Object get(Object owner, Object key) {
+            return ScriptObjects.access(owner, key, false);
+        }
+
+        @Override
+        void set(Object owner, Object key, Object value) {
+            ScriptObjects.assign(owner, key, value);
+        }
+    };
+
+    abstract Object get(Object owner, Object key);
+
+    abstract void set(Object owner, Object key, Object value);
+
+    /**
+     * Checks in the same order as {@link ScriptObjects#access}. Owners that are not collections get the generic
+     * accessor, which reports the error.
+     */
+    static Accessor of(Object owner) {
+        if (owner instanceof ShapedMap) return SHAPED_MAP;
+        else if (owner instanceof Map) return MAP;
+        else if (owner instanceof List) return LIST;
+        else if (owner instanceof ScriptingMap) return SCRIPTING_MAP;
+        else if (owner instanceof ScriptingList) return SCRIPTING_LIST;
+        else return GENERIC;
+    }
+
+}
@@ -0,0 +1,70 @@
+package macky.scripting.node;
+
+import macky.scripting.BasicOperator;
+import macky.scripting.Frame;
+
+public abstract class BinaryNode extends Node {
+
+    protected final BasicOperator operator;
+    protected Node left;
+    protected Node right;
+
+    protected BinaryNode(BasicOperator operator, Node left, Node right) {
+        this.operator = operator;
+        this.left = adopt(left);
+        this.right = adopt(right);
+    }
+
+    public static BinaryNode create(BasicOperator operator, Node left, Node right) {
+        return new Uninitialized(operator, left, right);
+    }
+
+    protected final Object generalize(Object a, Object b) {
+        return replace(new Generic(operator, left, right)).operator.getBinary().call(a, b);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (left == oldChild) left = newChild;
+        else if (right == oldChild) right = newChild;
+    }
+
+    static final class Uninitialized extends BinaryNode {
+
+        Uninitialized(BasicOperator operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            BinaryNode specialized = null;
+            if (a instanceof Long && b instanceof Long) {
+                specialized = LongBinaryNode.specialize(operator, left, right);
+            } else if (a instanceof Double && b instanceof Double) {
+                specialized = DoubleBinaryNode.specialize(operator, left, right);
+            }
+            if (specialized != null) {
+                return replace(specialized).operator.getBinary().call(a, b);
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Generic extends BinaryNode {
+
+        Generic(BasicOperator operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            return operator.getBinary().call(a, right.execute(frame));
+        }
+
+    }
+
+}
@@ -0,0 +1,32 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+
+import java.util.List;
+
+public final class BlockNode extends Node {
+
+    private final List<String> names;
+    private final Node[] body;
+
+    public BlockNode(List<String> names, Node[] body) {
+        this.names = names;
+        this.body = adopt(body);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Frame inner = frame.push(names);
+        Object last = null;
+        for (Node node : body) {
+            last = node.execute(inner);
+        }
+        return last;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        replaceIn(body, oldChild, newChild);
+    }
+
+}
@@ -0,0 +1,13 @@
+package macky.scripting.node;
+
+import macky.scripting.ControlFlowException;
+import macky.scripting.Frame;
+
+public final class BreakNode extends Node {
+
+    @Override
+    public Object execute(Frame frame) {
+        throw ControlFlowException.BREAK;
+    }
+
+}
@@ -0,0 +1,66 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+import macky.scripting.ScriptFunction;
+import macky.scripting.ScriptObjects;
+import macky.scripting.jfr.HostCallEvent;
+import macky.scripting.jfr.ScriptEvents;
+
+public final class CallNode extends Node {
+
+    private Node function;
+    private final Node[] arguments;
+
+    public CallNode(Node function, Node[] arguments) {
+        this.function = adopt(function);
+        this.arguments = adopt(arguments);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        switch (arguments.length) {
+            case 0: {
+                return callee(function.execute(frame)).call0();
+            }
+            case 1: {
+                Object a = arguments[0].execute(frame);
+                return callee(function.execute(frame)).call1(a);
+            }
+            case 2: {
+                Object a = arguments[0].execute(frame);
+                Object b = arguments[1].execute(frame);
+                return callee(function.execute(frame)).call2(a, b);
+            }
+            case 3: {
+                Object a = arguments[0].execute(frame);
+                Object b = arguments[1].execute(frame);
+                Object c = arguments[2].execute(frame);
+                return callee(function.execute(frame)).call3(a, b, c);
+            }
+            default: {
+                Object[] args = new Object[arguments.length];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = arguments[i].execute(frame);
+                }
+                return callee(function.execute(frame)).callN(args);
+            }
+        }
+    }
+
+    /**
+     * The function to call for a value. Host functions are wrapped to emit {@link HostCallEvent}s while a recording
+     * has them enabled.
+     */
+    static ScriptFunction callee(Object value) {
+        ScriptFunction function = ScriptObjects.getFunction(value);
+        if (function instanceof ClosureNode.Function || !ScriptEvents.isHostCallEnabled()) return function;
+        return ScriptEvents.traced(function);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (function == oldChild) function = newChild;
+        else replaceIn(arguments, oldChild, newChild);
+    }
+
+}
@@ -0,0 +1,162 @@
+package macky.scripting.node;
+
+import macky.scripting.Budget;
+import macky.scripting.ControlFlowException;
+import macky.scripting.Frame;
+import macky.scripting.Profiler;
+import macky.scripting.ScriptException;
+import macky.scripting.ScriptFunction;
+
+import java.util.List;
+
+public final class ClosureNode extends Node {
+
+    private final String label;
+    private final List<String> names;
+    private final int paramCount;
+    private final boolean pure;
+    private Node body;
+
+    public ClosureNode(List<String> names, int paramCount, Node body) {
+        this("function", names, paramCount, body);
+    }
+
+    /**
+     * A closure whose functions are called {@code label} in {@link Profiler profiles}.
+     */
+    public ClosureNode(String label, List<String> names, int paramCount, Node body) {
+        this(label, names, paramCount, body, false);
+    }
+
+    /**
+     * A closure whose functions may be {@link ScriptFunction#fork forked} if {@code pure}, i.e. if its body changes
+     * nothing but its own locals and calls no function.
+     */
+    public ClosureNode(String label, List<String> names, int paramCount, Node body, boolean pure) {
+        this.label = label;
+        this.names = names;
+        this.paramCount = paramCount;
+        this.pure = pure;
+        this.body = adopt(body);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        frame.getBudget().allocate(0);
+        return new Function(this, frame);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (body == oldChild) body = newChild;
+    }
+
+    static final class Function extends ScriptFunction {
+
+        private final ClosureNode closure;
+        private final Frame frame;
+
+        Function(ClosureNode closure, Frame frame) {
+            this.closure = closure;
+            this.frame = frame;
+        }
+
+        @Override
+        public Object call(List<Object> params) {
+            argCount(params, closure.paramCount);
+            Frame inner = frame.pushFunction(closure.names);
+            for (int i = 0; i < closure.paramCount; i++) {
+                inner.let(i, params.get(i));
+            }
+            return run(inner);
+        }
+
+        @Override
+        public ScriptFunction fork() {
+            return closure.pure ? new Function(closure, frame.fork()) : null;
+        }
+
+        @Override
+        public void join() {
+            frame.getBudget().join();
+        }
+
+        @Override
+        public Object call0() {
+            if (closure.paramCount != 0) return super.call0();
+            return run(frame.pushFunction(closure.names));
+        }
+
+        @Override
+        public Object call1(Object a) {
+            if (closure.paramCount != 1) return super.call1(a);
+            Frame inner = frame.pushFunction(closure.names);
+            inner.let(0, a);
+            return run(inner);
+        }
+
+        @Override
+        public Object call2(Object a, Object b) {
+            if (closure.paramCount != 2) return super.call2(a, b);
+            Frame inner = frame.pushFunction(closure.names);
+            inner.let(0, a);
+            inner.let(1, b);
+            return run(inner);
+        }
+
+        @Override
+        public Object call3(Object a, Object b, Object c) {
+            if (closure.paramCount != 3) return super.call3(a, b, c);
+            Frame inner = frame.pushFunction(closure.names);
+            inner.let(0, a);
+            inner.let(1, b);
+            inner.let(2, c);
+            return run(inner);
+        }
+
+        @Override
+        public Object callN(Object[] args) {
+            if (closure.paramCount != args.length) return super.callN(args);
+            Frame inner = frame.pushFunction(closure.names);
+            for (int i = 0; i < args.length; i++) {
+                inner.let(i, args[i]);
+            }
+            return run(inner);
+        }
+
+        private Object run(Frame inner) {
+            return TailCallNode.complete(inner, execute(inner));
+        }
+
+        Frame enter(Object[] args) {
+            if (closure.paramCount != args.length) throw new ScriptException("invalid arg count");
+            Frame inner = frame.pushFunction(closure.names);
+            for (int i = 0; i < args.length; i++) {
+                inner.let(i, args[i]);
+            }
+            return inner;
+        }
+
+        /**
+         * Runs the body once. The result is {@link TailCallNode#PENDING} if it ended in a tail call.
+         */
+        Object execute(Frame inner) {
+            Budget budget = inner.getBudget();
+            budget.poll();
+            Budget previous = budget.isCall() ? budget.enter() : null;
+            Profiler.Stack profile = inner.getProfile();
+            if (profile != null) profile.enter(closure.label);
+            try {
+                return closure.body.execute(inner);
+            } catch (ControlFlowException controlFlow) {
+                if (controlFlow == ControlFlowException.RETURN) return inner.getReturnValue();
+                throw new ScriptException("break outside of a loop");
+            } finally {
+                if (profile != null) profile.exit();
+                if (budget.isCall()) budget.exit(previous);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,22 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+
+public final class ConstantNode extends Node {
+
+    private final Object value;
+
+    public ConstantNode(Object value) {
+        this.value = value;
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        return value;
+    }
+
+    Object getValue() {
+        return value;
+    }
+
+}
@@ -0,0 +1,239 @@
+package macky.scripting.node;
+
+import macky.scripting.BasicOperator;
+import macky.scripting.Frame;
+
+abstract class DoubleBinaryNode extends BinaryNode {
+
+    DoubleBinaryNode(BasicOperator operator, Node left, Node right) {
+        super(operator, left, right);
+    }
+
+    static BinaryNode specialize(BasicOperator operator, Node left, Node right) {
+        switch (operator) {
+            case ADD:
+                return new Add(left, right);
+            case SUB:
+                return new Sub(left, right);
+            case MUL:
+                return new Mul(left, right);
+            case DIV:
+                return new Div(left, right);
+            case MOD:
+                return new Mod(left, right);
+            case LT:
+                return new Lt(left, right);
+            case LE:
+                return new Le(left, right);
+            case GT:
+                return new Gt(left, right);
+            case GE:
+                return new Ge(left, right);
+            case EQUALS:
+                return new Equals(left, right);
+            case NOT_EQUALS:
+                return new NotEquals(left, right);
+            default:
+                return null;
+        }
+    }
+
+    static final class Add extends DoubleBinaryNode {
+
+        Add(Node left, Node right) {
+            super(BasicOperator.ADD, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Double && b instanceof Double) {
+                return (Double) a + (Double) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Sub extends DoubleBinaryNode {
+
+        Sub(Node left, Node right) {
+            super(BasicOperator.SUB, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Double && b instanceof Double) {
+                return (Double) a - (Double) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Mul extends DoubleBinaryNode {
+
+        Mul(Node left, Node right) {
+            super(BasicOperator.MUL, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Double && b instanceof Double) {
+                return (Double) a * (Double) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Div extends DoubleBinaryNode {
+
+        Div(Node left, Node right) {
+            super(BasicOperator.DIV, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Double && b instanceof Double) {
+                return (Double) a / (Double) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Mod extends DoubleBinaryNode {
+
+        Mod(Node left, Node right) {
+            super(BasicOperator.MOD, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Double && b instanceof Double) {
+                return (Double) a % (Double) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Lt extends DoubleBinaryNode {
+
+        Lt(Node left, Node right) {
+            super(BasicOperator.LT, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Double && b instanceof Double) {
+                return (Double) a < (Double) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Le extends DoubleBinaryNode {
+
+        Le(Node left, Node right) {
+            super(BasicOperator.LE, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Double && b instanceof Double) {
+                return (Double) a <= (Double) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Gt extends DoubleBinaryNode {
+
+        Gt(Node left, Node right) {
+            super(BasicOperator.GT, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Double && b instanceof Double) {
+                return (Double) a > (Double) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Ge extends DoubleBinaryNode {
+
+        Ge(Node left, Node right) {
+            super(BasicOperator.GE, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Double && b instanceof Double) {
+                return (Double) a >= (Double) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Equals extends DoubleBinaryNode {
+
+        Equals(Node left, Node right) {
+            super(BasicOperator.EQUALS, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Double && b instanceof Double) {
+                return ((Double) a).doubleValue() == (Double) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class NotEquals extends DoubleBinaryNode {
+
+        NotEquals(Node left, Node right) {
+            super(BasicOperator.NOT_EQUALS, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Double && b instanceof Double) {
+                return ((Double) a).doubleValue() != (Double) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+}
@@ -0,0 +1,19 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+import macky.scripting.ScriptException;
+
+public final class FailNode extends Node {
+
+    private final String message;
+
+    public FailNode(String message) {
+        this.message = message;
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        throw new ScriptException(message);
+    }
+
+}
@@ -0,0 +1,53 @@
+package macky.scripting.node;
+
+import macky.scripting.Budget;
+import macky.scripting.ControlFlowException;
+import macky.scripting.Frame;
+import macky.scripting.ScriptObjects;
+
+import java.util.Iterator;
+
+public final class ForInNode extends Node {
+
+    private final String name;
+    private final int slot;
+    private Node iterable;
+    private Node body;
+
+    /**
+     * A loop that binds each element to the local in {@code slot} of the enclosing frame, or to the global
+     * {@code name} if {@code slot} is -1.
+     */
+    public ForInNode(String name, int slot, Node iterable, Node body) {
+        this.name = name;
+        this.slot = slot;
+        this.iterable = adopt(iterable);
+        this.body = adopt(body);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Iterator<?> iterator = ScriptObjects.iterate(iterable.execute(frame));
+        Budget budget = frame.getBudget();
+        Object last = null;
+        try {
+            while (iterator.hasNext()) {
+                budget.poll();
+                Object element = iterator.next();
+                if (slot >= 0) frame.let(slot, element);
+                else frame.letGlobal(name, element);
+                last = body.execute(frame);
+            }
+        } catch (ControlFlowException controlFlow) {
+            if (controlFlow != ControlFlowException.BREAK) throw controlFlow;
+        }
+        return last;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (iterable == oldChild) iterable = newChild;
+        else if (body == oldChild) body = newChild;
+    }
+
+}
@@ -0,0 +1,47 @@
+package macky.scripting.node;
+
+import macky.scripting.Budget;
+import macky.scripting.ControlFlowException;
+import macky.scripting.Frame;
+import macky.scripting.ScriptObjects;
+
+public final class ForNode extends Node {
+
+    private Node init;
+    private Node condition;
+    private Node update;
+    private Node body;
+
+    public ForNode(Node init, Node condition, Node update, Node body) {
+        this.init = adopt(init);
+        this.condition = adopt(condition);
+        this.update = adopt(update);
+        this.body = adopt(body);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        init.execute(frame);
+        Budget budget = frame.getBudget();
+        Object last = null;
+        try {
+            while (ScriptObjects.asBoolean(condition.execute(frame))) {
+                budget.poll();
+                last = body.execute(frame);
+                update.execute(frame);
+            }
+        } catch (ControlFlowException controlFlow) {
+            if (controlFlow != ControlFlowException.BREAK) throw controlFlow;
+        }
+        return last;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (init == oldChild) init = newChild;
+        else if (condition == oldChild) condition = newChild;
+        else if (update == oldChild) update = newChild;
+        else if (body == oldChild) body = newChild;
+    }
+
+}
@@ -0,0 +1,27 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+
+public final class GlobalDeclNode extends Node {
+
+    private final String name;
+    private Node value;
+
+    public GlobalDeclNode(String name, Node value) {
+        this.name = name;
+        this.value = adopt(value);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Object result = value.execute(frame);
+        frame.letGlobal(name, result);
+        return result;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (value == oldChild) value = newChild;
+    }
+
+}
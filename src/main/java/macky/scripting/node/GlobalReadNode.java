@@ -0,0 +1,27 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+import macky.scripting.Globals;
+
+public final class GlobalReadNode extends Node {
+
+    private final String name;
+    private final Globals globals;
+    private final int index;
+
+    public GlobalReadNode(String name) {
+        this(name, new Globals());
+    }
+
+    public GlobalReadNode(String name, Globals globals) {
+        this.name = name;
+        this.globals = globals;
+        this.index = globals.indexOf(name);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        return frame.getGlobal(globals, index, name);
+    }
+
+}
@@ -0,0 +1,36 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+import macky.scripting.ScriptObjects;
+
+public final class IfNode extends Node {
+
+    private Node condition;
+    private Node body;
+    private Node otherwise;
+
+    public IfNode(Node condition, Node body, Node otherwise) {
+        this.condition = adopt(condition);
+        this.body = adopt(body);
+        this.otherwise = adopt(otherwise);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        if (ScriptObjects.asBoolean(condition.execute(frame))) {
+            return body.execute(frame);
+        } else if (otherwise != null) {
+            return otherwise.execute(frame);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (condition == oldChild) condition = newChild;
+        else if (body == oldChild) body = newChild;
+        else if (otherwise == oldChild) otherwise = newChild;
+    }
+
+}
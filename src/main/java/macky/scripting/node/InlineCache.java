@@ -0,0 +1,62 @@
+package macky.scripting.node;
+
+/**
+ * Remembers the {@link Accessor} for each receiver class an access site has seen, so that the next access with the
+ * same class costs one class comparison instead of the chain of interface checks in
+ * {@link macky.scripting.ScriptObjects}. A site that sees more than {@link #LIMIT} classes is megamorphic and uses the
+ * generic accessor from then on.
+ * <p>
+ * Entries are immutable and only ever prepended, so a site executed by several threads at once at worst loses an
+ * entry and resolves it again, or counts an entry twice; the size is compared with {@code >=} so that it still turns
+ * megamorphic then.
+ */
+final class InlineCache {
+
+    static final int LIMIT = 4;
+
+    private static final class Entry {
+        private final Class<?> type;
+        private final Accessor accessor;
+        private final Entry next;
+
+        Entry(Class<?> type, Accessor accessor, Entry next) {
+            this.type = type;
+            this.accessor = accessor;
+            this.next = next;
+        }
+    }
+
+    private Entry entries;
+    private int size;
+
+    Accessor lookup(Object owner) {
+        if (owner != null) {
+            Class<?> type = owner.getClass();
+            for (Entry entry = entries; entry != null; entry = entry.next) {
+                if (entry.type == type) return entry.accessor;
+            }
+        }
+        return miss(owner);
+    }
+
+    private Accessor miss(Object owner) {
+        if (owner == null || size < 0) return Accessor.GENERIC;
+        if (size >= LIMIT) {
+            entries = null;
+            size = -1;
+            return Accessor.GENERIC;
+        }
+        Accessor accessor = Accessor.of(owner);
+        entries = new Entry(owner.getClass(), accessor, entries);
+        size++;
+        return accessor;
+    }
+
+    /**
+     * The number of cached receiver classes, or -1 once the site is megamorphic.
+     */
+    int size() {
+        return size;
+    }
+
+}
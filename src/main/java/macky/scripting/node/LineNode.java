@@ -0,0 +1,35 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+import macky.scripting.Profiler;
+
+/**
+ * Marks a statement that starts a new source line, so a {@link Profiler} can tell which line is running.
+ */
+public final class LineNode extends Node {
+
+    private final String site;
+    private Node statement;
+
+    public LineNode(String site, Node statement) {
+        this.site = site;
+        this.statement = adopt(statement);
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Profiler.Stack profile = frame.getProfile();
+        if (profile != null) profile.line(site);
+        return statement.execute(frame);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (statement == oldChild) statement = newChild;
+    }
+
+}
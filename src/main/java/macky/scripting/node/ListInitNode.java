@@ -0,0 +1,29 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+import macky.scripting.PackedList;
+
+public final class ListInitNode extends Node {
+
+    private final Node[] elements;
+
+    public ListInitNode(Node[] elements) {
+        this.elements = adopt(elements);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        frame.getBudget().allocate(elements.length);
+        Object[] values = new Object[elements.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = elements[i].execute(frame);
+        }
+        return PackedList.of(values);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        replaceIn(elements, oldChild, newChild);
+    }
+
+}
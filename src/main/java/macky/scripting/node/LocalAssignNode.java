@@ -0,0 +1,31 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+
+public final class LocalAssignNode extends Node {
+
+    private final String name;
+    private final int depth;
+    private final int slot;
+    private Node value;
+
+    public LocalAssignNode(String name, int depth, int slot, Node value) {
+        this.name = name;
+        this.depth = depth;
+        this.slot = slot;
+        this.value = adopt(value);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Object result = value.execute(frame);
+        frame.set(depth, slot, name, result);
+        return result;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (value == oldChild) value = newChild;
+    }
+
+}
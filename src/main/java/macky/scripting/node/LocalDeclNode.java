@@ -0,0 +1,27 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+
+public final class LocalDeclNode extends Node {
+
+    private final int slot;
+    private Node value;
+
+    public LocalDeclNode(int slot, Node value) {
+        this.slot = slot;
+        this.value = adopt(value);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Object result = value.execute(frame);
+        frame.let(slot, result);
+        return result;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (value == oldChild) value = newChild;
+    }
+
+}
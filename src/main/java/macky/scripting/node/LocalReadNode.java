@@ -0,0 +1,22 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+
+public final class LocalReadNode extends Node {
+
+    private final String name;
+    private final int depth;
+    private final int slot;
+
+    public LocalReadNode(String name, int depth, int slot) {
+        this.name = name;
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        return frame.get(depth, slot, name);
+    }
+
+}
@@ -0,0 +1,253 @@
+package macky.scripting.node;
+
+import macky.scripting.BasicOperator;
+import macky.scripting.Frame;
+import macky.scripting.Numbers;
+
+/**
+ * Operations on two longs. Overflow and inexact division still go through {@link Numbers}, which promotes to BigDecimal.
+ */
+abstract class LongBinaryNode extends BinaryNode {
+
+    LongBinaryNode(BasicOperator operator, Node left, Node right) {
+        super(operator, left, right);
+    }
+
+    static BinaryNode specialize(BasicOperator operator, Node left, Node right) {
+        switch (operator) {
+            case ADD:
+                return new Add(left, right);
+            case SUB:
+                return new Sub(left, right);
+            case MUL:
+                return new Mul(left, right);
+            case DIV:
+                return new Div(left, right);
+            case MOD:
+                return new Mod(left, right);
+            case LT:
+                return new Lt(left, right);
+            case LE:
+                return new Le(left, right);
+            case GT:
+                return new Gt(left, right);
+            case GE:
+                return new Ge(left, right);
+            case EQUALS:
+                return new Equals(left, right);
+            case NOT_EQUALS:
+                return new NotEquals(left, right);
+            default:
+                return null;
+        }
+    }
+
+    static final class Add extends LongBinaryNode {
+
+        Add(Node left, Node right) {
+            super(BasicOperator.ADD, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Long && b instanceof Long) {
+                long x = (Long) a, y = (Long) b, r = x + y;
+                if (((x ^ r) & (y ^ r)) >= 0) return r;
+                return Numbers.add(a, b);
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Sub extends LongBinaryNode {
+
+        Sub(Node left, Node right) {
+            super(BasicOperator.SUB, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Long && b instanceof Long) {
+                long x = (Long) a, y = (Long) b, r = x - y;
+                if (((x ^ y) & (x ^ r)) >= 0) return r;
+                return Numbers.subtract(a, b);
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Mul extends LongBinaryNode {
+
+        Mul(Node left, Node right) {
+            super(BasicOperator.MUL, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Long && b instanceof Long) {
+                long x = (Long) a, y = (Long) b, r = x * y;
+                if (Math.multiplyHigh(x, y) == (r >> 63)) return r;
+                return Numbers.multiply(a, b);
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Div extends LongBinaryNode {
+
+        Div(Node left, Node right) {
+            super(BasicOperator.DIV, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Long && b instanceof Long) {
+                long x = (Long) a, y = (Long) b;
+                if (y != 0 && x % y == 0 && y != -1) return x / y;
+                return Numbers.divide(a, b);
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Mod extends LongBinaryNode {
+
+        Mod(Node left, Node right) {
+            super(BasicOperator.MOD, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Long && b instanceof Long) {
+                long y = (Long) b;
+                if (y != 0) return (Long) a % y;
+                return Numbers.remainder(a, b);
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Lt extends LongBinaryNode {
+
+        Lt(Node left, Node right) {
+            super(BasicOperator.LT, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Long && b instanceof Long) {
+                return (Long) a < (Long) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Le extends LongBinaryNode {
+
+        Le(Node left, Node right) {
+            super(BasicOperator.LE, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Long && b instanceof Long) {
+                return (Long) a <= (Long) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Gt extends LongBinaryNode {
+
+        Gt(Node left, Node right) {
+            super(BasicOperator.GT, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Long && b instanceof Long) {
+                return (Long) a > (Long) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Ge extends LongBinaryNode {
+
+        Ge(Node left, Node right) {
+            super(BasicOperator.GE, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Long && b instanceof Long) {
+                return (Long) a >= (Long) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class Equals extends LongBinaryNode {
+
+        Equals(Node left, Node right) {
+            super(BasicOperator.EQUALS, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Long && b instanceof Long) {
+                return ((Long) a).longValue() == (Long) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+    static final class NotEquals extends LongBinaryNode {
+
+        NotEquals(Node left, Node right) {
+            super(BasicOperator.NOT_EQUALS, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof Long && b instanceof Long) {
+                return ((Long) a).longValue() != (Long) b;
+            }
+            return generalize(a, b);
+        }
+
+    }
+
+}
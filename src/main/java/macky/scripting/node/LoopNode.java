@@ -0,0 +1,34 @@
+package macky.scripting.node;
+
+import macky.scripting.Budget;
+import macky.scripting.ControlFlowException;
+import macky.scripting.Frame;
+
+public final class LoopNode extends Node {
+
+    private Node body;
+
+    public LoopNode(Node body) {
+        this.body = adopt(body);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Budget budget = frame.getBudget();
+        try {
+            while (true) {
+                budget.poll();
+                body.execute(frame);
+            }
+        } catch (ControlFlowException controlFlow) {
+            if (controlFlow != ControlFlowException.BREAK) throw controlFlow;
+        }
+        return null;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (body == oldChild) body = newChild;
+    }
+
+}
@@ -0,0 +1,65 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+import macky.scripting.ShapedMap;
+
+/**
+ * {@code map { ... }}. When every key is a string constant the shape of the result is worked out once, up front, and
+ * each value is stored straight into its slot.
+ */
+public final class MapInitNode extends Node {
+
+    private final Node[] keys;
+    private final Node[] values;
+    private ShapedMap.Shape shape;
+    private int[] slots;
+
+    public MapInitNode(Node[] keys, Node[] values) {
+        this.keys = adopt(keys);
+        this.values = adopt(values);
+        shape();
+    }
+
+    private void shape() {
+        ShapedMap.Shape shape = ShapedMap.Shape.EMPTY;
+        int[] slots = new int[keys.length];
+        for (int i = 0; i < keys.length && shape != null; i++) {
+            String field = SlotCache.field(keys[i]);
+            shape = field == null ? null : shape.with(field);
+            if (shape != null) slots[i] = shape.indexOf(field);
+        }
+        this.shape = shape;
+        this.slots = shape == null ? null : slots;
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        frame.getBudget().allocate(keys.length);
+        if (shape != null) {
+            Object[] result = new Object[shape.size()];
+            for (int i = 0; i < slots.length; i++) {
+                result[slots[i]] = values[i].execute(frame);
+            }
+            return new ShapedMap(shape, result);
+        }
+        ShapedMap result = new ShapedMap();
+        for (int i = 0; i < keys.length; i++) {
+            result.put(keys[i].execute(frame), values[i].execute(frame));
+        }
+        return result;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        for (Node[] children : new Node[][]{keys, values}) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] == oldChild) {
+                    children[i] = newChild;
+                    if (children == keys) shape();
+                    return;
+                }
+            }
+        }
+    }
+
+}
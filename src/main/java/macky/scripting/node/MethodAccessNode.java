@@ -0,0 +1,29 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+import macky.scripting.ScriptObjects;
+
+public final class MethodAccessNode extends Node {
+
+    private Node owner;
+    private Node key;
+    private final InlineCache cache = new InlineCache();
+
+    public MethodAccessNode(Node owner, Node key) {
+        this.owner = adopt(owner);
+        this.key = adopt(key);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Object o = owner.execute(frame);
+        return ScriptObjects.bind(o, ScriptObjects.getFunction(cache.lookup(o).get(o, key.execute(frame))));
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (owner == oldChild) owner = newChild;
+        else if (key == oldChild) key = newChild;
+    }
+
+}
@@ -0,0 +1,64 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+import macky.scripting.ScriptFunction;
+
+/**
+ * {@code owner:key(args)}. Passes the owner as the first argument directly instead of going through the bound
+ * function that {@link MethodAccessNode} produces.
+ */
+public final class MethodCallNode extends Node {
+
+    private Node owner;
+    private Node key;
+    private final Node[] arguments;
+    private final InlineCache cache = new InlineCache();
+
+    public MethodCallNode(Node owner, Node key, Node[] arguments) {
+        this.owner = adopt(owner);
+        this.key = adopt(key);
+        this.arguments = adopt(arguments);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        switch (arguments.length) {
+            case 0: {
+                Object o = owner.execute(frame);
+                return method(o, key.execute(frame)).call1(o);
+            }
+            case 1: {
+                Object a = arguments[0].execute(frame);
+                Object o = owner.execute(frame);
+                return method(o, key.execute(frame)).call2(o, a);
+            }
+            case 2: {
+                Object a = arguments[0].execute(frame);
+                Object b = arguments[1].execute(frame);
+                Object o = owner.execute(frame);
+                return method(o, key.execute(frame)).call3(o, a, b);
+            }
+            default: {
+                Object[] args = new Object[arguments.length + 1];
+                for (int i = 0; i < arguments.length; i++) {
+                    args[i + 1] = arguments[i].execute(frame);
+                }
+                Object o = owner.execute(frame);
+                args[0] = o;
+                return method(o, key.execute(frame)).callN(args);
+            }
+        }
+    }
+
+    private ScriptFunction method(Object owner, Object key) {
+        return CallNode.callee(cache.lookup(owner).get(owner, key));
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (owner == oldChild) owner = newChild;
+        else if (key == oldChild) key = newChild;
+        else replaceIn(arguments, oldChild, newChild);
+    }
+
+}
@@ -0,0 +1,26 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+import macky.scripting.ScriptObjects;
+
+public final class NegateNode extends Node {
+
+    private Node value;
+
+    public NegateNode(Node value) {
+        this.value = adopt(value);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Object v = value.execute(frame);
+        if (v instanceof Long && (Long) v != Long.MIN_VALUE) return -(Long) v;
+        return ScriptObjects.negate(v);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (value == oldChild) value = newChild;
+    }
+
+}
@@ -0,0 +1,59 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * An executable node built from a resolved {@link macky.scripting.Expression}. Nodes may replace themselves in
+ * their parent with a variant specialized for the values they have seen, and replace that variant with a generic
+ * one when a value no longer fits.
+ * <p>
+ * A tree may be executed by several threads at once. Replacing a node is the only change made to a tree after it is
+ * built, and a replacement is fully constructed and attached to its parent before it becomes reachable, so a thread
+ * sees either the old node or the new one. Two threads replacing the same node at once is harmless: only the first
+ * replacement takes effect.
+ */
+public abstract class Node {
+
+    private Node parent;
+
+    public abstract Object execute(Frame frame);
+
+    protected final <T extends Node> T adopt(T child) {
+        if (child != null) ((Node) child).parent = this;
+        return child;
+    }
+
+    protected final Node[] adopt(Node[] children) {
+        for (Node child : children) {
+            adopt(child);
+        }
+        return children;
+    }
+
+    /**
+     * Replaces this node in its parent. A node that was already replaced, for example by a recursive execution of
+     * the same node, leaves the parent untouched.
+     */
+    protected final <T extends Node> T replace(T replacement) {
+        ((Node) replacement).parent = parent;
+        VarHandle.storeStoreFence();
+        parent.replaceChild(this, replacement);
+        return replacement;
+    }
+
+    protected void replaceChild(Node oldChild, Node newChild) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no replaceable children");
+    }
+
+    protected static void replaceIn(Node[] children, Node oldChild, Node newChild) {
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] == oldChild) {
+                children[i] = newChild;
+                return;
+            }
+        }
+    }
+
+}
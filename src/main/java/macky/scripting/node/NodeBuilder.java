@@ -0,0 +1,294 @@
+package macky.scripting.node;
+
+import macky.scripting.BasicOperator;
+import macky.scripting.Expression;
+import macky.scripting.Expressions;
+import macky.scripting.Globals;
+import macky.scripting.LineTable;
+import macky.scripting.Operator;
+import macky.scripting.Operators;
+import macky.scripting.Profiler;
+import macky.scripting.Purity;
+import macky.scripting.Scope;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public final class NodeBuilder implements Expression.Visitor<Node> {
+
+    private final LineTable lines;
+    private final Globals globals;
+    private String function = Profiler.SCRIPT;
+    private String name;
+    private Expression current;
+
+    private NodeBuilder(LineTable lines, Globals globals) {
+        this.lines = lines;
+        this.globals = globals;
+    }
+
+    public static RootNode build(Expression resolved) {
+        return build(resolved, LineTable.NONE);
+    }
+
+    /**
+     * Builds a tree that marks the start of each statement whose line is in {@code lines} with a {@link LineNode}.
+     */
+    public static RootNode build(Expression resolved, LineTable lines) {
+        return build(resolved, lines, new Globals());
+    }
+
+    /**
+     * Builds a tree whose global reads are numbered in {@code globals}, which may be shared by several trees.
+     */
+    public static RootNode build(Expression resolved, LineTable lines, Globals globals) {
+        NodeBuilder builder = new NodeBuilder(lines, globals);
+        return new RootNode(builder.line(resolved, builder.node(resolved)));
+    }
+
+    private Node node(Expression expression) {
+        current = expression;
+        Node node = expression.visit(this);
+        return Scope.TRACE ? new TraceNode(expression, node) : node;
+    }
+
+    private Node line(Expression statement, Node node) {
+        int line = lines.get(statement);
+        return line == 0 ? node : new LineNode(function + ":" + line, node);
+    }
+
+    /**
+     * Marks the body of a function, branch or loop with its line, unless it is a sequence whose statements are marked
+     * themselves.
+     */
+    private Node body(Expression body, Node node) {
+        if (Expressions.getBracketedExpr(body).isPresent() || Expressions.getBlockExprs(body).isPresent()) return node;
+        return line(body, node);
+    }
+
+    private Node body(Expression body) {
+        return body(body, node(body));
+    }
+
+    private Node tailBody(Expression body) {
+        return body(body, tail(body));
+    }
+
+    private Node[] statements(List<Expression> expressions) {
+        Node[] nodes = new Node[expressions.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = line(expressions.get(i), node(expressions.get(i)));
+        }
+        return nodes;
+    }
+
+    /**
+     * Builds a value that is given a name, which becomes the profiler label of the value if it is a function.
+     */
+    private Node named(String name, Expression value) {
+        if (Expressions.getClosureBody(value).isPresent()) this.name = name.replaceAll("[;\\s]", "_");
+        return node(value);
+    }
+
+    private Node[] nodes(List<Expression> expressions) {
+        Node[] nodes = new Node[expressions.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = node(expressions.get(i));
+        }
+        return nodes;
+    }
+
+    /**
+     * Builds an expression whose value becomes the value of the enclosing function, so that calls in it are
+     * {@link TailCallNode tail calls}.
+     */
+    private Node tail(Expression expression) {
+        if (Scope.TRACE) return node(expression);
+        return Expressions.caseOf(expression)
+                .ifExpr((ifCondition, ifBody, ifElse) -> (Node) new IfNode(node(ifCondition), tailBody(ifBody), ifElse.map(this::tailBody).orElse(null)))
+                .bracketed(bracketedExpr -> new SequenceNode(tailStatements(bracketedExpr)))
+                .callFunc((callFunc, params) -> Expressions.caseOf(callFunc)
+                        .access((keyOwner, key, method) -> method
+                                ? (Node) TailCallNode.method(node(keyOwner), node(key), nodes(params))
+                                : TailCallNode.call(node(callFunc), nodes(params)))
+                        .otherwise(() -> TailCallNode.call(node(callFunc), nodes(params))))
+                .block((blockNames, blockExprs) -> new BlockNode(blockNames, tailStatements(blockExprs)))
+                .otherwise(() -> node(expression));
+    }
+
+    private Node[] tailStatements(List<Expression> expressions) {
+        Node[] nodes = statements(expressions.subList(0, Math.max(0, expressions.size() - 1)));
+        if (expressions.isEmpty()) return nodes;
+        Node[] result = new Node[expressions.size()];
+        System.arraycopy(nodes, 0, result, 0, nodes.length);
+        Expression last = expressions.get(nodes.length);
+        result[nodes.length] = line(last, tail(last));
+        return result;
+    }
+
+    private static Node operation(BasicOperator operator, Node left, Node right) {
+        if (operator == BasicOperator.AND) return new AndNode(left, right);
+        else if (operator == BasicOperator.OR) return new OrNode(left, right);
+        else return BinaryNode.create(operator, left, right);
+    }
+
+    @Override
+    public Node boolLiteral(boolean boolLiteral) {
+        return new ConstantNode(boolLiteral);
+    }
+
+    @Override
+    public Node breakStatement() {
+        return new BreakNode();
+    }
+
+    @Override
+    public Node declFunc(List<String> funcParamNames, Expression funcBody) {
+        return new FailNode("function was not resolved");
+    }
+
+    @Override
+    public Node ifExpr(Expression ifCondition, Expression ifBody, Optional<Expression> ifElse) {
+        return new IfNode(node(ifCondition), body(ifBody), ifElse.map(this::body).orElse(null));
+    }
+
+    @Override
+    public Node whileExpr(Expression whileCondition, Expression whileBody) {
+        return new WhileNode(node(whileCondition), body(whileBody));
+    }
+
+    @Override
+    public Node forExpr(Expression forInit, Expression forCondition, Expression forUpdate, Expression forBody) {
+        return new ForNode(node(forInit), node(forCondition), node(forUpdate), body(forBody));
+    }
+
+    @Override
+    public Node returnExpr(Optional<Expression> returnExpr) {
+        return new ReturnNode(returnExpr.map(this::tail).orElse(null));
+    }
+
+    @Override
+    public Node loop(Expression loopExpr) {
+        return new LoopNode(body(loopExpr));
+    }
+
+    @Override
+    public Node declVar(String declName, Expression declValue) {
+        return new GlobalDeclNode(declName, named(declName, declValue));
+    }
+
+    @Override
+    public Node mapInit(List<Map.Entry<Expression, Expression>> mapInitExpr) {
+        Node[] keys = new Node[mapInitExpr.size()];
+        Node[] values = new Node[mapInitExpr.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = node(mapInitExpr.get(i).getKey());
+            Expression value = mapInitExpr.get(i).getValue();
+            values[i] = Expressions.getStringExpr(mapInitExpr.get(i).getKey()).map(key -> named(key, value)).orElseGet(() -> node(value));
+        }
+        return new MapInitNode(keys, values);
+    }
+
+    @Override
+    public Node listInit(List<Expression> listInitExpr) {
+        return new ListInitNode(nodes(listInitExpr));
+    }
+
+    @Override
+    public Node nopExpr() {
+        return new ConstantNode(null);
+    }
+
+    @Override
+    public Node string(String stringExpr) {
+        return new ConstantNode(stringExpr);
+    }
+
+    @Override
+    public Node number(Number numberExpr) {
+        return new ConstantNode(numberExpr);
+    }
+
+    @Override
+    public Node bracketed(List<Expression> bracketedExpr) {
+        return new SequenceNode(statements(bracketedExpr));
+    }
+
+    @Override
+    public Node accessVar(String name) {
+        return new GlobalReadNode(name, globals);
+    }
+
+    @Override
+    public Node callFunc(Expression callFunc, List<Expression> params) {
+        return Expressions.caseOf(callFunc)
+                .access((keyOwner, key, method) -> method
+                        ? (Node) new MethodCallNode(node(keyOwner), node(key), nodes(params))
+                        : new CallNode(node(callFunc), nodes(params)))
+                .otherwise(() -> new CallNode(node(callFunc), nodes(params)));
+    }
+
+    @Override
+    public Node access(Expression keyOwner, Expression key, boolean method) {
+        if (method) return new MethodAccessNode(node(keyOwner), node(key));
+        else return new AccessNode(node(keyOwner), node(key));
+    }
+
+    @Override
+    public Node unaryNegate(Expression expression) {
+        return new NegateNode(node(expression));
+    }
+
+    @Override
+    public Node operator(Expression left, Operator operator, Expression right) {
+        return Operators.caseOf(operator)
+                .basic(basicOperator -> operation(basicOperator, node(left), node(right)))
+                .assignment(basicOperator -> Expressions.caseOf(left)
+                        .accessVar(varName -> (Node) new GlobalAssignNode(varName, basicOperator
+                                .map(op -> operation(op, new GlobalReadNode(varName, globals), node(right)))
+                                .orElseGet(() -> named(varName, right))))
+                        .access((keyOwner, key, method) -> {
+                            if (method) return new FailNode("cannot assign to a method access");
+                            return new AccessAssignNode(basicOperator.orElse(null), node(keyOwner), node(key), node(right));
+                        })
+                        .localVar((localName, localDepth, localSlot) -> new LocalAssignNode(localName, localDepth, localSlot, basicOperator
+                                .map(op -> operation(op, new LocalReadNode(localName, localDepth, localSlot), node(right)))
+                                .orElseGet(() -> named(localName, right))))
+                        .otherwise(() -> new FailNode("cannot assign to non-reference"))
+                );
+    }
+
+    @Override
+    public Node localVar(String localName, int localDepth, int localSlot) {
+        return new LocalReadNode(localName, localDepth, localSlot);
+    }
+
+    @Override
+    public Node declLocal(String declLocalName, int declLocalSlot, Expression declLocalValue) {
+        return new LocalDeclNode(declLocalSlot, named(declLocalName, declLocalValue));
+    }
+
+    @Override
+    public Node block(List<String> blockNames, List<Expression> blockExprs) {
+        return new BlockNode(blockNames, statements(blockExprs));
+    }
+
+    @Override
+    public Node closure(List<String> closureNames, int closureParamCount, Expression closureBody) {
+        int line = lines.get(current);
+        String label = name != null ? name : line == 0 ? "function" : "function@" + line;
+        String outer = function;
+        name = null;
+        function = label;
+        Node body = tailBody(closureBody);
+        function = outer;
+        return new ClosureNode(label, closureNames, closureParamCount, body, Purity.isPure(closureParamCount, closureNames, closureBody));
+    }
+
+    @Override
+    public Node forIn(String forInName, int forInSlot, Expression forInIterable, Expression forInBody) {
+        return new ForInNode(forInName, forInSlot, node(forInIterable), body(forInBody));
+    }
+
+}
@@ -0,0 +1,32 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+import macky.scripting.ScriptObjects;
+
+public final class OrNode extends Node {
+
+    private Node left;
+    private Node right;
+
+    public OrNode(Node left, Node right) {
+        this.left = adopt(left);
+        this.right = adopt(right);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Object a = left.execute(frame);
+        if (ScriptObjects.asBoolean(a)) {
+            return a;
+        } else {
+            return right.execute(frame);
+        }
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (left == oldChild) left = newChild;
+        else if (right == oldChild) right = newChild;
+    }
+
+}
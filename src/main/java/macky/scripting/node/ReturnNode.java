@@ -0,0 +1,25 @@
+package macky.scripting.node;
+
+import macky.scripting.ControlFlowException;
+import macky.scripting.Frame;
+
+public final class ReturnNode extends Node {
+
+    private Node value;
+
+    public ReturnNode(Node value) {
+        this.value = adopt(value);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        frame.setReturnValue(value == null ? null : value.execute(frame));
+        throw ControlFlowException.RETURN;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (value == oldChild) value = newChild;
+    }
+
+}
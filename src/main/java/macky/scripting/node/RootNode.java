@@ -0,0 +1,60 @@
+package macky.scripting.node;
+
+import macky.scripting.Budget;
+import macky.scripting.ControlFlowException;
+import macky.scripting.Frame;
+import macky.scripting.Profiler;
+import macky.scripting.Scope;
+import macky.scripting.ScriptException;
+import macky.scripting.ScriptReturnException;
+
+public final class RootNode extends Node {
+
+    private Node body;
+
+    public RootNode(Node body) {
+        this.body = adopt(body);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        return body.execute(frame);
+    }
+
+    public Object execute(Scope scope) {
+        return execute(scope, new Budget(scope.getLimits()));
+    }
+
+    /**
+     * Executes against a scope, charging the given budget, which may be shared with other roots of the same
+     * evaluation.
+     */
+    public Object execute(Scope scope, Budget budget) {
+        return execute(scope, budget, null);
+    }
+
+    /**
+     * Executes against a scope, making {@code budget} the {@link Budget#current current} one while it runs, so the
+     * functions it calls are charged to it.
+     */
+    public Object execute(Scope scope, Budget budget, Profiler.Stack profile) {
+        Frame frame = new Frame(scope, budget, profile);
+        Budget previous = budget.enter();
+        try {
+            return body.execute(frame);
+        } catch (ControlFlowException controlFlow) {
+            if (controlFlow == ControlFlowException.RETURN) {
+                throw new ScriptReturnException(TailCallNode.complete(frame, frame.getReturnValue()));
+            }
+            throw new ScriptException("break outside of a loop");
+        } finally {
+            budget.exit(previous);
+        }
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (body == oldChild) body = newChild;
+    }
+
+}
@@ -0,0 +1,27 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+
+public final class SequenceNode extends Node {
+
+    private final Node[] body;
+
+    public SequenceNode(Node[] body) {
+        this.body = adopt(body);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Object last = null;
+        for (Node node : body) {
+            last = node.execute(frame);
+        }
+        return last;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        replaceIn(body, oldChild, newChild);
+    }
+
+}
@@ -0,0 +1,63 @@
+package macky.scripting.node;
+
+import macky.scripting.ShapedMap;
+
+/**
+ * Remembers which slot a constant string key was in for the last {@link ShapedMap.Shape} an access site has seen, so
+ * that reading or writing that key on another map of the same shape is an array access.
+ * <p>
+ * The shape and slot are replaced together, so a site executed by several threads at once at worst looks the key up
+ * again.
+ */
+final class SlotCache {
+
+    private static final class Entry {
+        private final ShapedMap.Shape shape;
+        private final int slot;
+
+        Entry(ShapedMap.Shape shape, int slot) {
+            this.shape = shape;
+            this.slot = slot;
+        }
+    }
+
+    private Entry entry;
+
+    /**
+     * The key {@code key} always evaluates to, if it is a string constant, or null.
+     */
+    static String field(Node key) {
+        if (key instanceof ConstantNode && ((ConstantNode) key).getValue() instanceof String) {
+            return (String) ((ConstantNode) key).getValue();
+        }
+        return null;
+    }
+
+    Object get(ShapedMap map, String key) {
+        Entry entry = this.entry;
+        if (entry != null && entry.shape == map.getShape()) return map.getSlot(entry.slot);
+        entry = lookup(map, key);
+        return entry == null ? map.get(key) : map.getSlot(entry.slot);
+    }
+
+    void set(ShapedMap map, String key, Object value) {
+        Entry entry = this.entry;
+        if (entry != null && entry.shape == map.getShape()) {
+            map.setSlot(entry.slot, value);
+            return;
+        }
+        entry = lookup(map, key);
+        if (entry == null) map.put(key, value);
+        else map.setSlot(entry.slot, value);
+    }
+
+    private Entry lookup(ShapedMap map, String key) {
+        ShapedMap.Shape shape = map.getShape();
+        int slot = shape == null ? -1 : shape.indexOf(key);
+        if (slot < 0) return null;
+        Entry entry = new Entry(shape, slot);
+        this.entry = entry;
+        return entry;
+    }
+
+}
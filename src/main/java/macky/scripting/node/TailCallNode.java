@@ -0,0 +1,83 @@
+package macky.scripting.node;
+
+import macky.scripting.Frame;
+import macky.scripting.ScriptFunction;
+
+/**
+ * A call whose value is the value of the enclosing function, i.e. the last expression of its body or the value of a
+ * {@code return}. A call to a script function is not made here; it is stored in the function's frame and
+ * {@link #PENDING} is returned instead, and the function invocation that is unwinding makes the call in a loop, see
+ * {@link #complete}. Recursion in tail form therefore runs in constant Java stack.
+ */
+public final class TailCallNode extends Node {
+
+    static final Object PENDING = new Object();
+
+    private Node function;
+    private Node owner;
+    private Node key;
+    private final Node[] arguments;
+    private final InlineCache cache;
+
+    private TailCallNode(Node function, Node owner, Node key, Node[] arguments) {
+        this.function = adopt(function);
+        this.owner = adopt(owner);
+        this.key = adopt(key);
+        this.arguments = adopt(arguments);
+        this.cache = owner == null ? null : new InlineCache();
+    }
+
+    public static TailCallNode call(Node function, Node[] arguments) {
+        return new TailCallNode(function, null, null, arguments);
+    }
+
+    /**
+     * {@code owner:key(args)}, with the owner passed as the first argument like {@link MethodCallNode}.
+     */
+    public static TailCallNode method(Node owner, Node key, Node[] arguments) {
+        return new TailCallNode(null, owner, key, arguments);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        int offset = owner == null ? 0 : 1;
+        Object[] args = new Object[arguments.length + offset];
+        for (int i = 0; i < arguments.length; i++) {
+            args[i + offset] = arguments[i].execute(frame);
+        }
+        ScriptFunction callee;
+        if (owner == null) {
+            callee = CallNode.callee(function.execute(frame));
+        } else {
+            Object o = owner.execute(frame);
+            args[0] = o;
+            callee = CallNode.callee(cache.lookup(o).get(o, key.execute(frame)));
+        }
+        if (callee instanceof ClosureNode.Function) {
+            frame.setTailCall(callee, args);
+            return PENDING;
+        }
+        return callee.callN(args);
+    }
+
+    /**
+     * Makes the calls left pending in a function frame until one returns a value.
+     */
+    static Object complete(Frame frame, Object result) {
+        while (result == PENDING) {
+            ClosureNode.Function function = (ClosureNode.Function) frame.getTailFunction();
+            frame = function.enter(frame.getTailArguments());
+            result = function.execute(frame);
+        }
+        return result;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (function == oldChild) function = newChild;
+        else if (owner == oldChild) owner = newChild;
+        else if (key == oldChild) key = newChild;
+        else replaceIn(arguments, oldChild, newChild);
+    }
+
+}
@@ -0,0 +1,28 @@
+package macky.scripting.node;
+
+import macky.scripting.Expression;
+import macky.scripting.Frame;
+
+public final class TraceNode extends Node {
+
+    private final Expression expression;
+    private Node node;
+
+    public TraceNode(Expression expression, Node node) {
+        this.expression = expression;
+        this.node = adopt(node);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Object result = node.execute(frame);
+        System.out.println("evaluated `" + expression.toCode() + "` => " + result);
+        return result;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (node == oldChild) node = newChild;
+    }
+
+}
@@ -0,0 +1,39 @@
+package macky.scripting.node;
+
+import macky.scripting.Budget;
+import macky.scripting.ControlFlowException;
+import macky.scripting.Frame;
+import macky.scripting.ScriptObjects;
+
+public final class WhileNode extends Node {
+
+    private Node condition;
+    private Node body;
+
+    public WhileNode(Node condition, Node body) {
+        this.condition = adopt(condition);
+        this.body = adopt(body);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        Budget budget = frame.getBudget();
+        Object last = null;
+        try {
+            while (ScriptObjects.asBoolean(condition.execute(frame))) {
+                budget.poll();
+                last = body.execute(frame);
+            }
+        } catch (ControlFlowException controlFlow) {
+            if (controlFlow != ControlFlowException.BREAK) throw controlFlow;
+        }
+        return last;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (condition == oldChild) condition = newChild;
+        else if (body == oldChild) body = newChild;
+    }
+
+}
@@ -0,0 +1,80 @@
+package macky.scripting.vm;
+
+import macky.scripting.Globals;
+
+import java.util.List;
+
+/**
+ * The code of one function, or of a script outside of any function: a flat array of {@link Opcodes instructions}, the
+ * constants they refer to and the number of registers a call needs. Registers hold temporaries and the locals
+ * that {@link Registers} found safe to keep there; the other locals live in {@link macky.scripting.Frame}s, so
+ * closures capture them the same way as in the node tree.
+ * <p>
+ * A chunk may be executed by several threads at once. Quickening writes single ints into the code array, and inline
+ * caches are replaced whole, so a thread sees either the old instruction or entry or the new one.
+ */
+public final class Chunk {
+
+    final int[] code;
+    final Object[] constants;
+    final Object[] caches;
+    final int registers;
+    final String label;
+    final List<String> names;
+    final int paramCount;
+    final int[] parameters;
+    /** whether functions of this chunk may be forked, see {@link macky.scripting.Purity} */
+    final boolean pure;
+    /** the table that numbers the globals of {@code GET_GLOBAL}, shared by the chunks of a script */
+    final Globals globals;
+
+    Chunk(int[] code, Object[] constants, int caches, int registers, String label, List<String> names, int[] parameters,
+          boolean pure, Globals globals) {
+        this.code = code;
+        this.constants = constants;
+        this.caches = new Object[caches];
+        this.registers = registers;
+        this.label = label;
+        this.names = names;
+        this.paramCount = parameters.length;
+        this.parameters = parameters;
+        this.pure = pure;
+        this.globals = globals;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * The size of the code in ints, not counting nested functions.
+     */
+    public int getCodeSize() {
+        return code.length;
+    }
+
+    /**
+     * A listing of the instructions as they are now, i.e. after any quickening, followed by those of nested
+     * functions.
+     */
+    public String disassemble() {
+        StringBuilder builder = new StringBuilder();
+        disassemble(builder);
+        return builder.toString();
+    }
+
+    private void disassemble(StringBuilder builder) {
+        builder.append(label).append(": ").append(registers).append(" registers\n");
+        for (int pc = 0; pc < code.length; pc += 1 + Opcodes.OPERANDS[code[pc]]) {
+            builder.append(String.format("%4d %s", pc, Opcodes.NAMES[code[pc]]));
+            for (int i = 1; i <= Opcodes.OPERANDS[code[pc]]; i++) {
+                builder.append(' ').append(code[pc + i]);
+            }
+            builder.append('\n');
+        }
+        for (Object constant : constants) {
+            if (constant instanceof Chunk) ((Chunk) constant).disassemble(builder);
+        }
+    }
+
+}
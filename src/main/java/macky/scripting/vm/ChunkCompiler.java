@@ -0,0 +1,848 @@
+package macky.scripting.vm;
+
+import macky.scripting.BasicOperator;
+import macky.scripting.Expression;
+import macky.scripting.Expressions;
+import macky.scripting.Globals;
+import macky.scripting.LineTable;
+import macky.scripting.Operator;
+import macky.scripting.Operators;
+import macky.scripting.Profiler;
+import macky.scripting.Purity;
+import macky.scripting.ShapedMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static macky.scripting.vm.Opcodes.*;
+
+/**
+ * Lowers a resolved expression into a {@link Chunk}, mirroring what {@link macky.scripting.node.NodeBuilder} builds:
+ * the same evaluation order, the same budget charges and the same errors. Each expression is compiled into a
+ * destination register, with temporaries allocated above it like a stack and above the locals that {@link Registers}
+ * keeps in registers. A block whose locals are all in registers gets no frame, so frame depths skip it. {@code break}
+ * and {@code return} become jumps rather than exceptions, restoring the frame of any block they leave.
+ */
+final class ChunkCompiler implements Expression.Visitor<Void> {
+
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private static final class Loop {
+        private final Loop outer;
+        private final int blocks;
+        private final List<Integer> breaks = new ArrayList<>();
+
+        Loop(Loop outer, int blocks) {
+            this.outer = outer;
+            this.blocks = blocks;
+        }
+    }
+
+    private final LineTable lines;
+    private final Globals globals;
+    private final boolean function;
+    private final Registers locals;
+    private int[] code = new int[32];
+    private int pc;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+    private int caches;
+    private int top;
+    private int registers;
+    private int dst;
+    private boolean discard;
+    private Loop loop;
+    private final List<Integer> blocks = new ArrayList<>();
+    private final List<Boolean> frames = new ArrayList<>();
+    private String name;
+    private Expression current;
+
+    private ChunkCompiler(LineTable lines, Globals globals, boolean function, Registers locals) {
+        this.lines = lines;
+        this.globals = globals;
+        this.function = function;
+        this.locals = locals;
+        this.top = this.registers = locals.size();
+    }
+
+    /**
+     * Compiles a script, i.e. code outside of any function.
+     */
+    static Chunk compile(Expression resolved, LineTable lines, Globals globals) {
+        ChunkCompiler compiler = new ChunkCompiler(lines, globals, false, Registers.allocate(List.of(), 0, resolved));
+        int result = compiler.temp();
+        compiler.compile(resolved, result);
+        compiler.emit(RETURN, result);
+        return compiler.build(Profiler.SCRIPT, List.of(), 0, false);
+    }
+
+    private Chunk build(String label, List<String> names, int paramCount, boolean pure) {
+        int[] parameters = new int[paramCount];
+        for (int i = 0; i < paramCount; i++) {
+            parameters[i] = locals.get(names.get(i));
+        }
+        return new Chunk(Arrays.copyOf(code, pc), constants.toArray(), caches, Math.max(registers, 1), label, names,
+                parameters, pure, globals);
+    }
+
+    private int temp() {
+        int register = top++;
+        registers = Math.max(registers, top);
+        return register;
+    }
+
+    private int temps(int count) {
+        int first = top;
+        top += count;
+        registers = Math.max(registers, top);
+        return first;
+    }
+
+    private int constant(Object value) {
+        if (value instanceof Chunk || value instanceof MapLayout) {
+            constants.add(value);
+            return constants.size() - 1;
+        }
+        return constantIndices.computeIfAbsent(Arrays.asList(value == null ? null : value.getClass(), value), key -> {
+            constants.add(value);
+            return constants.size() - 1;
+        });
+    }
+
+    private int cache() {
+        return caches++;
+    }
+
+    private void emit(int... instruction) {
+        if (pc + instruction.length > code.length) code = Arrays.copyOf(code, Math.max(code.length * 2, pc + instruction.length));
+        System.arraycopy(instruction, 0, code, pc, instruction.length);
+        pc += instruction.length;
+    }
+
+    /**
+     * Emits a jump whose target is filled in by {@link #patch}, and returns where.
+     */
+    private int emitJump(int... instruction) {
+        emit(instruction);
+        return pc - 1;
+    }
+
+    private void patch(int jump) {
+        code[jump] = pc;
+    }
+
+    private void compile(Expression expression, int dst) {
+        compile(expression, dst, false);
+    }
+
+    /**
+     * Compiles an expression into {@code dst}, or only for its effects if {@code discard}, in which case {@code dst}
+     * may be left holding anything.
+     */
+    private void compile(Expression expression, int dst, boolean discard) {
+        int outerDst = this.dst;
+        boolean outerDiscard = this.discard;
+        int mark = top;
+        this.dst = dst;
+        this.discard = discard;
+        current = expression;
+        expression.visit(this);
+        this.dst = outerDst;
+        this.discard = outerDiscard;
+        top = mark;
+    }
+
+    /**
+     * The register a local lives in, or -1 if it lives in its frame.
+     */
+    private int register(Expression expression) {
+        return Expressions.getLocalName(expression).map(locals::get).orElse(-1);
+    }
+
+    /**
+     * A depth as resolved, less the blocks on the way that got no frame.
+     */
+    private int depth(int depth) {
+        int result = depth;
+        for (int i = 0; i < depth && i < frames.size(); i++) {
+            if (!frames.get(frames.size() - 1 - i)) result--;
+        }
+        return result;
+    }
+
+    /**
+     * Enters a block, pushing a frame for it unless it needs none, and returns the register saving the outer frame or
+     * -1.
+     */
+    private int enterBlock(List<String> names, List<Expression> expressions) {
+        boolean frame = locals.needsFrame(names, expressions);
+        frames.add(frame);
+        if (!frame) return -1;
+        int save = temp();
+        emit(PUSH_FRAME, save, constant(names));
+        blocks.add(save);
+        return save;
+    }
+
+    private void exitBlock(int save) {
+        frames.remove(frames.size() - 1);
+        if (save < 0) return;
+        blocks.remove(blocks.size() - 1);
+    }
+
+    /**
+     * Whether a local in a register can be read in place before evaluating {@code later}, i.e. whether evaluating it
+     * cannot change the local.
+     */
+    private boolean stable(String name, Expression later) {
+        return !locals.assignedInOperand(name) || Expressions.caseOf(later)
+                .boolLiteral(bool -> true)
+                .string(string -> true)
+                .number(number -> true)
+                .accessVar(varName -> true)
+                .localVar((localName, localDepth, localSlot) -> true)
+                .otherwise(() -> false);
+    }
+
+    /**
+     * Compiles a value that is given a name, which becomes the profiler label of the value if it is a function.
+     */
+    private void named(String name, Expression value, int dst) {
+        if (Expressions.getClosureBody(value).isPresent()) this.name = name.replaceAll("[;\\s]", "_");
+        compile(value, dst);
+    }
+
+    private void statements(List<Expression> expressions, int dst) {
+        if (expressions.isEmpty() && !discard) emit(CONST, dst, constant(null));
+        for (int i = 0; i < expressions.size(); i++) {
+            compile(expressions.get(i), dst, discard || i < expressions.size() - 1);
+        }
+    }
+
+    /**
+     * Compiles an expression whose value is returned from the function, so that calls in it are tail calls.
+     */
+    private void tail(Expression expression) {
+        int mark = top;
+        Expressions.caseOf(expression)
+                .ifExpr((ifCondition, ifBody, ifElse) -> {
+                    int otherwise = condition(ifCondition);
+                    tail(ifBody);
+                    patch(otherwise);
+                    if (ifElse.isPresent()) {
+                        tail(ifElse.get());
+                    } else {
+                        int result = temp();
+                        emit(CONST, result, constant(null));
+                        emit(RETURN, result);
+                    }
+                    return null;
+                })
+                .bracketed(bracketedExpr -> {
+                    tailStatements(bracketedExpr);
+                    return null;
+                })
+                .callFunc((callFunc, params) -> {
+                    Optional<Boolean> method = Expressions.getMethod(callFunc);
+                    if (method.orElse(false)) {
+                        int first = call(params, 1);
+                        compile(Expressions.getKeyOwner(callFunc).get(), first);
+                        int key = temp();
+                        compile(Expressions.getKey(callFunc).get(), key);
+                        emit(TAIL_CALL_METHOD, key, first, params.size() + 1);
+                    } else {
+                        int first = call(params, 0);
+                        int callee = temp();
+                        compile(callFunc, callee);
+                        emit(TAIL_CALL, callee, first, params.size());
+                    }
+                    return null;
+                })
+                .block((blockNames, blockExprs) -> {
+                    int save = enterBlock(blockNames, blockExprs);
+                    tailStatements(blockExprs);
+                    exitBlock(save);
+                    return null;
+                })
+                .otherwise(() -> {
+                    int register = register(expression);
+                    if (register >= 0) {
+                        emit(RETURN, register);
+                        return null;
+                    }
+                    int result = temp();
+                    compile(expression, result);
+                    emit(RETURN, result);
+                    return null;
+                });
+        top = mark;
+    }
+
+    private void tailStatements(List<Expression> expressions) {
+        if (expressions.isEmpty()) {
+            int result = temp();
+            emit(CONST, result, constant(null));
+            emit(RETURN, result);
+            return;
+        }
+        int scratch = temp();
+        for (Expression expression : expressions.subList(0, expressions.size() - 1)) {
+            compile(expression, scratch, true);
+        }
+        tail(expressions.get(expressions.size() - 1));
+    }
+
+    /**
+     * Compiles the arguments of a call into consecutive registers, leaving {@code offset} registers free in front of
+     * them, and returns the first register.
+     */
+    private int call(List<Expression> params, int offset) {
+        int first = temps(offset + params.size());
+        for (int i = 0; i < params.size(); i++) {
+            compile(params.get(i), first + offset + i);
+        }
+        return first;
+    }
+
+    /**
+     * The operand that reads a literal straight from the constant pool, or {@link #NONE} if the expression is not a
+     * literal.
+     */
+    private int literal(Expression expression) {
+        Optional<Object> value = Expressions.caseOf(expression)
+                .boolLiteral(bool -> Optional.<Object>of(bool))
+                .string(Optional::of)
+                .number(Optional::of)
+                .otherwise(Optional::empty);
+        return value.map(constant -> ~constant(constant)).orElse(NONE);
+    }
+
+    /**
+     * Compiles an operand of an instruction that reads registers or constants.
+     */
+    private int operand(Expression expression) {
+        int operand = literal(expression);
+        if (operand != NONE) return operand;
+        operand = register(expression);
+        if (operand < 0) compile(expression, operand = temp());
+        return operand;
+    }
+
+    /**
+     * Like {@link #operand}, but for the left operand of an instruction whose right operand is compiled after it, so
+     * that a local in a register is only read in place if the right operand cannot change it.
+     */
+    private int leftOperand(Expression left, Expression right, int dst) {
+        int operand = literal(left);
+        if (operand != NONE) return operand;
+        operand = register(left);
+        if (operand >= 0 && stable(Expressions.getLocalName(left).get(), right)) return operand;
+        compile(left, dst);
+        return dst;
+    }
+
+    private static BasicOperator comparison(Expression expression) {
+        BasicOperator operator = Expressions.getOperator(expression).flatMap(Operators::getBasicOperator).orElse(null);
+        if (operator == null) return null;
+        switch (operator) {
+            case LT:
+            case LE:
+            case GT:
+            case GE:
+            case EQUALS:
+            case NOT_EQUALS:
+                return operator;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Compiles a condition followed by a jump taken when it is false, and returns the jump to patch. A comparison
+     * becomes a single compare-and-branch.
+     */
+    private int condition(Expression condition) {
+        int mark = top;
+        BasicOperator operator = comparison(condition);
+        int jump;
+        if (operator != null) {
+            Expression left = Expressions.getLeft(condition).get();
+            Expression right = Expressions.getRight(condition).get();
+            int a = leftOperand(left, right, temp());
+            int b = operand(right);
+            jump = emitJump(CMP_JUMP, a, b, operator.ordinal(), -1);
+        } else {
+            int value = temp();
+            compile(condition, value);
+            jump = emitJump(JUMP_IF_FALSE, value, -1);
+        }
+        top = mark;
+        return jump;
+    }
+
+    /**
+     * Compiles a loop that checks a condition and charges a step before each run of its body. If the condition is a
+     * comparison, the check goes after the body as a single compare, charge and branch back.
+     */
+    private void repeat(Expression condition, Runnable body) {
+        BasicOperator operator = comparison(condition);
+        if (operator == null) {
+            int start = pc;
+            int exit = condition(condition);
+            emit(POLL);
+            body.run();
+            emit(JUMP, start);
+            patch(exit);
+            return;
+        }
+        int enter = emitJump(JUMP, -1);
+        int start = pc;
+        body.run();
+        patch(enter);
+        int mark = top;
+        Expression left = Expressions.getLeft(condition).get();
+        Expression right = Expressions.getRight(condition).get();
+        int a = leftOperand(left, right, temp());
+        emit(CMP_LOOP, a, operand(right), operator.ordinal(), start);
+        top = mark;
+    }
+
+    private Loop enterLoop() {
+        loop = new Loop(loop, blocks.size());
+        return loop;
+    }
+
+    private void exitLoop(Loop loop) {
+        for (int jump : loop.breaks) {
+            patch(jump);
+        }
+        this.loop = loop.outer;
+    }
+
+    /**
+     * Compiles {@code left operator right} into the destination register.
+     */
+    private void operation(BasicOperator operator, Expression left, Expression right) {
+        int dst = this.dst;
+        if (operator == BasicOperator.AND || operator == BasicOperator.OR) {
+            compile(left, dst);
+            int end = emitJump(operator == BasicOperator.AND ? JUMP_IF_FALSE : JUMP_IF_TRUE, dst, -1);
+            compile(right, dst);
+            patch(end);
+            return;
+        }
+        Optional<Number> constant = Expressions.getNumberExpr(right);
+        if (operator == BasicOperator.ADD && constant.isPresent() && Expressions.getLocalName(left).isPresent()
+                && register(left) < 0) {
+            emit(ADD_LOCAL_CONST, dst, depth(Expressions.getLocalDepth(left).get()), Expressions.getLocalSlot(left).get(),
+                    constant(Expressions.getLocalName(left).get()), constant(constant.get()));
+            return;
+        }
+        int mark = top;
+        int a = leftOperand(left, right, dst);
+        emit(BINARY, dst, a, operand(right), operator.ordinal());
+        top = mark;
+    }
+
+    /**
+     * Compiles {@code read operator right}, where {@code read} is already in the destination register.
+     */
+    private void update(BasicOperator operator, Expression right) {
+        int dst = this.dst;
+        if (operator == BasicOperator.AND || operator == BasicOperator.OR) {
+            int end = emitJump(operator == BasicOperator.AND ? JUMP_IF_FALSE : JUMP_IF_TRUE, dst, -1);
+            compile(right, dst);
+            patch(end);
+        } else {
+            int mark = top;
+            emit(BINARY, dst, dst, operand(right), operator.ordinal());
+            top = mark;
+        }
+    }
+
+    @Override
+    public Void boolLiteral(boolean boolLiteral) {
+        emit(CONST, dst, constant(boolLiteral));
+        return null;
+    }
+
+    @Override
+    public Void breakStatement() {
+        if (loop == null) {
+            emit(FAIL, constant("break outside of a loop"));
+            return null;
+        }
+        if (blocks.size() > loop.blocks) emit(POP_FRAME, blocks.get(loop.blocks));
+        loop.breaks.add(emitJump(JUMP, -1));
+        return null;
+    }
+
+    @Override
+    public Void declFunc(List<String> funcParamNames, Expression funcBody) {
+        emit(FAIL, constant("function was not resolved"));
+        return null;
+    }
+
+    @Override
+    public Void ifExpr(Expression ifCondition, Expression ifBody, Optional<Expression> ifElse) {
+        int dst = this.dst;
+        int otherwise = condition(ifCondition);
+        compile(ifBody, dst);
+        int end = emitJump(JUMP, -1);
+        patch(otherwise);
+        if (ifElse.isPresent()) compile(ifElse.get(), dst);
+        else emit(CONST, dst, constant(null));
+        patch(end);
+        return null;
+    }
+
+    @Override
+    public Void whileExpr(Expression whileCondition, Expression whileBody) {
+        int dst = this.dst;
+        boolean discard = this.discard;
+        int body = temp();
+        if (!discard) emit(CONST, dst, constant(null));
+        Loop loop = enterLoop();
+        repeat(whileCondition, () -> {
+            compile(whileBody, body, discard);
+            if (!discard) emit(MOVE, dst, body);
+        });
+        exitLoop(loop);
+        return null;
+    }
+
+    @Override
+    public Void forExpr(Expression forInit, Expression forCondition, Expression forUpdate, Expression forBody) {
+        int dst = this.dst;
+        boolean discard = this.discard;
+        int body = temp();
+        compile(forInit, body, true);
+        if (!discard) emit(CONST, dst, constant(null));
+        Loop loop = enterLoop();
+        repeat(forCondition, () -> {
+            compile(forBody, body, discard);
+            if (!discard) emit(MOVE, dst, body);
+            compile(forUpdate, body, true);
+        });
+        exitLoop(loop);
+        return null;
+    }
+
+    @Override
+    public Void returnExpr(Optional<Expression> returnExpr) {
+        if (function && returnExpr.isPresent()) {
+            tail(returnExpr.get());
+            return null;
+        }
+        int value = temp();
+        if (returnExpr.isPresent()) compile(returnExpr.get(), value);
+        else emit(CONST, value, constant(null));
+        emit(function ? RETURN : THROW_RETURN, value);
+        return null;
+    }
+
+    @Override
+    public Void loop(Expression loopExpr) {
+        int dst = this.dst;
+        int body = temp();
+        Loop loop = enterLoop();
+        int start = pc;
+        emit(POLL);
+        compile(loopExpr, body, true);
+        emit(JUMP, start);
+        exitLoop(loop);
+        emit(CONST, dst, constant(null));
+        return null;
+    }
+
+    @Override
+    public Void declVar(String declName, Expression declValue) {
+        named(declName, declValue, dst);
+        emit(LET_GLOBAL, dst, constant(declName));
+        return null;
+    }
+
+    @Override
+    public Void mapInit(List<Map.Entry<Expression, Expression>> mapInitExpr) {
+        int dst = this.dst;
+        emit(ALLOC, mapInitExpr.size());
+        ShapedMap.Shape shape = ShapedMap.Shape.EMPTY;
+        int[] slots = new int[mapInitExpr.size()];
+        for (int i = 0; i < slots.length && shape != null; i++) {
+            Optional<String> key = Expressions.getStringExpr(mapInitExpr.get(i).getKey());
+            shape = key.isPresent() ? shape.with(key.get()) : null;
+            if (shape != null) slots[i] = shape.indexOf(key.get());
+        }
+        if (shape != null) {
+            int first = temps(slots.length);
+            for (int i = 0; i < slots.length; i++) {
+                named(Expressions.getStringExpr(mapInitExpr.get(i).getKey()).get(), mapInitExpr.get(i).getValue(), first + i);
+            }
+            emit(MAP_SHAPED, dst, constant(new MapLayout(shape, slots)), first);
+            return null;
+        }
+        int first = temps(2 * mapInitExpr.size());
+        for (int i = 0; i < mapInitExpr.size(); i++) {
+            Expression key = mapInitExpr.get(i).getKey();
+            Expression value = mapInitExpr.get(i).getValue();
+            compile(key, first + 2 * i);
+            Optional<String> string = Expressions.getStringExpr(key);
+            if (string.isPresent()) named(string.get(), value, first + 2 * i + 1);
+            else compile(value, first + 2 * i + 1);
+        }
+        emit(MAP, dst, first, mapInitExpr.size());
+        return null;
+    }
+
+    @Override
+    public Void listInit(List<Expression> listInitExpr) {
+        int dst = this.dst;
+        emit(ALLOC, listInitExpr.size());
+        int first = temps(listInitExpr.size());
+        for (int i = 0; i < listInitExpr.size(); i++) {
+            compile(listInitExpr.get(i), first + i);
+        }
+        emit(LIST, dst, first, listInitExpr.size());
+        return null;
+    }
+
+    @Override
+    public Void nopExpr() {
+        emit(CONST, dst, constant(null));
+        return null;
+    }
+
+    @Override
+    public Void string(String stringExpr) {
+        emit(CONST, dst, constant(stringExpr));
+        return null;
+    }
+
+    @Override
+    public Void number(Number numberExpr) {
+        emit(CONST, dst, constant(numberExpr));
+        return null;
+    }
+
+    @Override
+    public Void bracketed(List<Expression> bracketedExpr) {
+        statements(bracketedExpr, dst);
+        return null;
+    }
+
+    @Override
+    public Void accessVar(String name) {
+        emit(GET_GLOBAL, dst, constant(name), globals.indexOf(name));
+        return null;
+    }
+
+    @Override
+    public Void callFunc(Expression callFunc, List<Expression> params) {
+        int dst = this.dst;
+        if (Expressions.getMethod(callFunc).orElse(false)) {
+            int first = call(params, 1);
+            compile(Expressions.getKeyOwner(callFunc).get(), first);
+            int key = temp();
+            compile(Expressions.getKey(callFunc).get(), key);
+            emit(CALL_METHOD, dst, key, first, params.size() + 1);
+        } else {
+            int first = call(params, 0);
+            int callee = temp();
+            compile(callFunc, callee);
+            emit(CALL, dst, callee, first, params.size());
+        }
+        return null;
+    }
+
+    @Override
+    public Void access(Expression keyOwner, Expression key, boolean method) {
+        int dst = this.dst;
+        compile(keyOwner, dst);
+        Optional<String> field = Expressions.getStringExpr(key);
+        if (!method && field.isPresent()) {
+            emit(GET_FIELD, dst, dst, constant(field.get()), cache());
+            return null;
+        }
+        int k = temp();
+        compile(key, k);
+        emit(method ? METHOD : GET, dst, dst, k);
+        return null;
+    }
+
+    @Override
+    public Void unaryNegate(Expression expression) {
+        compile(expression, dst);
+        emit(NEGATE, dst, dst);
+        return null;
+    }
+
+    @Override
+    public Void operator(Expression left, Operator operator, Expression right) {
+        int dst = this.dst;
+        Optional<BasicOperator> basic = Operators.getBasicOperator(operator);
+        if (basic.isPresent()) {
+            operation(basic.get(), left, right);
+            return null;
+        }
+        Optional<BasicOperator> transformation = Operators.getTransformation(operator).get();
+        Expressions.caseOf(left)
+                .accessVar(varName -> {
+                    if (transformation.isPresent()) {
+                        emit(GET_GLOBAL, dst, constant(varName), globals.indexOf(varName));
+                        update(transformation.get(), right);
+                    } else {
+                        named(varName, right, dst);
+                    }
+                    emit(SET_GLOBAL, dst, constant(varName));
+                    return null;
+                })
+                .access((keyOwner, key, method) -> {
+                    if (method) {
+                        emit(FAIL, constant("cannot assign to a method access"));
+                        return null;
+                    }
+                    int owner = temp();
+                    int k = temp();
+                    compile(keyOwner, owner);
+                    compile(key, k);
+                    Optional<String> field = Expressions.getStringExpr(key);
+                    int cache = field.isPresent() ? cache() : -1;
+                    if (transformation.isPresent()) {
+                        if (field.isPresent()) emit(GET_FIELD, dst, owner, constant(field.get()), cache);
+                        else emit(GET, dst, owner, k);
+                        update(transformation.get(), right);
+                    } else {
+                        compile(right, dst);
+                    }
+                    if (field.isPresent()) emit(SET_FIELD, owner, constant(field.get()), dst, cache);
+                    else emit(SET, owner, k, dst);
+                    return null;
+                })
+                .localVar((localName, localDepth, localSlot) -> {
+                    int register = locals.get(localName);
+                    if (register >= 0) {
+                        assign(register, localName, transformation, right);
+                        return null;
+                    }
+                    if (transformation.isPresent()) {
+                        if (transformation.get() == BasicOperator.ADD && Expressions.getNumberExpr(right).isPresent()) {
+                            operation(BasicOperator.ADD, left, right);
+                        } else {
+                            emit(GET_LOCAL, dst, depth(localDepth), localSlot, constant(localName));
+                            update(transformation.get(), right);
+                        }
+                    } else {
+                        named(localName, right, dst);
+                    }
+                    emit(SET_LOCAL, dst, depth(localDepth), localSlot, constant(localName));
+                    return null;
+                })
+                .otherwise(() -> {
+                    emit(FAIL, constant("cannot assign to non-reference"));
+                    return null;
+                });
+        return null;
+    }
+
+    /**
+     * Compiles an assignment to a local in a register.
+     */
+    private void assign(int register, String name, Optional<BasicOperator> transformation, Expression right) {
+        int dst = this.dst;
+        boolean discard = this.discard;
+        if (!transformation.isPresent()) {
+            named(name, right, dst);
+            emit(MOVE, register, dst);
+            return;
+        }
+        BasicOperator operator = transformation.get();
+        if (operator != BasicOperator.AND && operator != BasicOperator.OR && stable(name, right)) {
+            int mark = top;
+            emit(BINARY, register, register, operand(right), operator.ordinal());
+            top = mark;
+        } else {
+            emit(MOVE, dst, register);
+            update(operator, right);
+            emit(MOVE, register, dst);
+            return;
+        }
+        if (!discard) emit(MOVE, dst, register);
+    }
+
+    @Override
+    public Void localVar(String localName, int localDepth, int localSlot) {
+        int register = locals.get(localName);
+        if (register >= 0) {
+            if (register != dst) emit(MOVE, dst, register);
+            return null;
+        }
+        emit(GET_LOCAL, dst, depth(localDepth), localSlot, constant(localName));
+        return null;
+    }
+
+    @Override
+    public Void declLocal(String declLocalName, int declLocalSlot, Expression declLocalValue) {
+        int register = locals.get(declLocalName);
+        if (register >= 0) {
+            boolean discard = this.discard;
+            int dst = this.dst;
+            named(declLocalName, declLocalValue, register);
+            if (!discard) emit(MOVE, dst, register);
+            return null;
+        }
+        named(declLocalName, declLocalValue, dst);
+        emit(LET_LOCAL, dst, declLocalSlot);
+        return null;
+    }
+
+    @Override
+    public Void block(List<String> blockNames, List<Expression> blockExprs) {
+        int dst = this.dst;
+        int save = enterBlock(blockNames, blockExprs);
+        statements(blockExprs, dst);
+        exitBlock(save);
+        if (save >= 0) emit(POP_FRAME, save);
+        return null;
+    }
+
+    @Override
+    public Void closure(List<String> closureNames, int closureParamCount, Expression closureBody) {
+        int line = lines.get(current);
+        String label = name != null ? name : line == 0 ? "function" : "function@" + line;
+        name = null;
+        ChunkCompiler inner = new ChunkCompiler(lines, globals, true, Registers.allocate(closureNames, closureParamCount, closureBody));
+        inner.tail(closureBody);
+        boolean pure = Purity.isPure(closureParamCount, closureNames, closureBody);
+        emit(CLOSURE, dst, constant(inner.build(label, closureNames, closureParamCount, pure)));
+        return null;
+    }
+
+    @Override
+    public Void forIn(String forInName, int forInSlot, Expression forInIterable, Expression forInBody) {
+        int dst = this.dst;
+        boolean discard = this.discard;
+        int iterator = temp();
+        int body = temp();
+        compile(forInIterable, iterator);
+        emit(ITER, iterator, iterator);
+        if (!discard) emit(CONST, dst, constant(null));
+        int register = forInSlot >= 0 ? locals.get(forInName) : -1;
+        int element = register >= 0 ? register : temp();
+        Loop loop = enterLoop();
+        int start = pc;
+        int exit = emitJump(NEXT, element, iterator, -1);
+        if (forInSlot < 0) emit(LET_GLOBAL, element, constant(forInName));
+        else if (register < 0) emit(LET_LOCAL, element, forInSlot);
+        compile(forInBody, body, discard);
+        if (!discard) emit(MOVE, dst, body);
+        emit(JUMP, start);
+        patch(exit);
+        exitLoop(loop);
+        return null;
+    }
+
+}
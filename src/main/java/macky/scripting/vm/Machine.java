@@ -0,0 +1,480 @@
+package macky.scripting.vm;
+
+import macky.scripting.BasicOperator;
+import macky.scripting.Budget;
+import macky.scripting.Frame;
+import macky.scripting.PackedList;
+import macky.scripting.ScriptException;
+import macky.scripting.ScriptFunction;
+import macky.scripting.ScriptObjects;
+import macky.scripting.ScriptReturnException;
+import macky.scripting.ShapedMap;
+import macky.scripting.jfr.ScriptEvents;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static macky.scripting.vm.Opcodes.*;
+
+/**
+ * Runs {@link Chunk}s.
+ */
+final class Machine {
+
+    /**
+     * The result of a chunk that ended in a tail call to a {@link VmFunction}, which the frame holds.
+     */
+    static final Object PENDING = new Object();
+
+    private static final BasicOperator[] OPERATORS = BasicOperator.values();
+
+    private static final class Field {
+        private final ShapedMap.Shape shape;
+        private final int slot;
+
+        Field(ShapedMap.Shape shape, int slot) {
+            this.shape = shape;
+            this.slot = slot;
+        }
+    }
+
+    private Machine() {
+
+    }
+
+    @SuppressWarnings("unchecked")
+    static Object run(Chunk chunk, Frame frame) {
+        int[] code = chunk.code;
+        Object[] constants = chunk.constants;
+        Object[] r = new Object[chunk.registers];
+        for (int i = 0; i < chunk.parameters.length; i++) {
+            if (chunk.parameters[i] >= 0) r[chunk.parameters[i]] = frame.get(0, i, chunk.names.get(i));
+        }
+        Budget budget = frame.getBudget();
+        int pc = 0;
+        while (true) {
+            switch (code[pc]) {
+                case CONST:
+                    r[code[pc + 1]] = constants[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case MOVE:
+                    r[code[pc + 1]] = r[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case GET_LOCAL:
+                    r[code[pc + 1]] = frame.get(code[pc + 2], code[pc + 3], (String) constants[code[pc + 4]]);
+                    pc += 5;
+                    break;
+                case SET_LOCAL:
+                    frame.set(code[pc + 2], code[pc + 3], (String) constants[code[pc + 4]], r[code[pc + 1]]);
+                    pc += 5;
+                    break;
+                case LET_LOCAL:
+                    frame.let(code[pc + 2], r[code[pc + 1]]);
+                    pc += 3;
+                    break;
+                case GET_GLOBAL:
+                    r[code[pc + 1]] = frame.getGlobal(chunk.globals, code[pc + 3], (String) constants[code[pc + 2]]);
+                    pc += 4;
+                    break;
+                case SET_GLOBAL:
+                    frame.setGlobal((String) constants[code[pc + 2]], r[code[pc + 1]]);
+                    pc += 3;
+                    break;
+                case LET_GLOBAL:
+                    frame.letGlobal((String) constants[code[pc + 2]], r[code[pc + 1]]);
+                    pc += 3;
+                    break;
+                case BINARY: {
+                    Object a = operand(r, constants, code[pc + 2]), b = operand(r, constants, code[pc + 3]);
+                    if (a instanceof Long && b instanceof Long) code[pc] = BINARY_LONG;
+                    else if (a instanceof Double && b instanceof Double) code[pc] = BINARY_DOUBLE;
+                    else code[pc] = BINARY_GENERIC;
+                    break;
+                }
+                case BINARY_LONG: {
+                    Object a = operand(r, constants, code[pc + 2]), b = operand(r, constants, code[pc + 3]);
+                    if (!(a instanceof Long && b instanceof Long)) {
+                        code[pc] = BINARY_GENERIC;
+                        break;
+                    }
+                    BasicOperator operator = OPERATORS[code[pc + 4]];
+                    Object result = binary(operator, (Long) a, (Long) b);
+                    r[code[pc + 1]] = result != null ? result : operator.getBinary().call(a, b);
+                    pc += 5;
+                    break;
+                }
+                case BINARY_DOUBLE: {
+                    Object a = operand(r, constants, code[pc + 2]), b = operand(r, constants, code[pc + 3]);
+                    if (!(a instanceof Double && b instanceof Double)) {
+                        code[pc] = BINARY_GENERIC;
+                        break;
+                    }
+                    r[code[pc + 1]] = binary(OPERATORS[code[pc + 4]], (Double) a, (Double) b);
+                    pc += 5;
+                    break;
+                }
+                case BINARY_GENERIC:
+                    r[code[pc + 1]] = OPERATORS[code[pc + 4]].getBinary().call(operand(r, constants, code[pc + 2]), operand(r, constants, code[pc + 3]));
+                    pc += 5;
+                    break;
+                case ADD_LOCAL_CONST: {
+                    Object a = frame.get(code[pc + 2], code[pc + 3], (String) constants[code[pc + 4]]);
+                    Object b = constants[code[pc + 5]];
+                    Object result = a instanceof Long && b instanceof Long ? binary(BasicOperator.ADD, (Long) a, (Long) b) : null;
+                    r[code[pc + 1]] = result != null ? result : ScriptObjects.add(a, b);
+                    pc += 6;
+                    break;
+                }
+                case NEGATE: {
+                    Object v = r[code[pc + 2]];
+                    r[code[pc + 1]] = v instanceof Long && (Long) v != Long.MIN_VALUE ? -(Long) v : ScriptObjects.negate(v);
+                    pc += 3;
+                    break;
+                }
+                case JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case JUMP_IF_FALSE:
+                    pc = ScriptObjects.asBoolean(r[code[pc + 1]]) ? pc + 3 : code[pc + 2];
+                    break;
+                case JUMP_IF_TRUE:
+                    pc = ScriptObjects.asBoolean(r[code[pc + 1]]) ? code[pc + 2] : pc + 3;
+                    break;
+                case CMP_JUMP: {
+                    Object a = operand(r, constants, code[pc + 1]), b = operand(r, constants, code[pc + 2]);
+                    if (a instanceof Long && b instanceof Long) code[pc] = CMP_JUMP_LONG;
+                    else if (a instanceof Double && b instanceof Double) code[pc] = CMP_JUMP_DOUBLE;
+                    else code[pc] = CMP_JUMP_GENERIC;
+                    break;
+                }
+                case CMP_JUMP_LONG: {
+                    Object a = operand(r, constants, code[pc + 1]), b = operand(r, constants, code[pc + 2]);
+                    if (!(a instanceof Long && b instanceof Long)) {
+                        code[pc] = CMP_JUMP_GENERIC;
+                        break;
+                    }
+                    pc = compare(OPERATORS[code[pc + 3]], Long.compare((Long) a, (Long) b)) ? pc + 5 : code[pc + 4];
+                    break;
+                }
+                case CMP_JUMP_DOUBLE: {
+                    Object a = operand(r, constants, code[pc + 1]), b = operand(r, constants, code[pc + 2]);
+                    if (!(a instanceof Double && b instanceof Double)) {
+                        code[pc] = CMP_JUMP_GENERIC;
+                        break;
+                    }
+                    pc = ScriptObjects.asBoolean(binary(OPERATORS[code[pc + 3]], (Double) a, (Double) b)) ? pc + 5 : code[pc + 4];
+                    break;
+                }
+                case CMP_JUMP_GENERIC: {
+                    Object result = OPERATORS[code[pc + 3]].getBinary().call(operand(r, constants, code[pc + 1]), operand(r, constants, code[pc + 2]));
+                    pc = ScriptObjects.asBoolean(result) ? pc + 5 : code[pc + 4];
+                    break;
+                }
+                case CMP_LOOP: {
+                    Object a = operand(r, constants, code[pc + 1]), b = operand(r, constants, code[pc + 2]);
+                    if (a instanceof Long && b instanceof Long) code[pc] = CMP_LOOP_LONG;
+                    else if (a instanceof Double && b instanceof Double) code[pc] = CMP_LOOP_DOUBLE;
+                    else code[pc] = CMP_LOOP_GENERIC;
+                    break;
+                }
+                case CMP_LOOP_LONG: {
+                    Object a = operand(r, constants, code[pc + 1]), b = operand(r, constants, code[pc + 2]);
+                    if (!(a instanceof Long && b instanceof Long)) {
+                        code[pc] = CMP_LOOP_GENERIC;
+                        break;
+                    }
+                    if (compare(OPERATORS[code[pc + 3]], Long.compare((Long) a, (Long) b))) {
+                        budget.poll();
+                        pc = code[pc + 4];
+                    } else {
+                        pc += 5;
+                    }
+                    break;
+                }
+                case CMP_LOOP_DOUBLE: {
+                    Object a = operand(r, constants, code[pc + 1]), b = operand(r, constants, code[pc + 2]);
+                    if (!(a instanceof Double && b instanceof Double)) {
+                        code[pc] = CMP_LOOP_GENERIC;
+                        break;
+                    }
+                    if (ScriptObjects.asBoolean(binary(OPERATORS[code[pc + 3]], (Double) a, (Double) b))) {
+                        budget.poll();
+                        pc = code[pc + 4];
+                    } else {
+                        pc += 5;
+                    }
+                    break;
+                }
+                case CMP_LOOP_GENERIC: {
+                    Object result = OPERATORS[code[pc + 3]].getBinary().call(operand(r, constants, code[pc + 1]), operand(r, constants, code[pc + 2]));
+                    if (ScriptObjects.asBoolean(result)) {
+                        budget.poll();
+                        pc = code[pc + 4];
+                    } else {
+                        pc += 5;
+                    }
+                    break;
+                }
+                case ITER:
+                    r[code[pc + 1]] = ScriptObjects.iterate(r[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case NEXT: {
+                    Iterator<?> iterator = (Iterator<?>) r[code[pc + 2]];
+                    if (iterator.hasNext()) {
+                        budget.poll();
+                        r[code[pc + 1]] = iterator.next();
+                        pc += 4;
+                    } else {
+                        pc = code[pc + 3];
+                    }
+                    break;
+                }
+                case POLL:
+                    budget.poll();
+                    pc += 1;
+                    break;
+                case ALLOC:
+                    budget.allocate(code[pc + 1]);
+                    pc += 2;
+                    break;
+                case PUSH_FRAME:
+                    r[code[pc + 1]] = frame;
+                    frame = frame.push((List<String>) constants[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case POP_FRAME:
+                    frame = (Frame) r[code[pc + 1]];
+                    pc += 2;
+                    break;
+                case CLOSURE:
+                    budget.allocate(0);
+                    r[code[pc + 1]] = new VmFunction((Chunk) constants[code[pc + 2]], frame);
+                    pc += 3;
+                    break;
+                case LIST: {
+                    int first = code[pc + 2];
+                    r[code[pc + 1]] = PackedList.of(Arrays.copyOfRange(r, first, first + code[pc + 3]));
+                    pc += 4;
+                    break;
+                }
+                case MAP: {
+                    ShapedMap map = new ShapedMap();
+                    int first = code[pc + 2];
+                    for (int i = 0; i < code[pc + 3]; i++) {
+                        map.put(r[first + 2 * i], r[first + 2 * i + 1]);
+                    }
+                    r[code[pc + 1]] = map;
+                    pc += 4;
+                    break;
+                }
+                case MAP_SHAPED: {
+                    MapLayout layout = (MapLayout) constants[code[pc + 2]];
+                    Object[] values = new Object[layout.shape.size()];
+                    int first = code[pc + 3];
+                    for (int i = 0; i < layout.slots.length; i++) {
+                        values[layout.slots[i]] = r[first + i];
+                    }
+                    r[code[pc + 1]] = new ShapedMap(layout.shape, values);
+                    pc += 4;
+                    break;
+                }
+                case GET:
+                    r[code[pc + 1]] = ScriptObjects.access(r[code[pc + 2]], r[code[pc + 3]], false);
+                    pc += 4;
+                    break;
+                case GET_FIELD: {
+                    Object owner = r[code[pc + 2]];
+                    String name = (String) constants[code[pc + 3]];
+                    r[code[pc + 1]] = owner instanceof ShapedMap
+                            ? getField(chunk, code[pc + 4], (ShapedMap) owner, name)
+                            : ScriptObjects.access(owner, name, false);
+                    pc += 5;
+                    break;
+                }
+                case SET: {
+                    Object owner = r[code[pc + 1]];
+                    ScriptObjects.assign(owner, r[code[pc + 2]], r[code[pc + 3]]);
+                    budget.checkSize(owner);
+                    pc += 4;
+                    break;
+                }
+                case SET_FIELD: {
+                    Object owner = r[code[pc + 1]];
+                    String name = (String) constants[code[pc + 2]];
+                    if (owner instanceof ShapedMap) setField(chunk, code[pc + 4], (ShapedMap) owner, name, r[code[pc + 3]]);
+                    else ScriptObjects.assign(owner, name, r[code[pc + 3]]);
+                    budget.checkSize(owner);
+                    pc += 5;
+                    break;
+                }
+                case METHOD: {
+                    Object owner = r[code[pc + 2]];
+                    r[code[pc + 1]] = ScriptObjects.bind(owner, ScriptObjects.getFunction(ScriptObjects.access(owner, r[code[pc + 3]], false)));
+                    pc += 4;
+                    break;
+                }
+                case CALL:
+                    r[code[pc + 1]] = call(callee(r[code[pc + 2]]), r, code[pc + 3], code[pc + 4]);
+                    pc += 5;
+                    break;
+                case CALL_METHOD: {
+                    Object owner = r[code[pc + 3]];
+                    r[code[pc + 1]] = call(callee(ScriptObjects.access(owner, r[code[pc + 2]], false)), r, code[pc + 3], code[pc + 4]);
+                    pc += 5;
+                    break;
+                }
+                case TAIL_CALL:
+                    return tailCall(frame, callee(r[code[pc + 1]]), r, code[pc + 2], code[pc + 3]);
+                case TAIL_CALL_METHOD: {
+                    Object owner = r[code[pc + 2]];
+                    return tailCall(frame, callee(ScriptObjects.access(owner, r[code[pc + 1]], false)), r, code[pc + 2], code[pc + 3]);
+                }
+                case RETURN:
+                    return r[code[pc + 1]];
+                case THROW_RETURN:
+                    throw new ScriptReturnException(r[code[pc + 1]]);
+                case FAIL:
+                    throw new ScriptException((String) constants[code[pc + 1]]);
+                default:
+                    throw new IllegalStateException("invalid opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+    private static Object operand(Object[] r, Object[] constants, int operand) {
+        return operand >= 0 ? r[operand] : constants[~operand];
+    }
+
+    /**
+     * The function to call for a value. Host functions are wrapped to emit host call events while a recording has them
+     * enabled.
+     */
+    private static ScriptFunction callee(Object value) {
+        ScriptFunction function = ScriptObjects.getFunction(value);
+        if (function instanceof VmFunction || !ScriptEvents.isHostCallEnabled()) return function;
+        return ScriptEvents.traced(function);
+    }
+
+    private static Object call(ScriptFunction function, Object[] r, int first, int count) {
+        switch (count) {
+            case 0:
+                return function.call0();
+            case 1:
+                return function.call1(r[first]);
+            case 2:
+                return function.call2(r[first], r[first + 1]);
+            case 3:
+                return function.call3(r[first], r[first + 1], r[first + 2]);
+            default:
+                return function.callN(Arrays.copyOfRange(r, first, first + count));
+        }
+    }
+
+    private static Object tailCall(Frame frame, ScriptFunction function, Object[] r, int first, int count) {
+        Object[] args = Arrays.copyOfRange(r, first, first + count);
+        if (function instanceof VmFunction) {
+            frame.setTailCall(function, args);
+            return PENDING;
+        }
+        return function.callN(args);
+    }
+
+    private static Object getField(Chunk chunk, int cache, ShapedMap map, String name) {
+        Field field = (Field) chunk.caches[cache];
+        if (field == null || field.shape != map.getShape()) field = lookup(chunk, cache, map, name);
+        return field == null ? map.get(name) : map.getSlot(field.slot);
+    }
+
+    private static void setField(Chunk chunk, int cache, ShapedMap map, String name, Object value) {
+        Field field = (Field) chunk.caches[cache];
+        if (field == null || field.shape != map.getShape()) field = lookup(chunk, cache, map, name);
+        if (field == null) map.put(name, value);
+        else map.setSlot(field.slot, value);
+    }
+
+    private static Field lookup(Chunk chunk, int cache, ShapedMap map, String name) {
+        ShapedMap.Shape shape = map.getShape();
+        int slot = shape == null ? -1 : shape.indexOf(name);
+        if (slot < 0) return null;
+        Field field = new Field(shape, slot);
+        chunk.caches[cache] = field;
+        return field;
+    }
+
+    /**
+     * {@code a operator b} on longs, or null if the result is not a long, e.g. on overflow.
+     */
+    private static Object binary(BasicOperator operator, long x, long y) {
+        switch (operator) {
+            case ADD: {
+                long r = x + y;
+                return ((x ^ r) & (y ^ r)) >= 0 ? r : null;
+            }
+            case SUB: {
+                long r = x - y;
+                return ((x ^ y) & (x ^ r)) >= 0 ? r : null;
+            }
+            case MUL: {
+                long r = x * y;
+                return Math.multiplyHigh(x, y) == (r >> 63) ? r : null;
+            }
+            case DIV:
+                return y != 0 && x % y == 0 && y != -1 ? x / y : null;
+            case MOD:
+                return y != 0 ? x % y : null;
+            default:
+                return compare(operator, Long.compare(x, y));
+        }
+    }
+
+    private static Object binary(BasicOperator operator, double x, double y) {
+        switch (operator) {
+            case ADD:
+                return x + y;
+            case SUB:
+                return x - y;
+            case MUL:
+                return x * y;
+            case DIV:
+                return x / y;
+            case MOD:
+                return x % y;
+            case LT:
+                return x < y;
+            case LE:
+                return x <= y;
+            case GT:
+                return x > y;
+            case GE:
+                return x >= y;
+            case EQUALS:
+                return x == y;
+            case NOT_EQUALS:
+                return x != y;
+            default:
+                return operator.getBinary().call(x, y);
+        }
+    }
+
+    private static boolean compare(BasicOperator operator, int comparison) {
+        switch (operator) {
+            case LT:
+                return comparison < 0;
+            case LE:
+                return comparison <= 0;
+            case GT:
+                return comparison > 0;
+            case GE:
+                return comparison >= 0;
+            case EQUALS:
+                return comparison == 0;
+            default:
+                return comparison != 0;
+        }
+    }
+
+}
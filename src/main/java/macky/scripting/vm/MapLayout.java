@@ -0,0 +1,18 @@
+package macky.scripting.vm;
+
+import macky.scripting.ShapedMap;
+
+/**
+ * The shape of a map literal whose keys are all string constants, and the slot of each entry in it.
+ */
+final class MapLayout {
+
+    final ShapedMap.Shape shape;
+    final int[] slots;
+
+    MapLayout(ShapedMap.Shape shape, int[] slots) {
+        this.shape = shape;
+        this.slots = slots;
+    }
+
+}
@@ -0,0 +1,124 @@
+package macky.scripting.vm;
+
+/**
+ * The instructions of a {@link Chunk}. Each instruction is an opcode followed by a fixed number of int operands:
+ * registers ({@code r}), constant pool indices ({@code k}), inline cache indices ({@code c}), absolute jump targets
+ * and plain numbers. The operands {@code a} and {@code b} of binary operations and comparisons are registers if they
+ * are not negative and constants {@code ~a} otherwise, so that literals take no instruction of their own. Opcodes
+ * marked as quickened rewrite themselves in the code array the first time they run, to a variant for the types they
+ * saw, and rewrite themselves to the generic variant when a type no longer fits.
+ */
+final class Opcodes {
+
+    /** {@code CONST r k}: r = k */
+    static final int CONST = 0;
+    /** {@code MOVE r src} */
+    static final int MOVE = 1;
+    /** {@code GET_LOCAL r depth slot name} */
+    static final int GET_LOCAL = 2;
+    /** {@code SET_LOCAL src depth slot name} */
+    static final int SET_LOCAL = 3;
+    /** {@code LET_LOCAL src slot} */
+    static final int LET_LOCAL = 4;
+    /** {@code GET_GLOBAL r name index}, index numbering name in the {@link macky.scripting.Globals} of the chunk */
+    static final int GET_GLOBAL = 5;
+    /** {@code SET_GLOBAL src name} */
+    static final int SET_GLOBAL = 6;
+    /** {@code LET_GLOBAL src name} */
+    static final int LET_GLOBAL = 7;
+    /** {@code BINARY r a b operator}, quickened to one of the next three */
+    static final int BINARY = 8;
+    static final int BINARY_LONG = 9;
+    static final int BINARY_DOUBLE = 10;
+    static final int BINARY_GENERIC = 11;
+    /** {@code ADD_LOCAL_CONST r depth slot name k}: r = local + k */
+    static final int ADD_LOCAL_CONST = 12;
+    /** {@code NEGATE r src} */
+    static final int NEGATE = 13;
+    /** {@code JUMP target} */
+    static final int JUMP = 14;
+    /** {@code JUMP_IF_FALSE src target} */
+    static final int JUMP_IF_FALSE = 15;
+    /** {@code JUMP_IF_TRUE src target} */
+    static final int JUMP_IF_TRUE = 16;
+    /** {@code CMP_JUMP a b operator target}: jumps unless the comparison holds, quickened to one of the next three */
+    static final int CMP_JUMP = 17;
+    static final int CMP_JUMP_LONG = 18;
+    static final int CMP_JUMP_DOUBLE = 19;
+    static final int CMP_JUMP_GENERIC = 20;
+    /**
+     * {@code CMP_LOOP a b operator target}: if the comparison holds, charges one step and jumps back to the loop body,
+     * quickened to one of the next three
+     */
+    static final int CMP_LOOP = 21;
+    static final int CMP_LOOP_LONG = 22;
+    static final int CMP_LOOP_DOUBLE = 23;
+    static final int CMP_LOOP_GENERIC = 24;
+    /** {@code ITER r src}: r = an iterator over the elements of a list or the keys of a map */
+    static final int ITER = 25;
+    /** {@code NEXT r iterator target}: jumps if the iterator is done, otherwise charges one step and r = next */
+    static final int NEXT = 26;
+    /** {@code POLL}: charges one step to the budget */
+    static final int POLL = 27;
+    /** {@code ALLOC size}: charges one allocation of size elements to the budget */
+    static final int ALLOC = 28;
+    /** {@code PUSH_FRAME save names}: saves the frame in a register and enters a block */
+    static final int PUSH_FRAME = 29;
+    /** {@code POP_FRAME save}: restores the frame saved in a register */
+    static final int POP_FRAME = 30;
+    /** {@code CLOSURE r chunk} */
+    static final int CLOSURE = 31;
+    /** {@code LIST r first count} */
+    static final int LIST = 32;
+    /** {@code MAP r first count}: keys and values alternate from first */
+    static final int MAP = 33;
+    /** {@code MAP_SHAPED r layout first}: values in entry order from first */
+    static final int MAP_SHAPED = 34;
+    /** {@code GET r owner key} */
+    static final int GET = 35;
+    /** {@code GET_FIELD r owner name c} */
+    static final int GET_FIELD = 36;
+    /** {@code SET owner key src} */
+    static final int SET = 37;
+    /** {@code SET_FIELD owner name src c} */
+    static final int SET_FIELD = 38;
+    /** {@code METHOD r owner key}: the method bound to its owner */
+    static final int METHOD = 39;
+    /** {@code CALL r function first count} */
+    static final int CALL = 40;
+    /** {@code CALL_METHOD r key first count}: the owner is in first, the arguments follow it */
+    static final int CALL_METHOD = 41;
+    /** {@code TAIL_CALL function first count} */
+    static final int TAIL_CALL = 42;
+    /** {@code TAIL_CALL_METHOD key first count} */
+    static final int TAIL_CALL_METHOD = 43;
+    /** {@code RETURN src} */
+    static final int RETURN = 44;
+    /** {@code THROW_RETURN src}: a return outside of any function */
+    static final int THROW_RETURN = 45;
+    /** {@code FAIL message} */
+    static final int FAIL = 46;
+
+    static final String[] NAMES = {
+            "CONST", "MOVE", "GET_LOCAL", "SET_LOCAL", "LET_LOCAL", "GET_GLOBAL", "SET_GLOBAL", "LET_GLOBAL",
+            "BINARY", "BINARY_LONG", "BINARY_DOUBLE", "BINARY_GENERIC", "ADD_LOCAL_CONST", "NEGATE",
+            "JUMP", "JUMP_IF_FALSE", "JUMP_IF_TRUE", "CMP_JUMP", "CMP_JUMP_LONG", "CMP_JUMP_DOUBLE", "CMP_JUMP_GENERIC",
+            "CMP_LOOP", "CMP_LOOP_LONG", "CMP_LOOP_DOUBLE", "CMP_LOOP_GENERIC", "ITER", "NEXT", "POLL", "ALLOC", "PUSH_FRAME", "POP_FRAME", "CLOSURE", "LIST", "MAP", "MAP_SHAPED",
+            "GET", "GET_FIELD", "SET", "SET_FIELD", "METHOD", "CALL", "CALL_METHOD", "TAIL_CALL", "TAIL_CALL_METHOD",
+            "RETURN", "THROW_RETURN", "FAIL",
+    };
+
+    static final int[] OPERANDS = {
+            2, 2, 4, 4, 2, 3, 2, 2,
+            4, 4, 4, 4, 5, 2,
+            1, 2, 2, 4, 4, 4, 4,
+            4, 4, 4, 4, 2, 3, 0, 1, 2, 1, 2, 3, 3, 3,
+            3, 4, 3, 4, 3, 4, 4, 3, 3,
+            1, 1, 1,
+    };
+
+    private Opcodes() {
+
+    }
+
+}
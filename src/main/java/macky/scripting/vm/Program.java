@@ -0,0 +1,67 @@
+package macky.scripting.vm;
+
+import macky.scripting.Budget;
+import macky.scripting.Expression;
+import macky.scripting.Frame;
+import macky.scripting.Globals;
+import macky.scripting.LineTable;
+import macky.scripting.Profiler;
+import macky.scripting.Scope;
+
+/**
+ * A resolved expression compiled for the register machine, the counterpart of a
+ * {@link macky.scripting.node.RootNode}.
+ */
+public final class Program {
+
+    private final Chunk chunk;
+
+    private Program(Chunk chunk) {
+        this.chunk = chunk;
+    }
+
+    public static Program compile(Expression resolved) {
+        return compile(resolved, LineTable.NONE);
+    }
+
+    /**
+     * Compiles an expression, naming its functions after the lines in {@code lines} they start on.
+     */
+    public static Program compile(Expression resolved, LineTable lines) {
+        return compile(resolved, lines, new Globals());
+    }
+
+    /**
+     * Compiles an expression whose global reads are numbered in {@code globals}, which may be shared by several
+     * programs.
+     */
+    public static Program compile(Expression resolved, LineTable lines, Globals globals) {
+        return new Program(ChunkCompiler.compile(resolved, lines, globals));
+    }
+
+    public Object execute(Scope scope) {
+        return execute(scope, new Budget(scope.getLimits()), null);
+    }
+
+    /**
+     * Runs against a scope, making {@code budget} the {@link Budget#current current} one while it runs, so the
+     * functions it calls are charged to it.
+     */
+    public Object execute(Scope scope, Budget budget, Profiler.Stack profile) {
+        Budget previous = budget.enter();
+        try {
+            return Machine.run(chunk, new Frame(scope, budget, profile));
+        } finally {
+            budget.exit(previous);
+        }
+    }
+
+    public Chunk getChunk() {
+        return chunk;
+    }
+
+    public String disassemble() {
+        return chunk.disassemble();
+    }
+
+}
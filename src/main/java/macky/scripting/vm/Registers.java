@@ -0,0 +1,318 @@
+package macky.scripting.vm;
+
+import macky.scripting.Expression;
+import macky.scripting.Expressions;
+import macky.scripting.Operator;
+import macky.scripting.Operators;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Decides which locals of a chunk live in registers rather than in frame slots. A local qualifies if it is the only
+ * local of its name in the chunk, no function nested in the chunk mentions its name, and it is bound before any use:
+ * it is a parameter, or a {@code let} that is a statement of its block, or the initializer of a {@code for} that is,
+ * comes before every use, or it is the variable of a {@code for ... in} and only used in the loop's body. Such a local
+ * never reads as unset, so it never falls back to an outer scope the way {@link macky.scripting.Frame#get} does, and
+ * nothing outside the chunk can see it.
+ */
+final class Registers implements Expression.Visitor<Void> {
+
+    private final Map<String, Integer> slots = new LinkedHashMap<>();
+    private final Set<String> bound = new HashSet<>();
+    private final Set<String> unsafe = new HashSet<>();
+    private final Set<String> captured = new HashSet<>();
+    private final Set<String> operandAssigned = new HashSet<>();
+    private final Set<List<Expression>> open = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<List<Expression>> enclosing = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<String, Integer> registers = new HashMap<>();
+    private int nested;
+    private int operands;
+    private boolean statement;
+
+    private Registers() {
+
+    }
+
+    /**
+     * Allocates registers {@code 0..n-1} to the locals of a function, or of a script if {@code names} is empty.
+     */
+    static Registers allocate(List<String> names, int paramCount, Expression body) {
+        Registers registers = new Registers();
+        for (String name : names) {
+            registers.slots.merge(name, 1, Integer::sum);
+        }
+        registers.bound.addAll(names.subList(0, paramCount));
+        registers.statement = true;
+        body.visit(registers);
+        registers.slots.forEach((name, count) -> {
+            if (count == 1 && registers.bound.contains(name) && !registers.unsafe.contains(name) && !registers.captured.contains(name)) {
+                registers.registers.put(name, registers.registers.size());
+            }
+        });
+        return registers;
+    }
+
+    int size() {
+        return registers.size();
+    }
+
+    /**
+     * The register of a local, or -1 if it lives in its frame.
+     */
+    int get(String name) {
+        return registers.getOrDefault(name, -1);
+    }
+
+    /**
+     * Whether a local may be assigned while an operand of some operator is evaluated, so that its register may change
+     * between evaluating the operands.
+     */
+    boolean assignedInOperand(String name) {
+        return operandAssigned.contains(name);
+    }
+
+    /**
+     * Whether a block needs a frame of its own, i.e. whether any of its locals live in the frame or a function nested
+     * in it may look them up.
+     */
+    boolean needsFrame(List<String> names, List<Expression> expressions) {
+        if (enclosing.contains(expressions)) return true;
+        for (String name : names) {
+            if (get(name) < 0) return true;
+        }
+        return false;
+    }
+
+    private void visit(Expression expression) {
+        boolean outer = statement;
+        statement = false;
+        expression.visit(this);
+        statement = outer;
+    }
+
+    private void statements(List<Expression> expressions) {
+        for (Expression expression : expressions) {
+            boolean outer = statement;
+            expression.visit(this);
+            statement = outer;
+        }
+    }
+
+    private void use(String name) {
+        if (nested > 0) captured.add(name);
+        else if (!bound.contains(name)) unsafe.add(name);
+    }
+
+    @Override
+    public Void boolLiteral(boolean boolLiteral) {
+        return null;
+    }
+
+    @Override
+    public Void breakStatement() {
+        return null;
+    }
+
+    @Override
+    public Void declFunc(List<String> funcParamNames, Expression funcBody) {
+        return null;
+    }
+
+    @Override
+    public Void ifExpr(Expression ifCondition, Expression ifBody, Optional<Expression> ifElse) {
+        visit(ifCondition);
+        visit(ifBody);
+        ifElse.ifPresent(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void whileExpr(Expression whileCondition, Expression whileBody) {
+        visit(whileCondition);
+        visit(whileBody);
+        return null;
+    }
+
+    @Override
+    public Void forExpr(Expression forInit, Expression forCondition, Expression forUpdate, Expression forBody) {
+        boolean outer = statement;
+        forInit.visit(this);
+        statement = outer;
+        visit(forCondition);
+        visit(forUpdate);
+        visit(forBody);
+        return null;
+    }
+
+    @Override
+    public Void returnExpr(Optional<Expression> returnExpr) {
+        returnExpr.ifPresent(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void loop(Expression loopExpr) {
+        visit(loopExpr);
+        return null;
+    }
+
+    @Override
+    public Void declVar(String declName, Expression declValue) {
+        if (nested > 0) captured.add(declName);
+        visit(declValue);
+        return null;
+    }
+
+    @Override
+    public Void mapInit(List<Map.Entry<Expression, Expression>> mapInitExpr) {
+        for (Map.Entry<Expression, Expression> entry : mapInitExpr) {
+            visit(entry.getKey());
+            visit(entry.getValue());
+        }
+        return null;
+    }
+
+    @Override
+    public Void listInit(List<Expression> listInitExpr) {
+        listInitExpr.forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void nopExpr() {
+        return null;
+    }
+
+    @Override
+    public Void string(String stringExpr) {
+        return null;
+    }
+
+    @Override
+    public Void number(Number numberExpr) {
+        return null;
+    }
+
+    @Override
+    public Void bracketed(List<Expression> bracketedExpr) {
+        if (statement) statements(bracketedExpr);
+        else bracketedExpr.forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void accessVar(String name) {
+        if (nested > 0) captured.add(name);
+        return null;
+    }
+
+    @Override
+    public Void callFunc(Expression callFunc, List<Expression> params) {
+        visit(callFunc);
+        params.forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void access(Expression keyOwner, Expression key, boolean method) {
+        visit(keyOwner);
+        visit(key);
+        return null;
+    }
+
+    @Override
+    public Void unaryNegate(Expression expression) {
+        visit(expression);
+        return null;
+    }
+
+    @Override
+    public Void operator(Expression left, Operator operator, Expression right) {
+        Optional<String> local = Expressions.getLocalName(left);
+        boolean assignment = Operators.getTransformation(operator).isPresent();
+        if (assignment && local.isPresent()) {
+            use(local.get());
+            if (operands > 0) operandAssigned.add(local.get());
+        } else {
+            operands++;
+            visit(left);
+            operands--;
+        }
+        operands++;
+        visit(right);
+        operands--;
+        return null;
+    }
+
+    @Override
+    public Void localVar(String localName, int localDepth, int localSlot) {
+        use(localName);
+        return null;
+    }
+
+    @Override
+    public Void declLocal(String declLocalName, int declLocalSlot, Expression declLocalValue) {
+        boolean unconditional = statement;
+        if (operands > 0) operandAssigned.add(declLocalName);
+        visit(declLocalValue);
+        if (nested > 0) captured.add(declLocalName);
+        else if (unconditional) bound.add(declLocalName);
+        else unsafe.add(declLocalName);
+        return null;
+    }
+
+    @Override
+    public Void block(List<String> blockNames, List<Expression> blockExprs) {
+        if (nested == 0) {
+            for (String name : blockNames) {
+                slots.merge(name, 1, Integer::sum);
+            }
+        } else {
+            captured.addAll(blockNames);
+        }
+        open.add(blockExprs);
+        statement = true;
+        statements(blockExprs);
+        open.remove(blockExprs);
+        return null;
+    }
+
+    @Override
+    public Void closure(List<String> closureNames, int closureParamCount, Expression closureBody) {
+        enclosing.addAll(open);
+        captured.addAll(closureNames);
+        int outerOperands = operands;
+        operands = 0;
+        nested++;
+        visit(closureBody);
+        nested--;
+        operands = outerOperands;
+        return null;
+    }
+
+    @Override
+    public Void forIn(String forInName, int forInSlot, Expression forInIterable, Expression forInBody) {
+        visit(forInIterable);
+        if (forInSlot < 0) {
+            if (nested > 0) captured.add(forInName);
+            visit(forInBody);
+            return null;
+        }
+        if (operands > 0) operandAssigned.add(forInName);
+        if (nested > 0) captured.add(forInName);
+        // bound in the body, but unset after a loop that never ran
+        boolean wasBound = !bound.add(forInName);
+        visit(forInBody);
+        if (!wasBound) bound.remove(forInName);
+        return null;
+    }
+
+}
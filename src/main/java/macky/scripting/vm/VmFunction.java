@@ -0,0 +1,119 @@
+package macky.scripting.vm;
+
+import macky.scripting.Budget;
+import macky.scripting.Frame;
+import macky.scripting.Profiler;
+import macky.scripting.ScriptException;
+import macky.scripting.ScriptFunction;
+
+import java.util.List;
+
+/**
+ * A function created by a script running on the {@link Machine}: a chunk and the frame it closes over.
+ */
+final class VmFunction extends ScriptFunction {
+
+    private final Chunk chunk;
+    private final Frame frame;
+
+    VmFunction(Chunk chunk, Frame frame) {
+        this.chunk = chunk;
+        this.frame = frame;
+    }
+
+    @Override
+    public Object call(List<Object> params) {
+        argCount(params, chunk.paramCount);
+        Frame inner = frame.pushFunction(chunk.names);
+        for (int i = 0; i < chunk.paramCount; i++) {
+            inner.let(i, params.get(i));
+        }
+        return run(inner);
+    }
+
+    @Override
+    public ScriptFunction fork() {
+        return chunk.pure ? new VmFunction(chunk, frame.fork()) : null;
+    }
+
+    @Override
+    public void join() {
+        frame.getBudget().join();
+    }
+
+    @Override
+    public Object call0() {
+        if (chunk.paramCount != 0) return super.call0();
+        return run(frame.pushFunction(chunk.names));
+    }
+
+    @Override
+    public Object call1(Object a) {
+        if (chunk.paramCount != 1) return super.call1(a);
+        Frame inner = frame.pushFunction(chunk.names);
+        inner.let(0, a);
+        return run(inner);
+    }
+
+    @Override
+    public Object call2(Object a, Object b) {
+        if (chunk.paramCount != 2) return super.call2(a, b);
+        Frame inner = frame.pushFunction(chunk.names);
+        inner.let(0, a);
+        inner.let(1, b);
+        return run(inner);
+    }
+
+    @Override
+    public Object call3(Object a, Object b, Object c) {
+        if (chunk.paramCount != 3) return super.call3(a, b, c);
+        Frame inner = frame.pushFunction(chunk.names);
+        inner.let(0, a);
+        inner.let(1, b);
+        inner.let(2, c);
+        return run(inner);
+    }
+
+    @Override
+    public Object callN(Object[] args) {
+        if (chunk.paramCount != args.length) return super.callN(args);
+        return run(enter(args));
+    }
+
+    /**
+     * Runs the body, then the calls it left pending in tail position until one returns a value.
+     */
+    private Object run(Frame inner) {
+        Object result = execute(inner);
+        while (result == Machine.PENDING) {
+            VmFunction function = (VmFunction) inner.getTailFunction();
+            inner = function.enter(inner.getTailArguments());
+            result = function.execute(inner);
+        }
+        return result;
+    }
+
+    private Frame enter(Object[] args) {
+        if (chunk.paramCount != args.length) throw new ScriptException("invalid arg count");
+        Frame inner = frame.pushFunction(chunk.names);
+        for (int i = 0; i < args.length; i++) {
+            inner.let(i, args[i]);
+        }
+        return inner;
+    }
+
+    private Object execute(Frame inner) {
+        Budget budget = inner.getBudget();
+        budget.poll();
+        Budget previous = budget.isCall() ? budget.enter() : null;
+        Profiler.Stack profile = inner.getProfile();
+        if (profile != null) profile.enter(chunk.label);
+        try {
+            return Machine.run(chunk, inner);
+        } finally {
+            if (profile != null) profile.exit();
+            if (budget.isCall()) budget.exit(previous);
+        }
+    }
+
+}
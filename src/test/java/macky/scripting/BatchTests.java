@@ -0,0 +1,119 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class BatchTests {
+
+    private static final String SCORE = "{ let base = if level > 1 { 2 } else { 1 }; seen = true; base * weight * amount + bonus }";
+
+    @Test
+    public void evaluatesEveryRow() {
+        int rows = 10000;
+        double[] amounts = new double[rows];
+        long[] bonuses = new long[rows];
+        long[] levels = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            amounts[i] = i * 0.5;
+            bonuses[i] = i % 3;
+            levels[i] = i % 4;
+        }
+        Scope scope = new Scope();
+        scope.let("weight", 3L);
+        for (Interpreter interpreter : Interpreter.values()) {
+            CompiledScript script = CompiledScript.compile(SCORE, interpreter);
+            ForkJoinPool pool = new ForkJoinPool(4);
+            Batch batch = new Batch.Builder()
+                    .column("amount", amounts)
+                    .column("bonus", bonuses)
+                    .column("level", levels)
+                    .splitThreshold(100)
+                    .pool(pool)
+                    .build();
+            double[] scores = script.evaluateDoubles(scope, batch);
+            pool.shutdown();
+            for (int i = 0; i < rows; i++) {
+                Scope row = scope.push();
+                row.let("amount", amounts[i]);
+                row.let("bonus", bonuses[i]);
+                row.let("level", levels[i]);
+                assertEquals(ScriptObjects.getDouble(script.evaluate(row)), scores[i], 0);
+            }
+            assertFalse(scope.has("seen"));
+        }
+    }
+
+    @Test
+    public void dropsGlobalsBetweenRows() {
+        CompiledScript script = CompiledScript.compile("if x == 1 { leaked = 5; 0 } else { leaked }");
+        assertArrayEquals(new Object[]{0L}, script.evaluate(new Scope(), new Batch.Builder().column("x", new long[]{1}).build()));
+        try {
+            script.evaluate(new Scope(), new Batch.Builder().column("x", new long[]{1, 2}).build());
+            fail("expected the second row to fail");
+        } catch (ScriptException e) {
+            assertEquals("unknown variable leaked", e.getMessage());
+        }
+    }
+
+    @Test
+    public void readsGlobalsThatAreNotColumns() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = new Scope();
+            scope.let("offset", 10L);
+            scope.let("factor", 2L);
+            scope.let("scale", CompiledScript.compile("function(v) { v * factor }", interpreter).evaluate(scope));
+            Batch batch = new Batch.Builder().column("x", new long[]{1, 2, 3}).build();
+            CompiledScript script = CompiledScript.compile("if x == 2 { offset = 100 }; scale(x) + offset", interpreter);
+            assertArrayEquals(new Object[]{12L, 104L, 106L}, script.evaluate(scope, batch));
+        }
+    }
+
+    @Test
+    public void limitsEachRowOnItsOwn() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = new Scope();
+            scope.setLimits(new ExecutionLimits.Builder().maxSteps(1000).build());
+            CompiledScript script = CompiledScript.compile("{ let n = 0; for let i = 0; i < x; i += 1 { n += 1 }; n }", interpreter);
+            long[] counts = new long[50];
+            Arrays.fill(counts, 900);
+            Object[] results = script.evaluate(scope, new Batch.Builder().column("x", counts).build());
+            assertEquals(900L, results[49]);
+            counts[30] = 5000;
+            try {
+                script.evaluate(scope, new Batch.Builder().column("x", counts).build());
+                fail("expected the long row to exceed the step limit");
+            } catch (ScriptLimitException e) {
+                assertEquals(ScriptLimitException.Limit.STEPS, e.getLimit());
+            }
+        }
+    }
+
+    @Test
+    public void rejectsColumnsForFoldedGlobals() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = new Scope();
+            scope.freeze("rate", 2L);
+            CompiledScript script = CompiledScript.compile("x * rate", scope, interpreter);
+            try {
+                script.evaluate(scope, new Batch.Builder().column("x", new long[]{1, 2}).column("rate", new long[]{10, 10}).build());
+                fail("expected the rate column to be rejected");
+            } catch (ScriptException e) {
+                assertEquals("script was specialized for a different value of rate", e.getMessage());
+            }
+            assertArrayEquals(new Object[]{2L, 4L}, script.evaluate(scope, new Batch.Builder().column("x", new long[]{1, 2}).build()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsColumnsOfDifferentSizes() {
+        new Batch.Builder().column("x", new long[]{1, 2}).column("y", new long[]{1});
+    }
+
+}
@@ -0,0 +1,101 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ConcurrencyTests {
+
+    private static final String PROGRAM = String.join("\n",
+            "{ let total = 0;",
+            "let acc = map { \"n\": 0, \"add\": function(self, v) { self.n = self.n + v } };",
+            "let sum = function(i, s) { if i == 0 { s } else { sum(i - 1, s + i) } };",
+            "for let i = 0; i < config.rounds; i += 1 { total += x * i; acc:add(i) };",
+            "list [total, acc.n, sum(50, 0), twice(x)] }");
+
+    @Test
+    public void sharedProgramOnAllCores() throws Exception {
+        Prelude prelude = new Prelude.Builder()
+                .define("config", Map.of("rounds", 100L))
+                .define("twice", new ScriptFunction() {
+                    @Override
+                    public Object call(List<Object> params) {
+                        argCount(params, 1);
+                        return Numbers.multiply(params.get(0), 2L);
+                    }
+                })
+                .build();
+        CompiledScript program = CompiledScript.compile(PROGRAM, prelude.newScope());
+        // each thread uses its own number type, so the shared tree is specialized and despecialized concurrently
+        Object[] xs = {3L, 3.0, new BigDecimal("3.0")};
+        Object[] totals = {14850L, 14850.0, new BigDecimal("14850.0")};
+        Object[] twices = {6L, 6.0, new BigDecimal("6.0")};
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int type = t % xs.length;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 500; i++) {
+                        Scope scope = prelude.newScope();
+                        scope.set("x", xs[type]);
+                        assertEquals(List.of(totals[type], 4950L, 1275L, twices[type]), program.evaluate(scope));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void preludeIsReadOnly() {
+        Prelude prelude = new Prelude.Builder().define("limit", 10L).build();
+        Scope scope = prelude.newScope();
+        assertEquals(11L, CompiledScript.compile("limit + 1", scope).evaluate(scope));
+        try {
+            CompiledScript.compile("limit = 3").evaluate(scope);
+            fail();
+        } catch (ScriptException e) {
+            assertEquals("cannot assign to frozen variable limit", e.getMessage());
+        }
+        Scope shadowing = prelude.newScope();
+        CompiledScript.compile("let limit = 3").evaluate(shadowing);
+        assertEquals(3L, shadowing.get("limit"));
+        assertEquals(10L, prelude.newScope().get("limit"));
+        assertEquals(10L, prelude.get("limit"));
+    }
+
+    @Test
+    public void engineSpecializesForItsPrelude() {
+        ScriptEngine engine = new ScriptEngine.Builder()
+                .prelude(new Prelude.Builder().define("config", Map.of("debug", false)).build())
+                .build();
+        assertEquals("release", engine.evaluate("if config.debug { \"debug\" } else { \"release\" }"));
+        try {
+            engine.evaluate(new Scope(), "if config.debug { 1 } else { 2 }");
+            fail();
+        } catch (ScriptException e) {
+            assertEquals("script was specialized for a different value of config", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ExecutionLimitsTests {
+
+    private static ScriptLimitException.Limit exceeded(ExecutionLimits limits, String code) {
+        Scope scope = new Scope();
+        scope.setLimits(limits);
+        try {
+            CompiledScript.compile(code).evaluate(scope);
+        } catch (ScriptLimitException e) {
+            return e.getLimit();
+        }
+        fail("expected " + code + " to exceed its limits");
+        return null;
+    }
+
+    @Test
+    public void stopsRunawayLoops() {
+        ExecutionLimits limits = new ExecutionLimits.Builder().maxSteps(10_000).build();
+        assertEquals(ScriptLimitException.Limit.STEPS, exceeded(limits, "loop { }"));
+        assertEquals(ScriptLimitException.Limit.STEPS, exceeded(limits, "{ let f = function(n) { f(n + 1) }; f(0) }"));
+        ExecutionLimits shallow = new ExecutionLimits.Builder().maxSteps(500).build();
+        assertEquals(ScriptLimitException.Limit.STEPS, exceeded(shallow, "{ let f = function(n) { 1 + f(n + 1) }; f(0) }"));
+        assertEquals(ScriptLimitException.Limit.TIME, exceeded(new ExecutionLimits.Builder().timeout(Duration.ofMillis(50)).build(), "loop { }"));
+    }
+
+    @Test
+    public void stepsAreCountedExactly() {
+        Scope scope = new Scope();
+        scope.setLimits(new ExecutionLimits.Builder().maxSteps(1000).build());
+        CompiledScript script = CompiledScript.compile("{ let s = 0; for let i = 0; i < n; i += 1 { s += i }; s }");
+        scope.set("n", 1000L);
+        assertEquals(499500L, script.evaluate(scope));
+        scope.set("n", 1001L);
+        try {
+            script.evaluate(scope);
+            fail();
+        } catch (ScriptLimitException e) {
+            assertEquals("step limit of 1000 exceeded", e.getMessage());
+        }
+    }
+
+    @Test
+    public void chargesCallsToTheEvaluationMakingThem() throws InterruptedException {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = new Scope();
+            scope.setLimits(new ExecutionLimits.Builder().maxSteps(300).timeout(Duration.ofMillis(200)).build());
+            CompiledScript.compile("let count = function(n) { let s = 0; for let i = 0; i < n; i += 1 { s += i }; s }", interpreter).evaluate(scope);
+            CompiledScript call = CompiledScript.compile("count(n)", interpreter);
+            scope.set("n", 100L);
+            for (int i = 0; i < 5; i++) {
+                assertEquals(4950L, call.evaluate(scope));
+            }
+            Thread.sleep(250);
+            assertEquals(4950L, call.evaluate(scope));
+            ScriptFunction count = (ScriptFunction) scope.get("count");
+            assertEquals(4950L, count.call1(100L));
+            assertEquals(4950L, count.call1(100L));
+            scope.set("n", 400L);
+            try {
+                call.evaluate(scope);
+                fail();
+            } catch (ScriptLimitException e) {
+                assertEquals(ScriptLimitException.Limit.STEPS, e.getLimit());
+            }
+            try {
+                count.call1(400L);
+                fail();
+            } catch (ScriptLimitException e) {
+                assertEquals(ScriptLimitException.Limit.STEPS, e.getLimit());
+            }
+        }
+    }
+
+    @Test
+    public void capsCollectionsAndAllocations() {
+        ExecutionLimits sizes = new ExecutionLimits.Builder().maxCollectionSize(3).build();
+        assertEquals(ScriptLimitException.Limit.COLLECTION_SIZE, exceeded(sizes, "list [1, 2, 3, 4]"));
+        assertEquals(ScriptLimitException.Limit.COLLECTION_SIZE, exceeded(sizes, "{ let m = map { }; for let i = 0; i < 10; i += 1 { m[i] = i } }"));
+        ExecutionLimits allocations = new ExecutionLimits.Builder().maxAllocations(100).build();
+        assertEquals(ScriptLimitException.Limit.ALLOCATIONS, exceeded(allocations, "while true { list [] }"));
+        Scope scope = new Scope();
+        scope.setLimits(allocations);
+        assertEquals(3L, CompiledScript.compile("{ let m = map { \"a\": list [1, 2, 3] }; m.a[2] }").evaluate(scope));
+    }
+
+    @Test
+    public void engineAppliesLimits() {
+        ExecutionLimits limits = new ExecutionLimits.Builder().maxSteps(100).build();
+        ScriptEngine engine = new ScriptEngine.Builder().limits(limits).build();
+        assertEquals(4950L, engine.evaluate("{ let s = 0; for let i = 0; i < 100; i += 1 { s += i }; s }"));
+        try {
+            engine.evaluate("while true { }");
+            fail();
+        } catch (ScriptLimitException e) {
+            assertEquals(ScriptLimitException.Limit.STEPS, e.getLimit());
+        }
+        assertSame(limits, engine.newScope().push().push().getLimits());
+    }
+
+}
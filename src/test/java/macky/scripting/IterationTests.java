@@ -0,0 +1,113 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class IterationTests {
+
+    private static Object evaluate(String code, Interpreter interpreter, Scope scope) {
+        scope.set("range", ScriptObjects.RANGE);
+        scope.set("sum", ScriptObjects.LIST_SUM);
+        return CompiledScript.compile(code, interpreter).evaluate(scope);
+    }
+
+    @Test
+    public void rangesAreListsWithoutStorage() {
+        assertEquals(List.of(0L, 1L, 2L, 3L), evaluate("range(4)", Interpreter.TREE, new Scope()));
+        assertEquals(List.of(2L, 3L), evaluate("range(2, 4)", Interpreter.TREE, new Scope()));
+        assertEquals(List.of(10L, 7L, 4L, 1L), evaluate("range(10, 0, -3)", Interpreter.TREE, new Scope()));
+        assertEquals(List.of(), evaluate("range(3, 3)", Interpreter.TREE, new Scope()));
+        assertEquals(5050L, evaluate("sum(range(1, 101))", Interpreter.TREE, new Scope()));
+        assertEquals(7L, evaluate("range(1, 9, 3)[2]", Interpreter.TREE, new Scope()));
+        Range large = new Range(0, Integer.MAX_VALUE, 1);
+        assertEquals(Integer.MAX_VALUE, large.size());
+        assertEquals((long) Integer.MAX_VALUE - 1, large.get(Integer.MAX_VALUE - 1));
+        for (String code : new String[]{"range(0, 5, 0)", "{ let r = range(3); r[0] = 1 }", "range(0, 9223372036854775807)"}) {
+            try {
+                evaluate(code, Interpreter.TREE, new Scope());
+                fail(code);
+            } catch (ScriptException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void visitsElementsAndKeys() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = new Scope();
+            Map<Object, Object> prices = new LinkedHashMap<>();
+            prices.put("tea", 3L);
+            prices.put("cake", 5L);
+            scope.let("prices", prices);
+            assertEquals(45L, evaluate("{ let s = 0; for i in range(10) { s += i }; s }", interpreter, scope));
+            assertEquals(List.of(8L, "cake"), evaluate("{ let t = 0; let last = 0; for k in prices { t += prices[k]; last = k }; list [t, last] }", interpreter, scope));
+            assertEquals(3L, evaluate("{ let n = 0; for x in list [1, 2, 3, 4] { if x == 3 { break }; n += x }; n }", interpreter, scope));
+            assertEquals(4L, evaluate("{ for x in range(5) { x } }", interpreter, scope));
+            assertEquals(6L, evaluate("let f = function(l) { for x in l { if x > 5 { return x } }; -1 }; f(range(0, 100, 3))", interpreter, scope));
+            assertFalse(scope.has("x"));
+            assertEquals(2L, evaluate("for x in range(3) { }; x", interpreter, scope));
+        }
+    }
+
+    @Test
+    public void inIsNotReserved() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            assertEquals(3L, evaluate("{ let in = 1; in + 2 }", interpreter, new Scope()));
+            assertEquals(6L, evaluate("{ let f = function(in) { in * 2 }; f(3) }", interpreter, new Scope()));
+            assertEquals(4L, evaluate("{ let m = map { \"in\": 4 }; m.in }", interpreter, new Scope()));
+            assertEquals(6L, evaluate("{ let s = 0; for in in list [1, 2, 3] { s += in }; s }", interpreter, new Scope()));
+        }
+        try {
+            CompiledScript.compile("for x of list [1] { x }");
+            fail();
+        } catch (ScriptException e) {
+            assertEquals("syntax error at 1:6: expected 'in' but found 'of'", e.getMessage());
+        }
+    }
+
+    @Test
+    public void failsWhenTheCollectionChanges() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = new Scope();
+            Map<Object, Object> counts = new HashMap<>();
+            counts.put("a", 1L);
+            counts.put("b", 2L);
+            scope.let("counts", counts);
+            try {
+                evaluate("for k in counts { counts.c = 3 }", interpreter, scope);
+                fail("expected an error");
+            } catch (ScriptException e) {
+                assertEquals("cannot change a collection while iterating over it", e.getMessage());
+            }
+            try {
+                evaluate("{ let m = map { \"a\": 1, \"b\": 2 }; for k in m { m.c = 3 } }", interpreter, scope);
+                fail("expected an error");
+            } catch (ScriptException e) {
+                assertEquals("cannot change a collection while iterating over it", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void chargesOneStepPerElement() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = new Scope();
+            scope.setLimits(new ExecutionLimits.Builder().maxSteps(1000).build());
+            try {
+                evaluate("for i in range(1000000000) { }", interpreter, scope);
+                fail("expected the step limit");
+            } catch (ScriptLimitException e) {
+                assertEquals(ScriptLimitException.Limit.STEPS, e.getLimit());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ListFunctionsTests {
+
+    private static Scope scope() {
+        Scope scope = new Scope();
+        scope.set("range", ScriptObjects.RANGE);
+        scope.set("mapEach", ScriptObjects.LIST_MAP);
+        scope.set("filter", ScriptObjects.LIST_FILTER);
+        scope.set("reduce", ScriptObjects.LIST_REDUCE);
+        scope.set("sortBy", ScriptObjects.LIST_SORT_BY);
+        scope.set("groupBy", ScriptObjects.LIST_GROUP_BY);
+        scope.set("parallelMapEach", ScriptObjects.PARALLEL_MAP);
+        scope.set("parallelFilter", ScriptObjects.PARALLEL_FILTER);
+        scope.set("parallelReduce", ScriptObjects.PARALLEL_REDUCE);
+        scope.set("parallelSortBy", ScriptObjects.PARALLEL_SORT_BY);
+        scope.set("parallelGroupBy", ScriptObjects.PARALLEL_GROUP_BY);
+        return scope;
+    }
+
+    /**
+     * Evaluates on a pool of several threads, so that the parallel functions split their work even on a machine with
+     * one processor.
+     */
+    private static Object evaluate(String code, Interpreter interpreter, Scope scope) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            return pool.submit(() -> CompiledScript.compile(code, interpreter).evaluate(scope)).get();
+        } catch (ExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void callsTheFunctionForEachElement() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = scope();
+            assertEquals(List.of(2L, 4L, 6L), evaluate("mapEach(list [1, 2, 3], function(x) { x * 2 })", interpreter, scope));
+            assertEquals(List.of(2L, 4L), evaluate("filter(range(1, 6), function(x) { x % 2 == 0 })", interpreter, scope));
+            assertEquals(10L, evaluate("reduce(range(5), function(a, b) { a + b })", interpreter, scope));
+            assertEquals("abc", evaluate("reduce(list [\"b\", \"c\"], function(a, b) { a + b }, \"a\")", interpreter, scope));
+            assertEquals(7L, evaluate("reduce(list [], function(a, b) { a + b }, 7)", interpreter, scope));
+            assertEquals(List.of(3L, 2L, 1L), evaluate("sortBy(list [2, 3, 1], function(x) { -x })", interpreter, scope));
+            assertEquals(List.of("apple", "kiwi", "pear"),
+                    evaluate("sortBy(list [\"pear\", \"apple\", \"kiwi\"], function(s) { s })", interpreter, scope));
+            Object groups = evaluate("groupBy(range(6), function(x) { x % 3 })", interpreter, scope);
+            assertEquals(Map.of(0L, List.of(0L, 3L), 1L, List.of(1L, 4L), 2L, List.of(2L, 5L)), groups);
+            try {
+                evaluate("reduce(list [], function(a, b) { a + b })", interpreter, scope);
+                fail("expected an error");
+            } catch (ScriptException e) {
+                assertEquals("cannot reduce an empty list", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void parallelVariantsGiveTheSameResults() {
+        String square = "let square = function(x) { let y = (x * x); y + 1 }\n";
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = scope();
+            scope.let("offset", 3L);
+            for (String call : new String[]{
+                    "MapEach(range(10000), square)",
+                    "Filter(range(10000), function(x) { x % 7 == offset })",
+                    "Reduce(range(10000), function(a, b) { a + b }, 5)",
+                    "SortBy(range(10000), function(x) { (x * 7919) % 10007 })",
+                    "GroupBy(range(10000), function(x) { x % 3 })"}) {
+                Object sequential = evaluate(square + call.substring(0, 1).toLowerCase() + call.substring(1), interpreter, scope);
+                assertEquals(call, sequential, evaluate(square + "parallel" + call, interpreter, scope));
+            }
+        }
+    }
+
+    @Test
+    public void splitsOnlyFunctionsThatCanBeForked() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = scope();
+            for (String pure : new String[]{
+                    "function(x) { x * 2 }",
+                    "function(x) { let y = 1; y = (y + x); y }",
+                    "function(l) { let s = 0; for i in l { s += i }; s }",
+                    "function(x) { x.size }",
+                    "function(x) { let f = function() { x = 1 }; x }"}) {
+                assertNotNull(pure, ScriptObjects.getFunction(evaluate(pure, interpreter, scope)).fork());
+            }
+            for (String impure : new String[]{
+                    "function(x) { total = x }",
+                    "function(x) { x.size = 1 }",
+                    "function(x) { range(x) }",
+                    "function(x) { y = x; let y = 1 }"}) {
+                assertNull(impure, ScriptObjects.getFunction(evaluate(impure, interpreter, scope)).fork());
+            }
+        }
+        assertNull(ScriptObjects.LIST_SUM.fork());
+        assertNotNull(ScriptFunction.pure(ScriptObjects.LIST_SUM).fork());
+    }
+
+    @Test
+    public void splitsAcrossThePool() {
+        AtomicInteger forks = new AtomicInteger();
+        ScriptFunction twice = new ScriptFunction() {
+            @Override
+            public Object call(List<Object> params) {
+                argCount(params, 1);
+                return call1(params.get(0));
+            }
+
+            @Override
+            public Object call1(Object a) {
+                return ScriptObjects.getLong(a) * 2;
+            }
+
+            @Override
+            public ScriptFunction fork() {
+                forks.incrementAndGet();
+                return this;
+            }
+        };
+        Scope scope = scope();
+        scope.set("twice", twice);
+        Object result = evaluate("parallelMapEach(range(10000), twice)", Interpreter.TREE, scope);
+        assertEquals(19998L, ((List<?>) result).get(9999));
+        assertEquals(1 + 8, forks.get());
+    }
+
+    private static String error(String code, Interpreter interpreter) {
+        try {
+            evaluate(code, interpreter, scope());
+        } catch (ScriptException e) {
+            return e.getMessage();
+        }
+        throw new AssertionError("expected an error: " + code);
+    }
+
+    @Test
+    public void reportsTheFirstError() {
+        String function = "function(x) { if x > 2500 { for i in x { } }; x }";
+        for (Interpreter interpreter : Interpreter.values()) {
+            assertEquals("expected a map or list, got 2501", error("mapEach(range(10000), " + function + ")", interpreter));
+            assertEquals("expected a map or list, got 2501", error("parallelMapEach(range(10000), " + function + ")", interpreter));
+        }
+    }
+
+    @Test
+    public void chargesForkedCallsToTheEvaluation() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = scope();
+            scope.setLimits(new ExecutionLimits.Builder().maxSteps(5000).build());
+            try {
+                evaluate("parallelMapEach(range(10000), function(x) { x + 1 })", interpreter, scope);
+                fail("expected the step limit");
+            } catch (ScriptLimitException e) {
+                assertEquals(ScriptLimitException.Limit.STEPS, e.getLimit());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package macky.scripting;
+
+import macky.scripting.gen.GrammarLexer;
+import macky.scripting.gen.GrammarParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NumbersTests {
+
+    private static Object run(String code) {
+        GrammarLexer lexer = new GrammarLexer(CharStreams.fromString(code));
+        GrammarParser parser = new GrammarParser(new CommonTokenStream(lexer));
+        return new Scope().evaluate(AntlrVisitor.INSTANCE.visit(parser.expression_list().expression(0)));
+    }
+
+    @Test
+    public void literals() {
+        assertEquals(12L, run("12"));
+        assertEquals(12L, run("12L"));
+        assertEquals(1.5, run("1.5D"));
+        assertEquals(new BigDecimal("1.5"), run("1.5"));
+        assertEquals(new BigDecimal("123456789012345678901234567890"), run("123456789012345678901234567890"));
+    }
+
+    @Test
+    public void longArithmeticPromotesOnOverflow() {
+        assertEquals(7L, run("3 + 4"));
+        assertEquals(new BigDecimal("9223372036854775808"), run("9223372036854775807 + 1"));
+        assertEquals(new BigDecimal("85070591730234615847396907784232501249"), run("9223372036854775807 * 9223372036854775807"));
+        assertEquals(Long.MIN_VALUE, run("-9223372036854775807 - 1"));
+        assertEquals(9223372036854775807L, run("9223372036854775808 - 1"));
+    }
+
+    @Test
+    public void divisionIsExact() {
+        assertEquals(5L, run("10 / 2"));
+        assertEquals(new BigDecimal("2.5"), run("10 / 4"));
+        assertEquals(new BigDecimal("3.0"), run("1.5 * 2"));
+        assertEquals(-1L, run("-7 % 3"));
+        assertEquals(2.5, run("5.0D / 2"));
+    }
+
+    @Test
+    public void comparisonAndEquality() {
+        assertEquals(true, run("1 < 1.5"));
+        assertEquals(true, run("2 == 2"));
+        assertEquals(false, run("2.0 == 2"));
+        assertEquals(true, run("2.0D == 2"));
+        assertTrue(Numbers.equals(2L, BigDecimal.valueOf(2)));
+        assertFalse(ScriptObjects.asBoolean(1L));
+        assertTrue(ScriptObjects.asBoolean(0L));
+    }
+
+}
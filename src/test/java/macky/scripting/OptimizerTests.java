@@ -0,0 +1,128 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class OptimizerTests {
+
+    private static String optimize(String code, Map<String, Object> frozen) {
+        return Optimizer.optimize(Resolver.resolve(CompiledScript.parse(code).get(0)), frozen).toCode();
+    }
+
+    private static String optimize(String code) {
+        return optimize(code, Map.of());
+    }
+
+    @Test
+    public void foldsConstantOperators() {
+        assertEquals("(6 + x)", optimize("2 * 3 + x"));
+        assertEquals("-(x)", optimize("-x"));
+        assertEquals("-5", optimize("-(2 + 3)"));
+        assertEquals("true", optimize("1 < 2 && 3 < 4"));
+        assertEquals("x", optimize("0 && x"));
+        assertEquals("(1 / 0)", optimize("1 / 0"));
+        assertEquals("(\"ab\" + x)", optimize("\"a\" + \"b\" + x"));
+    }
+
+    @Test
+    public void prunesConstantBranches() {
+        assertEquals("1", optimize("if 0 { 1 } else { 2 }"));
+        assertEquals("2", optimize("if 1 { 1 } else { 2 }"));
+        assertEquals(";", optimize("if false { 1 }"));
+        assertEquals(";", optimize("while false { x = 1 }"));
+        assertEquals("{let y = 1 y}", optimize("{ let y = 1; ; y }"));
+        assertEquals("{(x = 1) ;}", optimize("{ x = 1; }"));
+    }
+
+    @Test
+    public void foldsFrozenGlobals() {
+        Map<String, Object> config = Map.of("port", 8080L, "db", Map.of("host", "localhost"));
+        assertEquals("8081", optimize("config.port + 1", Map.of("config", config)));
+        assertEquals("\"localhost\"", optimize("config.db.host", Map.of("config", config)));
+        assertEquals("config[\"db\"]", optimize("config.db", Map.of("config", config)));
+        assertEquals("{(config[\"port\"] = 1) config[\"port\"]}", optimize("{ config.port = 1; config.port }", Map.of("config", config)));
+        assertEquals("function(x) 2", optimize("function(x) { if debug { x } else { 2 } }", Map.of("debug", false)));
+    }
+
+    @Test
+    public void specializesOnScope() {
+        Scope scope = new Scope();
+        scope.freeze("limit", 10L);
+        CompiledScript script = CompiledScript.compile("{ let s = 0; for let i = 0; i < limit; i += 1 { s += i }; s }", scope);
+        assertEquals(45L, script.evaluate(scope));
+        assertEquals(45L, script.evaluate(scope.push()));
+        try {
+            script.evaluate(new Scope());
+            fail();
+        } catch (ScriptException e) {
+            assertEquals("script was specialized for a different value of limit", e.getMessage());
+        }
+        try {
+            CompiledScript.compile("limit = 3", scope).evaluate(scope);
+            fail();
+        } catch (ScriptException e) {
+            assertEquals("cannot assign to frozen variable limit", e.getMessage());
+        }
+    }
+
+    @Test
+    public void acceptsEqualScalarsFrozenInAnotherScope() {
+        Map<String, Object> values = Map.of("limit", 1000L, "rate", 2.5, "exact", new BigDecimal("0.1"), "name", new String("prod"));
+        Scope scope = new Scope();
+        values.forEach(scope::freeze);
+        CompiledScript script = CompiledScript.compile("list [name, limit * rate + exact]", scope);
+        Scope other = new Scope();
+        other.freeze("limit", Long.valueOf(1000L));
+        other.freeze("rate", Double.valueOf(2.5));
+        other.freeze("exact", new BigDecimal("0.1"));
+        other.freeze("name", new String("prod"));
+        assertEquals(script.evaluate(scope), script.evaluate(other));
+        Scope changed = new Scope();
+        changed.freeze("limit", 1001L);
+        changed.freeze("rate", 2.5);
+        changed.freeze("exact", new BigDecimal("0.1"));
+        changed.freeze("name", "prod");
+        try {
+            script.evaluate(changed);
+            fail();
+        } catch (ScriptException e) {
+            assertEquals("script was specialized for a different value of limit", e.getMessage());
+        }
+    }
+
+    @Test
+    public void requiresTheSameFrozenMap() {
+        Scope scope = new Scope();
+        scope.freeze("config", new HashMap<>(Map.of("hosts", new ArrayList<>(List.of("a", "b")))));
+        CompiledScript script = CompiledScript.compile("config.hosts", scope);
+        Scope other = new Scope();
+        other.freeze("config", new HashMap<>(Map.of("hosts", new ArrayList<>(List.of("a", "b")))));
+        try {
+            script.evaluate(other);
+            fail();
+        } catch (ScriptException e) {
+            assertEquals("script was specialized for a different value of config", e.getMessage());
+        }
+    }
+
+    @Test
+    public void doesNotFoldGlobalsALaterStatementShadows() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope preluded = new Prelude.Builder().define("limit", 10L).build().newScope();
+            assertEquals(21L, CompiledScript.compile("let limit = 20; limit + 1", preluded, interpreter).evaluate(preluded));
+            Scope scope = new Scope();
+            scope.freeze("k", 3L);
+            Scope pushed = scope.push();
+            assertEquals(14L, CompiledScript.compile("let k = 7; k * 2", pushed, interpreter).evaluate(pushed));
+        }
+    }
+
+}
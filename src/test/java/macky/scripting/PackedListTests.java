@@ -0,0 +1,82 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PackedListTests {
+
+    private static Object evaluate(String code) {
+        Scope scope = new Scope();
+        scope.set("sum", ScriptObjects.LIST_SUM);
+        scope.set("min", ScriptObjects.LIST_MIN);
+        scope.set("max", ScriptObjects.LIST_MAX);
+        scope.set("dot", ScriptObjects.LIST_DOT);
+        scope.set("scale", ScriptObjects.LIST_SCALE);
+        scope.set("slice", ScriptObjects.LIST_SLICE);
+        return CompiledScript.compile(code).evaluate(scope);
+    }
+
+    @Test
+    public void packsNumbersUntilSomethingElseIsStored() {
+        PackedList longs = (PackedList) evaluate("list [1, 2, 3]");
+        assertTrue(longs.isPacked());
+        assertEquals(List.of(1L, 2L, 3L), longs);
+        assertEquals("[1, 2, 3]", longs.toString());
+        longs.set(1, 5L);
+        assertTrue(longs.isPacked());
+        longs.set(2, 1.5);
+        assertFalse(longs.isPacked());
+        assertEquals(Arrays.asList(1L, 5L, 1.5), longs);
+        assertFalse(((PackedList) evaluate("list [1, 2.5D]")).isPacked());
+        assertTrue(((PackedList) evaluate("list [1.5D, 2.5D]")).isPacked());
+        assertEquals(Arrays.asList(1L, "a", null), evaluate("{ let l = list [1, 2, 3]; l[1] = \"a\"; l[2] = ; l }"));
+        PackedList grown = new PackedList();
+        grown.add(2.5);
+        grown.add(3.5);
+        assertTrue(grown.isPacked());
+        grown.add(0, 1L);
+        assertEquals(Arrays.asList(1L, 2.5, 3.5), grown);
+        grown.remove(0);
+        assertEquals(List.of(2.5, 3.5), grown);
+    }
+
+    @Test
+    public void bulkOperationsMatchElementwiseArithmetic() {
+        assertEquals(6L, evaluate("sum(list [1, 2, 3])"));
+        assertEquals(0L, evaluate("sum(list [])"));
+        assertEquals(4.0, evaluate("sum(list [1.5D, 2.5D])"));
+        assertEquals(new BigDecimal("3.5"), evaluate("sum(list [1, 2.5])"));
+        assertEquals(new BigDecimal("18446744073709551614"), evaluate("sum(list [9223372036854775807, 9223372036854775807])"));
+        assertEquals(-3L, evaluate("min(list [4, -3, 7])"));
+        assertEquals(7L, evaluate("max(list [4, -3, 7])"));
+        assertEquals(2.5, evaluate("max(list [1, 2.5D])"));
+        assertEquals(32L, evaluate("dot(list [1, 2, 3], list [4, 5, 6])"));
+        assertEquals(14.0, evaluate("dot(list [1, 2], list [4.0D, 5.0D])"));
+        assertEquals(new BigDecimal("85070591730234615847396907784232501249"), evaluate("dot(list [9223372036854775807], list [9223372036854775807])"));
+        assertEquals(List.of(2L, 4L, 6L), evaluate("scale(list [1, 2, 3], 2)"));
+        assertEquals(List.of(0.5, 1.0), evaluate("scale(list [1, 2], 0.5D)"));
+        assertEquals(List.of(new BigDecimal("0.5"), new BigDecimal("1.0")), evaluate("scale(list [1, 2], 0.5)"));
+        assertEquals(List.of(2L, 3L), evaluate("slice(list [1, 2, 3, 4], 1, 3)"));
+        assertEquals(List.of("b"), evaluate("slice(list [\"a\", \"b\"], 1, 2)"));
+        List<Object> boxed = new ArrayList<>(List.of(1L, 2L, 3L));
+        assertEquals(PackedList.sum(PackedList.copyOf(boxed)), PackedList.sum(boxed));
+        assertEquals(PackedList.dot(PackedList.copyOf(boxed), boxed), PackedList.dot(boxed, boxed));
+        for (String code : new String[]{"min(list [])", "dot(list [1], list [1, 2])", "slice(list [1], 0, 2)", "sum(list [\"a\"])"}) {
+            try {
+                evaluate(code);
+                fail(code);
+            } catch (ScriptException expected) {
+            }
+        }
+    }
+
+}
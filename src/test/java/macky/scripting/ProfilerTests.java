@@ -0,0 +1,102 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProfilerTests {
+
+    private static final String FIB = String.join("\n",
+            "{",
+            "  let fib = function(n) {",
+            "    if n < 2 { n } else {",
+            "      fib(n - 1) + fib(n - 2)",
+            "    }",
+            "  };",
+            "  let ops = map { \"twice\": function(x) { x * 2 } };",
+            "  list [fib(n), ops.twice(1), function() { 1 }()]",
+            "}");
+
+    @Test
+    public void countsCallsAndLines() {
+        Profiler profiler = new Profiler.Builder().interval(Duration.ofSeconds(10)).build();
+        try {
+            Scope scope = new Scope();
+            scope.set("n", 10L);
+            scope.setProfiler(profiler);
+            CompiledScript script = CompiledScript.compile(FIB);
+            script.evaluate(scope);
+            script.evaluate(scope.push());
+            assertEquals(2, profiler.getEvaluations());
+            assertEquals(2 * 177, profiler.getCalls("fib"));
+            assertEquals(2, profiler.getCalls("twice"));
+            assertEquals(2, profiler.getCalls("function@8"));
+            assertEquals(2 * (177 + 89), profiler.getLineCount("fib:3"));
+            assertEquals(2 * 88, profiler.getLineCount("fib:4"));
+            assertEquals(2, profiler.getLineCount("twice:7"));
+            assertEquals(2, profiler.getLineCount("<script>:8"));
+            assertTrue(profiler.report(5).contains("fib"));
+        } finally {
+            profiler.close();
+        }
+    }
+
+    @Test
+    public void countsCallsInBytecode() {
+        Profiler profiler = new Profiler.Builder().interval(Duration.ofSeconds(10)).build();
+        try {
+            Scope scope = new Scope();
+            scope.set("n", 10L);
+            scope.setProfiler(profiler);
+            CompiledScript.compile(FIB, Interpreter.BYTECODE).evaluate(scope);
+            assertEquals(177, profiler.getCalls("fib"));
+            assertEquals(1, profiler.getCalls("twice"));
+            assertEquals(1, profiler.getCalls("function@8"));
+        } finally {
+            profiler.close();
+        }
+    }
+
+    @Test
+    public void samplesHotFunctions() throws InterruptedException {
+        Profiler profiler = new Profiler.Builder().interval(Duration.ofMillis(1)).build();
+        try {
+            Scope scope = new Scope();
+            scope.set("n", 15L);
+            scope.setProfiler(profiler);
+            CompiledScript script = CompiledScript.compile(FIB);
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (profiler.getSamples() < 20 && System.nanoTime() < deadline) {
+                script.evaluate(scope);
+                Thread.sleep(0, 1);
+            }
+            assertTrue(profiler.getSamples() >= 20);
+            assertTrue(profiler.getTotalSamples("fib") > 0);
+            assertTrue(profiler.getSelfSamples("fib") <= profiler.getTotalSamples("fib"));
+            assertTrue(profiler.getTotalSamples("<script>") >= profiler.getTotalSamples("fib"));
+            assertTrue(profiler.toCollapsed().contains("<script>;fib"));
+            profiler.reset();
+            assertEquals("", profiler.toCollapsed());
+        } finally {
+            profiler.close();
+        }
+    }
+
+    @Test
+    public void unprofiledScopesRecordNothing() {
+        Profiler profiler = new Profiler.Builder().build();
+        try {
+            Scope scope = new Scope();
+            scope.set("n", 5L);
+            CompiledScript.compile(FIB).evaluate(scope);
+            assertEquals(0, profiler.getEvaluations());
+            assertEquals(0, profiler.getCalls("fib"));
+        } finally {
+            profiler.close();
+        }
+    }
+
+}
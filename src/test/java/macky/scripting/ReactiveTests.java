@@ -0,0 +1,157 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class ReactiveTests {
+
+    private static final String CONFIG = String.join("\n",
+            "let pool = (config.db.pool * 2)",
+            "let url = (\"db://\" + config.db.host)",
+            "let retries = (config.retries + 1)",
+            "let budget = (pool * retries)",
+            "list [pool, url, retries, budget]");
+
+    private static final String COUNTERS = String.join("\n",
+            "let keys = 0",
+            "for k in cfg { keys += 1 }",
+            "let x = 1",
+            "let y = (x + n)",
+            "x = 5",
+            "list [keys, y]");
+
+    private static Map<Object, Object> config(long pool, String host, long retries) {
+        Map<Object, Object> db = new HashMap<>();
+        db.put("pool", pool);
+        db.put("host", host);
+        Map<Object, Object> config = new HashMap<>();
+        config.put("db", db);
+        config.put("retries", retries);
+        return config;
+    }
+
+    @Test
+    public void recomputesOnlyWhatChanged() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = new Scope();
+            scope.let("config", config(4, "a", 2));
+            Reactive reactive = CompiledScript.compile(CONFIG, interpreter).evaluateReactive(scope);
+            assertEquals(List.of(8L, "db://a", 3L, 24L), reactive.getResult());
+            assertEquals(5, reactive.getRecomputed());
+
+            scope.update("config", config(4, "b", 2));
+            assertEquals(List.of(8L, "db://b", 3L, 24L), reactive.getResult());
+            assertEquals(2, reactive.getRecomputed());
+
+            scope.update("config", config(5, "b", 2));
+            assertEquals(List.of(10L, "db://b", 3L, 30L), reactive.getResult());
+            assertEquals(3, reactive.getRecomputed());
+
+            scope.update("config", config(5, "b", 2));
+            assertEquals(0, reactive.getRecomputed());
+
+            reactive.close();
+            scope.update("config", config(6, "b", 2));
+            assertEquals(List.of(10L, "db://b", 3L, 30L), reactive.getResult());
+        }
+    }
+
+    @Test
+    public void followsMapsKeptInOtherGlobals() {
+        Scope scope = new Scope();
+        scope.let("size", new ScriptFunction() {
+            @Override
+            public Object call(List<Object> params) {
+                argCount(params, 1);
+                return (long) ScriptObjects.getLength(params.get(0));
+            }
+        });
+        Map<Object, Object> limits = new HashMap<>();
+        limits.put("cpu", 2L);
+        scope.let("limits", limits);
+        Reactive reactive = CompiledScript.compile("let l = limits\nlet cpu = (l.cpu * 100)\nlet n = size(limits)\nlist [cpu, n]")
+                .evaluateReactive(scope);
+        assertEquals(List.of(200L, 1L), reactive.getResult());
+
+        limits.put("cpu", 3L);
+        scope.update("limits", limits);
+        assertEquals(List.of(300L, 1L), reactive.getResult());
+        assertEquals(3, reactive.getRecomputed());
+
+        limits.put("memory", 512L);
+        scope.update("limits", limits);
+        assertEquals(List.of(300L, 2L), reactive.getResult());
+        assertEquals(2, reactive.getRecomputed());
+    }
+
+    @Test
+    public void recomputesWhatAFailedUpdateSkipped() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = new Scope();
+            scope.let("f", false);
+            scope.let("x", 0L);
+            Reactive reactive = CompiledScript.compile("if f && x == 1 { missing } else { 0 }; x * 10", interpreter)
+                    .evaluateReactive(scope);
+            scope.update("f", true);
+            try {
+                scope.update("x", 1L);
+                fail("expected an error");
+            } catch (ScriptException e) {
+                assertEquals("unknown variable missing", e.getMessage());
+            }
+            scope.update("f", false);
+            assertEquals(10L, reactive.getResult());
+        }
+    }
+
+    @Test
+    public void agreesWithAFullRunWhenAGlobalIsWrittenAgain() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = new Scope();
+            scope.let("cfg", new HashMap<>(Map.of("a", 1L, "b", 2L)));
+            scope.let("n", 1L);
+            Reactive reactive = CompiledScript.compile(COUNTERS, interpreter).evaluateReactive(scope);
+            assertEquals(List.of(2L, 2L), reactive.getResult());
+
+            scope.update("cfg", new HashMap<>(Map.of("a", 3L, "b", 4L)));
+            assertEquals(List.of(2L, 2L), reactive.getResult());
+            assertEquals(6, reactive.getRecomputed());
+
+            scope.update("cfg", new HashMap<>(Map.of("a", 1L, "b", 2L, "c", 3L)));
+            assertEquals(List.of(3L, 2L), reactive.getResult());
+
+            scope.update("n", 2L);
+            assertEquals(List.of(3L, 3L), reactive.getResult());
+            assertEquals(4, reactive.getRecomputed());
+            assertEquals(5L, scope.get("x"));
+        }
+    }
+
+    @Test
+    public void neverHandsOutViews() {
+        for (Interpreter interpreter : Interpreter.values()) {
+            Scope scope = new Scope();
+            scope.let("config", new HashMap<>(Map.of("port", 1L)));
+            Reactive reactive = CompiledScript.compile("let c = config; c", interpreter).evaluateReactive(scope);
+            Object result = reactive.getResult();
+            assertEquals(HashMap.class, result.getClass());
+            assertEquals(HashMap.class, scope.get("c").getClass());
+
+            scope.update("config", new HashMap<>(Map.of("port", 2L)));
+            assertEquals(Map.of("port", 2L), reactive.getResult());
+            assertEquals(Map.of("port", 2L), scope.get("c"));
+            reactive.close();
+            scope.update("config", new HashMap<>(Map.of("port", 3L)));
+            assertEquals(Map.of("port", 2L), reactive.getResult());
+            assertFalse(result.equals(reactive.getResult()));
+        }
+    }
+
+}
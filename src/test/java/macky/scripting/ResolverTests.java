@@ -0,0 +1,64 @@
+package macky.scripting;
+
+import macky.scripting.gen.GrammarLexer;
+import macky.scripting.gen.GrammarParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResolverTests {
+
+    private static Expression parse(String code) {
+        GrammarLexer lexer = new GrammarLexer(CharStreams.fromString(code));
+        GrammarParser parser = new GrammarParser(new CommonTokenStream(lexer));
+        return AntlrVisitor.INSTANCE.visit(parser.expression_list().expression(0));
+    }
+
+    private static Object run(Scope scope, String code) {
+        GrammarLexer lexer = new GrammarLexer(CharStreams.fromString(code));
+        GrammarParser parser = new GrammarParser(new CommonTokenStream(lexer));
+        Object result = null;
+        for (GrammarParser.ExpressionContext ctx : parser.expression_list().expression()) {
+            result = scope.evaluate(AntlrVisitor.INSTANCE.visit(ctx));
+        }
+        return result;
+    }
+
+    @Test
+    public void assignsSlots() {
+        Expression resolved = Resolver.resolve(parse("function(a, b) { let c = a; { let d = c; a + d } }"));
+        assertEquals(List.of("a", "b", "c"), Expressions.getClosureNames(resolved).get());
+        Expression body = Expressions.getClosureBody(resolved).get();
+        Expression inner = Expressions.getBracketedExpr(body).get().get(2);
+        assertEquals(List.of("d"), Expressions.getBlockNames(inner).get());
+        Expression declD = Expressions.getBlockExprs(inner).get().get(0);
+        assertEquals(Expressions.declLocal("d", 0, Expressions.localVar("c", 1, 2)), declD);
+    }
+
+    @Test
+    public void blocksWithoutDeclarationsHaveNoFrame() {
+        Expression resolved = Resolver.resolve(parse("{ print(x) { x } }"));
+        assertTrue(Expressions.getBracketedExpr(resolved).isPresent());
+        assertFalse(Expressions.getBlockNames(resolved).isPresent());
+    }
+
+    @Test
+    public void keepsScopingRules() {
+        Scope scope = new Scope();
+        assertEquals(3, ((Number) run(scope, "let c = function() { let n = 0; function() { n += 1; n } }; let f = c(); f(); f(); f()")).intValue());
+        assertEquals(1, ((Number) run(scope, "let outer = 1; { let outer = 2; outer = 3 }; outer")).intValue());
+        assertEquals(2, ((Number) run(scope, "let w = 1; { let v = w; let w = 2; v + w - 1 }")).intValue());
+        assertFalse(scope.has("y"));
+        run(scope, "{ y = 4 }");
+        assertFalse(scope.has("y"));
+        run(scope, "let g = 1; { g = 5 }");
+        assertEquals(5, ((Number) scope.get("g")).intValue());
+    }
+
+}
@@ -0,0 +1,68 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RopeTests {
+
+    private static Object evaluate(String code) {
+        Scope scope = new Scope();
+        scope.set("len", ScriptObjects.STRING_LEN);
+        scope.set("at", ScriptObjects.STRING_AT);
+        scope.set("substr", ScriptObjects.STRING_SUBSTR);
+        scope.set("builder", ScriptObjects.STRING_BUILDER);
+        scope.set("append", ScriptObjects.STRING_APPEND);
+        scope.set("build", ScriptObjects.STRING_BUILD);
+        return CompiledScript.compile(code).evaluate(scope);
+    }
+
+    @Test
+    public void concatenatesStrings() {
+        assertEquals("ab", evaluate("\"a\" + \"b\""));
+        assertEquals("abc", evaluate("{ let s = \"a\"; s += \"b\"; s += \"c\"; s }"));
+        assertEquals("", evaluate("\"\" + \"\""));
+        try {
+            evaluate("\"a\" + 1");
+            fail();
+        } catch (ScriptException e) {
+            assertEquals("expected a number, got a", e.getMessage());
+        }
+    }
+
+    @Test
+    public void buildsLongStringsInLinearTime() {
+        String code = "{ let s = \"\"; for let i = 0; i < 200000; i += 1 { s += \"xyz\" }; s }";
+        Object result = evaluate(code);
+        assertTrue(result instanceof String);
+        assertEquals(600000, ((String) result).length());
+        assertEquals(List.of(600000L, "z", "yzx"), evaluate("{ let s = \"\"; for let i = 0; i < 200000; i += 1 { s += \"xyz\" }; list [len(s), at(s, 599999), substr(s, 1, 4)] }"));
+        assertEquals(Map.of("xyz".repeat(100), 1L), evaluate("{ let k = \"\"; for let i = 0; i < 100; i += 1 { k += \"xyz\" }; let m = map { }; m[k] = 1; m }"));
+        CharSequence rope = Rope.concat(Rope.concat("a".repeat(300), "b".repeat(300)), "c");
+        assertTrue(rope instanceof Rope);
+        assertEquals(601, rope.length());
+        assertEquals('b', rope.charAt(599));
+        assertEquals(Rope.concat("a".repeat(300), Rope.concat("b".repeat(300), "c")), rope);
+        assertEquals("a".repeat(300) + "b".repeat(300) + "c", rope.toString());
+        CharSequence outer = Rope.concat(rope, "d".repeat(300));
+        assertEquals("a".repeat(300) + "b".repeat(300) + "c" + "d".repeat(300), outer.toString());
+    }
+
+    @Test
+    public void builderAppendsStrings() {
+        assertEquals("a,b,c", evaluate("{ let b = builder(); append(b, \"a\"); append(b, \",\", \"b\", \",\"); build(append(b, \"c\")) }"));
+        assertEquals(ObjectType.USERDATA, ScriptObjects.getObjectType(evaluate("builder()")));
+        try {
+            evaluate("append(builder(), 1)");
+            fail();
+        } catch (ScriptException e) {
+            assertEquals("expected a string, got 1", e.getMessage());
+        }
+    }
+
+}
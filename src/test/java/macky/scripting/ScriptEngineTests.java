@@ -0,0 +1,140 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScriptEngineTests {
+
+    @Test
+    public void reusesCompiledScripts() {
+        ScriptEngine engine = new ScriptEngine.Builder().build();
+        CompiledScript first = engine.compile("let x = 1; x + 1");
+        assertSame(first, engine.compile("let x = 1; x + 1"));
+        assertEquals(2L, first.evaluate(new Scope()));
+        assertEquals(1, engine.getCacheHits());
+        assertEquals(1, engine.getCacheMisses());
+    }
+
+    @Test
+    public void recordsMetrics() {
+        ScriptEngine engine = new ScriptEngine.Builder().build();
+        ScriptMetrics before = engine.getMetrics();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(3L, engine.evaluate("1 + 2"));
+        }
+        try {
+            engine.evaluate("unknown + 1");
+            fail();
+        } catch (ScriptException expected) {
+        }
+        try {
+            engine.evaluate("let = 1");
+            fail();
+        } catch (ScriptException expected) {
+        }
+        ScriptMetrics after = engine.getMetrics();
+        assertEquals(101, after.getEvaluations());
+        assertEquals(3, after.getCompilations());
+        assertEquals(3, after.getCompileTime().getCount());
+        assertEquals(101, after.getEvaluationTime().getCount());
+        assertEquals(99.0 / 102, after.getCacheHitRate(), 1e-9);
+        assertEquals(Map.of("ScriptException", 2L), after.getErrors());
+        assertTrue(after.getEvaluationTime().getPercentile(50) <= after.getEvaluationTime().getPercentile(99));
+        assertTrue(after.getEvaluationsPerSecond(before) > 0);
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500, snapshot.getMean(), 1e-9);
+        assertEquals(500_000, snapshot.getPercentile(50), 500_000 * 0.07);
+        assertEquals(990_000, snapshot.getPercentile(99), 990_000 * 0.07);
+        assertEquals(0, new LatencyHistogram().snapshot().getPercentile(99));
+        for (long value : new long[]{0, 1, 7, 8, 15, 16, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.lowerBound(index) <= value);
+            assertTrue(index == LatencyHistogram.index(LatencyHistogram.lowerBound(index)));
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        ScriptEngine engine = new ScriptEngine.Builder().maxEntries(2).build();
+        CompiledScript a = engine.compile("1");
+        engine.compile("2");
+        engine.compile("1");
+        engine.compile("3");
+        assertEquals(2, engine.getCacheSize());
+        assertEquals(1, engine.getCacheEvictions());
+        assertSame(a, engine.compile("1"));
+        engine.compile("2");
+        assertEquals(4, engine.getCacheMisses());
+    }
+
+    @Test
+    public void evictsByWeight() {
+        ScriptEngine engine = new ScriptEngine.Builder().maxWeight(10).build();
+        engine.compile("1 + 2");
+        engine.compile("3 + 4");
+        assertEquals(10, engine.getCacheWeight());
+        engine.compile("5");
+        assertEquals(6, engine.getCacheWeight());
+        assertEquals(1, engine.getCacheEvictions());
+        CompiledScript big = engine.compile("123456789 + 1");
+        assertNotSame(big, engine.compile("123456789 + 1"));
+        assertEquals(2, engine.getCacheSize());
+    }
+
+    @Test
+    public void rejectsSyntaxErrors() {
+        ScriptEngine engine = new ScriptEngine.Builder().build();
+        try {
+            engine.compile("let = = 1");
+            fail();
+        } catch (ScriptException e) {
+            assertEquals(0, engine.getCacheSize());
+        }
+    }
+
+    @Test
+    public void sharedBetweenThreads() throws Exception {
+        ScriptEngine engine = new ScriptEngine.Builder().maxEntries(8).build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        int n = i % 16;
+                        assertEquals((long) n * 2, engine.evaluate(new Scope(), n + " * 2"));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(8000, engine.getCacheHits() + engine.getCacheMisses());
+        assertEquals(8, engine.getCacheSize());
+    }
+
+}
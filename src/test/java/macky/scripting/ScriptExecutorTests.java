@@ -0,0 +1,117 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScriptExecutorTests {
+
+    private static final class Gate {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+
+        ScriptFunction function() {
+            return ScriptFunction.blocking(params -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } finally {
+                    running.decrementAndGet();
+                }
+                return params.get(0);
+            });
+        }
+    }
+
+    private static ScriptExecutor executor(Prelude prelude, int maxConcurrent, int maxQueued) {
+        return new ScriptExecutor.Builder()
+                .engine(new ScriptEngine.Builder().prelude(prelude).build())
+                .maxConcurrentPerTenant(maxConcurrent)
+                .maxQueuedPerTenant(maxQueued)
+                .build();
+    }
+
+    @Test
+    public void limitsConcurrencyPerTenant() throws Exception {
+        Gate gate = new Gate();
+        ScriptExecutor executor = executor(new Prelude.Builder().define("wait", gate.function()).build(), 2, 100);
+        List<CompletableFuture<Object>> results = new ArrayList<>();
+        for (long i = 0; i < 6; i++) {
+            results.add(executor.submit("a", "wait(" + i + ")"));
+        }
+        CompletableFuture<Object> other = executor.submit("b", "wait(10) + 1");
+        while (gate.running.get() < 3) {
+            Thread.sleep(1);
+        }
+        assertEquals(4, executor.getQueued());
+        gate.release.countDown();
+        for (long i = 0; i < 6; i++) {
+            assertEquals(i, results.get((int) i).get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(11L, other.get(10, TimeUnit.SECONDS));
+        assertEquals(3, gate.maxRunning.get());
+        executor.close();
+        assertEquals(0, executor.getInFlight());
+    }
+
+    @Test
+    public void rejectsWhenQueueIsFull() throws Exception {
+        Gate gate = new Gate();
+        ScriptExecutor executor = executor(new Prelude.Builder().define("wait", gate.function()).build(), 1, 1);
+        CompletableFuture<Object> running = executor.submit("a", "wait(1)");
+        CompletableFuture<Object> queued = executor.submit("a", "wait(2)");
+        CompletableFuture<Object> rejected = executor.submit("a", "wait(3)");
+        try {
+            rejected.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        try {
+            executor.submit("a", "let = 1").get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ScriptException);
+        }
+        gate.release.countDown();
+        assertEquals(1L, running.get());
+        assertEquals(2L, queued.get());
+        executor.close();
+        try {
+            executor.submit("a", "1").get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void manyBlockingEvaluations() throws Exception {
+        ScriptFunction query = ScriptFunction.blocking(params -> {
+            Thread.sleep(2);
+            return ScriptObjects.getLong(params.get(0)) * 10;
+        });
+        ScriptExecutor executor = executor(new Prelude.Builder().define("query", query).build(), 50, 1000);
+        List<CompletableFuture<Object>> results = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            results.add(executor.submit("tenant" + i % 8, "query(" + i + ") + 1"));
+        }
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(i * 10L + 1, results.get(i).get(30, TimeUnit.SECONDS));
+        }
+        executor.close();
+    }
+
+}
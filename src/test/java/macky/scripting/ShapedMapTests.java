@@ -0,0 +1,99 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ShapedMapTests {
+
+    private static Object evaluate(String code) {
+        return CompiledScript.compile(code).evaluate(new Scope());
+    }
+
+    @Test
+    public void literalsShareShapes() {
+        List<?> records = (List<?>) evaluate("{ let f = function(n) { map { \"name\": n, \"age\": 1 } }; list [f(\"a\"), f(\"b\"), map { \"name\": 1, \"age\": 2 }] }");
+        ShapedMap.Shape shape = ((ShapedMap) records.get(0)).getShape();
+        assertNotNull(shape);
+        assertSame(shape, ((ShapedMap) records.get(1)).getShape());
+        assertSame(shape, ((ShapedMap) records.get(2)).getShape());
+        assertEquals(1, shape.indexOf("age"));
+        assertEquals(Map.of("name", "b", "age", 1L), records.get(1));
+        assertEquals("{name=b, age=1}", records.get(1).toString());
+        assertSame(shape, ShapedMap.Shape.EMPTY.with("name").with("age"));
+        ShapedMap built = (ShapedMap) evaluate("{ let m = map { }; m.name = 1; m[\"age\"] = 2; m }");
+        assertSame(shape, built.getShape());
+    }
+
+    @Test
+    public void fallsBackToDictionary() {
+        ShapedMap map = (ShapedMap) evaluate("{ let m = map { \"a\": 1, \"b\": 2 }; m[3] = 4; m.a = 5; m }");
+        assertNull(map.getShape());
+        assertEquals(Map.of("a", 5L, "b", 2L, 3L, 4L), map);
+        ShapedMap removed = new ShapedMap();
+        removed.put("a", 1L);
+        removed.put("b", 2L);
+        removed.keySet().remove("a");
+        assertNull(removed.getShape());
+        assertEquals(Map.of("b", 2L), removed);
+        ShapedMap wide = new ShapedMap();
+        for (int i = 0; i <= ShapedMap.Shape.MAX_SLOTS; i++) {
+            wide.put("k" + i, (long) i);
+        }
+        assertNull(wide.getShape());
+        assertEquals(ShapedMap.Shape.MAX_SLOTS + 1, wide.size());
+        assertEquals(7L, wide.get("k7"));
+    }
+
+    @Test
+    public void failsIterationWhenAKeyIsAddedOnTheLastEntry() {
+        for (String code : new String[]{
+                "{ let m = map { \"a\": 1, \"b\": 2 }; let n = 0; for k in m { n += 1; if n == 2 { m.c = 3 } } }",
+                "{ let m = map { \"a\": 1 }; m[1] = 2; let n = 0; for k in m { n += 1; if n == 2 { m[2] = 3 } } }",
+        }) {
+            try {
+                evaluate(code);
+                fail(code);
+            } catch (ScriptException e) {
+                assertEquals("cannot change a collection while iterating over it", e.getMessage());
+            }
+        }
+        assertEquals(Map.of("a", 3L, 1L, 4L), evaluate("{ let m = map { \"a\": 1 }; m[1] = 2; for k in m { m[k] += 2 }; m }"));
+        ShapedMap map = new ShapedMap();
+        map.put("a", 1L);
+        map.put(1L, 2L);
+        Iterator<Object> keys = map.keySet().iterator();
+        keys.next();
+        keys.remove();
+        keys.next();
+        assertFalse(keys.hasNext());
+        assertEquals(Map.of(1L, 2L), map);
+    }
+
+    @Test
+    public void accessSitesFollowShapeChanges() {
+        String code = String.join("\n",
+                "{",
+                "  let get = function(m) { m.x };",
+                "  let bump = function(m) { m.x += 1; m };",
+                "  let a = map { \"x\": 1, \"y\": 2 };",
+                "  let b = map { \"y\": 3, \"x\": 4 };",
+                "  let c = map { \"x\": 5 };",
+                "  c[1] = 0;",
+                "  bump(a); bump(b); bump(c); bump(a);",
+                "  list [get(a), get(b), get(c), get(map { }), get(a)]",
+                "}");
+        assertEquals(Arrays.asList(3L, 5L, 6L, null, 3L), evaluate(code));
+    }
+
+}
@@ -0,0 +1,43 @@
+package macky.scripting;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class WeakIdentityCacheTests {
+
+    @Test
+    public void keysByIdentity() {
+        WeakIdentityCache<List<String>, Object> cache = new WeakIdentityCache<>();
+        List<String> a = new ArrayList<>(List.of("x"));
+        List<String> b = new ArrayList<>(List.of("x"));
+        Object forA = cache.get(a, key -> new Object());
+        assertSame(forA, cache.get(a, key -> new Object()));
+        Object forB = cache.get(b, key -> new Object());
+        assertEquals(2, cache.size());
+        a.add("y");
+        assertSame(forA, cache.get(a, key -> new Object()));
+        assertSame(forB, cache.get(b, key -> new Object()));
+    }
+
+    @Test
+    public void dropsEntriesOfCollectedKeys() throws InterruptedException {
+        WeakIdentityCache<Object, String> cache = new WeakIdentityCache<>();
+        Object kept = new Object();
+        cache.get(kept, key -> "kept");
+        for (int i = 0; i < 100; i++) {
+            cache.get(new Object(), key -> "dropped");
+        }
+        for (int i = 0; i < 50 && cache.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, cache.size());
+        assertEquals("kept", cache.get(kept, key -> "reloaded"));
+    }
+
+}
@@ -0,0 +1,77 @@
+package macky.scripting.binary;
+
+import macky.scripting.CompiledScript;
+import macky.scripting.Expression;
+import macky.scripting.Resolver;
+import macky.scripting.Scope;
+import macky.scripting.ScriptException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ScriptBundleTests {
+
+    private static final String SOURCE = String.join("\n",
+            "let fib = function(n) { if n < 2 { n } else { fib(n - 1) + fib(n - 2) } };",
+            "let m = map { \"a\": list [1, 2.5, 3.0D, 123456789012345678901234567890], \"b\": true };",
+            "m.a[0] += 1; m:b; -m.a[1]; x |= false; x = 1;",
+            "for let i = 0; i < 3; i += 1 { if i == 1 { break } };",
+            "for k in m { m[k] }; { for v in m.a { v } };",
+            "while false { loop { return } }; return 1;",
+            "\"\\u00e9t\\u00e9\" ; fib(10)");
+
+    @Test
+    public void roundTripsExpressions() {
+        List<Expression> expressions = CompiledScript.parse(SOURCE);
+        List<Expression> resolved = expressions.stream().map(Resolver::resolve).collect(Collectors.toList());
+        ScriptBundle bundle = ScriptBundle.read(ByteBuffer.wrap(new ScriptBundle.Writer()
+                .add("parsed", expressions)
+                .add("resolved", resolved)
+                .toByteArray()));
+        assertEquals(List.of("parsed", "resolved"), List.copyOf(bundle.getNames()));
+        assertEquals(expressions, bundle.getExpressions("parsed"));
+        assertEquals(resolved, bundle.getExpressions("resolved"));
+    }
+
+    @Test
+    public void loadsMappedFiles() throws Exception {
+        Path file = Files.createTempFile("scripts", ".mksb");
+        try {
+            new ScriptBundle.Writer()
+                    .addSource("fib", "let fib = function(n) { if n < 2 { n } else { fib(n - 1) + fib(n - 2) } }; fib(20)")
+                    .write(file);
+            ScriptBundle bundle = ScriptBundle.load(file);
+            assertEquals(6765L, bundle.getScript("fib").evaluate(new Scope()));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void rejectsDamagedBundles() {
+        byte[] bytes = new ScriptBundle.Writer().addSource("one", "1 + 1").toByteArray();
+        bytes[bytes.length - 1] ^= 1;
+        expectFailure(bytes, "script bundle checksum mismatch");
+        bytes[bytes.length - 1] ^= 1;
+        bytes[5] = 99;
+        expectFailure(bytes, "unsupported script bundle version 99");
+        expectFailure(new byte[]{1, 2, 3}, "not a script bundle");
+    }
+
+    private static void expectFailure(byte[] bytes, String message) {
+        try {
+            ScriptBundle.read(ByteBuffer.wrap(bytes));
+            fail();
+        } catch (ScriptException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,231 @@
+package macky.scripting.compiler;
+
+import macky.scripting.AntlrVisitor;
+import macky.scripting.CompiledScript;
+import macky.scripting.ExecutionLimits;
+import macky.scripting.Expression;
+import macky.scripting.Interpreter;
+import macky.scripting.PackedList;
+import macky.scripting.Scope;
+import macky.scripting.ScriptEngine;
+import macky.scripting.ScriptException;
+import macky.scripting.ScriptFunction;
+import macky.scripting.ScriptObjects;
+import macky.scripting.ScriptingMap;
+import macky.scripting.gen.GrammarLexer;
+import macky.scripting.gen.GrammarParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompilerTests {
+
+    static final String[][] PROGRAMS = {
+            {
+                    "let fib = function(n) { if n == 1 { 1 } else { if n == 2 { 2 } else { fib(n - 1) + fib(n - 2) } } };",
+                    "for let i = 1; i <= 20; i += 1 { print(fib(i)) print(\" \") }"
+            },
+            {
+                    "let x = (2 * 3 + 4 - 10 / 5 % 3)",
+                    "x *= 2; x -= 1; x",
+                    "-x"
+            },
+            {
+                    "let m = map { \"a\": 1, \"b\": list [1, 2, 3] }",
+                    "m.a = m.a + 1; m[\"b\"][1] = 5; m.b[2] += 10; print(m.a) print(m.b)",
+                    "m.c"
+            },
+            {
+                    "let counter = function() { let n = 0; function() { n += 1; n } }",
+                    "let c = counter(); c(); c(); c()"
+            },
+            {
+                    "let find = function(l, v) { for let i = 0; i < len(l); i += 1 { if l[i] == v { return i } } return -1 }",
+                    "print(find(list [4, 5, 6], 6)) print(find(list [4, 5, 6], 7))"
+            },
+            {
+                    "let obj = map { \"value\": 10, \"get\": function(self, d) { self.value + d } }",
+                    "obj:get(5)",
+                    "obj:[\"get\"](1)"
+            },
+            {
+                    "let i = 0; while i < 5 { i += 1 }; i",
+                    "true && 1", "false && 1", "false || \"x\"", "true || 1",
+                    "let flag = false; flag |= 3; flag",
+                    "if 0 { \"zero is truthy\" } else { \"zero is falsy\" }",
+                    "if 1 { 1 }"
+            },
+            {
+                    "let s = \"hello world\"",
+                    "substr(s, 0, 5)",
+                    "math.pi * 2"
+            },
+            {
+                    "undefined_variable",
+                    "1(2)",
+                    "break",
+                    "return 5",
+                    "let f = function(a) { a }; f(1, 2)"
+            },
+            {
+                    "let n = 0; loop { n += 1; if n == 10 { break } }; n",
+                    "let j = 0; while true { j += 1; { let k = j; if k > 3 { break } } }; j",
+                    "let hits = 0; for let a = 0; a < 3; a += 1 { for let b = 0; b < 10; b += 1 { if b == 2 { break } hits += 1 } }; hits",
+                    "let early = function(l) { let total = 0; for let i = 0; i < len(l); i += 1 { if l[i] < 0 { return total } total += l[i] } total }",
+                    "early(list [1, 2, -1, 4])", "early(list [1, 2])",
+                    "let g = function() { break }; loop { g() }",
+                    "let noLocals = function() { return 7 }; noLocals()"
+            },
+            {
+                    "let five = function(a, b, c, d, e) { a + b + c + d + e }",
+                    "five(1, 2, 3, 4, 5)", "five(1)", "five()",
+                    "let o = map { \"sum\": function(self, a, b, c) { a + b + c }, \"first\": function(self) { self.items[0] }, \"items\": list [7] }",
+                    "o:sum(1, 2, 3)", "o:first()", "o:sum(1)",
+                    "let bound = o:sum; bound(4, 5, 6)",
+                    "substr(\"hello\", 1, 3)", "len(list [1, 2])"
+            },
+            {
+                    "let total = 0; for x in list [1, 2, 3] { total += x }; total",
+                    "let keys = 0; for k in math { keys += 1 }; keys",
+                    "let firstBig = function(l) { for x in l { if x > 1 { return x } } 0 }",
+                    "firstBig(list [1, 5, 7])", "firstBig(list [])",
+                    "let n = 0; for x in list [1, 2, 3] { if x == 2 { break } n += x }; list [n, x]",
+                    "for x in 1 { }"
+            },
+            {
+                    "let outer = 1; { let outer = 2; outer = 3 }; outer",
+                    "{ y = 4; y }",
+                    "y"
+            }
+    };
+
+    private static List<Expression> parse(String code) {
+        GrammarLexer lexer = new GrammarLexer(CharStreams.fromString(code));
+        GrammarParser parser = new GrammarParser(new CommonTokenStream(lexer));
+        return parser.expression_list().expression().stream().map(AntlrVisitor.INSTANCE::visit).collect(Collectors.toList());
+    }
+
+    private static Scope newScope(StringBuilder out) {
+        Scope scope = new Scope();
+        scope.set("print", new ScriptFunction() {
+            @Override
+            public Object call(List<Object> params) {
+                argCount(params, 1);
+                out.append(params.get(0));
+                return null;
+            }
+        });
+        scope.set("len", ScriptObjects.LIST_LEN);
+        scope.set("substr", ScriptObjects.STRING_SUBSTR);
+        scope.set("math", new ScriptingMap.Builder()
+                .put("pi", BigDecimal.valueOf(Math.PI))
+                .getData());
+        return scope;
+    }
+
+    private static String run(String[] program, BiFunction<Scope, Expression, Object> evaluator) {
+        StringBuilder out = new StringBuilder();
+        Scope scope = newScope(out);
+        for (String code : program) {
+            Object result = null;
+            for (Expression expression : parse(code)) {
+                try {
+                    result = evaluator.apply(scope, expression);
+                } catch (ScriptException e) {
+                    result = "error: " + e.getMessage();
+                }
+            }
+            out.append(" => ").append(result).append('\n');
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void compiledMatchesInterpreted() {
+        for (String[] program : PROGRAMS) {
+            String interpreted = run(program, Scope::evaluate);
+            String compiled = run(program, (scope, expression) -> ScriptCompiler.compile(expression).evaluate(scope));
+            assertEquals(interpreted, compiled);
+        }
+    }
+
+    @Test
+    public void generatesBytecode() {
+        for (String[] program : PROGRAMS) {
+            for (String code : program) {
+                for (Expression expression : parse(code)) {
+                    CompiledExpression compiled = ScriptCompiler.compile(expression);
+                    assertTrue(compiled.getClass().getClassLoader() instanceof ScriptClassLoader);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void breakInsideExpressionIsInterpreted() {
+        Expression expression = parse("{ let q = 0; while q < 5 { q += 1; q + break }; q }").get(0);
+        CompiledExpression compiled = ScriptCompiler.compile(expression);
+        assertFalse(compiled.getClass().getClassLoader() instanceof ScriptClassLoader);
+        assertEquals(1L, compiled.evaluate(new Scope()));
+    }
+
+    @Test
+    public void listLiteralsArePacked() {
+        Object list = ScriptCompiler.compile(parse("list [1, 2, 3]").get(0)).evaluate(new Scope());
+        assertTrue(list instanceof PackedList);
+        assertEquals(List.of(1L, 2L, 3L), list);
+    }
+
+    private static String evaluate(String code, Interpreter interpreter, ExecutionLimits limits) {
+        Scope scope = new Scope();
+        scope.setLimits(limits);
+        try {
+            return String.valueOf(CompiledScript.compile(code, interpreter).evaluate(scope));
+        } catch (RuntimeException e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    @Test
+    public void chargesBudgetLikeTree() {
+        ExecutionLimits limits = new ExecutionLimits.Builder().maxSteps(1000).maxAllocations(20).maxCollectionSize(3).build();
+        for (String code : List.of(
+                "{ let s = 0; for let i = 0; i < 1000; i += 1 { s += i }; s }",
+                "{ let s = 0; for let i = 0; i < 1001; i += 1 { s += i }; s }",
+                "{ let n = 0; while n < 1001 { n += 1 } }",
+                "{ let n = 0; loop { n += 1; if n > 1000 { break } } }",
+                "{ let n = 0; for x in list [1, 2, 3] { n += x }; n }",
+                "{ let f = function(n) { if n == 0 { 0 } else { f(n - 1) } }; f(499) }",
+                "{ let f = function(n) { if n == 0 { 0 } else { f(n - 1) } }; f(1000) }",
+                "{ let i = 0; while i < 30 { list [i]; i += 1 } }",
+                "{ let i = 0; while i < 30 { function() { i }; i += 1 } }",
+                "{ let m = map { }; for let i = 0; i < 10; i += 1 { m[i] = i } }",
+                "list [1, 2, 3, 4]",
+                "return 5")) {
+            assertEquals(code, evaluate(code, Interpreter.TREE, limits), evaluate(code, Interpreter.BYTECODE, limits));
+        }
+    }
+
+    @Test
+    public void runsTailCallsInConstantStack() {
+        for (String code : List.of(
+                "let f = function(n, acc) { if n == 0 { return acc }; f(n - 1, acc + n) }; f(100000, 0)",
+                "{ let even = function(n) { if n == 0 { return true }; return odd(n - 1) }; let odd = function(n) { if n == 0 { false } else { even(n - 1) } }; even(100001) }",
+                "{ let o = map { \"down\": function(self, n) { while true { if n == 0 { return \"done\" }; return self:down(n - 1) } } }; o:down(100000) }")) {
+            assertEquals(code, evaluate(code, Interpreter.TREE, ExecutionLimits.NONE), evaluate(code, Interpreter.BYTECODE, ExecutionLimits.NONE));
+        }
+        ScriptEngine engine = new ScriptEngine.Builder().interpreter(Interpreter.BYTECODE).build();
+        assertEquals(Interpreter.BYTECODE, engine.compile("1").getInterpreter());
+        assertEquals(5000050000L, engine.evaluate("let f = function(n, acc) { if n == 0 { return acc }; f(n - 1, acc + n) }; f(100000, 0)"));
+    }
+
+}
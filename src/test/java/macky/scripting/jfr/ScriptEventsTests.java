@@ -0,0 +1,62 @@
+package macky.scripting.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import macky.scripting.CompiledScript;
+import macky.scripting.Prelude;
+import macky.scripting.ScriptException;
+import macky.scripting.ScriptFunction;
+import macky.scripting.ScriptObjects;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScriptEventsTests {
+
+    @Test
+    public void recordsScriptEvents() throws Exception {
+        ScriptFunction twice = ScriptFunction.from((a, b) -> ScriptObjects.getLong(a) * 2);
+        Prelude prelude = new Prelude.Builder().define("twice", twice).build();
+        Path file = Files.createTempFile("scripts", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (Class<? extends jdk.jfr.Event> type : List.of(CompileEvent.class, EvaluationEvent.class, HostCallEvent.class, ScriptErrorEvent.class)) {
+                recording.enable(type).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            CompiledScript script = CompiledScript.compile("{ let s = 0; for let i = 0; i < 3; i += 1 { s += twice(i, 0) }; s }");
+            assertEquals(6L, script.evaluate(prelude.newScope()));
+            try {
+                CompiledScript.compile("missing").evaluate(prelude.newScope());
+                fail();
+            } catch (ScriptException expected) {
+            }
+            new ScriptException("never thrown");
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        Map<String, Long> counts = events.stream().collect(Collectors.groupingBy(event -> event.getEventType().getName(), Collectors.counting()));
+        assertEquals(2L, (long) counts.get("macky.scripting.Compile"));
+        assertEquals(2L, (long) counts.get("macky.scripting.Evaluation"));
+        assertEquals(3L, (long) counts.get("macky.scripting.HostCall"));
+        Map<Boolean, String> evaluations = events.stream()
+                .filter(event -> event.getEventType().getName().equals("macky.scripting.Evaluation"))
+                .collect(Collectors.toMap(event -> event.getBoolean("failed"), event -> event.getString("source"), (a, b) -> a));
+        assertEquals("missing", evaluations.get(true));
+        assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("macky.scripting.ScriptError")
+                && event.getString("message").equals("unknown variable missing")));
+        assertEquals(1L, (long) counts.get("macky.scripting.ScriptError"));
+    }
+
+}
@@ -0,0 +1,152 @@
+package macky.scripting.node;
+
+import macky.scripting.AntlrVisitor;
+import macky.scripting.ControlFlowException;
+import macky.scripting.Resolver;
+import macky.scripting.Scope;
+import macky.scripting.ScriptException;
+import macky.scripting.ScriptReturnException;
+import macky.scripting.ScriptingList;
+import macky.scripting.ScriptingMap;
+import macky.scripting.gen.GrammarLexer;
+import macky.scripting.gen.GrammarParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class NodeTests {
+
+    private static RootNode build(String code) {
+        GrammarLexer lexer = new GrammarLexer(CharStreams.fromString(code));
+        GrammarParser parser = new GrammarParser(new CommonTokenStream(lexer));
+        return NodeBuilder.build(Resolver.resolve(AntlrVisitor.INSTANCE.visit(parser.expression_list().expression(0))));
+    }
+
+    private static Object run(RootNode root, Object a, Object b) {
+        Scope scope = new Scope();
+        scope.set("a", a);
+        scope.set("b", b);
+        return root.execute(scope);
+    }
+
+    @Test
+    public void despecializesWhenTypesChange() {
+        RootNode equals = build("a == b");
+        assertEquals(true, run(equals, BigDecimal.ONE, BigDecimal.ONE));
+        assertEquals(false, run(equals, BigDecimal.ONE, BigDecimal.TEN));
+        try {
+            run(equals, "x", "x");
+            fail();
+        } catch (ScriptException e) {
+            assertEquals("expected a number, got x", e.getMessage());
+        }
+        assertEquals(true, run(equals, BigDecimal.TEN, BigDecimal.TEN));
+    }
+
+    @Test
+    public void scopeEvaluateReusesTheTreeAcrossScopes() {
+        GrammarLexer lexer = new GrammarLexer(CharStreams.fromString("a + b"));
+        GrammarParser parser = new GrammarParser(new CommonTokenStream(lexer));
+        macky.scripting.Expression sum = AntlrVisitor.INSTANCE.visit(parser.expression_list().expression(0));
+        Scope longs = new Scope();
+        longs.set("a", 1L);
+        longs.set("b", 2L);
+        Scope doubles = new Scope();
+        doubles.set("a", 0.5);
+        doubles.set("b", 0.25);
+        assertEquals(3L, longs.evaluate(sum));
+        assertEquals(0.75, doubles.evaluate(sum));
+        assertEquals(3L, longs.evaluate(sum));
+    }
+
+    @Test
+    public void accessSpecializations() {
+        RootNode access = build("a[b]");
+        assertEquals("value", run(access, Map.of("key", "value"), "key"));
+        assertEquals("second", run(access, List.of("first", "second"), BigDecimal.ONE));
+        assertEquals("value", run(access, Map.of(BigDecimal.ONE, "value"), BigDecimal.ONE));
+        assertEquals("value", run(access, Map.of("key", "value"), "key"));
+    }
+
+    @Test
+    public void accessCacheGoesMegamorphic() {
+        AccessNode access = new AccessNode(new GlobalReadNode("a"), new GlobalReadNode("b"));
+        RootNode root = new RootNode(access);
+        assertEquals("value", run(root, new HashMap<>(Map.of("key", "value")), "key"));
+        assertEquals("value", run(root, new HashMap<>(Map.of("key", "value")), "key"));
+        assertEquals(1, access.getCache().size());
+        assertEquals("second", run(root, new ArrayList<>(List.of("first", "second")), 1L));
+        assertEquals("value", run(root, ScriptingMap.wrap(new HashMap<>(Map.of("key", "value"))), "key"));
+        assertEquals("first", run(root, ScriptingList.wrap(new ArrayList<>(List.of("first"))), 0L));
+        assertEquals(InlineCache.LIMIT, access.getCache().size());
+        assertEquals("value", run(root, new TreeMap<>(Map.of("key", "value")), "key"));
+        assertEquals(-1, access.getCache().size());
+        assertEquals("second", run(root, new LinkedList<>(List.of("first", "second")), 1L));
+        assertEquals("value", run(root, new HashMap<>(Map.of("key", "value")), "key"));
+        try {
+            run(root, "string", 0L);
+            fail();
+        } catch (ScriptException e) {
+            assertEquals("expected a map or list, got string", e.getMessage());
+        }
+    }
+
+    @Test
+    public void cachedAccessorsAssignAndCallMethods() {
+        RootNode counter = build("{ let c = map { \"n\": 0, \"inc\": function(self, by) { self.n += by } }; for let i = 0; i < 10; i += 1 { c:inc(i) }; let f = c:inc; f(5); c.n }");
+        assertEquals(50L, counter.execute(new Scope()));
+        RootNode swap = build("{ let xs = list [1, 2]; let t = xs[0]; xs[0] = xs[1]; xs[1] = t; xs }");
+        assertEquals(List.of(2L, 1L), swap.execute(new Scope()));
+    }
+
+    @Test
+    public void controlFlowIsStackless() {
+        assertEquals(0, ControlFlowException.BREAK.getStackTrace().length);
+        assertEquals(0, ControlFlowException.RETURN.getStackTrace().length);
+        RootNode loop = build("{ let i = 0; let f = function(n) { return n + 1 }; loop { i = f(i); if i == 1000 { break } }; i }");
+        assertEquals(1000L, loop.execute(new Scope()));
+        try {
+            build("return 1").execute(new Scope());
+            fail();
+        } catch (ScriptReturnException e) {
+            assertEquals(1L, e.getReturnValue());
+        }
+    }
+
+    @Test
+    public void tailCallsRunInConstantStack() {
+        RootNode count = build("{ let count = function(n, acc) { if n == 0 { acc } else { count(n - 1, acc + 1) } }; count(200000, 0) }");
+        assertEquals(200000L, count.execute(new Scope()));
+        RootNode mutual = build("{ let even = function(n) { if n == 0 { return true }; return odd(n - 1) }; let odd = function(n) { if n == 0 { false } else { even(n - 1) } }; even(100001) }");
+        assertEquals(false, mutual.execute(new Scope()));
+        RootNode method = build("{ let o = map { \"down\": function(self, n) { while true { if n == 0 { return \"done\" }; return self:down(n - 1) } } }; o:down(100000) }");
+        assertEquals("done", method.execute(new Scope()));
+        try {
+            build("{ let f = function(n) { n * 2 }; return f(21) }").execute(new Scope());
+            fail();
+        } catch (ScriptReturnException e) {
+            assertEquals(42L, e.getReturnValue());
+        }
+        RootNode notTail = build("{ let sum = function(n) { if n == 0 { 0 } else { n + sum(n - 1) } }; sum(100) }");
+        assertEquals(5050L, notTail.execute(new Scope()));
+    }
+
+    @Test
+    public void recursionReplacesNodesOnce() {
+        RootNode fib = build("{ let fib = function(n) { if n < 2 { n } else { fib(n - 1) + fib(n - 2) } }; fib(15) }");
+        assertEquals(610L, fib.execute(new Scope()));
+        assertEquals(610L, fib.execute(new Scope()));
+    }
+
+}
@@ -0,0 +1,125 @@
+package macky.scripting.vm;
+
+import macky.scripting.CompiledScript;
+import macky.scripting.ExecutionLimits;
+import macky.scripting.Interpreter;
+import macky.scripting.Resolver;
+import macky.scripting.Scope;
+import macky.scripting.ScriptEngine;
+import macky.scripting.ScriptObjects;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MachineTests {
+
+    private static final List<String> PROGRAMS = List.of(
+            "let fib = function(n) { if n < 2 { n } else { fib(n - 1) + fib(n - 2) } }; fib(15)",
+            "{ let i = 0; let s = 0; while i < 10 { { let j = i; if j == 5 { break }; s += j }; i += 1 }; list [i, s] }",
+            "{ let s = 0; for let i = 0; i < 10; i += 1 { if i > 3 { break }; s += i } }",
+            "{ let x = 0; loop { x += 1; if x > 100 { break } }; x }",
+            "{ let m = map { \"a\": 1, \"b\": 2 }; m.a += 5; m[\"b\"] *= 3; m.c = 7; list [m, m.a, m[\"c\"]] }",
+            "{ let m = map { 1: \"x\", \"k\": 2 }; list [m[1], m.k] }",
+            "{ let l = list [1, 2, 3]; l[0] = l[1] + l[2]; l }",
+            "{ let o = map { \"n\": 2, \"f\": function(self, x) { self.n * x } }; o:f(21) }",
+            "{ let o = map { \"n\": 2, \"f\": function(self) { self.n } }; let g = o:f; g() }",
+            "{ let x = 0 && 5; let y = false || 7; let z = false; z |= 3; list [x, y, z] }",
+            "{ let x = 9223372036854775807; list [x + 1, x * 2, -x] }",
+            "{ let x = 1.5; let y = 2.25; list [x + y, x * y, x < y, x == 1.5, x % 1.0] }",
+            "{ let x = 1; x = x + 0.5; x }",
+            "{ let mk = function() { let n = 0; function() { n += 1; n } }; let f = mk(); f(); f(); f() }",
+            "{ let f = function(a, b, c, d, e) { a + b + c + d + e }; f(1, 2, 3, 4, 5) }",
+            "{ let s = \"\"; for let i = 0; i < 5; i += 1 { s += \"x\" }; s }",
+            "{ let f = function(n) { return { let k = n; k * 2 } }; f(4) }",
+            "{ let t = 0; for let i = 0; i < 1000; i += 1 { if i % 2 == 0 { t += i } else { t -= 1 } }; t }",
+            "{ let s = 0; for x in list [1, 2, 3, 4] { if x == 4 { break }; s += x }; s }",
+            "{ let m = map { \"a\": 1, \"b\": 2 }; let n = 0; for k in m { n += m[k] }; list [n, k] }",
+            "{ let f = function(l) { for x in l { if x > 1 { return x } }; 0 }; f(list [1, 2, 3]) }",
+            "{ for x in list [] { 1 } }",
+            "for x in 5 { }",
+            "let g = 10; g += 5; g",
+            "if 0 { 1 } else { 2 }",
+            "break",
+            "return 5",
+            "{ let f = function() { break }; f() }",
+            "{ let f = function(a, b) { a }; f(1) }",
+            "{ let f = function(x) { x }; f:foo }",
+            "{ 1 = 2 }",
+            "{ let l = list [1]; l[5] }",
+            "\"a\" + 1",
+            "undefinedName"
+    );
+
+    private static String evaluate(String code, Interpreter interpreter, ExecutionLimits limits) {
+        Scope scope = new Scope();
+        scope.setLimits(limits);
+        try {
+            return String.valueOf(CompiledScript.compile(code, interpreter).evaluate(scope));
+        } catch (RuntimeException e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    private static Program compile(String code) {
+        return Program.compile(Resolver.resolve(CompiledScript.parse(code).get(0)));
+    }
+
+    @Test
+    public void conformsToTree() {
+        for (String code : PROGRAMS) {
+            assertEquals(code, evaluate(code, Interpreter.TREE, ExecutionLimits.NONE), evaluate(code, Interpreter.VM, ExecutionLimits.NONE));
+        }
+        ExecutionLimits limits = new ExecutionLimits.Builder().maxSteps(1000).maxAllocations(20).maxCollectionSize(3).build();
+        for (String code : List.of(
+                "{ let s = 0; for let i = 0; i < 1000; i += 1 { s += i }; s }",
+                "{ let s = 0; for let i = 0; i < 1001; i += 1 { s += i }; s }",
+                "{ let f = function(n) { if n == 0 { 0 } else { f(n - 1) } }; f(499) }",
+                "{ let f = function(n) { if n == 0 { 0 } else { f(n - 1) } }; f(1000) }",
+                "{ let i = 0; while i < 30 { list [i]; i += 1 } }",
+                "{ let m = map { }; for let i = 0; i < 10; i += 1 { m[i] = i } }")) {
+            assertEquals(code, evaluate(code, Interpreter.TREE, limits), evaluate(code, Interpreter.VM, limits));
+        }
+    }
+
+    @Test
+    public void quickensInstructions() {
+        Program program = compile("{ let s = 0; for let i = 0; i < 10; i += 1 { s = s * 2 }; s }");
+        assertTrue(program.disassemble().contains("CMP_LOOP "));
+        assertEquals(0L, program.execute(new Scope()));
+        String quickened = program.disassemble();
+        assertTrue(quickened, quickened.contains("CMP_LOOP_LONG"));
+        assertTrue(quickened, quickened.contains("BINARY_LONG"));
+        Scope scope = new Scope();
+        scope.set("x", 1.5);
+        Program generic = compile("{ let s = 0; for let i = 0; i < 3; i += 1 { s = s + x }; s }");
+        assertEquals(4.5, ScriptObjects.getDouble(generic.execute(scope)), 0);
+        assertTrue(generic.disassemble().contains("BINARY_GENERIC"));
+    }
+
+    @Test
+    public void keepsCapturedLocalsInFrames() {
+        String registers = compile("{ let s = 0; for let i = 0; i < 10; i += 1 { let j = i; s += j }; s }").disassemble();
+        assertFalse(registers, registers.contains("PUSH_FRAME"));
+        assertFalse(registers, registers.contains("GET_LOCAL"));
+        Program captured = compile("{ let s = 0; let f = function() { s }; for let i = 0; i < 10; i += 1 { s += 1 }; f() }");
+        assertEquals(10L, captured.execute(new Scope()));
+        String frames = captured.disassemble();
+        assertTrue(frames, frames.contains("PUSH_FRAME"));
+        assertTrue(frames, frames.contains("ADD_LOCAL_CONST"));
+    }
+
+    @Test
+    public void runsTailCallsInConstantStack() {
+        Scope scope = new Scope();
+        assertEquals(5000050000L, CompiledScript.compile("let f = function(n, acc) { if n == 0 { return acc }; f(n - 1, acc + n) }; f(100000, 0)", Interpreter.VM).evaluate(scope));
+        ScriptEngine engine = new ScriptEngine.Builder().interpreter(Interpreter.VM).build();
+        assertEquals(Interpreter.VM, engine.compile("1").getInterpreter());
+        assertEquals(3L, engine.evaluate("1 + 2"));
+        assertEquals(Interpreter.TREE, CompiledScript.compile("1").getInterpreter());
+    }
+
+}